@@ -0,0 +1,40 @@
+package cassandra.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count, JMH can't take the thread count as a parameter. The results of every
+ * run are written as JSON to target/jmh-&lt;threads&gt;-threads.json.
+ *
+ * Arguments: comma separated thread counts, default 1,4,16, and optionally a regular expression selecting the
+ * benchmarks, e.g. {@code 1,8 DaoBenchmark.getValues}.
+ * @author Gyozo_Nyari
+ *
+ */
+public final class BenchmarkRunner {
+
+    private static final String DEFAULT_THREADS = "1,4,16";
+    private static final String DEFAULT_INCLUDE = BenchmarkRunner.class.getPackage().getName() + ".*Benchmark";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String threadCounts = args.length > 0 ? args[0] : DEFAULT_THREADS;
+        String include = args.length > 1 ? args[1] : DEFAULT_INCLUDE;
+        for (String threads : threadCounts.split(",")) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("target/jmh-" + threads.trim() + "-threads.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package cassandra.benchmark;
+
+import me.prettyprint.cassandra.service.CassandraHostConfigurator;
+import me.prettyprint.hector.api.Cluster;
+import me.prettyprint.hector.api.factory.HFactory;
+
+import cassandra.AstyanaxContextFactory;
+
+import com.netflix.astyanax.AstyanaxContext;
+import com.netflix.astyanax.Keyspace;
+
+/**
+ * Hector and Astyanax clients of the {@link EmbeddedCassandra embedded node}, configured alike so the results compare
+ * the clients rather than their settings.
+ * @author Gyozo_Nyari
+ *
+ */
+public final class Clients implements AutoCloseable {
+
+    public static final String HECTOR = "hector";
+    public static final String ASTYANAX = "astyanax";
+
+    private static final int MAX_CONNECTIONS_PER_HOST = 32;
+    private static final int SOCKET_TIMEOUT = 15000;
+
+    private AstyanaxContext<Keyspace> astyanaxContext;
+    private Cluster hectorCluster;
+
+    /**
+     * Returns the Astyanax keyspace, the context is started on the first call.
+     * @return context
+     */
+    public AstyanaxContext<Keyspace> astyanax() {
+        if (astyanaxContext == null) {
+            AstyanaxContextFactory factory = new AstyanaxContextFactory();
+            factory.setHostNames(EmbeddedCassandra.HOST);
+            factory.setPort(EmbeddedCassandra.PORT);
+            factory.setClusterName("benchmark");
+            factory.setKeyspace(EmbeddedCassandra.KEYSPACE);
+            factory.setMaxConnsPerHost(MAX_CONNECTIONS_PER_HOST);
+            factory.setSocketTimeout(SOCKET_TIMEOUT);
+            factory.setConnectionPoolName("benchmark");
+            astyanaxContext = factory.create();
+        }
+        return astyanaxContext;
+    }
+
+    /**
+     * Returns the Hector keyspace, the cluster is created on the first call.
+     * @return keyspace
+     */
+    public me.prettyprint.hector.api.Keyspace hector() {
+        if (hectorCluster == null) {
+            CassandraHostConfigurator configurator = new CassandraHostConfigurator(EmbeddedCassandra.HOST + ":" + EmbeddedCassandra.PORT);
+            configurator.setMaxActive(MAX_CONNECTIONS_PER_HOST);
+            configurator.setCassandraThriftSocketTimeout(SOCKET_TIMEOUT);
+            hectorCluster = HFactory.getOrCreateCluster("benchmark", configurator);
+        }
+        return HFactory.createKeyspace(EmbeddedCassandra.KEYSPACE, hectorCluster);
+    }
+
+    @Override
+    public void close() {
+        if (astyanaxContext != null) {
+            astyanaxContext.shutdown();
+        }
+        if (hectorCluster != null) {
+            HFactory.shutdownCluster(hectorCluster);
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package cassandra.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cassandra.composite.CompositeDao;
+import cassandra.composite.CompositeKey;
+
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.model.ColumnList;
+
+/**
+ * Composite column writes and row reads of {@link CompositeDao}, the width is the number of tracks per file row.
+ * Composite columns are only supported with Astyanax.
+ * @author Gyozo_Nyari
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class CompositeDaoBenchmark {
+
+    private static final String COLUMN_FAMILY = "Files";
+    private static final int ROWS = 1000;
+    private static final byte[] VALUE = "This is file1, track1, name".getBytes();
+
+    @Param({"1", "10", "100", "1000"})
+    public int width;
+
+    private CompositeDao<CompositeKey> dao;
+
+    @Setup
+    public void setUp() throws ConnectionException {
+        EmbeddedCassandra.start();
+        dao = new CompositeDao<CompositeKey>(EmbeddedCassandra.HOST + ":" + EmbeddedCassandra.PORT, EmbeddedCassandra.KEYSPACE,
+                CompositeKey.class);
+        for (int row = 0; row < ROWS; row++) {
+            for (int track = 0; track < width; track++) {
+                dao.writeComposite(COLUMN_FAMILY, row(row), key(row, track), VALUE);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        dao.cleanup();
+    }
+
+    @Benchmark
+    public void writeComposite() throws ConnectionException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int row = random.nextInt(ROWS);
+        dao.writeComposite(COLUMN_FAMILY, row(row), key(row, random.nextInt(width)), VALUE);
+    }
+
+    @Benchmark
+    public ColumnList<CompositeKey> readComposite() throws ConnectionException {
+        return dao.readComposite(COLUMN_FAMILY, row(ThreadLocalRandom.current().nextInt(ROWS)));
+    }
+
+    private String row(final int i) {
+        return "file-" + width + "-" + i;
+    }
+
+    private static CompositeKey key(final int row, final int track) {
+        CompositeKey key = new CompositeKey();
+        key.fileId = row;
+        key.trackId = track;
+        key.field = "Name";
+        return key;
+    }
+
+}
@@ -0,0 +1,107 @@
+package cassandra.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cassandra.AstyanaxCountingDao;
+import cassandra.CountingDao;
+import cassandra.HectorCountingDao;
+
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.serializers.StringSerializer;
+
+/**
+ * Increments and reads of {@link HectorCountingDao} and {@link AstyanaxCountingDao}, the width is the number of
+ * credentials per user.
+ * @author Gyozo_Nyari
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class CountingDaoBenchmark {
+
+    private static final String COLUMN_FAMILY = "auth_failures";
+    private static final int USERS = 1000;
+
+    @Param({Clients.HECTOR, Clients.ASTYANAX})
+    public String client;
+
+    @Param({"1", "10", "100"})
+    public int width;
+
+    private Clients clients;
+    private CountingDao dao;
+
+    @Setup
+    public void setUp() throws Exception {
+        EmbeddedCassandra.start();
+        clients = new Clients();
+        if (Clients.HECTOR.equals(client)) {
+            HectorCountingDao hectorDao = new HectorCountingDao();
+            hectorDao.setKeyspace(clients.hector());
+            hectorDao.setColumnFamilyName(COLUMN_FAMILY);
+            hectorDao.initialize();
+            dao = hectorDao;
+        } else {
+            dao = new AstyanaxCountingDao(clients.astyanax(),
+                    new ColumnFamily<String, String>(COLUMN_FAMILY, StringSerializer.get(), StringSerializer.get()));
+        }
+        for (int user = 0; user < USERS; user++) {
+            for (int credential = 0; credential < width; credential++) {
+                dao.setNumberOfAuthenticationFailures(user(user), credential(credential), 0);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (dao instanceof AutoCloseable) {
+            ((AutoCloseable) dao).close();
+        }
+        clients.close();
+    }
+
+    @Benchmark
+    public void increment() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        dao.incrementNumberOfAuthenticationFailures(user(random.nextInt(USERS)), credential(random.nextInt(width)));
+    }
+
+    @Benchmark
+    public int getNumberOfAuthenticationFailures() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return dao.getNumberOfAuthenticationFailures(user(random.nextInt(USERS)), credential(random.nextInt(width)));
+    }
+
+    @Benchmark
+    public Map<String, Integer> getAllAuthenticationFailures() {
+        return dao.getNumberOfAuthenticationFailures(user(ThreadLocalRandom.current().nextInt(USERS)));
+    }
+
+    private String user(final int i) {
+        return "user-" + width + "-" + i;
+    }
+
+    private static String credential(final int i) {
+        return "credential" + i;
+    }
+
+}
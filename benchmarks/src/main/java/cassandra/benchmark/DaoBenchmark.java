@@ -0,0 +1,112 @@
+package cassandra.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cassandra.AstyanaxDao;
+import cassandra.Dao;
+import cassandra.HectorDao;
+
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.serializers.StringSerializer;
+
+/**
+ * {@link Dao#getValues(String)} and {@link Dao#store(String, Map)} of {@link HectorDao} and {@link AstyanaxDao} at
+ * several row widths.
+ * @author Gyozo_Nyari
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class DaoBenchmark {
+
+    private static final String COLUMN_FAMILY = "cassandra_test";
+    private static final int ROWS = 1000;
+    private static final int VALUE_LENGTH = 64;
+
+    @Param({Clients.HECTOR, Clients.ASTYANAX})
+    public String client;
+
+    @Param({"1", "10", "100", "1000"})
+    public int width;
+
+    private Clients clients;
+    private Dao dao;
+    private Map<String, String> columns;
+
+    @Setup
+    public void setUp() {
+        EmbeddedCassandra.start();
+        clients = new Clients();
+        if (Clients.HECTOR.equals(client)) {
+            dao = new HectorDao(clients.hector(), COLUMN_FAMILY);
+        } else {
+            dao = new AstyanaxDao(clients.astyanax(),
+                    new ColumnFamily<String, String>(COLUMN_FAMILY, StringSerializer.get(), StringSerializer.get()));
+        }
+        columns = columns(width);
+        for (int i = 0; i < ROWS; i++) {
+            dao.store(row(i), columns);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (dao instanceof AutoCloseable) {
+            ((AutoCloseable) dao).close();
+        }
+        clients.close();
+    }
+
+    @Benchmark
+    public Map<String, String> getValues() {
+        return dao.getValues(randomRow());
+    }
+
+    @Benchmark
+    public void store() {
+        dao.store(randomRow(), columns);
+    }
+
+    private String randomRow() {
+        return row(ThreadLocalRandom.current().nextInt(ROWS));
+    }
+
+    private String row(final int i) {
+        // rows of every width are kept apart, the column family is shared by the parameter combinations
+        return "row-" + width + "-" + i;
+    }
+
+    static Map<String, String> columns(final int width) {
+        StringBuilder value = new StringBuilder(VALUE_LENGTH);
+        while (value.length() < VALUE_LENGTH) {
+            value.append("benchmark value ");
+        }
+        value.setLength(VALUE_LENGTH);
+        Map<String, String> columns = new HashMap<String, String>();
+        for (int i = 0; i < width; i++) {
+            columns.put(String.format("column%05d", i), value.toString());
+        }
+        return columns;
+    }
+
+}
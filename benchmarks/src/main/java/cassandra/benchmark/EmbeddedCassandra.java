@@ -0,0 +1,60 @@
+package cassandra.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.cassandra.cql3.QueryProcessor;
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.service.EmbeddedCassandraService;
+
+/**
+ * Single Cassandra node running inside the benchmark JVM, configured by cassandra-benchmark.yaml. It listens for
+ * Thrift on {@value #PORT}, the schema of the tutorial column families is created on start.
+ * @author Gyozo_Nyari
+ *
+ */
+public final class EmbeddedCassandra {
+
+    public static final String HOST = "127.0.0.1";
+    public static final int PORT = 19160;
+    public static final String KEYSPACE = "hr";
+    private static final String STORAGE_DIRECTORY = "target/embedded-cassandra";
+
+    private static final String[] SCHEMA = {
+        "CREATE KEYSPACE IF NOT EXISTS hr WITH replication = {'class': 'SimpleStrategy', 'replication_factor': 1}",
+        "CREATE TABLE IF NOT EXISTS hr.cassandra_test (key text, column1 text, value text, PRIMARY KEY (key, column1)) WITH COMPACT STORAGE",
+        "CREATE TABLE IF NOT EXISTS hr.auth_failures (key text, column1 text, value blob, PRIMARY KEY (key, column1)) WITH COMPACT STORAGE",
+        "CREATE TABLE IF NOT EXISTS hr.\"Files\" (key text, column1 bigint, column2 bigint, column3 text, value blob,"
+                + " PRIMARY KEY (key, column1, column2, column3)) WITH COMPACT STORAGE"
+    };
+
+    private static boolean started;
+
+    private EmbeddedCassandra() {
+    }
+
+    /**
+     * Starts the node and creates the schema, only the first call does anything: a node can't be restarted in the
+     * same JVM.
+     */
+    public static synchronized void start() {
+        if (started) {
+            return;
+        }
+        System.setProperty("cassandra.config", "cassandra-benchmark.yaml");
+        // Cassandra can't handle relative data directories
+        System.setProperty("cassandra.storagedir", new File(STORAGE_DIRECTORY).getAbsolutePath());
+        System.setProperty("cassandra-foreground", "true");
+        System.setProperty("cassandra.native.epoll.enabled", "false");
+        try {
+            new EmbeddedCassandraService().start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Starting embedded Cassandra failed!", e);
+        }
+        for (String statement : SCHEMA) {
+            QueryProcessor.process(statement, ConsistencyLevel.ONE);
+        }
+        started = true;
+    }
+
+}
@@ -0,0 +1,217 @@
+package cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.util.Assert;
+
+import com.netflix.astyanax.AstyanaxContext;
+import com.netflix.astyanax.ColumnListMutation;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.query.RowQuery;
+import com.netflix.astyanax.serializers.ByteBufferSerializer;
+import com.netflix.astyanax.util.RangeBuilder;
+
+/**
+ * {@link BinaryDao} implementation with astyanax. The column family is read and written with the pass-through
+ * ByteBufferSerializer, the buffers of the Thrift columns are handed over as they are.
+ * @author Gyozo_Nyari
+ *
+ */
+public class AstyanaxBinaryDao implements BinaryDao {
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    /** Stays well under the default 15 MB Thrift frame. */
+    private static final long DEFAULT_MAX_BATCH_BYTES = 8 * 1024 * 1024;
+    private static final int DEFAULT_COLUMN_PAGE_SIZE = 1000;
+
+    private final Keyspace keyspace;
+    private final ColumnFamily<ByteBuffer, ByteBuffer> columnFamily;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private int columnPageSize = DEFAULT_COLUMN_PAGE_SIZE;
+
+    /**
+     * Constructor.
+     * @param astyanaxContext context
+     * @param columnFamilyName name of the column family
+     */
+    public AstyanaxBinaryDao(final AstyanaxContext<Keyspace> astyanaxContext, final String columnFamilyName) {
+        super();
+        this.keyspace = astyanaxContext.getEntity();
+        this.columnFamily = new ColumnFamily<ByteBuffer, ByteBuffer>(columnFamilyName, ByteBufferSerializer.get(), ByteBufferSerializer.get());
+    }
+
+    /**
+     * Reads the row in pages of {@link #setColumnPageSize(int) column page size}.
+     */
+    @Override
+    public Map<ByteBuffer, ByteBuffer> getValues(final ByteBuffer row) {
+        Assert.notNull(row, "Row cant be null!");
+        Map<ByteBuffer, ByteBuffer> columns = new HashMap<ByteBuffer, ByteBuffer>();
+        RowQuery<ByteBuffer, ByteBuffer> query = keyspace.prepareQuery(columnFamily).getKey(row)
+                .withColumnRange(new RangeBuilder().setLimit(columnPageSize).build()).autoPaginate(true);
+        try {
+            ColumnList<ByteBuffer> page;
+            while (!(page = query.execute().getResult()).isEmpty()) {
+                putAll(page, columns);
+            }
+        } catch (ConnectionException e) {
+            throw new CassandraException("getValues failed!", e);
+        }
+        return columns;
+    }
+
+    /**
+     * Reads the rows with one multiget per {@link #setBatchSize(int) batch size} rows.
+     */
+    @Override
+    public Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> getValues(final Collection<ByteBuffer> rows) {
+        Assert.notNull(rows, "Rows cant be null!");
+        Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> values = new HashMap<ByteBuffer, Map<ByteBuffer, ByteBuffer>>();
+        List<ByteBuffer> failedRows = new ArrayList<ByteBuffer>();
+        ConnectionException failure = null;
+        for (List<ByteBuffer> chunk : Chunks.split(rows, batchSize)) {
+            try {
+                for (Row<ByteBuffer, ByteBuffer> row : keyspace.prepareQuery(columnFamily).getKeySlice(chunk).execute().getResult()) {
+                    if (!row.getColumns().isEmpty()) {
+                        Map<ByteBuffer, ByteBuffer> columns = new HashMap<ByteBuffer, ByteBuffer>();
+                        putAll(row.getColumns(), columns);
+                        values.put(row.getKey(), columns);
+                    }
+                }
+            } catch (ConnectionException e) {
+                failedRows.addAll(chunk);
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw new PartialResultException("getValues failed for " + failedRows.size() + " of " + rows.size() + " rows!", values,
+                    failedRows, failure);
+        }
+        return values;
+    }
+
+    /**
+     * A row larger than {@link #setMaxBatchBytes(long) max batch bytes} is stored by {@link #storeAll(Map)}, in parts.
+     */
+    @Override
+    public void store(final ByteBuffer row, final Map<ByteBuffer, ByteBuffer> columns) {
+        Assert.notNull(row, "Row cant be null!");
+        Assert.notNull(columns, "Columns cant be null!");
+        if (Chunks.estimateBinarySize(row, columns) > maxBatchBytes) {
+            storeAll(Collections.singletonMap(row, columns));
+            return;
+        }
+        MutationBatch mutation = keyspace.prepareMutationBatch();
+        addColumns(mutation, row, columns);
+        execute(mutation, "store");
+    }
+
+    /**
+     * Stores the rows with one mutation batch per {@link #setMaxBatchBytes(long) max batch bytes}, wide rows are split
+     * by their columns. A failed batch doesn't stop the others, the failure tells how many rows were not fully stored.
+     */
+    @Override
+    public void storeAll(final Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> rows) {
+        Assert.notNull(rows, "Rows cant be null!");
+        Set<ByteBuffer> failedRows = new HashSet<ByteBuffer>();
+        CassandraException failure = null;
+        for (Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> chunk : Chunks.splitBySize(rows, maxBatchBytes,
+                Chunks::estimateBinarySize, Chunks::estimateBinarySize)) {
+            MutationBatch mutation = keyspace.prepareMutationBatch();
+            for (Map.Entry<ByteBuffer, Map<ByteBuffer, ByteBuffer>> row : chunk.entrySet()) {
+                addColumns(mutation, row.getKey(), row.getValue());
+            }
+            try {
+                execute(mutation, "storeAll");
+            } catch (CassandraException e) {
+                failedRows.addAll(chunk.keySet());
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw new CassandraException("storeAll failed for " + failedRows.size() + " of " + rows.size() + " rows!", failure);
+        }
+    }
+
+    @Override
+    public void remove(final ByteBuffer row) {
+        Assert.notNull(row, "Row cant be null!");
+        MutationBatch mutation = keyspace.prepareMutationBatch();
+        mutation.withRow(columnFamily, row).delete();
+        execute(mutation, "remove");
+    }
+
+    @Override
+    public void removeAll(final Collection<ByteBuffer> rows) {
+        Assert.notNull(rows, "Rows cant be null!");
+        for (List<ByteBuffer> chunk : Chunks.splitBySize(rows, maxBatchBytes, row -> Chunks.estimateBinarySize(row))) {
+            MutationBatch mutation = keyspace.prepareMutationBatch();
+            for (ByteBuffer row : chunk) {
+                mutation.withRow(columnFamily, row).delete();
+            }
+            execute(mutation, "removeAll");
+        }
+    }
+
+    /**
+     * Sets the number of rows read by one multiget.
+     * @param batchSize number of rows
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the estimated size limit of one mutation batch, it must stay under the Thrift frame size of the server.
+     * @param maxBatchBytes size in bytes
+     */
+    public void setMaxBatchBytes(long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * Sets the number of columns read at once, wider rows are read in more requests.
+     * @param columnPageSize number of columns
+     */
+    public void setColumnPageSize(int columnPageSize) {
+        Assert.isTrue(columnPageSize > 0, "Column page size must be positive!");
+        this.columnPageSize = columnPageSize;
+    }
+
+    private void addColumns(final MutationBatch mutation, final ByteBuffer row, final Map<ByteBuffer, ByteBuffer> columns) {
+        ColumnListMutation<ByteBuffer> columnList = mutation.withRow(columnFamily, row);
+        for (Map.Entry<ByteBuffer, ByteBuffer> column : columns.entrySet()) {
+            columnList.putColumn(column.getKey(), column.getValue(), null);
+        }
+    }
+
+    private void putAll(final ColumnList<ByteBuffer> columnList, final Map<ByteBuffer, ByteBuffer> columns) {
+        for (Column<ByteBuffer> column : columnList) {
+            columns.put(column.getName(), column.getByteBufferValue());
+        }
+    }
+
+    private void execute(final MutationBatch mutation, final String operation) {
+        try {
+            mutation.execute();
+        } catch (ConnectionException e) {
+            throw new CassandraException(operation + " failed!", e);
+        }
+    }
+
+}
@@ -8,17 +8,29 @@ import com.netflix.astyanax.connectionpool.ConnectionPoolMonitor;
 import com.netflix.astyanax.connectionpool.NodeDiscoveryType;
 import com.netflix.astyanax.connectionpool.impl.BadHostDetectorImpl;
 import com.netflix.astyanax.connectionpool.impl.ConnectionPoolConfigurationImpl;
+import com.netflix.astyanax.connectionpool.impl.ConnectionPoolType;
 import com.netflix.astyanax.connectionpool.impl.Slf4jConnectionPoolMonitorImpl;
+import com.netflix.astyanax.connectionpool.impl.SmaLatencyScoreStrategyImpl;
 import com.netflix.astyanax.impl.AstyanaxConfigurationImpl;
+import com.netflix.astyanax.retry.RetryNTimes;
+import com.netflix.astyanax.retry.RunOnce;
 import com.netflix.astyanax.thrift.ThriftFamilyFactory;
 
 /**
+ * Creates and starts Astyanax contexts.
+ *
+ * By default the ring is discovered from the seeds and requests are routed token aware, straight to a replica of the
+ * row. With latency awareness on, hosts scoring worse than the best one by more than the badness threshold are
+ * avoided. Failed requests are not retried nor failed over to other hosts unless driver retries are set.
+ * {@link #fromConfiguration(Configuration)} takes all settings from a {@link Configuration}.
  * @author Gyozo_Nyari
  *
  */
 public class AstyanaxContextFactory {
 
     private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+    private static final int DEFAULT_MAX_BLOCKED_THREADS_PER_HOST = 20;
+    private static final int DEFAULT_TIMEOUT = 2000;
     private AstyanaxConfiguration astyanaxConfiguration;
     private ConnectionPoolConfiguration connectionPoolConfiguration;
     private ConnectionPoolMonitor connectionPoolMonitor;
@@ -28,30 +40,87 @@ public class AstyanaxContextFactory {
     private String keyspace;
     private int port;
     private int socketTimeout;
+    private int connectTimeout = DEFAULT_TIMEOUT;
+    private int initConnsPerHost;
     private int maxConnsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private int maxBlockedThreadsPerHost = DEFAULT_MAX_BLOCKED_THREADS_PER_HOST;
+    private int maxTimeoutWhenExhausted = DEFAULT_TIMEOUT;
     private String connectionPoolName;
+    private NodeDiscoveryType discoveryType = NodeDiscoveryType.RING_DESCRIBE;
+    private ConnectionPoolType connectionPoolType = ConnectionPoolType.TOKEN_AWARE;
+    private int discoveryDelaySeconds = 30;
+    private boolean latencyAware = true;
+    private int latencyUpdateIntervalMillis = 2000;
+    private int latencyResetIntervalMillis = 30000;
+    private int latencyWindowSize = 100;
+    private double latencyBadnessThreshold = 0.5;
+    private int driverRetries;
+
+    /**
+     * Returns a factory set up from the configuration.
+     * @param configuration configuration
+     * @return factory
+     */
+    public static AstyanaxContextFactory fromConfiguration(final Configuration configuration) {
+        AstyanaxContextFactory factory = new AstyanaxContextFactory();
+        factory.setHostNames(configuration.getHostname());
+        factory.setClusterName(configuration.getClusterName());
+        factory.setKeyspace(configuration.getKeyspace());
+        factory.setPort(configuration.getPort());
+        factory.setSocketTimeout(configuration.getSocketTimeout());
+        factory.setConnectTimeout(configuration.getConnectTimeout());
+        factory.setInitConnsPerHost(configuration.getInitConnsPerHost());
+        factory.setMaxConnsPerHost(configuration.getMaxConnsPerHost());
+        factory.setMaxBlockedThreadsPerHost(configuration.getMaxBlockedThreadsPerHost());
+        factory.setMaxTimeoutWhenExhausted(configuration.getMaxTimeoutWhenExhausted());
+        factory.setConnectionPoolName(configuration.getConnectionPoolName());
+        factory.setDiscoveryType(NodeDiscoveryType.valueOf(configuration.getDiscoveryType()));
+        factory.setConnectionPoolType(ConnectionPoolType.valueOf(configuration.getConnectionPoolType()));
+        factory.setDiscoveryDelaySeconds(configuration.getDiscoveryDelaySeconds());
+        factory.setLatencyAware(configuration.isLatencyAware());
+        factory.setLatencyUpdateIntervalMillis(configuration.getLatencyUpdateIntervalMillis());
+        factory.setLatencyResetIntervalMillis(configuration.getLatencyResetIntervalMillis());
+        factory.setLatencyWindowSize(configuration.getLatencyWindowSize());
+        factory.setLatencyBadnessThreshold(configuration.getLatencyBadnessThreshold());
+        factory.setDriverRetries(configuration.getDriverRetries());
+        return factory;
+    }
 
+    /**
+     * Creates and starts a context. Configurations set explicitly are used as they are, the others are built from
+     * the settings of the factory.
+     * @return started context
+     */
     public AstyanaxContext<Keyspace> create() {
-        astyanaxConfiguration = getDefaultConfiguration();
-        connectionPoolConfiguration = getDefaultConnectionPoolConfiguration(hostNames, port);
-        connectionPoolMonitor = getDefaultConnectionPoolMonitor();
+        AstyanaxConfiguration configuration = astyanaxConfiguration != null ? astyanaxConfiguration : getDefaultConfiguration();
+        ConnectionPoolConfiguration poolConfiguration = connectionPoolConfiguration != null ? connectionPoolConfiguration
+                : getDefaultConnectionPoolConfiguration(hostNames, port);
+        ConnectionPoolMonitor monitor = connectionPoolMonitor != null ? connectionPoolMonitor : getDefaultConnectionPoolMonitor();
 
         AstyanaxContext<Keyspace> context = new AstyanaxContext.Builder().forCluster(clusterName).forKeyspace(keyspace)
-                .withAstyanaxConfiguration(astyanaxConfiguration).withConnectionPoolConfiguration(connectionPoolConfiguration)
-                .withConnectionPoolMonitor(connectionPoolMonitor).buildKeyspace(ThriftFamilyFactory.getInstance());
+                .withAstyanaxConfiguration(configuration).withConnectionPoolConfiguration(poolConfiguration)
+                .withConnectionPoolMonitor(monitor).buildKeyspace(ThriftFamilyFactory.getInstance());
 
         context.start();
         return context;
     }
 
     private AstyanaxConfiguration getDefaultConfiguration() {
-        return new AstyanaxConfigurationImpl().setDiscoveryType(NodeDiscoveryType.NONE);
+        return new AstyanaxConfigurationImpl().setDiscoveryType(discoveryType).setConnectionPoolType(connectionPoolType)
+                .setDiscoveryDelayInSeconds(discoveryDelaySeconds)
+                .setRetryPolicy(driverRetries > 0 ? new RetryNTimes(driverRetries) : RunOnce.get());
     }
 
-    private ConnectionPoolConfiguration getDefaultConnectionPoolConfiguration(String host, int port) {
+    private ConnectionPoolConfiguration getDefaultConnectionPoolConfiguration(String hosts, int port) {
         ConnectionPoolConfigurationImpl connectionPoolConfiguration = new ConnectionPoolConfigurationImpl(connectionPoolName).setSocketTimeout(socketTimeout).setPort(port)
-                .setMaxConnsPerHost(maxConnsPerHost).setSeeds(host + ":" + port).setMaxBlockedThreadsPerHost(20);
+                .setConnectTimeout(connectTimeout).setInitConnsPerHost(initConnsPerHost).setMaxConnsPerHost(maxConnsPerHost)
+                .setSeeds(getSeeds(hosts, port)).setMaxBlockedThreadsPerHost(maxBlockedThreadsPerHost)
+                .setMaxTimeoutWhenExhausted(maxTimeoutWhenExhausted).setMaxFailoverCount(driverRetries);
         connectionPoolConfiguration.setBadHostDetector(new BadHostDetectorImpl(connectionPoolConfiguration));
+        if (latencyAware) {
+            connectionPoolConfiguration.setLatencyScoreStrategy(new SmaLatencyScoreStrategyImpl(latencyUpdateIntervalMillis,
+                    latencyResetIntervalMillis, latencyWindowSize, latencyBadnessThreshold));
+        }
         return connectionPoolConfiguration;
     }
 
@@ -59,6 +128,24 @@ public class AstyanaxContextFactory {
         return new Slf4jConnectionPoolMonitorImpl();
     }
 
+    /**
+     * Adds the port to the comma separated hosts which don't have their own.
+     */
+    static String getSeeds(String hosts, int port) {
+        StringBuilder seeds = new StringBuilder();
+        for (String host : hosts.split(",")) {
+            String seed = host.trim();
+            if (seed.isEmpty()) {
+                continue;
+            }
+            if (seeds.length() > 0) {
+                seeds.append(',');
+            }
+            seeds.append(seed.indexOf(':') < 0 ? seed + ":" + port : seed);
+        }
+        return seeds.toString();
+    }
+
     public void setAstyanaxConfiguration(AstyanaxConfiguration astyanaxConfiguration) {
         this.astyanaxConfiguration = astyanaxConfiguration;
     }
@@ -71,6 +158,10 @@ public class AstyanaxContextFactory {
         this.connectionPoolMonitor = connectionPoolMonitor;
     }
 
+    /**
+     * Sets the seeds.
+     * @param hostNames comma separated host names, with optional port: host1,host2:9161
+     */
     public void setHostNames(String hostNames) {
         this.hostNames = hostNames;
     }
@@ -91,12 +182,108 @@ public class AstyanaxContextFactory {
         this.socketTimeout = socketTimeout;
     }
 
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public void setInitConnsPerHost(int initConnsPerHost) {
+        this.initConnsPerHost = initConnsPerHost;
+    }
+
     public void setMaxConnsPerHost(int maxConnsPerHost) {
         this.maxConnsPerHost = maxConnsPerHost;
     }
 
+    /**
+     * Sets the number of threads which may wait for a connection of a host, further ones fail at once.
+     * @param maxBlockedThreadsPerHost number of threads
+     */
+    public void setMaxBlockedThreadsPerHost(int maxBlockedThreadsPerHost) {
+        this.maxBlockedThreadsPerHost = maxBlockedThreadsPerHost;
+    }
+
+    /**
+     * Sets how long a thread waits for a connection of an exhausted pool.
+     * @param maxTimeoutWhenExhausted milliseconds
+     */
+    public void setMaxTimeoutWhenExhausted(int maxTimeoutWhenExhausted) {
+        this.maxTimeoutWhenExhausted = maxTimeoutWhenExhausted;
+    }
+
     public void setConnectionPoolName(String connectionPoolName) {
         this.connectionPoolName = connectionPoolName;
     }
 
+    /**
+     * Sets how the hosts are found: NONE uses the seeds only, RING_DESCRIBE asks the seeds for the ring.
+     * @param discoveryType discovery type
+     */
+    public void setDiscoveryType(NodeDiscoveryType discoveryType) {
+        this.discoveryType = discoveryType;
+    }
+
+    /**
+     * Sets how hosts are picked: TOKEN_AWARE sends a request to a replica of its row, ROUND_ROBIN and BAG to any host.
+     * @param connectionPoolType connection pool type
+     */
+    public void setConnectionPoolType(ConnectionPoolType connectionPoolType) {
+        this.connectionPoolType = connectionPoolType;
+    }
+
+    /**
+     * Sets how often the ring is discovered again.
+     * @param discoveryDelaySeconds seconds
+     */
+    public void setDiscoveryDelaySeconds(int discoveryDelaySeconds) {
+        this.discoveryDelaySeconds = discoveryDelaySeconds;
+    }
+
+    /**
+     * Switches the latency scoring of the hosts on or off.
+     * @param latencyAware true to avoid slow hosts
+     */
+    public void setLatencyAware(boolean latencyAware) {
+        this.latencyAware = latencyAware;
+    }
+
+    /**
+     * Sets how often the host scores are recalculated.
+     * @param latencyUpdateIntervalMillis milliseconds
+     */
+    public void setLatencyUpdateIntervalMillis(int latencyUpdateIntervalMillis) {
+        this.latencyUpdateIntervalMillis = latencyUpdateIntervalMillis;
+    }
+
+    /**
+     * Sets how often the host scores are reset, so a host avoided once gets traffic again.
+     * @param latencyResetIntervalMillis milliseconds
+     */
+    public void setLatencyResetIntervalMillis(int latencyResetIntervalMillis) {
+        this.latencyResetIntervalMillis = latencyResetIntervalMillis;
+    }
+
+    /**
+     * Sets the number of latest requests the score of a host is averaged from.
+     * @param latencyWindowSize number of requests
+     */
+    public void setLatencyWindowSize(int latencyWindowSize) {
+        this.latencyWindowSize = latencyWindowSize;
+    }
+
+    /**
+     * Sets how much worse than the best host a host may score before it is avoided.
+     * @param latencyBadnessThreshold ratio, 0.5 means 50% slower
+     */
+    public void setLatencyBadnessThreshold(double latencyBadnessThreshold) {
+        this.latencyBadnessThreshold = latencyBadnessThreshold;
+    }
+
+    /**
+     * Sets how many times a failed request is retried and failed over to another host by the driver.
+     * @param driverRetries number of retries, 0 to fail at once
+     */
+    public void setDriverRetries(int driverRetries) {
+        this.driverRetries = driverRetries;
+    }
+
 }
@@ -0,0 +1,315 @@
+package cassandra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cassandra.lock.StripedLock;
+
+import com.google.common.base.Function;
+
+import com.netflix.astyanax.AstyanaxContext;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.model.Rows;
+import com.netflix.astyanax.recipes.reader.AllRowsReader;
+
+/**
+ * {@link CountingDao} backed by counter columns, an increment is a single blind write.
+ *
+ * Counters can't expire, so instead of a TTL the counters live in time-bucketed rows (userId:bucket). A count is the
+ * sum of the current and the previous bucket, see {@link CounterBuckets}; older rows are deleted by
+ * {@link #purgeExpiredRows()}, which should be run about once a bucket.
+ *
+ * Increments take no lock. {@link #setNumberOfAuthenticationFailures(String, String, int)} holds the exclusive lock of
+ * the user's stripe, so two sets through this dao don't apply their corrections on top of each other.
+ *
+ * CLI: create column family auth_failure_counters WITH key_validation_class = 'UTF8Type' and comparator = 'UTF8Type' and default_validation_class = 'CounterColumnType' AND gc_grace = 86400;
+ *
+ * @author Gyozo_Nyari
+ *
+ */
+public class AstyanaxCounterCountingDao implements CountingDao {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AstyanaxCounterCountingDao.class);
+
+    private final Keyspace keyspace;
+    private final ColumnFamily<String, String> columnFamily;
+    private final StripedLock keyLock;
+    private CounterBuckets buckets = new CounterBuckets(3600);
+    private int batchSize = 100;
+
+    public AstyanaxCounterCountingDao(final AstyanaxContext<Keyspace> astyanaxContext, final ColumnFamily<String, String> columnFamily) {
+        this(astyanaxContext, columnFamily, new StripedLock());
+    }
+
+    /**
+     * Constructor.
+     * @param astyanaxContext context
+     * @param columnFamily column family
+     * @param keyLock locks serializing the sets of a user's counters
+     */
+    public AstyanaxCounterCountingDao(final AstyanaxContext<Keyspace> astyanaxContext, final ColumnFamily<String, String> columnFamily,
+            final StripedLock keyLock) {
+        super();
+        this.keyspace = astyanaxContext.getEntity();
+        this.columnFamily = columnFamily;
+        this.keyLock = keyLock;
+    }
+
+    @Override
+    public int getNumberOfAuthenticationFailures(final String userId, final String credential) {
+        long bucket = buckets.currentBucket();
+        try {
+            Rows<String, String> rows = keyspace.prepareQuery(columnFamily)
+                    .getKeySlice(buckets.currentRowKey(userId, bucket), buckets.previousRowKey(userId, bucket))
+                    .withColumnSlice(credential).execute().getResult();
+            int attempts = 0;
+            for (Row<String, String> row : rows) {
+                Column<String> column = row.getColumns().getColumnByName(credential);
+                if (column != null) {
+                    attempts += (int) column.getLongValue();
+                }
+            }
+            return attempts;
+        } catch (ConnectionException e) {
+            throw new CassandraException("getNumberOfAuthenticationFailures", e);
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId) {
+        return getAuthenticationFailureCounts(userId).toMap();
+    }
+
+    @Override
+    public CredentialCounts getAuthenticationFailureCounts(final String userId) {
+        long bucket = buckets.currentBucket();
+        try {
+            Rows<String, String> rows = keyspace.prepareQuery(columnFamily)
+                    .getKeySlice(buckets.currentRowKey(userId, bucket), buckets.previousRowKey(userId, bucket)).execute().getResult();
+            CredentialCounts authFailures = new CredentialCounts();
+            for (Row<String, String> row : rows) {
+                for (Column<String> column : row.getColumns()) {
+                    authFailures.add(column.getName(), (int) column.getLongValue());
+                }
+            }
+            return authFailures;
+        } catch (ConnectionException e) {
+            throw new CassandraException("getNumberOfAuthenticationFailures", e);
+        }
+    }
+
+    /**
+     * Reads the users in chunks of {@link #setBatchSize(int) batch size}, the chunks are queried in parallel.
+     */
+    @Override
+    public Map<String, Map<String, Integer>> getNumberOfAuthenticationFailures(final Collection<String> userIds) {
+        long bucket = buckets.currentBucket();
+        Map<String, String> userIdsByKey = new HashMap<String, String>();
+        for (String userId : userIds) {
+            userIdsByKey.put(buckets.currentRowKey(userId, bucket), userId);
+            userIdsByKey.put(buckets.previousRowKey(userId, bucket), userId);
+        }
+        List<CompletableFuture<Rows<String, String>>> futures = new ArrayList<CompletableFuture<Rows<String, String>>>();
+        for (List<String> chunk : Chunks.split(userIdsByKey.keySet(), 2 * batchSize)) {
+            futures.add(AstyanaxFutures.execute(keyspace.prepareQuery(columnFamily).getKeySlice(chunk), "getNumberOfAuthenticationFailures"));
+        }
+        Map<String, Map<String, Integer>> authFailures = new HashMap<String, Map<String, Integer>>();
+        for (Rows<String, String> rows : Chunks.join(AsyncSupport.allOf(futures))) {
+            for (Row<String, String> row : rows) {
+                if (!row.getColumns().isEmpty()) {
+                    String userId = userIdsByKey.get(row.getKey());
+                    Map<String, Integer> counts = authFailures.get(userId);
+                    if (counts == null) {
+                        counts = new HashMap<String, Integer>();
+                        authFailures.put(userId, counts);
+                    }
+                    addAll(counts, row.getColumns());
+                }
+            }
+        }
+        return authFailures;
+    }
+
+    /**
+     * Counters can only be incremented, so this reads the counts of both buckets and adds the difference, holding the
+     * user's exclusive lock. Neither counter is left negative, see {@link CounterBuckets#setIncrements(long, long, int)}.
+     * Increments landing between the read and the write are kept.
+     */
+    @Override
+    public void setNumberOfAuthenticationFailures(final String userId, final String credential, final int value) {
+        long bucket = buckets.currentBucket();
+        String currentRowKey = buckets.currentRowKey(userId, bucket);
+        String previousRowKey = buckets.previousRowKey(userId, bucket);
+        Lock lock = keyLock.writeLock(userId);
+        try {
+            Rows<String, String> rows = keyspace.prepareQuery(columnFamily).getKeySlice(currentRowKey, previousRowKey)
+                    .withColumnSlice(credential).execute().getResult();
+            long[] increments = CounterBuckets.setIncrements(getCount(rows.getRow(previousRowKey), credential),
+                    getCount(rows.getRow(currentRowKey), credential), value);
+            if (increments[0] == 0 && increments[1] == 0) {
+                return;
+            }
+            MutationBatch mutation = keyspace.prepareMutationBatch();
+            if (increments[0] != 0) {
+                mutation.withRow(columnFamily, previousRowKey).incrementCounterColumn(credential, increments[0]);
+            }
+            if (increments[1] != 0) {
+                mutation.withRow(columnFamily, currentRowKey).incrementCounterColumn(credential, increments[1]);
+            }
+            mutation.execute();
+        } catch (ConnectionException e) {
+            throw new CassandraException("setNumberOfAuthenticationFailures", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final String userId, final String credential) {
+        try {
+            keyspace.prepareColumnMutation(columnFamily, buckets.currentRowKey(userId, buckets.currentBucket()), credential)
+                    .incrementCounterColumn(1).execute();
+        } catch (ConnectionException e) {
+            throw new CassandraException("incrementNumberOfAuthenticationFailures", e);
+        }
+    }
+
+    /**
+     * Counters are not returned by the increment, so this is an increment followed by a read. It is not atomic: the
+     * count read may include increments of other callers that landed in between.
+     */
+    @Override
+    public IncrementResult incrementAndCheck(final String userId, final String credential, final int threshold) {
+        incrementNumberOfAuthenticationFailures(userId, credential);
+        int value = getNumberOfAuthenticationFailures(userId, credential);
+        return new IncrementResult(value, value >= threshold);
+    }
+
+    /**
+     * Increments in chunks of {@link #setBatchSize(int) batch size}, each chunk is one mutation batch.
+     * The chunks are written in parallel, a failed chunk doesn't stop the others.
+     * @throws PartialIncrementException with the increments of the failed chunks
+     */
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final Map<CredentialKey, Integer> increments) {
+        long bucket = buckets.currentBucket();
+        List<Map<CredentialKey, Integer>> chunks = Chunks.split(increments, batchSize);
+        List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(chunks.size());
+        for (Map<CredentialKey, Integer> chunk : chunks) {
+            MutationBatch mutation = keyspace.prepareMutationBatch();
+            for (Map.Entry<CredentialKey, Integer> entry : chunk.entrySet()) {
+                CredentialKey key = entry.getKey();
+                mutation.withRow(columnFamily, buckets.currentRowKey(key.getUserId(), bucket)).incrementCounterColumn(key.getCredential(),
+                        entry.getValue());
+            }
+            futures.add(AstyanaxFutures.execute(mutation, "incrementNumberOfAuthenticationFailures"));
+        }
+        Chunks.joinIncrements(chunks, futures);
+    }
+
+    /**
+     * Deletes the rows of the buckets older than the previous one. Scans the whole column family, so run it
+     * periodically, about once a bucket, not on the request path.
+     * @return number of deleted rows
+     */
+    public int purgeExpiredRows() {
+        final long bucket = buckets.currentBucket();
+        final List<String> expired = new ArrayList<String>();
+        final int[] deleted = new int[1];
+        AllRowsReader<String, String> reader = new AllRowsReader.Builder<String, String>(keyspace, columnFamily)
+                .withPageSize(batchSize)
+                .withColumnRange(null, null, false, 1)
+                // one thread, the expired keys are collected without locking
+                .withConcurrencyLevel(1)
+                .forEachRow(new Function<Row<String, String>, Boolean>() {
+                    @Override
+                    public Boolean apply(Row<String, String> row) {
+                        // deleted rows show up without columns until they are compacted away
+                        if (!row.getColumns().isEmpty() && buckets.isExpired(row.getKey(), bucket)) {
+                            expired.add(row.getKey());
+                            if (expired.size() >= batchSize) {
+                                deleted[0] += deleteRows(expired);
+                            }
+                        }
+                        return true;
+                    }
+                }).build();
+        try {
+            reader.call();
+        } catch (Exception e) {
+            throw new CassandraException("purgeExpiredRows failed!", e);
+        }
+        deleted[0] += deleteRows(expired);
+        LOG.debug("Purged {} expired counter rows", deleted[0]);
+        return deleted[0];
+    }
+
+    private int deleteRows(final List<String> rowKeys) {
+        if (rowKeys.isEmpty()) {
+            return 0;
+        }
+        MutationBatch mutation = keyspace.prepareMutationBatch();
+        for (String rowKey : rowKeys) {
+            mutation.withRow(columnFamily, rowKey).delete();
+        }
+        try {
+            mutation.execute();
+        } catch (ConnectionException e) {
+            throw new CassandraException("purgeExpiredRows failed!", e);
+        }
+        int deleted = rowKeys.size();
+        rowKeys.clear();
+        return deleted;
+    }
+
+    private static void addAll(final Map<String, Integer> counts, final ColumnList<String> columns) {
+        for (Column<String> column : columns) {
+            Integer count = counts.get(column.getName());
+            int value = (int) column.getLongValue();
+            counts.put(column.getName(), count != null ? count + value : value);
+        }
+    }
+
+    private static long getCount(final Row<String, String> row, final String credential) {
+        if (row == null) {
+            return 0;
+        }
+        Column<String> column = row.getColumns().getColumnByName(credential);
+        return column != null ? column.getLongValue() : 0;
+    }
+
+    public StripedLock getKeyLock() {
+        return keyLock;
+    }
+
+    /**
+     * Sets the length of a bucket, a count covers the current and the previous one.
+     * @param bucketSeconds size of a bucket in seconds
+     */
+    public void setBucketSeconds(int bucketSeconds) {
+        this.buckets = new CounterBuckets(bucketSeconds);
+    }
+
+    /**
+     * Sets the number of users read or written by one request of the batch methods.
+     * @param batchSize number of users
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+}
@@ -1,61 +1,93 @@
 package cassandra;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
+import cassandra.lock.StripedLock;
+
 import com.netflix.astyanax.AstyanaxContext;
 import com.netflix.astyanax.Keyspace;
 import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.Host;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
 import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
 import com.netflix.astyanax.model.Column;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.model.Rows;
+import com.netflix.astyanax.query.ColumnFamilyQuery;
 import com.netflix.astyanax.serializers.StringSerializer;
 
 /**
+ * The batch increments and the asynchronous increments run on a bounded executor, shut down by {@link #close()}.
+ *
  * CLI: create column family auth_failures WITH key_validation_class = 'UTF8Type' and default_validation_class='UTF8Type' AND gc_grace = 86400;
  *
  * @author Gyozo_Nyari
  *
  */
-public class AstyanaxCountingDao implements CountingDao {
+public class AstyanaxCountingDao implements AsyncCountingDao, AutoCloseable {
 
     private static final Logger LOG = LoggerFactory.getLogger(AstyanaxCountingDao.class);
-    private final ConcurrentMap<String, ReentrantLock> lockMap = new ConcurrentHashMap<String, ReentrantLock>();
 
     private final Keyspace keyspace;
     private final ColumnFamily<String, String> columnFamily;
+    private final StripedLock keyLock;
     private int ttl = 3600;
+    private long asyncTimeoutMillis = 15000;
+    private int batchSize = 100;
+    private ExecutorService batchExecutor = AsyncSupport.newBoundedExecutor(4, 100, "astyanax-counting-batch");
+    private boolean ownsExecutor = true;
+    private ReplicaSelector replicaSelector;
 
 
     public AstyanaxCountingDao(final AstyanaxContext<Keyspace> astyanaxContext, final ColumnFamily<String, String> columnFamily) {
+        this(astyanaxContext, columnFamily, new StripedLock());
+    }
+
+    /**
+     * Constructor.
+     * @param astyanaxContext context
+     * @param columnFamily column family
+     * @param keyLock locks serializing the read-modify-write cycles of a user's row
+     */
+    public AstyanaxCountingDao(final AstyanaxContext<Keyspace> astyanaxContext, final ColumnFamily<String, String> columnFamily,
+            final StripedLock keyLock) {
         super();
         this.keyspace = astyanaxContext.getEntity();
         this.columnFamily = columnFamily;
+        this.keyLock = keyLock;
     }
 
     @Override
     public int getNumberOfAuthenticationFailures(final String userId, final String credential) {
         int attempts = 0;
+        Lock lock = keyLock.readLock(userId);
         try {
-            lock(userId);
-            Column<String> result = keyspace.prepareQuery(columnFamily).getKey(userId).getColumn(credential).execute().getResult();
+            Column<String> result = prepareQuery(userId).getKey(userId).getColumn(credential).execute().getResult();
             attempts = result.getIntegerValue();
         } catch (NotFoundException e) {
             LOG.debug("Column was not found!");             // thrift specific
         } catch (ConnectionException e) {
             throw new CassandraException("getNumberOfAuthenticationFailures", e);
         } finally {
-            unlock(userId);
+            lock.unlock();
         }
         return attempts;
     }
@@ -63,111 +95,292 @@ public class AstyanaxCountingDao implements CountingDao {
 
 
     @Override
-	public Map<String, Integer> getNumberOfAuthenticationFailures(String userId) {
-		Map<String, Integer> authFailures = new HashMap<>();
-		try {
-			lock(userId);
-            ColumnList<String> result = keyspace.prepareQuery(columnFamily).getKey(userId).execute().getResult();
-            for (Iterator<Column<String>> i = result.iterator(); i.hasNext();) {
-            	Column<String> column = i.next();
-            	authFailures.put(column.getName(), column.getIntegerValue());
+    public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId) {
+        return getAuthenticationFailureCounts(userId).toMap();
+    }
+
+    @Override
+    public CredentialCounts getAuthenticationFailureCounts(final String userId) {
+        Lock lock = keyLock.readLock(userId);
+        try {
+            ColumnList<String> result = prepareQuery(userId).getKey(userId).execute().getResult();
+            CredentialCounts authFailures = new CredentialCounts(result.size());
+            for (Column<String> column : result) {
+                authFailures.put(column.getName(), column.getIntegerValue());
+            }
+            return authFailures;
+        } catch (ConnectionException e) {
+            throw new CassandraException("getNumberOfAuthenticationFailures", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the users in chunks of {@link #setBatchSize(int) batch size}, the chunks are queried in parallel. The
+     * shared locks of the users' stripes are held until all chunks are read, like by the single user reads.
+     */
+    @Override
+    public Map<String, Map<String, Integer>> getNumberOfAuthenticationFailures(final Collection<String> userIds) {
+        List<Lock> locks = keyLock.readLocks(userIds);
+        try {
+            List<CompletableFuture<Rows<String, String>>> futures = new ArrayList<CompletableFuture<Rows<String, String>>>();
+            for (List<String> chunk : Chunks.split(userIds, batchSize)) {
+                futures.add(AstyanaxFutures.execute(keyspace.prepareQuery(columnFamily).getKeySlice(chunk), "getNumberOfAuthenticationFailures"));
+            }
+            Map<String, Map<String, Integer>> authFailures = new HashMap<String, Map<String, Integer>>();
+            for (Rows<String, String> rows : Chunks.join(AsyncSupport.allOf(futures))) {
+                for (Row<String, String> row : rows) {
+                    if (!row.getColumns().isEmpty()) {
+                        authFailures.put(row.getKey(), toMap(row.getColumns()));
+                    }
+                }
             }
-		} catch (ConnectionException e) {
-			throw new CassandraException("getNumberOfAuthenticationFailures", e);
-		} finally {
-			unlock(userId);
-		}
-		return authFailures;
-	}
+            return authFailures;
+        } finally {
+            StripedLock.unlockAll(locks);
+        }
+    }
 
 	@Override
     public void setNumberOfAuthenticationFailures(final String userId, final String credential, final int value) {
+        Lock lock = keyLock.writeLock(userId);
         try {
-            lock(userId);
             MutationBatch mutation = keyspace.prepareMutationBatch();
             mutation.withRow(columnFamily, userId).putColumn(credential, value, ttl);
             mutation.execute();
         } catch (ConnectionException e) {
             throw new CassandraException("setNumberOfAuthenticationFailures", e);
         } finally {
-            unlock(userId);
+            lock.unlock();
         }
     }
 
     @Override
     public void incrementNumberOfAuthenticationFailures(final String userId, final String credential) {
+        increment(userId, credential);
+    }
+
+    @Override
+    public IncrementResult incrementAndCheck(final String userId, final String credential, final int threshold) {
+        int value = increment(userId, credential);
+        return new IncrementResult(value, value >= threshold);
+    }
+
+    private int increment(final String userId, final String credential) {
         int value = 0;
+        Lock lock = keyLock.writeLock(userId);
         try {
-            lock(userId);
             ColumnList<String> result = keyspace.prepareQuery(columnFamily).getKey(userId).execute().getResult();
-            if (!result.isEmpty()) {
-                value = result.getColumnByName(credential).getIntegerValue();
+            Column<String> column = result.getColumnByName(credential);
+            if (column != null) {
+                value = column.getIntegerValue();
             }
             keyspace.prepareColumnMutation(columnFamily, userId, credential).putValue(++value, ttl).execute();
         } catch (ConnectionException e) {
             throw new CassandraException("incrementNumberOfAuthenticationFailures", e);
         } finally {
-            unlock(userId);
+            lock.unlock();
         }
+        return value;
     }
 
-    private void lock(final String key) {
-        ReentrantLock oldLock = lockMap.get(key);
-        if (oldLock != null && oldLock.isHeldByCurrentThread()) {
-            oldLock.lock();
+    /**
+     * Increments in chunks of {@link #setBatchSize(int) batch size}, each chunk is one read and one mutation batch.
+     * The chunks run in parallel, a failed chunk doesn't stop the others.
+     * @throws PartialIncrementException with the increments of the failed chunks
+     */
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final Map<CredentialKey, Integer> increments) {
+        if (increments.isEmpty()) {
             return;
         }
-        ReentrantLock newLock = new ReentrantLock();
-        newLock.lock();
-        while ((oldLock = lockMap.putIfAbsent(key, newLock)) != null) {
-            oldLock.lock();
-            oldLock.unlock();
+        List<Map<CredentialKey, Integer>> chunks = Chunks.split(increments, batchSize);
+        List<Supplier<Void>> tasks = new ArrayList<Supplier<Void>>(chunks.size());
+        for (final Map<CredentialKey, Integer> chunk : chunks) {
+            tasks.add(() -> {
+                incrementChunk(chunk);
+                return null;
+            });
         }
-        return;
+        Chunks.joinIncrements(chunks, Chunks.submitAll(tasks, batchExecutor));
     }
 
-    private void unlock(final String key) {
-        ReentrantLock lock = lockMap.get(key);
-        if (lock == null) {
-            throw new IllegalMonitorStateException();
+    private void incrementChunk(final Map<CredentialKey, Integer> increments) {
+        Set<String> userIds = new HashSet<String>();
+        for (CredentialKey key : increments.keySet()) {
+            userIds.add(key.getUserId());
         }
-        if (lock.getHoldCount() == 1) {
-            lockMap.remove(key);
+        List<Lock> locks = keyLock.writeLocks(userIds);
+        try {
+            Rows<String, String> rows = keyspace.prepareQuery(columnFamily).getKeySlice(userIds).execute().getResult();
+            MutationBatch mutation = keyspace.prepareMutationBatch();
+            for (Map.Entry<CredentialKey, Integer> entry : increments.entrySet()) {
+                CredentialKey key = entry.getKey();
+                int value = 0;
+                Row<String, String> row = rows.getRow(key.getUserId());
+                if (row != null) {
+                    Column<String> column = row.getColumns().getColumnByName(key.getCredential());
+                    if (column != null) {
+                        value = column.getIntegerValue();
+                    }
+                }
+                mutation.withRow(columnFamily, key.getUserId()).putColumn(key.getCredential(), value + entry.getValue(), ttl);
+            }
+            mutation.execute();
+        } catch (ConnectionException e) {
+            throw new CassandraException("incrementNumberOfAuthenticationFailures", e);
+        } finally {
+            StripedLock.unlockAll(locks);
+        }
+    }
+
+    private Map<String, Integer> toMap(final ColumnList<String> result) {
+        Map<String, Integer> authFailures = new HashMap<String, Integer>();
+        for (Iterator<Column<String>> i = result.iterator(); i.hasNext();) {
+            Column<String> column = i.next();
+            authFailures.put(column.getName(), column.getIntegerValue());
         }
-        lock.unlock();
+        return authFailures;
+    }
+
+    @Override
+    public CompletableFuture<Integer> getNumberOfAuthenticationFailuresAsync(final String userId, final String credential) {
+        return withTimeout(AstyanaxFutures.execute(keyspace.prepareQuery(columnFamily).getKey(userId).getColumn(credential),
+                "getNumberOfAuthenticationFailures").handle((column, error) -> {
+                    if (error == null) {
+                        return column.getIntegerValue();
+                    }
+                    if (AstyanaxFutures.isNotFound(error)) {
+                        return 0;
+                    }
+                    throw AsyncSupport.asCompletionException(error);
+                }));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Integer>> getNumberOfAuthenticationFailuresAsync(final String userId) {
+        return withTimeout(AstyanaxFutures.execute(keyspace.prepareQuery(columnFamily).getKey(userId), "getNumberOfAuthenticationFailures")
+                .thenApply(this::toMap));
+    }
+
+    /**
+     * Runs {@link #setNumberOfAuthenticationFailures(String, String, int)} on the batch executor: the write has to hold
+     * the user's write lock, so it doesn't land in the middle of an increment's read-modify-write cycle.
+     */
+    @Override
+    public CompletableFuture<Void> setNumberOfAuthenticationFailuresAsync(final String userId, final String credential, final int value) {
+        return withTimeout(AsyncSupport.supplyAsync(() -> {
+            setNumberOfAuthenticationFailures(userId, credential, value);
+            return null;
+        }, batchExecutor));
+    }
+
+    /**
+     * Runs {@link #incrementNumberOfAuthenticationFailures(String, String)} on the batch executor: the read-modify-write
+     * cycle has to hold the user's lock, which can't be passed between the threads completing the futures.
+     */
+    @Override
+    public CompletableFuture<Void> incrementNumberOfAuthenticationFailuresAsync(final String userId, final String credential) {
+        return withTimeout(AsyncSupport.supplyAsync(() -> {
+            incrementNumberOfAuthenticationFailures(userId, credential);
+            return null;
+        }, batchExecutor));
+    }
+
+    private ColumnFamilyQuery<String, String> prepareQuery(final String userId) {
+        ColumnFamilyQuery<String, String> query = keyspace.prepareQuery(columnFamily);
+        Host host = replicaSelector != null ? replicaSelector.select(userId) : null;
+        return host != null ? query.pinToHost(host) : query;
+    }
+
+    private <T> CompletableFuture<T> withTimeout(final CompletableFuture<T> future) {
+        return AsyncSupport.withTimeout(future, asyncTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public StripedLock getKeyLock() {
+        return keyLock;
+    }
+
+    public int getTtl() {
+        return ttl;
     }
 
     public void setTtl(int ttl) {
         this.ttl = ttl;
     }
 
+    /**
+     * Sets the number of users read or written by one request of the batch methods.
+     * @param batchSize number of users
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
 
-    public static void main(String[] args) {
-        AstyanaxContextFactory factory = new AstyanaxContextFactory();
-        Configuration configuration = Configuration.getConfiguration();
-        factory.setHostNames(configuration.getHostname());
-        factory.setClusterName(configuration.getClusterName());
-        factory.setKeyspace(configuration.getKeyspace());
-        factory.setPort(configuration.getPort());
-        factory.setMaxConnsPerHost(configuration.getMaxConnsPerHost());
-        factory.setSocketTimeout(configuration.getSocketTimeout());
-        factory.setConnectionPoolName(configuration.getConnectionPoolName());
+    /**
+     * Sets the executor running the chunks of batch increments in parallel and the asynchronous increments, e.g. one
+     * shared by the daos of a keyspace. It is left running by {@link #close()}.
+     * @param batchExecutor executor
+     */
+    public void setBatchExecutor(ExecutorService batchExecutor) {
+        if (ownsExecutor) {
+            this.batchExecutor.shutdown();
+        }
+        this.batchExecutor = batchExecutor;
+        this.ownsExecutor = false;
+    }
+
+    /**
+     * Shuts down the default batch executor.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            batchExecutor.shutdown();
+        }
+    }
 
+    /**
+     * Pins the lookups of a user to the replica picked by the selector, for a dao serving the hedges of a
+     * {@link HedgingCountingDao}.
+     * @param replicaSelector selector, null leaves the lookups to the pool
+     */
+    public void setReplicaSelector(ReplicaSelector replicaSelector) {
+        this.replicaSelector = replicaSelector;
+    }
+
+    /**
+     * Sets the default timeout of the asynchronous calls.
+     * @param asyncTimeoutMillis timeout in milliseconds, 0 means no timeout
+     */
+    public void setAsyncTimeoutMillis(long asyncTimeoutMillis) {
+        this.asyncTimeoutMillis = asyncTimeoutMillis;
+    }
+
+
+    public static void main(String[] args) {
+        SessionRegistry registry = SessionRegistry.getInstance();
 
         LOG.debug("Astyanax counting dao example");
-        AstyanaxContext<Keyspace> context = factory.create();
-        ColumnFamily<String, String> columnFamily = new ColumnFamily<String, String>("auth_failures", StringSerializer.get(),
-                StringSerializer.get());
-        AstyanaxCountingDao dao = new AstyanaxCountingDao(context, columnFamily);
+        AstyanaxContext<Keyspace> context = registry.acquireAstyanax();
+        try {
+            ColumnFamily<String, String> columnFamily = new ColumnFamily<String, String>("auth_failures", StringSerializer.get(),
+                    StringSerializer.get());
+            AstyanaxCountingDao dao = new AstyanaxCountingDao(context, columnFamily);
 
-        LOG.debug("Authentication failures for item1:");
-        LOG.debug("Item1:" + dao.getNumberOfAuthenticationFailures("user1"));
+            LOG.debug("Authentication failures for item1:");
+            LOG.debug("Item1:" + dao.getNumberOfAuthenticationFailures("user1"));
 
-        LOG.debug("Incrementing authentication failures:");
-        dao.incrementNumberOfAuthenticationFailures("user1", "item1");
+            LOG.debug("Incrementing authentication failures:");
+            dao.incrementNumberOfAuthenticationFailures("user1", "item1");
 
-        LOG.debug("After increment:");
-        LOG.debug("Item1:" + dao.getNumberOfAuthenticationFailures("user1"));
-        LOG.debug("Counter:" + dao.getNumberOfAuthenticationFailures("user1", "item1"));
+            LOG.debug("After increment:");
+            LOG.debug("Item1:" + dao.getNumberOfAuthenticationFailures("user1"));
+            LOG.debug("Counter:" + dao.getNumberOfAuthenticationFailures("user1", "item1"));
+            dao.close();
+        } finally {
+            registry.release(context);
+        }
     }
 }
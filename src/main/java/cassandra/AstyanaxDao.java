@@ -1,33 +1,63 @@
 package cassandra;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
+import cassandra.codec.ValueCompressor;
+
+import com.google.common.base.Function;
+
 import com.netflix.astyanax.AstyanaxContext;
 import com.netflix.astyanax.ColumnListMutation;
 import com.netflix.astyanax.Keyspace;
 import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.Host;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
 import com.netflix.astyanax.model.Column;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.query.ColumnFamilyQuery;
+import com.netflix.astyanax.query.RowQuery;
+import com.netflix.astyanax.recipes.reader.AllRowsReader;
+import com.netflix.astyanax.util.RangeBuilder;
 
 /**
  * Cassandra dao implementation with astyanax.
  * @author Gyozo_Nyari
  *
  */
-public class AstyanaxDao implements Dao {
+public class AstyanaxDao implements AsyncDao {
 
     private static final Logger LOG = LoggerFactory.getLogger(AstyanaxDao.class);
+    private static final long DEFAULT_ASYNC_TIMEOUT_MILLIS = 15000;
+    private static final int DEFAULT_SCAN_PAGE_SIZE = 100;
+    private static final int DEFAULT_COLUMN_PAGE_SIZE = 1000;
 
     private final Keyspace keyspace;
     private final ColumnFamily<String, String> columnFamily;
+    private final AstyanaxBinaryDao binaryDao;
+    private BinaryDao storage;
+    private ValueCompressor compressor;
+    private long asyncTimeoutMillis = DEFAULT_ASYNC_TIMEOUT_MILLIS;
+    private int scanPageSize = DEFAULT_SCAN_PAGE_SIZE;
+    private int columnPageSize = DEFAULT_COLUMN_PAGE_SIZE;
+    private int scanThreads = 1;
+    private boolean failSilently = true;
+    private ReplicaSelector replicaSelector;
 
     /**
      * Constructor.
@@ -38,48 +68,357 @@ public class AstyanaxDao implements Dao {
         super();
         this.keyspace = astyanaxContext.getEntity();
         this.columnFamily = columnFamily;
+        this.binaryDao = new AstyanaxBinaryDao(astyanaxContext, columnFamily.getName());
+        this.storage = binaryDao;
     }
 
+    /**
+     * Reads the row in pages of {@link #setColumnPageSize(int) column page size}, so wide rows don't exceed the
+     * Thrift frame.
+     */
     @Override
     public Map<String, String> getValues(final String row) {
         Assert.notNull(row, "Row cant be null!");
         Map<String, String> columns = new HashMap<String, String>();
         try {
-            ColumnList<String> result = keyspace.prepareQuery(columnFamily).getKey(row).execute().getResult();
-            if (!result.isEmpty()) {
-                for (Iterator<Column<String>> i = result.iterator(); i.hasNext();) {
-                    Column<String> column = i.next();
-                    columns.put(column.getName(), column.getStringValue());
-                }
+            for (Iterator<Map<String, String>> pages = getPages(row, ColumnRange.first(columnPageSize)); pages.hasNext();) {
+                columns.putAll(pages.next());
+            }
+        } catch (CassandraException e) {
+            if (!failSilently) {
+                throw e;
             }
-        } catch (ConnectionException e) {
             LOG.error("getValues failed for row {}!", new Object[] {row}, e);
+            columns = new HashMap<String, String>();
         }
         return columns;
     }
 
+    @Override
+    public Map<String, String> getValues(final String row, final ColumnRange range) {
+        Assert.notNull(row, "Row cant be null!");
+        Assert.notNull(range, "Range cant be null!");
+        return new LazyColumnMap<Column<String>>(slice(row, range), Column::getName, this::decodeValue);
+    }
+
+    @Override
+    public Iterator<Map<String, String>> getPages(final String row, final ColumnRange range) {
+        Assert.notNull(row, "Row cant be null!");
+        Assert.notNull(range, "Range cant be null!");
+        return new ColumnPages<Column<String>>(range, page -> slice(row, page), Column::getName, this::decodeValue);
+    }
+
     @Override
     public void store(final String row, final Map<String, String> columns) {
         Assert.notNull(row, "Row cant be null!");
         Assert.notNull(columns, "Columns cant be null!");
         try {
-            MutationBatch mutation = keyspace.prepareMutationBatch();
-            ColumnListMutation<String> columnList = mutation.withRow(columnFamily, row);
-            for (String key : columns.keySet()) {
-                String value = columns.get(key);
-                columnList.putColumn(key, value, null);
+            storage.store(Utf8.encode(row), Utf8.encode(columns));
+        } catch (CassandraException e) {
+            if (!failSilently) {
+                throw e;
             }
-            mutation.execute();
-        } catch (ConnectionException e) {
             LOG.error("storing row {} failed!", new Object[] {row}, e);
         }
     }
 
+    /**
+     * Unlike the writes, a failed deletion is thrown as {@link CassandraException}: a deletion lost silently brings
+     * the row back.
+     */
     @Override
     public void remove(final String row) {
         Assert.notNull(row, "Row cant be null!");
-        ColumnListMutation<String> mutation = keyspace.prepareMutationBatch().withRow(columnFamily, row);
-        mutation.delete();
+        storage.remove(Utf8.encode(row));
+    }
+
+    /**
+     * Reads the rows with one multiget per {@link #setBatchSize(int) batch size} rows. Failing silently, the rows of
+     * the multigets that succeeded are returned even if others failed.
+     */
+    @Override
+    public Map<String, Map<String, String>> getValues(final Collection<String> rows) {
+        Assert.notNull(rows, "Rows cant be null!");
+        try {
+            return Utf8.decodeRows(storage.getValues(Utf8.encodeKeys(rows)));
+        } catch (PartialResultException e) {
+            if (!failSilently) {
+                throw e;
+            }
+            LOG.error("getValues failed for {} of rows {}!", new Object[] {e.getFailedRows().size(), rows}, e);
+            return Utf8.decodeRows(e.getRows());
+        } catch (CassandraException e) {
+            if (!failSilently) {
+                throw e;
+            }
+            LOG.error("getValues failed for rows {}!", new Object[] {rows}, e);
+            return new HashMap<String, Map<String, String>>();
+        }
+    }
+
+    /**
+     * Stores the rows with one mutation batch per {@link #setMaxBatchBytes(long) max batch bytes}, wide rows are split
+     * by their columns. Like a deletion, a failure is thrown as {@link CassandraException} even when failing silently:
+     * the other batches are stored, so the caller has to know the write is partial.
+     */
+    @Override
+    public void storeAll(final Map<String, Map<String, String>> rows) {
+        Assert.notNull(rows, "Rows cant be null!");
+        storage.storeAll(Utf8.encodeRows(rows));
+    }
+
+    /**
+     * Removes the rows with one mutation batch per {@link #setMaxBatchBytes(long) max batch bytes}, a failure is thrown
+     * as {@link CassandraException}.
+     */
+    @Override
+    public void removeAll(final Collection<String> rows) {
+        Assert.notNull(rows, "Rows cant be null!");
+        storage.removeAll(Utf8.encodeKeys(rows));
+    }
+
+    /**
+     * Reads the column family with {@link AllRowsReader}, which splits the token ring among the
+     * {@link #setScanThreads(int) scan threads}. A row is collected as a whole, see
+     * {@link #forEachRowPage(BiConsumer)} for wide rows.
+     */
+    @Override
+    public void forEachRow(final BiConsumer<String, Map<String, String>> consumer) {
+        Assert.notNull(consumer, "Consumer cant be null!");
+        scan(row -> {
+            Map<String, String> columns = new HashMap<String, String>();
+            readPages(row, columns::putAll);
+            consumer.accept(row.getKey(), columns);
+        });
+    }
+
+    /**
+     * Scans like {@link #forEachRow(BiConsumer)}, handing over the columns {@link #setColumnPageSize(int) column page
+     * size} at a time.
+     */
+    @Override
+    public void forEachRowPage(final BiConsumer<String, Map<String, String>> consumer) {
+        Assert.notNull(consumer, "Consumer cant be null!");
+        scan(row -> readPages(row, page -> consumer.accept(row.getKey(), page)));
+    }
+
+    private void scan(final Consumer<Row<String, String>> rowReader) {
+        AllRowsReader<String, String> reader = new AllRowsReader.Builder<String, String>(keyspace, columnFamily)
+                .withPageSize(scanPageSize)
+                .withColumnRange(null, null, false, columnPageSize)
+                .withConcurrencyLevel(scanThreads)
+                .forEachRow(new Function<Row<String, String>, Boolean>() {
+                    @Override
+                    public Boolean apply(Row<String, String> row) {
+                        // deleted rows show up without columns until they are compacted away
+                        if (!row.getColumns().isEmpty()) {
+                            rowReader.accept(row);
+                        }
+                        return true;
+                    }
+                }).build();
+        try {
+            reader.call();
+        } catch (Exception e) {
+            throw new CassandraException("forEachRow failed!", e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getValuesAsync(final String row) {
+        Assert.notNull(row, "Row cant be null!");
+        return withTimeout(AstyanaxFutures.execute(prepareQuery(row).getKey(row), "getValues").thenApply(this::toMap));
+    }
+
+    @Override
+    public CompletableFuture<Void> storeAsync(final String row, final Map<String, String> columns) {
+        Assert.notNull(row, "Row cant be null!");
+        Assert.notNull(columns, "Columns cant be null!");
+        return withTimeout(AstyanaxFutures.execute(prepareStore(row, columns), "store"));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeAsync(final String row) {
+        Assert.notNull(row, "Row cant be null!");
+        MutationBatch mutation = keyspace.prepareMutationBatch();
+        mutation.withRow(columnFamily, row).delete();
+        return withTimeout(AstyanaxFutures.execute(mutation, "remove"));
+    }
+
+    /**
+     * Sets the default timeout of the asynchronous calls.
+     * @param asyncTimeoutMillis timeout in milliseconds, 0 means no timeout
+     */
+    public void setAsyncTimeoutMillis(long asyncTimeoutMillis) {
+        this.asyncTimeoutMillis = asyncTimeoutMillis;
+    }
+
+    /**
+     * Sets the number of rows read by one multiget.
+     * @param batchSize number of rows
+     */
+    public void setBatchSize(int batchSize) {
+        binaryDao.setBatchSize(batchSize);
+    }
+
+    /**
+     * Sets the estimated size limit of one mutation batch, it must stay under the Thrift frame size of the server.
+     * @param maxBatchBytes size in bytes
+     */
+    public void setMaxBatchBytes(long maxBatchBytes) {
+        binaryDao.setMaxBatchBytes(maxBatchBytes);
+    }
+
+    /**
+     * Sets the compressor of the values, rows written without compression stay readable. Compressed values are
+     * binary, the column family needs BytesType as default validation class.
+     * @param compressor compressor, null switches compression off
+     */
+    public void setValueCompressor(ValueCompressor compressor) {
+        this.compressor = compressor;
+        this.storage = compressor != null ? new CompressingBinaryDao(binaryDao, compressor) : binaryDao;
+    }
+
+    /**
+     * Sets whether failed reads and single row stores are only logged, reads returning empty results, as by default.
+     * Deletions and {@link #storeAll(Map) batch stores} always throw their failures: a lost deletion brings the row
+     * back, a batch may be stored partially. Retrying and circuit breaking decorators need the failures thrown.
+     * @param failSilently false to throw failures as {@link CassandraException}
+     */
+    public void setFailSilently(boolean failSilently) {
+        this.failSilently = failSilently;
+    }
+
+    public boolean isFailSilently() {
+        return failSilently;
+    }
+
+    /**
+     * Pins the reads of single rows to the replica picked by the selector, for a dao serving the hedges of a
+     * {@link HedgingDao}.
+     * @param replicaSelector selector, null leaves the reads to the pool
+     */
+    public void setReplicaSelector(ReplicaSelector replicaSelector) {
+        this.replicaSelector = replicaSelector;
+    }
+
+    /**
+     * Sets the number of rows read by one page of {@link #forEachRow(BiConsumer)}.
+     * @param scanPageSize number of rows
+     */
+    public void setScanPageSize(int scanPageSize) {
+        Assert.isTrue(scanPageSize > 0, "Scan page size must be positive!");
+        this.scanPageSize = scanPageSize;
+    }
+
+    /**
+     * Sets the number of columns read at once, wider rows are read in more requests.
+     * @param columnPageSize number of columns
+     */
+    public void setColumnPageSize(int columnPageSize) {
+        Assert.isTrue(columnPageSize > 0, "Column page size must be positive!");
+        this.columnPageSize = columnPageSize;
+        binaryDao.setColumnPageSize(columnPageSize);
+    }
+
+    /**
+     * Sets the number of threads scanning the token ranges in parallel.
+     * @param scanThreads number of threads
+     */
+    public void setScanThreads(int scanThreads) {
+        Assert.isTrue(scanThreads > 0, "Scan threads must be positive!");
+        this.scanThreads = scanThreads;
+    }
+
+    /**
+     * Hands the columns of a row to the consumer a page at a time, the first page came with the scan.
+     */
+    private void readPages(final Row<String, String> row, final Consumer<Map<String, String>> pages) {
+        pages.accept(toMap(row.getColumns()));
+        if (row.getColumns().size() < columnPageSize) {
+            return;
+        }
+        // a wide row, the rest of the columns are read page by page
+        String lastColumn = row.getColumns().getColumnByIndex(columnPageSize - 1).getName();
+        RowQuery<String, String> query = keyspace.prepareQuery(columnFamily).getKey(row.getKey())
+                .withColumnRange(new RangeBuilder().setStart(lastColumn).setLimit(columnPageSize).build()).autoPaginate(true);
+        try {
+            ColumnList<String> page;
+            while (!(page = query.execute().getResult()).isEmpty()) {
+                Map<String, String> columns = toMap(page);
+                // the start column is inclusive, it came with the first page
+                columns.remove(lastColumn);
+                if (!columns.isEmpty()) {
+                    pages.accept(columns);
+                }
+            }
+        } catch (ConnectionException e) {
+            throw new CassandraException("forEachRow failed!", e);
+        }
+    }
+
+    private List<Column<String>> slice(final String row, final ColumnRange range) {
+        RangeBuilder builder = new RangeBuilder().setLimit(range.getLimit()).setReversed(range.isReversed());
+        if (range.getStart() != null) {
+            builder.setStart(range.getStart());
+        }
+        if (range.getEnd() != null) {
+            builder.setEnd(range.getEnd());
+        }
+        try {
+            ColumnList<String> result = prepareQuery(row).getKey(row).withColumnRange(builder.build()).execute().getResult();
+            List<Column<String>> columns = new ArrayList<Column<String>>(result.size());
+            for (Column<String> column : result) {
+                columns.add(column);
+            }
+            return columns;
+        } catch (ConnectionException e) {
+            throw new CassandraException("getValues failed!", e);
+        }
+    }
+
+    private ColumnFamilyQuery<String, String> prepareQuery(final String row) {
+        ColumnFamilyQuery<String, String> query = keyspace.prepareQuery(columnFamily);
+        Host host = replicaSelector != null ? replicaSelector.select(row) : null;
+        return host != null ? query.pinToHost(host) : query;
+    }
+
+    private MutationBatch prepareStore(final String row, final Map<String, String> columns) {
+        MutationBatch mutation = keyspace.prepareMutationBatch();
+        addColumns(mutation, row, columns);
+        return mutation;
+    }
+
+    private void addColumns(final MutationBatch mutation, final String row, final Map<String, String> columns) {
+        ColumnListMutation<String> columnList = mutation.withRow(columnFamily, row);
+        for (String key : columns.keySet()) {
+            String value = columns.get(key);
+            if (compressor != null) {
+                columnList.putColumn(key, compressor.encode(Utf8.encode(value)), null);
+            } else {
+                columnList.putColumn(key, value, null);
+            }
+        }
+    }
+
+    private Map<String, String> toMap(final ColumnList<String> result) {
+        Map<String, String> columns = new HashMap<String, String>();
+        for (Iterator<Column<String>> i = result.iterator(); i.hasNext();) {
+            Column<String> column = i.next();
+            columns.put(column.getName(), decodeValue(column));
+        }
+        return columns;
+    }
+
+    private String decodeValue(final Column<String> column) {
+        if (compressor == null) {
+            return column.getStringValue();
+        }
+        return Utf8.decode(compressor.decode(column.getByteBufferValue()));
+    }
+
+    private <T> CompletableFuture<T> withTimeout(final CompletableFuture<T> future) {
+        return AsyncSupport.withTimeout(future, asyncTimeoutMillis, TimeUnit.MILLISECONDS);
     }
 
 }
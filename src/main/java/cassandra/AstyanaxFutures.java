@@ -0,0 +1,56 @@
+package cassandra;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.netflix.astyanax.Execution;
+import com.netflix.astyanax.connectionpool.OperationResult;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
+
+/**
+ * Adapts Astyanax executeAsync() to {@link CompletableFuture}.
+ * @author Gyozo_Nyari
+ *
+ */
+final class AstyanaxFutures {
+
+    private AstyanaxFutures() {
+    }
+
+    /**
+     * Executes asynchronously, failures are wrapped in {@link CassandraException}.
+     * @param execution query or mutation
+     * @param operation name of the operation, used in the exception message
+     * @return future of the result
+     */
+    static <R> CompletableFuture<R> execute(final Execution<R> execution, final String operation) {
+        final CompletableFuture<R> result = new CompletableFuture<R>();
+        try {
+            Futures.addCallback(execution.executeAsync(), new FutureCallback<OperationResult<R>>() {
+                @Override
+                public void onSuccess(OperationResult<R> operationResult) {
+                    result.complete(operationResult.getResult());
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    result.completeExceptionally(new CassandraException(operation, t));
+                }
+            });
+        } catch (ConnectionException e) {
+            result.completeExceptionally(new CassandraException(operation, e));
+        }
+        return result;
+    }
+
+    static boolean isNotFound(final Throwable error) {
+        Throwable cause = AsyncSupport.unwrap(error);
+        if (cause instanceof CassandraException) {
+            cause = cause.getCause();
+        }
+        return cause instanceof NotFoundException;
+    }
+
+}
@@ -0,0 +1,298 @@
+package cassandra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import cassandra.lock.StripedLock;
+
+import com.netflix.astyanax.AstyanaxContext;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.model.Rows;
+import com.netflix.astyanax.serializers.AnnotatedCompositeSerializer;
+import com.netflix.astyanax.serializers.StringSerializer;
+
+/**
+ * Sliding window {@link CountingDao}. Failures are counted in per-minute bucket columns named (credential, minute)
+ * under the user's row, "failures in the last N minutes" is a single column slice read.
+ *
+ * Bucket columns expire when they fall out of the window, so a failure once an hour does not keep the count alive.
+ *
+ * CLI: create column family auth_failure_windows with comparator = 'CompositeType(UTF8Type, LongType)' and key_validation_class = 'UTF8Type' and default_validation_class = 'Int32Type' AND gc_grace = 86400;
+ *
+ * @author Gyozo_Nyari
+ *
+ */
+public class AstyanaxWindowedCountingDao implements WindowedCountingDao {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AstyanaxWindowedCountingDao.class);
+    private static final int DEFAULT_WINDOW_MINUTES = 60;
+
+    private final Keyspace keyspace;
+    private final AnnotatedCompositeSerializer<FailureBucket> bucketSerializer = new AnnotatedCompositeSerializer<FailureBucket>(FailureBucket.class);
+    private final ColumnFamily<String, FailureBucket> columnFamily;
+    private final StripedLock keyLock = new StripedLock();
+    private int windowMinutes = DEFAULT_WINDOW_MINUTES;
+    private int batchSize = 100;
+
+    /**
+     * Constructor.
+     * @param astyanaxContext context
+     * @param columnFamilyName name of the column family
+     */
+    public AstyanaxWindowedCountingDao(final AstyanaxContext<Keyspace> astyanaxContext, final String columnFamilyName) {
+        super();
+        this.keyspace = astyanaxContext.getEntity();
+        this.columnFamily = new ColumnFamily<String, FailureBucket>(columnFamilyName, StringSerializer.get(), bucketSerializer);
+    }
+
+    @Override
+    public int getNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        return getNumberOfAuthenticationFailures(userId, credentials, windowMinutes);
+    }
+
+    @Override
+    public int getNumberOfAuthenticationFailures(final String userId, final String credentials, final int minutes) {
+        int authFailures = 0;
+        try {
+            for (Column<FailureBucket> column : readBuckets(userId, credentials, minutes)) {
+                authFailures += column.getIntegerValue();
+            }
+        } catch (ConnectionException e) {
+            throw new CassandraException("getNumberOfAuthenticationFailures", e);
+        }
+        return authFailures;
+    }
+
+    @Override
+    public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId) {
+        return getNumberOfAuthenticationFailures(userId, windowMinutes);
+    }
+
+    @Override
+    public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId, final int minutes) {
+        long from = firstMinute(minutes);
+        try {
+            ColumnList<FailureBucket> result = keyspace.prepareQuery(columnFamily).getKey(userId).execute().getResult();
+            return sum(result, from);
+        } catch (ConnectionException e) {
+            throw new CassandraException("getNumberOfAuthenticationFailures", e);
+        }
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> getNumberOfAuthenticationFailures(final Collection<String> userIds) {
+        long from = firstMinute(windowMinutes);
+        List<CompletableFuture<Rows<String, FailureBucket>>> futures = new ArrayList<CompletableFuture<Rows<String, FailureBucket>>>();
+        for (List<String> chunk : Chunks.split(userIds, batchSize)) {
+            futures.add(AstyanaxFutures.execute(keyspace.prepareQuery(columnFamily).getKeySlice(chunk), "getNumberOfAuthenticationFailures"));
+        }
+        Map<String, Map<String, Integer>> authFailures = new HashMap<String, Map<String, Integer>>();
+        for (Rows<String, FailureBucket> rows : Chunks.join(AsyncSupport.allOf(futures))) {
+            for (Row<String, FailureBucket> row : rows) {
+                Map<String, Integer> userFailures = sum(row.getColumns(), from);
+                if (!userFailures.isEmpty()) {
+                    authFailures.put(row.getKey(), userFailures);
+                }
+            }
+        }
+        return authFailures;
+    }
+
+    /**
+     * Replaces the failures of the window with a single bucket holding the value, 0 clears the window.
+     */
+    @Override
+    public void setNumberOfAuthenticationFailures(final String userId, final String credentials, final int value) {
+        Lock lock = keyLock.writeLock(userId);
+        try {
+            MutationBatch mutation = keyspace.prepareMutationBatch();
+            for (Column<FailureBucket> column : readBuckets(userId, credentials, windowMinutes)) {
+                mutation.withRow(columnFamily, userId).deleteColumn(column.getName());
+            }
+            if (value > 0) {
+                mutation.withRow(columnFamily, userId).putColumn(new FailureBucket(credentials, currentMinute()), value, getBucketTtl());
+            }
+            mutation.execute();
+        } catch (ConnectionException e) {
+            throw new CassandraException("setNumberOfAuthenticationFailures", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        FailureBucket bucket = new FailureBucket(credentials, currentMinute());
+        Lock lock = keyLock.writeLock(userId);
+        try {
+            int value = 0;
+            try {
+                value = keyspace.prepareQuery(columnFamily).getKey(userId).getColumn(bucket).execute().getResult().getIntegerValue();
+            } catch (NotFoundException e) {
+                LOG.debug("Bucket {} was not found!", bucket);
+            }
+            keyspace.prepareColumnMutation(columnFamily, userId, bucket).putValue(value + 1, getBucketTtl()).execute();
+        } catch (ConnectionException e) {
+            throw new CassandraException("incrementNumberOfAuthenticationFailures", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The count of the window is the sum of several buckets: the buckets of the window are read, the current one is
+     * written back incremented, all under the user's lock, so the count is the one this increment made.
+     */
+    @Override
+    public IncrementResult incrementAndCheck(final String userId, final String credentials, final int threshold) {
+        FailureBucket bucket = new FailureBucket(credentials, currentMinute());
+        Lock lock = keyLock.writeLock(userId);
+        try {
+            int current = 0;
+            int value = 1;
+            for (Column<FailureBucket> column : readBuckets(userId, credentials, windowMinutes)) {
+                if (column.getName().minute == bucket.minute) {
+                    current = column.getIntegerValue();
+                }
+                value += column.getIntegerValue();
+            }
+            keyspace.prepareColumnMutation(columnFamily, userId, bucket).putValue(current + 1, getBucketTtl()).execute();
+            return new IncrementResult(value, value >= threshold);
+        } catch (ConnectionException e) {
+            throw new CassandraException("incrementAndCheck", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Increments in chunks of {@link #setBatchSize(int) batch size}, each chunk is one read and one mutation batch. A
+     * failed chunk doesn't stop the others.
+     * @throws PartialIncrementException with the increments of the failed chunks
+     */
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final Map<CredentialKey, Integer> increments) {
+        Map<CredentialKey, Integer> failedIncrements = new HashMap<CredentialKey, Integer>();
+        CassandraException failure = null;
+        for (Map<CredentialKey, Integer> chunk : Chunks.split(increments, batchSize)) {
+            try {
+                incrementChunk(chunk);
+            } catch (CassandraException e) {
+                failedIncrements.putAll(chunk);
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw new PartialIncrementException("incrementNumberOfAuthenticationFailures failed for " + failedIncrements.size() + " of "
+                    + increments.size() + " credentials!", failedIncrements, failure);
+        }
+    }
+
+    private void incrementChunk(final Map<CredentialKey, Integer> increments) {
+        long minute = currentMinute();
+        Set<String> userIds = new HashSet<String>();
+        Map<String, FailureBucket> buckets = new HashMap<String, FailureBucket>();
+        for (CredentialKey key : increments.keySet()) {
+            userIds.add(key.getUserId());
+            buckets.put(key.getCredential(), new FailureBucket(key.getCredential(), minute));
+        }
+        List<Lock> locks = keyLock.writeLocks(userIds);
+        try {
+            Rows<String, FailureBucket> rows = keyspace.prepareQuery(columnFamily).getKeySlice(userIds).withColumnSlice(buckets.values()).execute()
+                    .getResult();
+            MutationBatch mutation = keyspace.prepareMutationBatch();
+            for (Map.Entry<CredentialKey, Integer> entry : increments.entrySet()) {
+                CredentialKey key = entry.getKey();
+                int value = 0;
+                Row<String, FailureBucket> row = rows.getRow(key.getUserId());
+                if (row != null) {
+                    for (Column<FailureBucket> column : row.getColumns()) {
+                        if (column.getName().credential.equals(key.getCredential())) {
+                            value = column.getIntegerValue();
+                        }
+                    }
+                }
+                mutation.withRow(columnFamily, key.getUserId()).putColumn(new FailureBucket(key.getCredential(), minute), value + entry.getValue(),
+                        getBucketTtl());
+            }
+            mutation.execute();
+        } catch (ConnectionException e) {
+            throw new CassandraException("incrementNumberOfAuthenticationFailures", e);
+        } finally {
+            StripedLock.unlockAll(locks);
+        }
+    }
+
+    private ColumnList<FailureBucket> readBuckets(final String userId, final String credentials, final int minutes) throws ConnectionException {
+        long to = currentMinute();
+        return keyspace.prepareQuery(columnFamily).getKey(userId)
+                .withColumnRange(bucketSerializer.buildRange().withPrefix(credentials).greaterThanEquals(firstMinute(minutes)).lessThanEquals(to)
+                        .limit(minutes).build())
+                .execute().getResult();
+    }
+
+    private Map<String, Integer> sum(final ColumnList<FailureBucket> columns, final long from) {
+        Map<String, Integer> authFailures = new HashMap<String, Integer>();
+        for (Column<FailureBucket> column : columns) {
+            if (column.getName().minute >= from) {
+                authFailures.merge(column.getName().credential, column.getIntegerValue(), Integer::sum);
+            }
+        }
+        return authFailures;
+    }
+
+    private long firstMinute(final int minutes) {
+        Assert.isTrue(minutes > 0 && minutes <= windowMinutes, "Minutes must be between 1 and " + windowMinutes + "!");
+        return currentMinute() - minutes + 1;
+    }
+
+    private long currentMinute() {
+        return TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+    }
+
+    private int getBucketTtl() {
+        // a bucket is needed until the end of the window starting in its last second
+        return (windowMinutes + 1) * 60;
+    }
+
+    /**
+     * Sets the longest window which can be queried, buckets are kept that long.
+     * @param windowMinutes window in minutes
+     */
+    public void setWindowMinutes(int windowMinutes) {
+        Assert.isTrue(windowMinutes > 0, "Window must be positive!");
+        this.windowMinutes = windowMinutes;
+    }
+
+    public int getWindowMinutes() {
+        return windowMinutes;
+    }
+
+    /**
+     * Sets the number of users read or written by one request of the batch methods.
+     * @param batchSize number of users
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+}
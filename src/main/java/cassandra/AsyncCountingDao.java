@@ -0,0 +1,46 @@
+package cassandra;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link CountingDao} with non-blocking variants of its methods.
+ * Failures complete the futures exceptionally with {@link CassandraException}.
+ * @author Gyozo_Nyari
+ *
+ */
+public interface AsyncCountingDao extends CountingDao {
+
+    /**
+     * Returns the number of authentication failures for given user's credentials
+     * @param userId user id
+     * @param credentials credentials
+     * @return future of the number of authentication failures
+     */
+    CompletableFuture<Integer> getNumberOfAuthenticationFailuresAsync(final String userId, final String credentials);
+
+    /**
+     * Returns the number of authentication failures for given user's
+     * @param userId user id
+     * @return future of the map of credentials and auth failures
+     */
+    CompletableFuture<Map<String, Integer>> getNumberOfAuthenticationFailuresAsync(final String userId);
+
+    /**
+     * Sets the number of authentication failures
+     * @param userId user id
+     * @param credentials credentials
+     * @param value to be set
+     * @return future completed when the value is stored
+     */
+    CompletableFuture<Void> setNumberOfAuthenticationFailuresAsync(final String userId, final String credentials, final int value);
+
+    /**
+     * Increments the number of authentication failures.
+     * @param userId user id
+     * @param credentials credentials
+     * @return future completed when the value is stored
+     */
+    CompletableFuture<Void> incrementNumberOfAuthenticationFailuresAsync(final String userId, final String credentials);
+
+}
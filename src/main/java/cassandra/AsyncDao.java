@@ -0,0 +1,35 @@
+package cassandra;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link Dao} with non-blocking variants of its methods.
+ * Failures complete the futures exceptionally with {@link CassandraException}.
+ * @author Gyozo_Nyari
+ *
+ */
+public interface AsyncDao extends Dao {
+
+    /**
+     * Returns a row.
+     * @param row row key
+     * @return future of the map of columns
+     */
+    CompletableFuture<Map<String, String>> getValuesAsync(String row);
+
+    /**
+     * Stores a row.
+     * @param row row key
+     * @param columns columns to be stored.
+     * @return future completed when the row is stored
+     */
+    CompletableFuture<Void> storeAsync(String row, Map<String, String> columns);
+
+    /**
+     * Removes a row.
+     * @param row row key
+     * @return future completed when the row is removed
+     */
+    CompletableFuture<Void> removeAsync(String row);
+}
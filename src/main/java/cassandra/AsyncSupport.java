@@ -0,0 +1,128 @@
+package cassandra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Helpers for the asynchronous dao methods.
+ * @author Gyozo_Nyari
+ *
+ */
+public final class AsyncSupport {
+
+    private static final ScheduledExecutorService TIMER = newTimer();
+
+    private AsyncSupport() {
+    }
+
+    /**
+     * Fails the future with a {@link TimeoutException} if it is not completed in time. The timer task is cancelled
+     * when the future completes, so it doesn't hold the future until the timeout.
+     * @param future future
+     * @param timeout timeout
+     * @param unit unit of the timeout
+     * @return the same future
+     */
+    public static <T> CompletableFuture<T> withTimeout(final CompletableFuture<T> future, final long timeout, final TimeUnit unit) {
+        if (future.isDone() || timeout <= 0) {
+            return future;
+        }
+        final ScheduledFuture<?> timer = TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                future.completeExceptionally(new TimeoutException("Timed out after " + unit.toMillis(timeout) + " ms"));
+            }
+        }, timeout, unit);
+        future.whenComplete((result, error) -> timer.cancel(false));
+        return future;
+    }
+
+    /**
+     * Combines the futures without blocking a thread.
+     * @param futures futures
+     * @return future of the results, in the order of the futures
+     */
+    public static <T> CompletableFuture<List<T>> allOf(final List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(ignored -> {
+            List<T> results = new ArrayList<T>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Runs a blocking call on the executor. A rejected call fails the returned future instead of throwing.
+     * @param supplier blocking call
+     * @param executor executor
+     * @return future of the result
+     */
+    public static <T> CompletableFuture<T> supplyAsync(final Supplier<T> supplier, final ExecutorService executor) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> future = new CompletableFuture<T>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * Creates a fixed size executor with a bounded queue, which rejects calls when the queue is full.
+     * @param threads number of threads
+     * @param queueSize number of calls waiting for a thread
+     * @param name prefix of the thread names
+     * @return executor
+     */
+    public static ExecutorService newBoundedExecutor(final int threads, final int queueSize, final String name) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize),
+                daemonThreadFactory(name));
+    }
+
+    private static ScheduledExecutorService newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("cassandra-async-timer"));
+        // cancelled timeouts leave the queue at once instead of when they would have fired
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    static CompletionException asCompletionException(final Throwable error) {
+        return error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+    }
+
+    static Throwable unwrap(final Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private static ThreadFactory daemonThreadFactory(final String name) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+}
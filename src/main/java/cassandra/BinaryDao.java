@@ -0,0 +1,56 @@
+package cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * {@link Dao} counterpart working on raw bytes: row keys, column names and values are passed through as they are
+ * read from or written to Thrift, without encoding or decoding.
+ *
+ * The buffers returned must not be modified, the ones passed in must not be modified until the call returns.
+ * @author Gyozo_Nyari
+ *
+ */
+public interface BinaryDao {
+
+    /**
+     * Returns a row.
+     * @param row row key
+     * @return map of columns
+     */
+    Map<ByteBuffer, ByteBuffer> getValues(ByteBuffer row);
+
+    /**
+     * Returns many rows at once.
+     * @param rows row keys
+     * @return map of row keys and their columns, empty rows are left out
+     * @throws PartialResultException if some of the rows could not be read, with the rows that could
+     */
+    Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> getValues(Collection<ByteBuffer> rows);
+
+    /**
+     * Stores a row.
+     * @param row row key
+     * @param columns columns to be stored.
+     */
+    void store(ByteBuffer row, Map<ByteBuffer, ByteBuffer> columns);
+
+    /**
+     * Stores many rows in batches.
+     * @param rows columns to be stored by row key
+     */
+    void storeAll(Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> rows);
+
+    /**
+     * Removes a row.
+     * @param row row key
+     */
+    void remove(ByteBuffer row);
+
+    /**
+     * Removes many rows in batches.
+     * @param rows row keys
+     */
+    void removeAll(Collection<ByteBuffer> rows);
+}
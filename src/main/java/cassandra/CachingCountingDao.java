@@ -0,0 +1,164 @@
+package cassandra;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.util.Assert;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Near cache in front of a {@link CountingDao}. Reads of a user's credential are served from a bounded in-memory
+ * cache, writes through this dao invalidate the cached value, so it is loaded again by the next read.
+ *
+ * Entries expire after a fixed time, which can't exceed the TTL of the underlying columns, otherwise the cache could
+ * return a count Cassandra has already dropped. Increments made by other nodes become visible when the entry expires.
+ *
+ * A read racing a write of the user may return the value before the write; the writes are counted per stripe of
+ * users, like in {@link NegativeLookupCountingDao}, so such a value is not left in the cache.
+ * @author Gyozo_Nyari
+ *
+ */
+public class CachingCountingDao extends ForwardingCountingDao {
+
+    private static final int WRITE_STRIPES = 1024;
+
+    private final Cache<CredentialKey, Integer> cache;
+    /** Writes started per stripe of users, hashed like {@link cassandra.lock.StripedLock}. */
+    private final AtomicLongArray writes = new AtomicLongArray(WRITE_STRIPES);
+
+    /**
+     * Constructor.
+     * @param delegate dao to be cached
+     * @param maximumSize maximum number of cached credentials
+     * @param expireAfterSeconds time after a load when the entry expires
+     * @param ttlSeconds time the delegate keeps a failure, e.g. its TTL or the bucket length of the counter daos, 0 if
+     *            the failures don't expire
+     */
+    public CachingCountingDao(final CountingDao delegate, final long maximumSize, final int expireAfterSeconds, final int ttlSeconds) {
+        super(delegate);
+        Assert.isTrue(maximumSize > 0, "Maximum size must be positive!");
+        Assert.isTrue(expireAfterSeconds > 0, "Expiration must be positive!");
+        Assert.isTrue(ttlSeconds >= 0, "TTL can't be negative!");
+        Assert.isTrue(ttlSeconds == 0 || expireAfterSeconds <= ttlSeconds, "Expiration can't exceed the TTL of the failures!");
+        this.cache = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(expireAfterSeconds, TimeUnit.SECONDS).recordStats()
+                .build();
+    }
+
+    /**
+     * The value is loaded atomically with the invalidations of the key, so a write finished before the load is
+     * invalidated after it.
+     */
+    @Override
+    public int getNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        return cache.get(new CredentialKey(userId, credentials), key -> getDelegate().getNumberOfAuthenticationFailures(key.getUserId(),
+                key.getCredential()));
+    }
+
+    @Override
+    public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId) {
+        long writesBefore = writes.get(stripeOf(userId));
+        Map<String, Integer> authFailures = super.getNumberOfAuthenticationFailures(userId);
+        for (Map.Entry<String, Integer> entry : authFailures.entrySet()) {
+            remember(new CredentialKey(userId, entry.getKey()), entry.getValue(), writesBefore);
+        }
+        return authFailures;
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> getNumberOfAuthenticationFailures(final Collection<String> userIds) {
+        Map<String, Long> writesBefore = new HashMap<String, Long>();
+        for (String userId : userIds) {
+            writesBefore.put(userId, writes.get(stripeOf(userId)));
+        }
+        Map<String, Map<String, Integer>> authFailures = super.getNumberOfAuthenticationFailures(userIds);
+        for (Map.Entry<String, Map<String, Integer>> user : authFailures.entrySet()) {
+            long before = writesBefore.get(user.getKey());
+            for (Map.Entry<String, Integer> entry : user.getValue().entrySet()) {
+                remember(new CredentialKey(user.getKey(), entry.getKey()), entry.getValue(), before);
+            }
+        }
+        return authFailures;
+    }
+
+    @Override
+    public void setNumberOfAuthenticationFailures(final String userId, final String credentials, final int value) {
+        CredentialKey key = new CredentialKey(userId, credentials);
+        forget(key);
+        super.setNumberOfAuthenticationFailures(userId, credentials, value);
+        forget(key);
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        CredentialKey key = new CredentialKey(userId, credentials);
+        forget(key);
+        super.incrementNumberOfAuthenticationFailures(userId, credentials);
+        forget(key);
+    }
+
+    @Override
+    public IncrementResult incrementAndCheck(final String userId, final String credentials, final int threshold) {
+        CredentialKey key = new CredentialKey(userId, credentials);
+        forget(key);
+        IncrementResult result = super.incrementAndCheck(userId, credentials, threshold);
+        forget(key);
+        return result;
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final Map<CredentialKey, Integer> increments) {
+        for (CredentialKey key : increments.keySet()) {
+            forget(key);
+        }
+        super.incrementNumberOfAuthenticationFailures(increments);
+        for (CredentialKey key : increments.keySet()) {
+            forget(key);
+        }
+    }
+
+    /**
+     * Drops the cached value of a credential.
+     * @param userId user id
+     * @param credentials credentials
+     */
+    public void invalidate(final String userId, final String credentials) {
+        cache.invalidate(new CredentialKey(userId, credentials));
+    }
+
+    /**
+     * @return hit, miss, load and eviction counts
+     */
+    public CacheStats getStatistics() {
+        return cache.stats();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    private void remember(final CredentialKey key, final int value, final long writesBefore) {
+        cache.put(key, value);
+        // a write of the user racing with the read may have landed after the value was read
+        if (writes.get(stripeOf(key.getUserId())) != writesBefore) {
+            cache.invalidate(key);
+        }
+    }
+
+    private void forget(final CredentialKey key) {
+        writes.incrementAndGet(stripeOf(key.getUserId()));
+        cache.invalidate(key);
+    }
+
+    private static int stripeOf(final String userId) {
+        int h = userId.hashCode();
+        h ^= (h >>> 16);
+        return h & (WRITE_STRIPES - 1);
+    }
+
+}
@@ -0,0 +1,228 @@
+package cassandra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.util.Assert;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Read-through, write-through cache in front of a {@link Dao}, for rows read much more often than written.
+ *
+ * The cache is bounded by the estimated size of the rows and evicts with Caffeine's frequency aware W-TinyLFU
+ * policy, so a scan of rare rows doesn't flush the popular ones. Concurrent misses of a row are loaded by one
+ * Cassandra read. Writes through this dao update or drop the cached row, writes by other nodes become visible when
+ * the entry expires. Cached rows are returned as read-only maps.
+ *
+ * The cache is only updated after the underlying dao succeeded, so it has to throw its failures: an
+ * {@link AstyanaxDao} {@link AstyanaxDao#setFailSilently(boolean) failing silently} would have an empty row cached for
+ * a failed read. A failed write drops the row from the cache, it is unknown what reached Cassandra.
+ *
+ * A row is loaded atomically with the writes updating it in the cache. Rows of a batch read are loaded together
+ * outside of that, so the writes are counted per stripe of rows, like in {@link CachingCountingDao}, and a row written
+ * during its batch read is not left in the cache.
+ *
+ * Slices, pages and scans are not cached.
+ * @author Gyozo_Nyari
+ *
+ */
+public class CachingDao extends ForwardingDao {
+
+    private static final int WRITE_STRIPES = 1024;
+
+    private final LoadingCache<String, Map<String, String>> cache;
+    /** Writes finished per stripe of rows, hashed like {@link cassandra.lock.StripedLock}. */
+    private final AtomicLongArray writes = new AtomicLongArray(WRITE_STRIPES);
+
+    /**
+     * Constructor.
+     * @param delegate dao to be cached
+     * @param maximumBytes maximum estimated size of the cached rows
+     * @param expireAfterSeconds time after a write or load when the entry expires, bounds how long writes of other
+     *        nodes stay hidden
+     */
+    public CachingDao(final Dao delegate, final long maximumBytes, final int expireAfterSeconds) {
+        super(delegate);
+        Assert.isTrue(maximumBytes > 0, "Maximum bytes must be positive!");
+        Assert.isTrue(expireAfterSeconds > 0, "Expiration must be positive!");
+        Assert.isTrue(!(delegate instanceof AstyanaxDao) || !((AstyanaxDao) delegate).isFailSilently(),
+                "The dao must throw its failures, call setFailSilently(false)!");
+        this.cache = Caffeine.newBuilder().maximumWeight(maximumBytes)
+                .weigher((String row, Map<String, String> columns) -> (int) Math.min(Integer.MAX_VALUE, Chunks.estimateSize(row, columns)))
+                .expireAfterWrite(expireAfterSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build(new CacheLoader<String, Map<String, String>>() {
+            @Override
+            public Map<String, String> load(String row) {
+                return readOnly(getDelegate().getValues(row));
+            }
+
+            @Override
+            public Map<String, Map<String, String>> loadAll(Iterable<? extends String> rows) {
+                Collection<String> keys = new ArrayList<String>();
+                for (String row : rows) {
+                    keys.add(row);
+                }
+                Map<String, Map<String, String>> values = getDelegate().getValues(keys);
+                Map<String, Map<String, String>> loaded = new HashMap<String, Map<String, String>>();
+                for (String row : keys) {
+                    // empty rows are cached too, they are looked up just as often
+                    Map<String, String> columns = values.get(row);
+                    loaded.put(row, columns != null ? readOnly(columns) : Collections.<String, String> emptyMap());
+                }
+                return loaded;
+            }
+        });
+    }
+
+    @Override
+    public Map<String, String> getValues(final String row) {
+        Assert.notNull(row, "Row can't be null!");
+        return cache.get(row);
+    }
+
+    /**
+     * Reads the missing rows with one batch request of the underlying dao.
+     */
+    @Override
+    public Map<String, Map<String, String>> getValues(final Collection<String> rows) {
+        Assert.notNull(rows, "Rows can't be null!");
+        Map<String, Long> writesBefore = new HashMap<String, Long>();
+        for (String row : rows) {
+            writesBefore.put(row, writes.get(stripeOf(row)));
+        }
+        Map<String, Map<String, String>> values = new HashMap<String, Map<String, String>>();
+        for (Map.Entry<String, Map<String, String>> entry : cache.getAll(rows).entrySet()) {
+            // a write racing with the batch read may have landed after the row was read
+            if (writes.get(stripeOf(entry.getKey())) != writesBefore.get(entry.getKey())) {
+                cache.invalidate(entry.getKey());
+            }
+            if (!entry.getValue().isEmpty()) {
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Merges the columns into the cached row. A row which is not cached is left to be loaded on its next read.
+     */
+    @Override
+    public void store(final String row, final Map<String, String> columns) {
+        try {
+            super.store(row, columns);
+        } catch (RuntimeException e) {
+            written(row);
+            cache.invalidate(row);
+            throw e;
+        }
+        written(row);
+        merge(row, columns);
+    }
+
+    @Override
+    public void storeAll(final Map<String, Map<String, String>> rows) {
+        try {
+            super.storeAll(rows);
+        } catch (RuntimeException e) {
+            rows.keySet().forEach(this::written);
+            cache.invalidateAll(rows.keySet());
+            throw e;
+        }
+        for (Map.Entry<String, Map<String, String>> row : rows.entrySet()) {
+            written(row.getKey());
+            merge(row.getKey(), row.getValue());
+        }
+    }
+
+    @Override
+    public void remove(final String row) {
+        try {
+            super.remove(row);
+        } catch (RuntimeException e) {
+            written(row);
+            cache.invalidate(row);
+            throw e;
+        }
+        written(row);
+        cache.put(row, Collections.<String, String> emptyMap());
+    }
+
+    @Override
+    public void removeAll(final Collection<String> rows) {
+        try {
+            super.removeAll(rows);
+        } catch (RuntimeException e) {
+            rows.forEach(this::written);
+            cache.invalidateAll(rows);
+            throw e;
+        }
+        for (String row : rows) {
+            written(row);
+            cache.put(row, Collections.<String, String> emptyMap());
+        }
+    }
+
+    /**
+     * Drops a row from the cache, e.g. when another node changed it.
+     * @param row row key
+     */
+    public void invalidate(final String row) {
+        cache.invalidate(row);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return hit rate, load count and average load time (in nanoseconds) and evictions
+     */
+    public CacheStats getStatistics() {
+        return cache.stats();
+    }
+
+    /**
+     * @return number of cached rows
+     */
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    private void merge(final String row, final Map<String, String> columns) {
+        // runs after a load of the row in flight, so a row read before the write doesn't stay in the cache
+        cache.asMap().computeIfPresent(row, (key, cached) -> {
+            Map<String, String> merged = new HashMap<String, String>(cached);
+            merged.putAll(columns);
+            return readOnly(merged);
+        });
+    }
+
+    /**
+     * Counts a finished write of the row, before the cache is updated, so a batch read checking the count after
+     * caching the row either sees the write or has the row updated by it.
+     */
+    private void written(final String row) {
+        writes.incrementAndGet(stripeOf(row));
+    }
+
+    private static int stripeOf(final String row) {
+        int h = row.hashCode();
+        h ^= (h >>> 16);
+        return h & (WRITE_STRIPES - 1);
+    }
+
+    private static Map<String, String> readOnly(final Map<String, String> columns) {
+        return Collections.unmodifiableMap(columns);
+    }
+
+}
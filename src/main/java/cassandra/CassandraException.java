@@ -7,6 +7,10 @@ package cassandra;
 public class CassandraException extends RuntimeException {
 
 
+    public CassandraException(String message) {
+        super(message);
+    }
+
     public CassandraException(String message, Throwable cause) {
         super(message, cause);
     }
@@ -0,0 +1,281 @@
+package cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import java.util.function.ToLongBiFunction;
+import java.util.function.ToLongFunction;
+
+import org.springframework.util.Assert;
+
+/**
+ * Splits large batch requests into chunks, by number of items or by estimated size.
+ * @author Gyozo_Nyari
+ *
+ */
+final class Chunks {
+
+    private static final int ROW_OVERHEAD = 32;
+    private static final int COLUMN_OVERHEAD = 32;
+
+    private Chunks() {
+    }
+
+    static <T> List<List<T>> split(final Collection<T> items, final int size) {
+        Assert.isTrue(size > 0, "Chunk size must be positive!");
+        List<List<T>> chunks = new ArrayList<List<T>>();
+        List<T> chunk = new ArrayList<T>(Math.min(size, items.size()));
+        for (T item : items) {
+            if (chunk.size() == size) {
+                chunks.add(chunk);
+                chunk = new ArrayList<T>(size);
+            }
+            chunk.add(item);
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    static <K, V> List<Map<K, V>> split(final Map<K, V> map, final int size) {
+        Assert.isTrue(size > 0, "Chunk size must be positive!");
+        List<Map<K, V>> chunks = new ArrayList<Map<K, V>>();
+        Map<K, V> chunk = new HashMap<K, V>();
+        for (Map.Entry<K, V> entry : map.entrySet()) {
+            if (chunk.size() == size) {
+                chunks.add(chunk);
+                chunk = new HashMap<K, V>();
+            }
+            chunk.put(entry.getKey(), entry.getValue());
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Splits rows so the estimated serialized size of a chunk stays under the limit. A row too large to fit is split
+     * by its columns, each part of it is sent with its row key in the next chunks; a single column larger than the
+     * limit makes a chunk by itself.
+     * @param rows columns by row key
+     * @param maxBytes size limit of a chunk
+     * @param rowSize estimates the size of a row without its columns
+     * @param columnSize estimates the size of a column
+     * @return chunks
+     */
+    static <K, C, V> List<Map<K, Map<C, V>>> splitBySize(final Map<K, Map<C, V>> rows, final long maxBytes,
+            final ToLongFunction<K> rowSize, final ToLongBiFunction<C, V> columnSize) {
+        Assert.isTrue(maxBytes > 0, "Chunk size must be positive!");
+        List<Map<K, Map<C, V>>> chunks = new ArrayList<Map<K, Map<C, V>>>();
+        Map<K, Map<C, V>> chunk = new HashMap<K, Map<C, V>>();
+        long chunkBytes = 0;
+        for (Map.Entry<K, Map<C, V>> row : rows.entrySet()) {
+            long headerBytes = rowSize.applyAsLong(row.getKey());
+            if (!chunk.isEmpty() && chunkBytes + headerBytes > maxBytes) {
+                chunks.add(chunk);
+                chunk = new HashMap<K, Map<C, V>>();
+                chunkBytes = 0;
+            }
+            Map<C, V> part = new HashMap<C, V>();
+            long partBytes = headerBytes;
+            for (Map.Entry<C, V> column : row.getValue().entrySet()) {
+                long bytes = columnSize.applyAsLong(column.getKey(), column.getValue());
+                if ((!chunk.isEmpty() || !part.isEmpty()) && chunkBytes + partBytes + bytes > maxBytes) {
+                    if (!part.isEmpty()) {
+                        chunk.put(row.getKey(), part);
+                        part = new HashMap<C, V>();
+                    }
+                    chunks.add(chunk);
+                    chunk = new HashMap<K, Map<C, V>>();
+                    chunkBytes = 0;
+                    partBytes = headerBytes;
+                }
+                part.put(column.getKey(), column.getValue());
+                partBytes += bytes;
+            }
+            if (!part.isEmpty() || row.getValue().isEmpty()) {
+                chunk.put(row.getKey(), part);
+                chunkBytes += partBytes;
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Splits row keys so the estimated serialized size of a chunk stays under the limit.
+     * @param rows row keys
+     * @param maxBytes size limit of a chunk
+     * @param size estimates the size of a row key
+     * @return chunks
+     */
+    static <T> List<List<T>> splitBySize(final Collection<T> rows, final long maxBytes, final ToLongFunction<T> size) {
+        Assert.isTrue(maxBytes > 0, "Chunk size must be positive!");
+        List<List<T>> chunks = new ArrayList<List<T>>();
+        List<T> chunk = new ArrayList<T>();
+        long chunkBytes = 0;
+        for (T row : rows) {
+            long rowBytes = size.applyAsLong(row);
+            if (!chunk.isEmpty() && chunkBytes + rowBytes > maxBytes) {
+                chunks.add(chunk);
+                chunk = new ArrayList<T>();
+                chunkBytes = 0;
+            }
+            chunk.add(row);
+            chunkBytes += rowBytes;
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Estimates the size of a row in a Thrift batch_mutate frame: the encoded strings plus a fixed overhead per row
+     * and column for the Thrift structure headers, timestamp and ttl.
+     */
+    static long estimateSize(final String row, final Map<String, String> columns) {
+        long bytes = ROW_OVERHEAD + utf8Length(row);
+        for (Map.Entry<String, String> column : columns.entrySet()) {
+            bytes += COLUMN_OVERHEAD + utf8Length(column.getKey()) + utf8Length(column.getValue());
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the size of a binary row the same way as {@link #estimateSize(String, Map)}.
+     */
+    static long estimateBinarySize(final ByteBuffer row, final Map<ByteBuffer, ByteBuffer> columns) {
+        long bytes = estimateBinarySize(row);
+        for (Map.Entry<ByteBuffer, ByteBuffer> column : columns.entrySet()) {
+            bytes += estimateBinarySize(column.getKey(), column.getValue());
+        }
+        return bytes;
+    }
+
+    static long estimateBinarySize(final ByteBuffer name, final ByteBuffer value) {
+        return COLUMN_OVERHEAD + name.remaining() + (value != null ? value.remaining() : 0);
+    }
+
+    static long estimateBinarySize(final ByteBuffer row) {
+        return ROW_OVERHEAD + row.remaining();
+    }
+
+    private static long utf8Length(final String value) {
+        if (value == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                // a surrogate pair is 4 bytes, 2 per char
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Runs the tasks on the executor and waits for all of them. The last task, and any task the executor rejects,
+     * runs on the calling thread.
+     * @param tasks tasks
+     * @param executor executor
+     * @return results in the order of the tasks
+     */
+    static <T> List<T> invokeAll(final List<Supplier<T>> tasks, final ExecutorService executor) {
+        return join(AsyncSupport.allOf(submitAll(tasks, executor)));
+    }
+
+    /**
+     * Starts the tasks like {@link #invokeAll(List, ExecutorService)} without waiting for them. A task failing on the
+     * calling thread fails its future instead of throwing.
+     * @param tasks tasks
+     * @param executor executor
+     * @return futures in the order of the tasks
+     */
+    static <T> List<CompletableFuture<T>> submitAll(final List<Supplier<T>> tasks, final ExecutorService executor) {
+        List<CompletableFuture<T>> futures = new ArrayList<CompletableFuture<T>>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            Supplier<T> task = tasks.get(i);
+            if (i < tasks.size() - 1) {
+                try {
+                    futures.add(CompletableFuture.supplyAsync(task, executor));
+                    continue;
+                } catch (RejectedExecutionException e) {
+                    // runs on the calling thread
+                }
+            }
+            futures.add(callerRuns(task));
+        }
+        return futures;
+    }
+
+    /**
+     * Waits for the writes of the chunks of a batch increment, a failed chunk doesn't stop the others.
+     * @param chunks increments of the chunks
+     * @param futures writes of the chunks, in the order of the chunks
+     * @throws PartialIncrementException with the increments of the failed chunks, if any failed
+     */
+    static void joinIncrements(final List<Map<CredentialKey, Integer>> chunks, final List<CompletableFuture<Void>> futures) {
+        Map<CredentialKey, Integer> failedIncrements = new HashMap<CredentialKey, Integer>();
+        Throwable failure = null;
+        int total = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            total += chunks.get(i).size();
+            try {
+                futures.get(i).join();
+            } catch (CompletionException | CancellationException e) {
+                failedIncrements.putAll(chunks.get(i));
+                failure = failure == null ? AsyncSupport.unwrap(e) : failure;
+            }
+        }
+        if (failure != null) {
+            throw new PartialIncrementException("incrementNumberOfAuthenticationFailures failed for " + failedIncrements.size() + " of "
+                    + total + " credentials!", failedIncrements, failure);
+        }
+    }
+
+    /**
+     * Waits for the future, rethrowing the original runtime exception of a failure.
+     */
+    static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = AsyncSupport.unwrap(e);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static <T> CompletableFuture<T> callerRuns(final Supplier<T> task) {
+        try {
+            return CompletableFuture.completedFuture(task.get());
+        } catch (RuntimeException e) {
+            CompletableFuture<T> future = new CompletableFuture<T>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package cassandra;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Iterates over a column range page by page, a page is read when it is needed. Each page holds at most
+ * {@link ColumnRange#getLimit()} columns as a {@link LazyColumnMap}, so memory use depends on the page size and not
+ * on the width of the row.
+ * @author Gyozo_Nyari
+ *
+ * @param <C> type of the client library's column
+ */
+final class ColumnPages<C> implements Iterator<Map<String, String>> {
+
+    /**
+     * Reads one slice of the row.
+     * @param <C> type of the client library's column
+     */
+    interface Slicer<C> {
+
+        /**
+         * @param range slice to be read
+         * @return columns in column order
+         */
+        List<C> slice(ColumnRange range);
+    }
+
+    private final Slicer<C> slicer;
+    private final Function<C, String> name;
+    private final Function<C, String> value;
+    private final int pageSize;
+    private ColumnRange range;
+    private boolean first = true;
+    private boolean exhausted;
+    private Map<String, String> next;
+
+    /**
+     * Constructor.
+     * @param range range to be iterated, its limit is the page size
+     * @param slicer reads a slice
+     * @param name decodes the name of a column
+     * @param value decodes the value of a column
+     */
+    ColumnPages(final ColumnRange range, final Slicer<C> slicer, final Function<C, String> name, final Function<C, String> value) {
+        this.range = range;
+        this.slicer = slicer;
+        this.name = name;
+        this.value = value;
+        this.pageSize = range.getLimit();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !exhausted) {
+            next = fetch();
+        }
+        return next != null;
+    }
+
+    @Override
+    public Map<String, String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Map<String, String> page = next;
+        next = null;
+        return page;
+    }
+
+    private Map<String, String> fetch() {
+        // the start of the following pages is the last column already returned, one more is read to make up for it
+        int limit = first ? pageSize : pageSize + 1;
+        List<C> columns = slicer.slice(new ColumnRange(range.getStart(), range.getEnd(), limit, range.isReversed()));
+        exhausted = columns.size() < limit;
+        if (!first && !columns.isEmpty() && name.apply(columns.get(0)).equals(range.getStart())) {
+            columns = columns.subList(1, columns.size());
+        } else if (columns.size() > pageSize) {
+            // the last column was deleted meanwhile
+            columns = columns.subList(0, pageSize);
+        }
+        first = false;
+        if (columns.isEmpty()) {
+            exhausted = true;
+            return null;
+        }
+        range = range.from(name.apply(columns.get(columns.size() - 1)));
+        return new LazyColumnMap<C>(columns, name, value);
+    }
+
+}
@@ -0,0 +1,78 @@
+package cassandra;
+
+import org.springframework.util.Assert;
+
+/**
+ * Slice of the columns of a row: columns from start to end, at most limit of them. With reversed set the columns are
+ * read from start downwards. A null start or end leaves that side of the slice open.
+ * @author Gyozo_Nyari
+ *
+ */
+public final class ColumnRange {
+
+    private final String start;
+    private final String end;
+    private final int limit;
+    private final boolean reversed;
+
+    /**
+     * Constructor.
+     * @param start first column, null for the beginning (end, if reversed) of the row
+     * @param end last column, null for the end (beginning, if reversed) of the row
+     * @param limit maximum number of columns, the page size when the range is read in pages
+     * @param reversed whether the columns are read in descending order
+     */
+    public ColumnRange(final String start, final String end, final int limit, final boolean reversed) {
+        Assert.isTrue(limit > 0, "Limit must be positive!");
+        this.start = start;
+        this.end = end;
+        this.limit = limit;
+        this.reversed = reversed;
+    }
+
+    /**
+     * @param limit maximum number of columns
+     * @return the first columns of a row
+     */
+    public static ColumnRange first(final int limit) {
+        return new ColumnRange(null, null, limit, false);
+    }
+
+    /**
+     * @param limit maximum number of columns
+     * @return the last columns of a row, in descending order
+     */
+    public static ColumnRange last(final int limit) {
+        return new ColumnRange(null, null, limit, true);
+    }
+
+    /**
+     * @param from first column of the range, inclusive
+     * @return the same range starting at the given column
+     */
+    ColumnRange from(final String from) {
+        return new ColumnRange(from, end, limit, reversed);
+    }
+
+    public String getStart() {
+        return start;
+    }
+
+    public String getEnd() {
+        return end;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean isReversed() {
+        return reversed;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnRange [start=" + start + ", end=" + end + ", limit=" + limit + ", reversed=" + reversed + "]";
+    }
+
+}
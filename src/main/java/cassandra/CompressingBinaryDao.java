@@ -0,0 +1,87 @@
+package cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+import cassandra.codec.ValueCompressor;
+
+/**
+ * {@link BinaryDao} compressing the values written and decompressing the values read through another one. Rows
+ * written without compression can still be read.
+ * @author Gyozo_Nyari
+ *
+ */
+public class CompressingBinaryDao implements BinaryDao {
+
+    private final BinaryDao delegate;
+    private final ValueCompressor compressor;
+
+    /**
+     * Constructor.
+     * @param delegate the dao storing the compressed values
+     * @param compressor compressor
+     */
+    public CompressingBinaryDao(final BinaryDao delegate, final ValueCompressor compressor) {
+        Assert.notNull(delegate, "Delegate can't be null!");
+        Assert.notNull(compressor, "Compressor can't be null!");
+        this.delegate = delegate;
+        this.compressor = compressor;
+    }
+
+    @Override
+    public Map<ByteBuffer, ByteBuffer> getValues(final ByteBuffer row) {
+        return compressor.decode(delegate.getValues(row));
+    }
+
+    @Override
+    public Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> getValues(final Collection<ByteBuffer> rows) {
+        try {
+            return decodeRows(delegate.getValues(rows));
+        } catch (PartialResultException e) {
+            throw new PartialResultException(e.getMessage(), decodeRows(e.getRows()), e.getFailedRows(), e.getCause());
+        }
+    }
+
+    @Override
+    public void store(final ByteBuffer row, final Map<ByteBuffer, ByteBuffer> columns) {
+        Assert.notNull(columns, "Columns cant be null!");
+        delegate.store(row, compressor.encode(columns));
+    }
+
+    @Override
+    public void storeAll(final Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> rows) {
+        Assert.notNull(rows, "Rows cant be null!");
+        Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> encoded = new HashMap<ByteBuffer, Map<ByteBuffer, ByteBuffer>>(rows.size() * 4 / 3 + 1);
+        for (Map.Entry<ByteBuffer, Map<ByteBuffer, ByteBuffer>> row : rows.entrySet()) {
+            encoded.put(row.getKey(), compressor.encode(row.getValue()));
+        }
+        delegate.storeAll(encoded);
+    }
+
+    @Override
+    public void remove(final ByteBuffer row) {
+        delegate.remove(row);
+    }
+
+    @Override
+    public void removeAll(final Collection<ByteBuffer> rows) {
+        delegate.removeAll(rows);
+    }
+
+    public ValueCompressor getCompressor() {
+        return compressor;
+    }
+
+    private Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> decodeRows(final Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> rows) {
+        Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> decoded = new HashMap<ByteBuffer, Map<ByteBuffer, ByteBuffer>>(rows.size() * 4 / 3 + 1);
+        for (Map.Entry<ByteBuffer, Map<ByteBuffer, ByteBuffer>> row : rows.entrySet()) {
+            decoded.put(row.getKey(), compressor.decode(row.getValue()));
+        }
+        return decoded;
+    }
+
+}
@@ -1,6 +1,7 @@
 package cassandra;
 
 /**
+ * Connection settings of the examples. The host name may list several comma separated seeds, with optional ports.
  * @author Gyozo_Nyari
  *
  */
@@ -11,8 +12,21 @@ public class Configuration {
     private String clusterName = "default";
     private int port = 9160;
     private int maxConnsPerHost = 50;
+    private int initConnsPerHost = 2;
+    private int maxBlockedThreadsPerHost = 20;
+    private int maxTimeoutWhenExhausted = 2000;
     private int socketTimeout = 15000;
+    private int connectTimeout = 2000;
     private String connectionPoolName = "MyConnectionPool";
+    private String discoveryType = "RING_DESCRIBE";
+    private String connectionPoolType = "TOKEN_AWARE";
+    private int discoveryDelaySeconds = 30;
+    private boolean latencyAware = true;
+    private int latencyUpdateIntervalMillis = 2000;
+    private int latencyResetIntervalMillis = 30000;
+    private int latencyWindowSize = 100;
+    private double latencyBadnessThreshold = 0.5;
+    private int driverRetries = 0;
 
     private static Configuration configuration;
 
@@ -27,28 +41,171 @@ public class Configuration {
         return hostname;
     }
 
+    public void setHostname(String hostname) {
+        this.hostname = hostname;
+    }
+
     public String getKeyspace() {
         return keyspace;
     }
 
+    public void setKeyspace(String keyspace) {
+        this.keyspace = keyspace;
+    }
+
     public String getClusterName() {
         return clusterName;
     }
 
+    public void setClusterName(String clusterName) {
+        this.clusterName = clusterName;
+    }
+
     public int getPort() {
         return port;
     }
 
+    public void setPort(int port) {
+        this.port = port;
+    }
+
     public int getMaxConnsPerHost() {
         return maxConnsPerHost;
     }
 
+    public void setMaxConnsPerHost(int maxConnsPerHost) {
+        this.maxConnsPerHost = maxConnsPerHost;
+    }
+
+    public int getInitConnsPerHost() {
+        return initConnsPerHost;
+    }
+
+    public void setInitConnsPerHost(int initConnsPerHost) {
+        this.initConnsPerHost = initConnsPerHost;
+    }
+
+    public int getMaxBlockedThreadsPerHost() {
+        return maxBlockedThreadsPerHost;
+    }
+
+    public void setMaxBlockedThreadsPerHost(int maxBlockedThreadsPerHost) {
+        this.maxBlockedThreadsPerHost = maxBlockedThreadsPerHost;
+    }
+
+    public int getMaxTimeoutWhenExhausted() {
+        return maxTimeoutWhenExhausted;
+    }
+
+    public void setMaxTimeoutWhenExhausted(int maxTimeoutWhenExhausted) {
+        this.maxTimeoutWhenExhausted = maxTimeoutWhenExhausted;
+    }
+
     public int getSocketTimeout() {
         return socketTimeout;
     }
 
+    public void setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
     public String getConnectionPoolName() {
         return connectionPoolName;
     }
 
+    public void setConnectionPoolName(String connectionPoolName) {
+        this.connectionPoolName = connectionPoolName;
+    }
+
+    /**
+     * @return NONE, RING_DESCRIBE, DISCOVERY_SERVICE or TOKEN_AWARE
+     */
+    public String getDiscoveryType() {
+        return discoveryType;
+    }
+
+    public void setDiscoveryType(String discoveryType) {
+        this.discoveryType = discoveryType;
+    }
+
+    /**
+     * @return TOKEN_AWARE, ROUND_ROBIN or BAG
+     */
+    public String getConnectionPoolType() {
+        return connectionPoolType;
+    }
+
+    public void setConnectionPoolType(String connectionPoolType) {
+        this.connectionPoolType = connectionPoolType;
+    }
+
+    public int getDiscoveryDelaySeconds() {
+        return discoveryDelaySeconds;
+    }
+
+    public void setDiscoveryDelaySeconds(int discoveryDelaySeconds) {
+        this.discoveryDelaySeconds = discoveryDelaySeconds;
+    }
+
+    public boolean isLatencyAware() {
+        return latencyAware;
+    }
+
+    public void setLatencyAware(boolean latencyAware) {
+        this.latencyAware = latencyAware;
+    }
+
+    public int getLatencyUpdateIntervalMillis() {
+        return latencyUpdateIntervalMillis;
+    }
+
+    public void setLatencyUpdateIntervalMillis(int latencyUpdateIntervalMillis) {
+        this.latencyUpdateIntervalMillis = latencyUpdateIntervalMillis;
+    }
+
+    public int getLatencyResetIntervalMillis() {
+        return latencyResetIntervalMillis;
+    }
+
+    public void setLatencyResetIntervalMillis(int latencyResetIntervalMillis) {
+        this.latencyResetIntervalMillis = latencyResetIntervalMillis;
+    }
+
+    public int getLatencyWindowSize() {
+        return latencyWindowSize;
+    }
+
+    public void setLatencyWindowSize(int latencyWindowSize) {
+        this.latencyWindowSize = latencyWindowSize;
+    }
+
+    public double getLatencyBadnessThreshold() {
+        return latencyBadnessThreshold;
+    }
+
+    public void setLatencyBadnessThreshold(double latencyBadnessThreshold) {
+        this.latencyBadnessThreshold = latencyBadnessThreshold;
+    }
+
+    public int getDriverRetries() {
+        return driverRetries;
+    }
+
+    /**
+     * Sets how many times the drivers retry a failed request on other hosts. None by default, retries are left to
+     * {@link cassandra.resilience.Resilience}, which bounds them by the deadline and the retry budget.
+     * @param driverRetries number of retries
+     */
+    public void setDriverRetries(int driverRetries) {
+        this.driverRetries = driverRetries;
+    }
+
 }
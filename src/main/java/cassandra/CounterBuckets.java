@@ -0,0 +1,85 @@
+package cassandra;
+
+import org.springframework.util.Assert;
+
+/**
+ * Time-bucketed row keys for counter column families. Counter columns can't have a TTL, so counters are reset by
+ * moving on to a new row when the bucket changes.
+ *
+ * A count is the sum of the current and the previous bucket, so a failure is counted for at least one and at most
+ * two bucket lengths instead of dropping to zero at the boundary. Rows older than the previous bucket are never read
+ * again, the daos delete them when asked to purge.
+ * @author Gyozo_Nyari
+ *
+ */
+class CounterBuckets {
+
+    private final long bucketMillis;
+
+    CounterBuckets(final int bucketSeconds) {
+        Assert.isTrue(bucketSeconds > 0, "Bucket size must be positive!");
+        this.bucketMillis = bucketSeconds * 1000L;
+    }
+
+    /**
+     * @return the current bucket, pass it to the methods below so the keys of one call agree
+     */
+    long currentBucket() {
+        return System.currentTimeMillis() / bucketMillis;
+    }
+
+    /**
+     * @param key row key
+     * @param bucket current bucket
+     * @return the key of the row holding the counters incremented now
+     */
+    String currentRowKey(final String key, final long bucket) {
+        return rowKey(key, bucket);
+    }
+
+    /**
+     * @param key row key
+     * @param bucket current bucket
+     * @return the key of the row holding the counters of the previous bucket, still counted
+     */
+    String previousRowKey(final String key, final long bucket) {
+        return rowKey(key, bucket - 1);
+    }
+
+    /**
+     * @param rowKey key of a counter row
+     * @param bucket current bucket
+     * @return whether the row belongs to a bucket older than the previous one, false for keys of other formats
+     */
+    boolean isExpired(final String rowKey, final long bucket) {
+        int separator = rowKey.lastIndexOf(':');
+        if (separator < 0) {
+            return false;
+        }
+        try {
+            return Long.parseLong(rowKey.substring(separator + 1)) < bucket - 1;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Splits the change setting a count between the two counted buckets so that neither counter is decremented below
+     * zero: a negative counter left in the current bucket would cancel failures once it became the previous one. The
+     * previous bucket gives up the part of the count above the value, the current bucket holds the rest.
+     * @param previous count read from the previous bucket
+     * @param current count read from the current bucket
+     * @param value count to set
+     * @return the increments of the previous and of the current bucket
+     */
+    static long[] setIncrements(final long previous, final long current, final int value) {
+        Assert.isTrue(value >= 0, "Value can't be negative!");
+        long keptPrevious = Math.min(previous, value);
+        return new long[] {keptPrevious - previous, value - keptPrevious - current};
+    }
+
+    private static String rowKey(final String key, final long bucket) {
+        return key + ":" + bucket;
+    }
+
+}
@@ -1,5 +1,6 @@
 package cassandra;
 
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -24,6 +25,24 @@ public interface CountingDao {
      */
     Map<String, Integer> getNumberOfAuthenticationFailures(final String userId);
 
+    /**
+     * Returns the number of authentication failures for given user's credentials without boxing. Backends read it
+     * straight from the row, the default copies {@link #getNumberOfAuthenticationFailures(String)} so decorators
+     * keep their semantics.
+     * @param userId user id
+     * @return credentials and auth failures
+     */
+    default CredentialCounts getAuthenticationFailureCounts(final String userId) {
+        return CredentialCounts.of(getNumberOfAuthenticationFailures(userId));
+    }
+
+    /**
+     * Returns the number of authentication failures for many users at once
+     * @param userIds user ids
+     * @return map of user ids and their maps of credentials and auth failures, users without failures are left out
+     */
+    Map<String, Map<String, Integer>> getNumberOfAuthenticationFailures(final Collection<String> userIds);
+
     /**
      * Sets the number of authentication failures
      * @param userId user id
@@ -39,4 +58,20 @@ public interface CountingDao {
      */
     void incrementNumberOfAuthenticationFailures(final String userId, final String credentials);
 
+    /**
+     * Increments the number of authentication failures and checks it against a threshold, sparing a separate read.
+     * @param userId user id
+     * @param credentials credentials
+     * @param threshold number of failures locking the credentials
+     * @return number of authentication failures after the increment and whether it reached the threshold
+     */
+    IncrementResult incrementAndCheck(final String userId, final String credentials, final int threshold);
+
+    /**
+     * Adds the given deltas to the number of authentication failures in one batch.
+     * @param increments deltas by user's credential
+     * @throws PartialIncrementException if the batch was written only partially, with the deltas not written
+     */
+    void incrementNumberOfAuthenticationFailures(final Map<CredentialKey, Integer> increments);
+
 }
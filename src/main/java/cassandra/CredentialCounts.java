@@ -0,0 +1,226 @@
+package cassandra;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+import org.springframework.util.Assert;
+
+/**
+ * Number of authentication failures by credential, without boxing. Keys and values are kept in two flat arrays of an
+ * open addressing hash table, so a lookup result costs three allocations regardless of the number of credentials.
+ *
+ * Not thread safe, a result is meant to be filled by one dao call and read afterwards.
+ * @author Gyozo_Nyari
+ *
+ */
+public final class CredentialCounts {
+
+    private static final int MINIMUM_CAPACITY = 8;
+
+    private String[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    public CredentialCounts() {
+        this(MINIMUM_CAPACITY / 2);
+    }
+
+    /**
+     * Constructor.
+     * @param expectedSize number of credentials expected, the table is not resized until it is reached
+     */
+    public CredentialCounts(final int expectedSize) {
+        Assert.isTrue(expectedSize >= 0, "Expected size can't be negative!");
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new String[capacity];
+        this.values = new int[capacity];
+    }
+
+    /**
+     * Copies a map of credentials and auth failures.
+     * @param authFailures map of credentials and auth failures
+     * @return counts
+     */
+    public static CredentialCounts of(final Map<String, Integer> authFailures) {
+        CredentialCounts counts = new CredentialCounts(authFailures.size());
+        for (Map.Entry<String, Integer> entry : authFailures.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue() != null ? entry.getValue().intValue() : 0);
+        }
+        return counts;
+    }
+
+    /**
+     * @param credential credentials
+     * @return number of authentication failures, 0 if the credentials have none
+     */
+    public int get(final String credential) {
+        int index = indexOf(credential);
+        return keys[index] != null ? values[index] : 0;
+    }
+
+    public boolean contains(final String credential) {
+        return keys[indexOf(credential)] != null;
+    }
+
+    /**
+     * Sets the number of authentication failures of the credentials.
+     * @param credential credentials
+     * @param value number of authentication failures
+     */
+    public void put(final String credential, final int value) {
+        int index = indexOf(credential);
+        if (keys[index] == null) {
+            if (insert(index, credential)) {
+                index = indexOf(credential);
+            }
+        }
+        values[index] = value;
+    }
+
+    /**
+     * Adds to the number of authentication failures of the credentials.
+     * @param credential credentials
+     * @param delta value to be added
+     */
+    public void add(final String credential, final int delta) {
+        int index = indexOf(credential);
+        if (keys[index] == null) {
+            if (insert(index, credential)) {
+                index = indexOf(credential);
+            }
+        }
+        values[index] += delta;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return number of authentication failures of all credentials
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                sum += values[i];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Calls the consumer with each credentials and its number of authentication failures, in no particular order.
+     * @param consumer consumer
+     */
+    public void forEach(final ObjIntConsumer<String> consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return map of credentials and auth failures
+     */
+    public Map<String, Integer> toMap() {
+        final Map<String, Integer> authFailures = new HashMap<String, Integer>(size * 4 / 3 + 1);
+        forEach((credential, value) -> authFailures.put(credential, value));
+        return authFailures;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("{");
+        forEach((credential, value) -> {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(credential).append('=').append(value);
+        });
+        return builder.append('}').toString();
+    }
+
+    private int indexOf(final String credential) {
+        Assert.notNull(credential, "Credentials can't be null!");
+        int h = credential.hashCode();
+        int mask = keys.length - 1;
+        int index = (h ^ (h >>> 16)) & mask;
+        while (keys[index] != null && !keys[index].equals(credential)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * @return whether the table was resized, so the index is no longer valid
+     */
+    private boolean insert(final int index, final String credential) {
+        keys[index] = credential;
+        size++;
+        // keep the load factor at most 0.5, probe sequences stay short
+        if (size * 2 > keys.length) {
+            rehash(keys.length << 1);
+            return true;
+        }
+        return false;
+    }
+
+    private void rehash(final int capacity) {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new String[capacity];
+        values = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CredentialCounts)) {
+            return false;
+        }
+        final CredentialCounts other = (CredentialCounts) obj;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && (!other.contains(keys[i]) || other.get(keys[i]) != values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                hash += keys[i].hashCode() ^ values[i];
+            }
+        }
+        return hash;
+    }
+
+}
@@ -0,0 +1,57 @@
+package cassandra;
+
+import org.springframework.util.Assert;
+
+/**
+ * Identifies the authentication failure counter of a user's credential.
+ * @author Gyozo_Nyari
+ *
+ */
+public final class CredentialKey {
+
+    private final String userId;
+    private final String credential;
+
+    /**
+     * Constructor.
+     * @param userId user id
+     * @param credential credential
+     */
+    public CredentialKey(final String userId, final String credential) {
+        Assert.notNull(userId, "UserId can't be null!");
+        Assert.notNull(credential, "Credential can't be null!");
+        this.userId = userId;
+        this.credential = credential;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getCredential() {
+        return credential;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * userId.hashCode() + credential.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CredentialKey)) {
+            return false;
+        }
+        CredentialKey other = (CredentialKey) obj;
+        return userId.equals(other.userId) && credential.equals(other.credential);
+    }
+
+    @Override
+    public String toString() {
+        return "CredentialKey [userId=" + userId + ", credential=" + credential + "]";
+    }
+
+}
@@ -1,6 +1,9 @@
 package cassandra;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * @author Gyozo_Nyari
@@ -15,6 +18,22 @@ public interface Dao {
      */
     Map<String, String> getValues(String row);
 
+    /**
+     * Returns a slice of a row, the values are decoded when they are accessed.
+     * @param row row key
+     * @param range columns to be read
+     * @return read-only map of columns in column order
+     */
+    Map<String, String> getValues(String row, ColumnRange range);
+
+    /**
+     * Iterates over a slice of a row page by page, the next page is read when it is needed.
+     * @param row row key
+     * @param range columns to be read, its limit is the page size
+     * @return iterator of read-only maps of columns in column order
+     */
+    Iterator<Map<String, String>> getPages(String row, ColumnRange range);
+
     /**
      * Stores a row.
      * @param row row key
@@ -27,4 +46,39 @@ public interface Dao {
      * @param row row key
      */
     void remove(String row);
+
+    /**
+     * Returns many rows at once.
+     * @param rows row keys
+     * @return map of row keys and their columns, empty rows are left out
+     */
+    Map<String, Map<String, String>> getValues(Collection<String> rows);
+
+    /**
+     * Stores many rows in batches.
+     * @param rows columns to be stored by row key
+     */
+    void storeAll(Map<String, Map<String, String>> rows);
+
+    /**
+     * Removes many rows in batches.
+     * @param rows row keys
+     */
+    void removeAll(Collection<String> rows);
+
+    /**
+     * Streams every row of the column family page by page, so memory use doesn't grow with its size. With more
+     * than one scan thread the consumer is called concurrently, in no particular row order.
+     * @param consumer called with the row key and the columns of each non-empty row
+     */
+    void forEachRow(BiConsumer<String, Map<String, String>> consumer);
+
+    /**
+     * Streams every row like {@link #forEachRow(BiConsumer)}, but hands the columns over a page at a time, so a wide
+     * row is never held in memory as a whole. The pages of a row follow each other in column order.
+     * @param consumer called with the row key and each page of columns of each non-empty row
+     */
+    default void forEachRowPage(BiConsumer<String, Map<String, String>> consumer) {
+        forEachRow(consumer);
+    }
 }
@@ -6,11 +6,6 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import me.prettyprint.cassandra.service.CassandraHostConfigurator;
-import me.prettyprint.hector.api.Cluster;
-import me.prettyprint.hector.api.factory.HFactory;
-
-
 import com.netflix.astyanax.AstyanaxContext;
 import com.netflix.astyanax.Keyspace;
 import com.netflix.astyanax.model.ColumnFamily;
@@ -23,7 +18,6 @@ import com.netflix.astyanax.serializers.StringSerializer;
  */
 public class DaoUser {
 
-    private static final String DEFAULT_CLUSTER_NAME = "default";
     private static final Logger LOG = LoggerFactory.getLogger(DaoUser.class);
 
 	/**
@@ -31,63 +25,43 @@ public class DaoUser {
      */
     public static void main(String[] args) {
         String columnFamilyName = "cassandra_test";
-
+        SessionRegistry registry = SessionRegistry.getInstance();
 
         LOG.debug("Initializing AstyanaxDao...");
-        Configuration configuration = Configuration.getConfiguration();
-        AstyanaxDao adao = getAstyanaxDao(columnFamilyName);
-        Map<String, String> columns = new HashMap<String, String>();
-        columns.put("name", "John Smith");
-        columns.put("bar", "foo");
-        columns.put("Phone", "12345678");
-        LOG.debug("AstyanaxDao - Storing values: {}", columns);
-        adao.store("row1", columns);
-        Map<String, String> astyanaxValues = adao.getValues("row1");
-        LOG.debug("AstyanaxDao - Retrieving values:" +  astyanaxValues);
-
-
-        LOG.debug("Initializing HectorDao...");
-        me.prettyprint.hector.api.Keyspace keyspace = createHectorKeyspace(configuration.getHostname(), configuration.getKeyspace());
-        HectorDao hdao = new HectorDao(keyspace, columnFamilyName);
-        LOG.debug("HectorDao - Storing values: {}", columns);
-        hdao.store("row2", columns);
-        Map<String, String> hectorValues = hdao.getValues("row2");
-        LOG.debug("HectorDao - Retrieving values:" + hectorValues);
+        AstyanaxContext<Keyspace> context = registry.acquireAstyanax();
+        me.prettyprint.hector.api.Keyspace keyspace = registry.acquireHector();
+        try {
+            AstyanaxDao adao = getAstyanaxDao(context, columnFamilyName);
+            Map<String, String> columns = new HashMap<String, String>();
+            columns.put("name", "John Smith");
+            columns.put("bar", "foo");
+            columns.put("Phone", "12345678");
+            LOG.debug("AstyanaxDao - Storing values: {}", columns);
+            adao.store("row1", columns);
+            Map<String, String> astyanaxValues = adao.getValues("row1");
+            LOG.debug("AstyanaxDao - Retrieving values:" +  astyanaxValues);
+
+
+            LOG.debug("Initializing HectorDao...");
+            HectorDao hdao = new HectorDao(keyspace, columnFamilyName);
+            LOG.debug("HectorDao - Storing values: {}", columns);
+            hdao.store("row2", columns);
+            Map<String, String> hectorValues = hdao.getValues("row2");
+            LOG.debug("HectorDao - Retrieving values:" + hectorValues);
+            hdao.close();
+        } finally {
+            registry.release(keyspace);
+            registry.release(context);
+        }
 
         LOG.debug("Finished.");
     }
 
-
-    private static me.prettyprint.hector.api.Keyspace createHectorKeyspace(String hostnames, String keyspaceName) {
-        CassandraHostConfigurator cassandraHostConfigurator = new CassandraHostConfigurator(hostnames);
-
-        Cluster cluster = HFactory.createCluster(DEFAULT_CLUSTER_NAME, cassandraHostConfigurator);
-        me.prettyprint.hector.api.Keyspace keyspace = HFactory.createKeyspace(keyspaceName, cluster);
-        return keyspace;
-    }
-
-    private static AstyanaxDao getAstyanaxDao(String columnFamilyName) {
-        AstyanaxContext<Keyspace> context = createAstyanaxConfig();
+    private static AstyanaxDao getAstyanaxDao(AstyanaxContext<Keyspace> context, String columnFamilyName) {
         ColumnFamily<String, String> columnFamily = new ColumnFamily<String, String>(columnFamilyName, StringSerializer.get(),
                 StringSerializer.get());
         AstyanaxDao dao = new AstyanaxDao(context, columnFamily);
         return dao;
     }
 
-    public static AstyanaxContext<Keyspace> createAstyanaxConfig() {
-        Configuration configuration = Configuration.getConfiguration();
-        AstyanaxContextFactory factory = new AstyanaxContextFactory();
-        factory.setHostNames(configuration.getHostname());
-        factory.setClusterName(configuration.getClusterName());
-        factory.setKeyspace(configuration.getKeyspace());
-        factory.setPort(configuration.getPort());
-        factory.setMaxConnsPerHost(configuration.getPort());
-        factory.setSocketTimeout(configuration.getSocketTimeout());
-        factory.setConnectionPoolName(configuration.getConnectionPoolName());
-
-        AstyanaxContext<Keyspace> context = factory.create();
-
-        return context;
-    }
-
 }
@@ -0,0 +1,30 @@
+package cassandra;
+
+import com.netflix.astyanax.annotations.Component;
+
+/**
+ * Column name of a per-minute authentication failure bucket: (credential, minute).
+ * @author Gyozo_Nyari
+ *
+ */
+public class FailureBucket {
+
+    @Component(ordinal = 0)
+    public String credential;
+    @Component(ordinal = 1)
+    public long minute;
+
+    public FailureBucket() {
+    }
+
+    public FailureBucket(String credential, long minute) {
+        this.credential = credential;
+        this.minute = minute;
+    }
+
+    @Override
+    public String toString() {
+        return "FailureBucket [credential=" + credential + ", minute=" + minute + "]";
+    }
+
+}
@@ -0,0 +1,65 @@
+package cassandra;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link CountingDao} which forwards every call to another one. Decorators override what they need.
+ * @author Gyozo_Nyari
+ *
+ */
+public abstract class ForwardingCountingDao implements CountingDao {
+
+    private final CountingDao delegate;
+
+    /**
+     * Constructor.
+     * @param delegate the dao calls are forwarded to
+     */
+    protected ForwardingCountingDao(final CountingDao delegate) {
+        Assert.notNull(delegate, "Delegate can't be null!");
+        this.delegate = delegate;
+    }
+
+    protected CountingDao getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public int getNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        return delegate.getNumberOfAuthenticationFailures(userId, credentials);
+    }
+
+    @Override
+    public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId) {
+        return delegate.getNumberOfAuthenticationFailures(userId);
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> getNumberOfAuthenticationFailures(final Collection<String> userIds) {
+        return delegate.getNumberOfAuthenticationFailures(userIds);
+    }
+
+    @Override
+    public void setNumberOfAuthenticationFailures(final String userId, final String credentials, final int value) {
+        delegate.setNumberOfAuthenticationFailures(userId, credentials, value);
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        delegate.incrementNumberOfAuthenticationFailures(userId, credentials);
+    }
+
+    @Override
+    public IncrementResult incrementAndCheck(final String userId, final String credentials, final int threshold) {
+        return delegate.incrementAndCheck(userId, credentials, threshold);
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final Map<CredentialKey, Integer> increments) {
+        delegate.incrementNumberOfAuthenticationFailures(increments);
+    }
+
+}
@@ -0,0 +1,82 @@
+package cassandra;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link Dao} which forwards every call to another one. Decorators override what they need.
+ * @author Gyozo_Nyari
+ *
+ */
+public abstract class ForwardingDao implements Dao {
+
+    private final Dao delegate;
+
+    /**
+     * Constructor.
+     * @param delegate the dao calls are forwarded to
+     */
+    protected ForwardingDao(final Dao delegate) {
+        Assert.notNull(delegate, "Delegate can't be null!");
+        this.delegate = delegate;
+    }
+
+    protected Dao getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Map<String, String> getValues(final String row) {
+        return delegate.getValues(row);
+    }
+
+    @Override
+    public Map<String, String> getValues(final String row, final ColumnRange range) {
+        return delegate.getValues(row, range);
+    }
+
+    @Override
+    public Iterator<Map<String, String>> getPages(final String row, final ColumnRange range) {
+        return delegate.getPages(row, range);
+    }
+
+    @Override
+    public void store(final String row, final Map<String, String> columns) {
+        delegate.store(row, columns);
+    }
+
+    @Override
+    public void remove(final String row) {
+        delegate.remove(row);
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getValues(final Collection<String> rows) {
+        return delegate.getValues(rows);
+    }
+
+    @Override
+    public void storeAll(final Map<String, Map<String, String>> rows) {
+        delegate.storeAll(rows);
+    }
+
+    @Override
+    public void removeAll(final Collection<String> rows) {
+        delegate.removeAll(rows);
+    }
+
+    @Override
+    public void forEachRow(final BiConsumer<String, Map<String, String>> consumer) {
+        delegate.forEachRow(consumer);
+    }
+
+    @Override
+    public void forEachRowPage(final BiConsumer<String, Map<String, String>> consumer) {
+        delegate.forEachRowPage(consumer);
+    }
+
+}
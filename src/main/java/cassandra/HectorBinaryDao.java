@@ -0,0 +1,226 @@
+package cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
+import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.Serializer;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.beans.Row;
+import me.prettyprint.hector.api.exceptions.HectorException;
+import me.prettyprint.hector.api.factory.HFactory;
+import me.prettyprint.hector.api.mutation.Mutator;
+import me.prettyprint.hector.api.query.MultigetSliceQuery;
+import me.prettyprint.hector.api.query.SliceQuery;
+
+import org.springframework.util.Assert;
+
+/**
+ * Implementation of the {@link BinaryDao} interface with Hector api. Every serializer is the pass-through
+ * ByteBufferSerializer, the buffers of the Thrift columns are handed over as they are.
+ * @author Gyozo_Nyari
+ */
+public class HectorBinaryDao implements BinaryDao {
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    /** Stays well under the default 15 MB Thrift frame. */
+    private static final long DEFAULT_MAX_BATCH_BYTES = 8 * 1024 * 1024;
+    private static final int DEFAULT_COLUMN_PAGE_SIZE = 1000;
+
+    private final Keyspace keyspace;
+    private final String columnFamilyName;
+    private final Serializer<ByteBuffer> serializer = ByteBufferSerializer.get();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private int columnPageSize = DEFAULT_COLUMN_PAGE_SIZE;
+
+    /**
+     * Constructor.
+     * @param keyspace keyspace to be used.
+     * @param columnFamilyName name of the column family.
+     */
+    public HectorBinaryDao(final Keyspace keyspace, final String columnFamilyName) {
+        this.keyspace = keyspace;
+        this.columnFamilyName = columnFamilyName;
+    }
+
+    /**
+     * Reads the row in pages of {@link #setColumnPageSize(int) column page size}.
+     */
+    @Override
+    public Map<ByteBuffer, ByteBuffer> getValues(final ByteBuffer row) {
+        Assert.notNull(row, "Row can't be null!");
+        Map<ByteBuffer, ByteBuffer> columns = new HashMap<ByteBuffer, ByteBuffer>();
+        ByteBuffer start = null;
+        boolean more = true;
+        try {
+            while (more) {
+                // a following page starts with the last column read, so one more column is read
+                int limit = start == null ? columnPageSize : columnPageSize + 1;
+                SliceQuery<ByteBuffer, ByteBuffer, ByteBuffer> query = HFactory.createSliceQuery(keyspace, serializer, serializer, serializer);
+                query.setColumnFamily(columnFamilyName).setKey(row).setRange(start, null, false, limit);
+                List<HColumn<ByteBuffer, ByteBuffer>> page = query.execute().get().getColumns();
+                for (HColumn<ByteBuffer, ByteBuffer> column : page) {
+                    columns.put(column.getName(), column.getValue());
+                }
+                more = page.size() == limit;
+                if (!page.isEmpty()) {
+                    start = page.get(page.size() - 1).getName();
+                }
+            }
+        } catch (HectorException e) {
+            throw new CassandraException("getValues failed!", e);
+        }
+        return columns;
+    }
+
+    /**
+     * Reads the rows with one multiget per {@link #setBatchSize(int) batch size} rows.
+     */
+    @Override
+    public Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> getValues(final Collection<ByteBuffer> rows) {
+        Assert.notNull(rows, "Rows can't be null!");
+        Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> values = new HashMap<ByteBuffer, Map<ByteBuffer, ByteBuffer>>();
+        List<ByteBuffer> failedRows = new ArrayList<ByteBuffer>();
+        HectorException failure = null;
+        for (List<ByteBuffer> chunk : Chunks.split(rows, batchSize)) {
+            MultigetSliceQuery<ByteBuffer, ByteBuffer, ByteBuffer> query = HFactory.createMultigetSliceQuery(keyspace, serializer, serializer,
+                    serializer);
+            query.setColumnFamily(columnFamilyName).setKeys(chunk).setRange(null, null, false, Integer.MAX_VALUE);
+            try {
+                for (Row<ByteBuffer, ByteBuffer, ByteBuffer> row : query.execute().get()) {
+                    List<HColumn<ByteBuffer, ByteBuffer>> columns = row.getColumnSlice().getColumns();
+                    if (columns.isEmpty()) {
+                        continue;
+                    }
+                    Map<ByteBuffer, ByteBuffer> rowValues = new HashMap<ByteBuffer, ByteBuffer>();
+                    for (HColumn<ByteBuffer, ByteBuffer> column : columns) {
+                        rowValues.put(column.getName(), column.getValue());
+                    }
+                    values.put(row.getKey(), rowValues);
+                }
+            } catch (HectorException e) {
+                failedRows.addAll(chunk);
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw new PartialResultException("getValues failed for " + failedRows.size() + " of " + rows.size() + " rows!", values,
+                    failedRows, failure);
+        }
+        return values;
+    }
+
+    /**
+     * A row larger than {@link #setMaxBatchBytes(long) max batch bytes} is stored by {@link #storeAll(Map)}, in parts.
+     */
+    @Override
+    public void store(final ByteBuffer row, final Map<ByteBuffer, ByteBuffer> columns) {
+        Assert.notNull(row, "Row can't be null!");
+        Assert.notNull(columns, "Columns can't be null!");
+        if (Chunks.estimateBinarySize(row, columns) > maxBatchBytes) {
+            storeAll(Collections.singletonMap(row, columns));
+            return;
+        }
+        try {
+            Mutator<ByteBuffer> mutator = HFactory.createMutator(keyspace, serializer);
+            addInsertions(mutator, row, columns);
+            mutator.execute();
+        } catch (HectorException e) {
+            throw new CassandraException("store has failed!", e);
+        }
+    }
+
+    /**
+     * Stores the rows with one mutation per {@link #setMaxBatchBytes(long) max batch bytes}, wide rows are split by
+     * their columns. A failed mutation doesn't stop the others, the failure tells how many rows were not fully stored.
+     */
+    @Override
+    public void storeAll(final Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> rows) {
+        Assert.notNull(rows, "Rows can't be null!");
+        Set<ByteBuffer> failedRows = new HashSet<ByteBuffer>();
+        HectorException failure = null;
+        for (Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> chunk : Chunks.splitBySize(rows, maxBatchBytes,
+                Chunks::estimateBinarySize, Chunks::estimateBinarySize)) {
+            Mutator<ByteBuffer> mutator = HFactory.createMutator(keyspace, serializer);
+            for (Map.Entry<ByteBuffer, Map<ByteBuffer, ByteBuffer>> row : chunk.entrySet()) {
+                addInsertions(mutator, row.getKey(), row.getValue());
+            }
+            try {
+                mutator.execute();
+            } catch (HectorException e) {
+                failedRows.addAll(chunk.keySet());
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw new CassandraException("storeAll has failed for " + failedRows.size() + " of " + rows.size() + " rows!", failure);
+        }
+    }
+
+    @Override
+    public void remove(final ByteBuffer row) {
+        Assert.notNull(row, "Row can't be null!");
+        try {
+            HFactory.createMutator(keyspace, serializer).addDeletion(row, columnFamilyName).execute();
+        } catch (HectorException e) {
+            throw new CassandraException("remove has failed!", e);
+        }
+    }
+
+    @Override
+    public void removeAll(final Collection<ByteBuffer> rows) {
+        Assert.notNull(rows, "Rows can't be null!");
+        try {
+            for (List<ByteBuffer> chunk : Chunks.splitBySize(rows, maxBatchBytes, row -> Chunks.estimateBinarySize(row))) {
+                Mutator<ByteBuffer> mutator = HFactory.createMutator(keyspace, serializer);
+                for (ByteBuffer row : chunk) {
+                    mutator.addDeletion(row, columnFamilyName);
+                }
+                mutator.execute();
+            }
+        } catch (HectorException e) {
+            throw new CassandraException("removeAll has failed!", e);
+        }
+    }
+
+    /**
+     * Sets the number of rows read by one multiget.
+     * @param batchSize number of rows
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the estimated size limit of one mutation, it must stay under the Thrift frame size of the server.
+     * @param maxBatchBytes size in bytes
+     */
+    public void setMaxBatchBytes(long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * Sets the number of columns read at once, wider rows are read in more requests.
+     * @param columnPageSize number of columns
+     */
+    public void setColumnPageSize(int columnPageSize) {
+        Assert.isTrue(columnPageSize > 0, "Column page size must be positive!");
+        this.columnPageSize = columnPageSize;
+    }
+
+    private void addInsertions(final Mutator<ByteBuffer> mutator, final ByteBuffer row, final Map<ByteBuffer, ByteBuffer> columns) {
+        for (Map.Entry<ByteBuffer, ByteBuffer> column : columns.entrySet()) {
+            mutator.addInsertion(row, columnFamilyName, HFactory.createColumn(column.getKey(), column.getValue(), serializer, serializer));
+        }
+    }
+
+}
@@ -0,0 +1,419 @@
+package cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import cassandra.lock.StripedLock;
+
+import me.prettyprint.cassandra.model.ExecutingKeyspace;
+import me.prettyprint.cassandra.model.KeyspaceOperationCallback;
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.cassandra.service.KeyspaceService;
+import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.Serializer;
+import me.prettyprint.hector.api.beans.CounterRow;
+import me.prettyprint.hector.api.beans.CounterRows;
+import me.prettyprint.hector.api.beans.CounterSlice;
+import me.prettyprint.hector.api.beans.HCounterColumn;
+import me.prettyprint.hector.api.beans.OrderedCounterRows;
+import me.prettyprint.hector.api.exceptions.HectorException;
+import me.prettyprint.hector.api.factory.HFactory;
+import me.prettyprint.hector.api.mutation.Mutator;
+import me.prettyprint.hector.api.query.MultigetSliceCounterQuery;
+import me.prettyprint.hector.api.query.RangeSlicesCounterQuery;
+
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.CounterColumn;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+
+/**
+ * {@link CountingDao} backed by counter columns, an increment is a single blind write.
+ *
+ * Counters can't expire, so instead of a TTL the counters live in time-bucketed rows ([prefix:]userId:bucket). A
+ * count is the sum of the current and the previous bucket, see {@link CounterBuckets}; older rows are deleted by
+ * {@link #purgeExpiredRows()}, which should be run about once a bucket.
+ *
+ * Increments take no lock. {@link #setNumberOfAuthenticationFailures(String, String, int)} holds the exclusive lock of
+ * the user's stripe, so two sets through this dao don't apply their corrections on top of each other.
+ *
+ * CLI: create column family auth_failure_counters WITH key_validation_class = 'UTF8Type' and comparator = 'UTF8Type' and default_validation_class = 'CounterColumnType' AND gc_grace = 86400;
+ * @author Gyozo_Nyari
+ *
+ */
+public class HectorCounterCountingDao implements CountingDao, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HectorCounterCountingDao.class);
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private String columnFamilyName;
+    private Keyspace keyspace;
+
+    private Serializer<String> keySerializer = StringSerializer.get();
+    private Serializer<String> columnNameSerializer = StringSerializer.get();
+    private CounterBuckets buckets = new CounterBuckets(3600);
+    private String prefix;
+    private int batchSize = 100;
+    private ExecutorService executor;
+    private boolean ownsExecutor;
+    private StripedLock keyLock = new StripedLock();
+
+    /**
+     * Constructor.
+     */
+    public HectorCounterCountingDao() {
+        super();
+    }
+
+    public void initialize() throws Exception {
+        Assert.notNull(keyspace, "Keyspace not set!");
+        Assert.notNull(columnFamilyName, "ColumnFamilyName is not set!");
+        if (executor == null) {
+            executor = AsyncSupport.newBoundedExecutor(4, 100, "hector-counter-batch");
+            ownsExecutor = true;
+        }
+    }
+
+    /**
+     * Shuts down the executor created by {@link #initialize()}, one set by {@link #setExecutor(ExecutorService)} is
+     * left running.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public int getNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        Assert.notNull(userId, "UserId can't be null!");
+        Assert.notNull(credentials, "Credentials can't be null!");
+
+        long bucket = buckets.currentBucket();
+        try {
+            MultigetSliceCounterQuery<String, String> query = HFactory.createMultigetSliceCounterQuery(keyspace, keySerializer, columnNameSerializer);
+            query.setColumnFamily(columnFamilyName).setKeys(getCurrentKey(userId, bucket), getPreviousKey(userId, bucket))
+                    .setColumnNames(credentials);
+            int attempts = 0;
+            for (CounterRow<String, String> row : query.execute().get()) {
+                HCounterColumn<String> column = row.getColumnSlice().getColumnByName(credentials);
+                if (column != null) {
+                    attempts += column.getValue().intValue();
+                }
+            }
+            return attempts;
+        } catch (HectorException e) {
+            throw new CassandraException("getNumberOfAuthenticationFailures failed!", e);
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId) {
+        return getAuthenticationFailureCounts(userId).toMap();
+    }
+
+    /**
+     * Reads the counters through the keyspace service, its Thrift columns hold the values as primitive longs, sparing
+     * the boxed Long of every column of the Hector api. The keyspace has to be created by HFactory.
+     */
+    @Override
+    public CredentialCounts getAuthenticationFailureCounts(final String userId) {
+        Assert.notNull(userId, "UserId can't be null!");
+        Assert.isInstanceOf(ExecutingKeyspace.class, keyspace, "Reading raw counters needs a keyspace created by HFactory!");
+        long bucket = buckets.currentBucket();
+        final List<ByteBuffer> keys = Arrays.asList(keySerializer.toByteBuffer(getCurrentKey(userId, bucket)),
+                keySerializer.toByteBuffer(getPreviousKey(userId, bucket)));
+        final ColumnParent columnParent = new ColumnParent(columnFamilyName);
+        final SlicePredicate predicate = new SlicePredicate().setSlice_range(new SliceRange(EMPTY, EMPTY, false, Integer.MAX_VALUE));
+        try {
+            Map<ByteBuffer, List<CounterColumn>> rows = ((ExecutingKeyspace) keyspace).doExecute(
+                    new KeyspaceOperationCallback<Map<ByteBuffer, List<CounterColumn>>>() {
+                        @Override
+                        public Map<ByteBuffer, List<CounterColumn>> doInKeyspace(KeyspaceService keyspaceService) {
+                            return keyspaceService.multigetCounterSlice(keys, columnParent, predicate);
+                        }
+                    }).get();
+            CredentialCounts authFailures = new CredentialCounts();
+            for (List<CounterColumn> columns : rows.values()) {
+                for (CounterColumn column : columns) {
+                    authFailures.add(columnNameSerializer.fromByteBuffer(column.bufferForName()), (int) column.getValue());
+                }
+            }
+            return authFailures;
+        } catch (HectorException e) {
+            throw new CassandraException("getNumberOfAuthenticationFailures failed!", e);
+        }
+    }
+
+    /**
+     * Reads the users in chunks of {@link #setBatchSize(int) batch size}, the chunks are queried in parallel.
+     */
+    @Override
+    public Map<String, Map<String, Integer>> getNumberOfAuthenticationFailures(final Collection<String> userIds) {
+        Assert.notNull(userIds, "UserIds can't be null!");
+        long bucket = buckets.currentBucket();
+        final Map<String, String> userIdsByKey = new HashMap<String, String>();
+        for (String userId : userIds) {
+            userIdsByKey.put(getCurrentKey(userId, bucket), userId);
+            userIdsByKey.put(getPreviousKey(userId, bucket), userId);
+        }
+        List<Supplier<List<CounterRow<String, String>>>> tasks = new ArrayList<Supplier<List<CounterRow<String, String>>>>();
+        for (final List<String> chunk : Chunks.split(userIdsByKey.keySet(), 2 * batchSize)) {
+            tasks.add(() -> {
+                List<CounterRow<String, String>> rows = new ArrayList<CounterRow<String, String>>(chunk.size());
+                try {
+                    MultigetSliceCounterQuery<String, String> query = HFactory.createMultigetSliceCounterQuery(keyspace, keySerializer, columnNameSerializer);
+                    query.setColumnFamily(columnFamilyName).setKeys(chunk).setRange(null, null, false, Integer.MAX_VALUE);
+                    for (CounterRow<String, String> row : query.execute().get()) {
+                        rows.add(row);
+                    }
+                } catch (HectorException e) {
+                    throw new CassandraException("getNumberOfAuthenticationFailures failed!", e);
+                }
+                return rows;
+            });
+        }
+        Map<String, Map<String, Integer>> authFailures = new HashMap<String, Map<String, Integer>>();
+        for (List<CounterRow<String, String>> rows : Chunks.invokeAll(tasks, executor)) {
+            for (CounterRow<String, String> row : rows) {
+                if (!row.getColumnSlice().getColumns().isEmpty()) {
+                    String userId = userIdsByKey.get(row.getKey());
+                    Map<String, Integer> counts = authFailures.get(userId);
+                    if (counts == null) {
+                        counts = new HashMap<String, Integer>();
+                        authFailures.put(userId, counts);
+                    }
+                    addAll(counts, row.getColumnSlice());
+                }
+            }
+        }
+        return authFailures;
+    }
+
+    /**
+     * Counters can only be incremented, so this reads the counts of both buckets and adds the difference, holding the
+     * user's exclusive lock. Neither counter is left negative, see {@link CounterBuckets#setIncrements(long, long, int)}.
+     * Increments landing between the read and the write are kept.
+     */
+    @Override
+    public void setNumberOfAuthenticationFailures(final String userId, final String credentials, final int value) {
+        Assert.notNull(userId, "UserId can't be null!");
+        Assert.notNull(credentials, "Credentials can't be null!");
+
+        long bucket = buckets.currentBucket();
+        String currentKey = getCurrentKey(userId, bucket);
+        String previousKey = getPreviousKey(userId, bucket);
+        Lock lock = keyLock.writeLock(userId);
+        try {
+            MultigetSliceCounterQuery<String, String> query = HFactory.createMultigetSliceCounterQuery(keyspace, keySerializer, columnNameSerializer);
+            query.setColumnFamily(columnFamilyName).setKeys(currentKey, previousKey).setColumnNames(credentials);
+            CounterRows<String, String> rows = query.execute().get();
+            long[] increments = CounterBuckets.setIncrements(getCount(rows.getByKey(previousKey), credentials),
+                    getCount(rows.getByKey(currentKey), credentials), value);
+            if (increments[0] == 0 && increments[1] == 0) {
+                return;
+            }
+            Mutator<String> mutator = HFactory.createMutator(keyspace, keySerializer);
+            if (increments[0] != 0) {
+                mutator.addCounter(previousKey, columnFamilyName, HFactory.createCounterColumn(credentials, increments[0], columnNameSerializer));
+            }
+            if (increments[1] != 0) {
+                mutator.addCounter(currentKey, columnFamilyName, HFactory.createCounterColumn(credentials, increments[1], columnNameSerializer));
+            }
+            mutator.execute();
+        } catch (HectorException e) {
+            throw new CassandraException("setNumberOfAuthenticationFailures has failed!", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        Assert.notNull(userId, "UserId can't be null!");
+        Assert.notNull(credentials, "Credentials can't be null!");
+
+        try {
+            Mutator<String> mutator = HFactory.createMutator(keyspace, keySerializer);
+            mutator.incrementCounter(getCurrentKey(userId, buckets.currentBucket()), columnFamilyName, credentials, 1L);
+        } catch (HectorException e) {
+            throw new CassandraException("incrementNumberOfAuthenticationFailures has failed!", e);
+        }
+    }
+
+    /**
+     * Counters are not returned by the increment, so this is an increment followed by a read. It is not atomic: the
+     * count read may include increments of other callers that landed in between.
+     */
+    @Override
+    public IncrementResult incrementAndCheck(final String userId, final String credentials, final int threshold) {
+        incrementNumberOfAuthenticationFailures(userId, credentials);
+        int value = getNumberOfAuthenticationFailures(userId, credentials);
+        return new IncrementResult(value, value >= threshold);
+    }
+
+    /**
+     * Increments in chunks of {@link #setBatchSize(int) batch size}, each chunk is one mutation.
+     * The chunks are written in parallel, a failed chunk doesn't stop the others.
+     * @throws PartialIncrementException with the increments of the failed chunks
+     */
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final Map<CredentialKey, Integer> increments) {
+        Assert.notNull(increments, "Increments can't be null!");
+        final long bucket = buckets.currentBucket();
+        List<Map<CredentialKey, Integer>> chunks = Chunks.split(increments, batchSize);
+        List<Supplier<Void>> tasks = new ArrayList<Supplier<Void>>(chunks.size());
+        for (final Map<CredentialKey, Integer> chunk : chunks) {
+            tasks.add(() -> {
+                try {
+                    Mutator<String> mutator = HFactory.createMutator(keyspace, keySerializer);
+                    for (Map.Entry<CredentialKey, Integer> entry : chunk.entrySet()) {
+                        CredentialKey key = entry.getKey();
+                        mutator.addCounter(getCurrentKey(key.getUserId(), bucket), columnFamilyName,
+                                HFactory.createCounterColumn(key.getCredential(), entry.getValue().longValue(), columnNameSerializer));
+                    }
+                    mutator.execute();
+                } catch (HectorException e) {
+                    throw new CassandraException("incrementNumberOfAuthenticationFailures has failed!", e);
+                }
+                return null;
+            });
+        }
+        Chunks.joinIncrements(chunks, Chunks.submitAll(tasks, executor));
+    }
+
+    /**
+     * Deletes the rows of the buckets older than the previous one, of this dao's prefix only if it has one. Scans
+     * the whole column family, so run it periodically, about once a bucket, not on the request path.
+     * @return number of deleted rows
+     */
+    public int purgeExpiredRows() {
+        long bucket = buckets.currentBucket();
+        String ownPrefix = prefix != null ? prefix + ":" : null;
+        int deleted = 0;
+        String start = "";
+        try {
+            while (true) {
+                RangeSlicesCounterQuery<String, String> query = HFactory.createRangeSlicesCounterQuery(keyspace, keySerializer, columnNameSerializer);
+                // the first row of a page is the last of the previous one
+                query.setColumnFamily(columnFamilyName).setKeys(start, "").setRowCount(batchSize + 1).setRange(null, null, false, 1);
+                OrderedCounterRows<String, String> rows = query.execute().get();
+                Mutator<String> mutator = HFactory.createMutator(keyspace, keySerializer);
+                int expired = 0;
+                for (CounterRow<String, String> row : rows.getList()) {
+                    String key = row.getKey();
+                    // deleted rows show up without columns until they are compacted away
+                    if (!key.equals(start) && !row.getColumnSlice().getColumns().isEmpty()
+                            && (ownPrefix == null || key.startsWith(ownPrefix)) && buckets.isExpired(key, bucket)) {
+                        mutator.addCounterDeletion(key, columnFamilyName);
+                        expired++;
+                    }
+                }
+                if (expired > 0) {
+                    mutator.execute();
+                    deleted += expired;
+                }
+                if (rows.getCount() < batchSize + 1) {
+                    break;
+                }
+                start = rows.peekLast().getKey();
+            }
+        } catch (HectorException e) {
+            throw new CassandraException("purgeExpiredRows has failed!", e);
+        }
+        LOG.debug("Purged {} expired counter rows", deleted);
+        return deleted;
+    }
+
+    private static void addAll(final Map<String, Integer> counts, final CounterSlice<String> slice) {
+        for (HCounterColumn<String> column : slice.getColumns()) {
+            Integer count = counts.get(column.getName());
+            int value = column.getValue().intValue();
+            counts.put(column.getName(), count != null ? count + value : value);
+        }
+    }
+
+    private static long getCount(final CounterRow<String, String> row, final String credentials) {
+        if (row == null) {
+            return 0;
+        }
+        HCounterColumn<String> column = row.getColumnSlice().getColumnByName(credentials);
+        return column != null ? column.getValue() : 0;
+    }
+
+    private String getCurrentKey(final String userId, final long bucket) {
+        return buckets.currentRowKey(prefixed(userId), bucket);
+    }
+
+    private String getPreviousKey(final String userId, final long bucket) {
+        return buckets.previousRowKey(prefixed(userId), bucket);
+    }
+
+    private String prefixed(final String key) {
+        return prefix != null ? String.format("%s:%s", prefix, key) : key;
+    }
+
+    /**
+     * Sets the length of a bucket, a count covers the current and the previous one.
+     * @param bucketSeconds size of a bucket in seconds
+     */
+    public void setBucketSeconds(int bucketSeconds) {
+        this.buckets = new CounterBuckets(bucketSeconds);
+    }
+
+    /**
+     * Sets the number of users read or written by one request of the batch methods.
+     * @param batchSize number of users
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the executor running the chunks of batch requests in parallel. By default a fixed pool with a bounded
+     * queue is created on {@link #initialize()}.
+     * @param executor executor
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public void setColumnFamilyName(String columnFamilyName) {
+        this.columnFamilyName = columnFamilyName;
+    }
+
+    public void setKeyspace(Keyspace keyspace) {
+        this.keyspace = keyspace;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Sets the locks serializing the sets of a user's counters.
+     * @param keyLock locks
+     */
+    public void setKeyLock(StripedLock keyLock) {
+        Assert.notNull(keyLock, "Key lock can't be null!");
+        this.keyLock = keyLock;
+    }
+
+    public StripedLock getKeyLock() {
+        return keyLock;
+    }
+
+}
@@ -1,36 +1,46 @@
 package cassandra;
 
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
 
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
 import me.prettyprint.cassandra.serializers.IntegerSerializer;
 import me.prettyprint.cassandra.serializers.StringSerializer;
-import me.prettyprint.cassandra.service.CassandraHostConfigurator;
-import me.prettyprint.cassandra.service.template.ColumnFamilyResult;
-import me.prettyprint.cassandra.service.template.ColumnFamilyTemplate;
-import me.prettyprint.cassandra.service.template.ThriftColumnFamilyTemplate;
-import me.prettyprint.hector.api.Cluster;
 import me.prettyprint.hector.api.Keyspace;
 import me.prettyprint.hector.api.Serializer;
 import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.beans.Row;
+import me.prettyprint.hector.api.beans.Rows;
 import me.prettyprint.hector.api.exceptions.HectorException;
 import me.prettyprint.hector.api.factory.HFactory;
 import me.prettyprint.hector.api.mutation.Mutator;
 import me.prettyprint.hector.api.query.ColumnQuery;
+import me.prettyprint.hector.api.query.MultigetSliceQuery;
 import me.prettyprint.hector.api.query.QueryResult;
+import me.prettyprint.hector.api.query.SliceQuery;
 
 /**
  * CLI: create column family auth_failures WITH key_validation_class = 'UTF8Type' and default_validation_class='UTF8Type' AND gc_grace = 86400;
  * @author Gyozo_Nyari
  *
  */
-public class HectorCountingDao implements CountingDao {
+public class HectorCountingDao implements AsyncCountingDao, AutoCloseable {
 
     private static final String CREDENTIAL3 = "credential3";
 
@@ -43,12 +53,17 @@ public class HectorCountingDao implements CountingDao {
     private String columnFamilyName;
     private Keyspace keyspace;
 
-    private ColumnFamilyTemplate<String, String> template;
     private Serializer<String> keySerializer = StringSerializer.get();
     private Serializer<String> columnNameSerializer = StringSerializer.get();
     private Serializer<Integer> valueSerializer = IntegerSerializer.get();
     private int ttl;
     private String prefix;
+    private ExecutorService executor;
+    private boolean ownsExecutor;
+    private int asyncThreads = 8;
+    private int asyncQueueSize = 1000;
+    private long asyncTimeoutMillis = 15000;
+    private int batchSize = 100;
 
     /**
      * Constructor.
@@ -61,7 +76,21 @@ public class HectorCountingDao implements CountingDao {
         Assert.notNull(keyspace, "Keyspace not set!");
         Assert.notNull(columnFamilyName, "ColumnFamilyName is not set!");
 
-        template = new ThriftColumnFamilyTemplate<String, String>(keyspace, columnFamilyName, keySerializer, columnNameSerializer);
+        if (executor == null) {
+            executor = AsyncSupport.newBoundedExecutor(asyncThreads, asyncQueueSize, "hector-counting-dao");
+            ownsExecutor = true;
+        }
+    }
+
+    /**
+     * Shuts down the executor created by {@link #initialize()}, one set by {@link #setExecutor(ExecutorService)} is
+     * left running.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
     }
 
     @Override
@@ -71,9 +100,10 @@ public class HectorCountingDao implements CountingDao {
 
         int authFailures = 0;
         try {
-            ColumnFamilyResult<String, String> result = template.queryColumns(getPrefixedKey(userId));
-
-            authFailures = result.getInteger(credentials);
+            HColumn<String, Integer> column = getColumn(userId, credentials);
+            if (column != null && column.getValue() != null) {
+                authFailures = column.getValue().intValue();
+            }
         } catch (HectorException e) {
             throw new CassandraException("getNumberOfAuthenticationFailures failed!", e);
         }
@@ -82,21 +112,49 @@ public class HectorCountingDao implements CountingDao {
 
     @Override
     public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId) {
+        return getAuthenticationFailureCounts(userId).toMap();
+    }
+
+    /**
+     * Reads the values as raw bytes, sparing the boxed Integer of every column.
+     */
+    @Override
+    public CredentialCounts getAuthenticationFailureCounts(final String userId) {
         Assert.notNull(userId, "UserId can't be null!");
-        Map<String, Integer> authFailuresMap = new HashMap<String, Integer>();
         try {
-            ColumnFamilyResult<String, String> result = template.queryColumns(getPrefixedKey(userId));
-            if (result.hasResults()) {
-
-            for (String columnName : result.getColumnNames()) {
-                Integer v = result.getInteger(columnName);
-                authFailuresMap.put(columnName, v);
-            }
+            SliceQuery<String, String, ByteBuffer> query = HFactory.createSliceQuery(keyspace, keySerializer, columnNameSerializer, ByteBufferSerializer.get());
+            query.setColumnFamily(columnFamilyName).setKey(getPrefixedKey(userId)).setRange(null, null, false, Integer.MAX_VALUE);
+            List<HColumn<String, ByteBuffer>> columns = query.execute().get().getColumns();
+            CredentialCounts authFailures = new CredentialCounts(columns.size());
+            for (HColumn<String, ByteBuffer> column : columns) {
+                ByteBuffer value = column.getValueBytes();
+                if (value != null && value.remaining() >= 4) {
+                    authFailures.put(column.getName(), value.getInt(value.position()));
+                } else {
+                    LOG.warn("Skipping the count of {} of {}, it is not an int!", column.getName(), userId);
+                }
             }
+            return authFailures;
         } catch (HectorException e) {
             throw new CassandraException("getNumberOfAuthenticationFailures failed!", e);
         }
-        return authFailuresMap;
+    }
+
+    /**
+     * Reads the users in chunks of {@link #setBatchSize(int) batch size}, the chunks are queried in parallel.
+     */
+    @Override
+    public Map<String, Map<String, Integer>> getNumberOfAuthenticationFailures(final Collection<String> userIds) {
+        Assert.notNull(userIds, "UserIds can't be null!");
+        List<Supplier<Map<String, Map<String, Integer>>>> tasks = new ArrayList<Supplier<Map<String, Map<String, Integer>>>>();
+        for (final List<String> chunk : Chunks.split(userIds, batchSize)) {
+            tasks.add(() -> getChunk(chunk));
+        }
+        Map<String, Map<String, Integer>> authFailures = new HashMap<String, Map<String, Integer>>();
+        for (Map<String, Map<String, Integer>> chunkResult : Chunks.invokeAll(tasks, executor)) {
+            authFailures.putAll(chunkResult);
+        }
+        return authFailures;
     }
 
     @Override
@@ -114,6 +172,16 @@ public class HectorCountingDao implements CountingDao {
 
     @Override
     public void incrementNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        increment(userId, credentials);
+    }
+
+    @Override
+    public IncrementResult incrementAndCheck(final String userId, final String credentials, final int threshold) {
+        int value = increment(userId, credentials);
+        return new IncrementResult(value, value >= threshold);
+    }
+
+    private int increment(final String userId, final String credentials) {
         Assert.notNull(userId, "UserId can't be null!");
         Assert.notNull(credentials, "Credentials can't be null!");
 
@@ -133,6 +201,119 @@ public class HectorCountingDao implements CountingDao {
         } catch (HectorException e) {
             throw new CassandraException("incrementNumberOfAuthenticationFailures has failed!", e);
         }
+        return value;
+    }
+
+    /**
+     * Increments in chunks of {@link #setBatchSize(int) batch size}, each chunk is one read and one mutation.
+     * The chunks run in parallel, a failed chunk doesn't stop the others.
+     * @throws PartialIncrementException with the increments of the failed chunks
+     */
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final Map<CredentialKey, Integer> increments) {
+        Assert.notNull(increments, "Increments can't be null!");
+        if (increments.isEmpty()) {
+            return;
+        }
+        List<Map<CredentialKey, Integer>> chunks = Chunks.split(increments, batchSize);
+        List<Supplier<Void>> tasks = new ArrayList<Supplier<Void>>(chunks.size());
+        for (final Map<CredentialKey, Integer> chunk : chunks) {
+            tasks.add(() -> {
+                incrementChunk(chunk);
+                return null;
+            });
+        }
+        Chunks.joinIncrements(chunks, Chunks.submitAll(tasks, executor));
+    }
+
+    private Map<String, Map<String, Integer>> getChunk(final List<String> userIds) {
+        Map<String, String> userIdsByKey = new HashMap<String, String>();
+        for (String userId : userIds) {
+            userIdsByKey.put(getPrefixedKey(userId), userId);
+        }
+        Map<String, Map<String, Integer>> authFailures = new HashMap<String, Map<String, Integer>>();
+        try {
+            MultigetSliceQuery<String, String, Integer> query = HFactory.createMultigetSliceQuery(keyspace, keySerializer, columnNameSerializer, valueSerializer);
+            query.setColumnFamily(columnFamilyName).setKeys(userIdsByKey.keySet()).setRange(null, null, false, Integer.MAX_VALUE);
+            for (Row<String, String, Integer> row : query.execute().get()) {
+                List<HColumn<String, Integer>> columns = row.getColumnSlice().getColumns();
+                if (columns.isEmpty()) {
+                    continue;
+                }
+                Map<String, Integer> authFailuresMap = new HashMap<String, Integer>();
+                for (HColumn<String, Integer> column : columns) {
+                    authFailuresMap.put(column.getName(), column.getValue());
+                }
+                authFailures.put(userIdsByKey.get(row.getKey()), authFailuresMap);
+            }
+        } catch (HectorException e) {
+            throw new CassandraException("getNumberOfAuthenticationFailures failed!", e);
+        }
+        return authFailures;
+    }
+
+    private void incrementChunk(final Map<CredentialKey, Integer> increments) {
+        Set<String> keys = new HashSet<String>();
+        Set<String> credentials = new HashSet<String>();
+        for (CredentialKey key : increments.keySet()) {
+            keys.add(getPrefixedKey(key.getUserId()));
+            credentials.add(key.getCredential());
+        }
+
+        try {
+            MultigetSliceQuery<String, String, Integer> query = HFactory.createMultigetSliceQuery(keyspace, keySerializer, columnNameSerializer, valueSerializer);
+            query.setColumnFamily(columnFamilyName).setKeys(keys).setColumnNames(credentials.toArray(new String[credentials.size()]));
+            Rows<String, String, Integer> rows = query.execute().get();
+
+            Mutator<String> mutator = HFactory.createMutator(keyspace, keySerializer);
+            for (Map.Entry<CredentialKey, Integer> entry : increments.entrySet()) {
+                CredentialKey key = entry.getKey();
+                String prefixedKey = getPrefixedKey(key.getUserId());
+                int value = 0;
+                Row<String, String, Integer> row = rows.getByKey(prefixedKey);
+                if (row != null) {
+                    HColumn<String, Integer> column = row.getColumnSlice().getColumnByName(key.getCredential());
+                    if (column != null && column.getValue() != null) {
+                        value = column.getValue().intValue();
+                    }
+                }
+                mutator.addInsertion(prefixedKey, columnFamilyName,
+                        HFactory.createColumn(key.getCredential(), value + entry.getValue(), ttl, columnNameSerializer, valueSerializer));
+            }
+            mutator.execute();
+        } catch (HectorException e) {
+            throw new CassandraException("incrementNumberOfAuthenticationFailures has failed!", e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Integer> getNumberOfAuthenticationFailuresAsync(final String userId, final String credentials) {
+        return withTimeout(AsyncSupport.supplyAsync(() -> getNumberOfAuthenticationFailures(userId, credentials), executor));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Integer>> getNumberOfAuthenticationFailuresAsync(final String userId) {
+        return withTimeout(AsyncSupport.supplyAsync(() -> getNumberOfAuthenticationFailures(userId), executor));
+    }
+
+    @Override
+    public CompletableFuture<Void> setNumberOfAuthenticationFailuresAsync(final String userId, final String credentials, final int value) {
+        return withTimeout(AsyncSupport.supplyAsync(() -> {
+            setNumberOfAuthenticationFailures(userId, credentials, value);
+            return null;
+        }, executor));
+    }
+
+    @Override
+    public CompletableFuture<Void> incrementNumberOfAuthenticationFailuresAsync(final String userId, final String credentials) {
+        return withTimeout(AsyncSupport.supplyAsync(() -> {
+            incrementNumberOfAuthenticationFailures(userId, credentials);
+            return null;
+        }, executor));
+    }
+
+    private <T> CompletableFuture<T> withTimeout(final CompletableFuture<T> future) {
+        return AsyncSupport.withTimeout(future, asyncTimeoutMillis, TimeUnit.MILLISECONDS);
     }
 
     private HColumn<String, Integer> getColumn(final String userId, final String credentials) {
@@ -148,6 +329,10 @@ public class HectorCountingDao implements CountingDao {
         return prefix != null ? String.format("%s:%s", prefix, key) : key;
     }
 
+    public int getTtl() {
+        return ttl;
+    }
+
     public void setTtl(int ttl) {
         this.ttl = ttl;
     }
@@ -164,31 +349,66 @@ public class HectorCountingDao implements CountingDao {
         this.prefix = prefix;
     }
 
+    /**
+     * Sets the number of users read or written by one request of the batch methods.
+     * @param batchSize number of users
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the executor running the asynchronous calls and the chunks of batch requests, it should be bounded.
+     * By default a fixed pool with a bounded queue is created on {@link #initialize()}.
+     * @param executor executor
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public void setAsyncThreads(int asyncThreads) {
+        this.asyncThreads = asyncThreads;
+    }
+
+    public void setAsyncQueueSize(int asyncQueueSize) {
+        this.asyncQueueSize = asyncQueueSize;
+    }
+
+    /**
+     * Sets the default timeout of the asynchronous calls.
+     * @param asyncTimeoutMillis timeout in milliseconds, 0 means no timeout
+     */
+    public void setAsyncTimeoutMillis(long asyncTimeoutMillis) {
+        this.asyncTimeoutMillis = asyncTimeoutMillis;
+    }
+
     public static void main(String[] args) throws Exception {
         LOG.debug("Starting Hector counting dao...");
-        Configuration configuration = Configuration.getConfiguration();
-        CassandraHostConfigurator cassandraHostConfigurator = new CassandraHostConfigurator(configuration.getHostname());
-
-        Cluster cluster = HFactory.createCluster("default", cassandraHostConfigurator);
-        Keyspace keyspace = HFactory.createKeyspace(configuration.getKeyspace(), cluster);
+        SessionRegistry registry = SessionRegistry.getInstance();
+        Keyspace keyspace = registry.acquireHector();
 
-        HectorCountingDao dao = new HectorCountingDao();
-        dao.setKeyspace(keyspace);
-        dao.setColumnFamilyName("auth_failures");
-        dao.setPrefix("DEV");
-        dao.setTtl(3600);
+        try {
+            HectorCountingDao dao = new HectorCountingDao();
+            dao.setKeyspace(keyspace);
+            dao.setColumnFamilyName("auth_failures");
+            dao.setPrefix("DEV");
+            dao.setTtl(3600);
 
-        dao.initialize();
+            dao.initialize();
 
-        LOG.debug("Incrementing row: {} column: {}", ROW_3, CREDENTIAL2);
-        dao.incrementNumberOfAuthenticationFailures(ROW_3, CREDENTIAL2);
+            LOG.debug("Incrementing row: {} column: {}", ROW_3, CREDENTIAL2);
+            dao.incrementNumberOfAuthenticationFailures(ROW_3, CREDENTIAL2);
 
-        LOG.debug("incrementing row: {} column: {}", ROW_3, CREDENTIAL3);
-        dao.incrementNumberOfAuthenticationFailures(ROW_3, CREDENTIAL3);
+            LOG.debug("incrementing row: {} column: {}", ROW_3, CREDENTIAL3);
+            dao.incrementNumberOfAuthenticationFailures(ROW_3, CREDENTIAL3);
 
-        Map<String, Integer> values = dao.getNumberOfAuthenticationFailures(ROW_3);
-        LOG.debug("Retrieved values: {}", values);
+            Map<String, Integer> values = dao.getNumberOfAuthenticationFailures(ROW_3);
+            LOG.debug("Retrieved values: {}", values);
 
+            dao.close();
+        } finally {
+            registry.release(keyspace);
+        }
         LOG.debug("Finished...");
     }
 
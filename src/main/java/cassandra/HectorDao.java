@@ -1,25 +1,56 @@
 package cassandra;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+import me.prettyprint.cassandra.model.ExecutingKeyspace;
+import me.prettyprint.cassandra.model.KeyspaceOperationCallback;
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
 import me.prettyprint.cassandra.serializers.StringSerializer;
-import me.prettyprint.cassandra.service.template.ColumnFamilyResult;
-import me.prettyprint.cassandra.service.template.ColumnFamilyTemplate;
-import me.prettyprint.cassandra.service.template.ThriftColumnFamilyTemplate;
+import me.prettyprint.cassandra.service.KeyspaceService;
+import me.prettyprint.cassandra.service.Operation;
+import me.prettyprint.cassandra.service.OperationType;
 import me.prettyprint.hector.api.Keyspace;
 import me.prettyprint.hector.api.Serializer;
+import me.prettyprint.hector.api.beans.HColumn;
 import me.prettyprint.hector.api.exceptions.HectorException;
 import me.prettyprint.hector.api.factory.HFactory;
-import me.prettyprint.hector.api.mutation.Mutator;
+import me.prettyprint.hector.api.query.SliceQuery;
 
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.KeyRange;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+import org.apache.cassandra.thrift.TokenRange;
 import org.springframework.util.Assert;
 
 /**
  * Implementation of the {@link Dao} interface with Hector api.
+ * Hector has no asynchronous api, the asynchronous methods run the blocking calls on a bounded executor, shut down
+ * by {@link #close()}.
  * @author Gyozo_Nyari
  */
-public class HectorDao implements Dao {
+public class HectorDao implements AsyncDao, AutoCloseable {
+
+    private static final int DEFAULT_ASYNC_THREADS = 8;
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
+    private static final long DEFAULT_ASYNC_TIMEOUT_MILLIS = 15000;
+    private static final int DEFAULT_SCAN_PAGE_SIZE = 100;
+    private static final int DEFAULT_COLUMN_PAGE_SIZE = 1000;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
 
     private final Keyspace keyspace;
     private final String columnFamilyName;
@@ -27,7 +58,13 @@ public class HectorDao implements Dao {
     private final Serializer<String> columnNameSerializer = StringSerializer.get();
     private final Serializer<String> valueSerializer = StringSerializer.get();
 
-    private final ColumnFamilyTemplate<String, String> template;
+    private final HectorBinaryDao binaryDao;
+    private ExecutorService executor = AsyncSupport.newBoundedExecutor(DEFAULT_ASYNC_THREADS, DEFAULT_ASYNC_QUEUE_SIZE, "hector-dao");
+    private boolean ownsExecutor = true;
+    private long asyncTimeoutMillis = DEFAULT_ASYNC_TIMEOUT_MILLIS;
+    private int scanPageSize = DEFAULT_SCAN_PAGE_SIZE;
+    private int columnPageSize = DEFAULT_COLUMN_PAGE_SIZE;
+    private int scanThreads = 1;
 
     /**
      * Constructor.
@@ -37,48 +74,323 @@ public class HectorDao implements Dao {
     public HectorDao(final Keyspace keyspace, final String columnFamilyName) {
         this.keyspace = keyspace;
         this.columnFamilyName = columnFamilyName;
-        this.template = new ThriftColumnFamilyTemplate<String, String>(keyspace, columnFamilyName, keySerializer, columnNameSerializer);
+        this.binaryDao = new HectorBinaryDao(keyspace, columnFamilyName);
     }
 
+    /**
+     * Reads the row in pages of {@link #setColumnPageSize(int) column page size}, so wide rows don't exceed the
+     * Thrift frame.
+     */
     @Override
     public Map<String, String> getValues(final String row) {
         Assert.notNull(row, "Row can't be null!");
         Map<String, String> columns = new HashMap<String, String>();
-        try {
-            ColumnFamilyResult<String, String> result = template.queryColumns(row);
-            if (result.hasResults()) {
-
-                for (String columnName : result.getColumnNames()) {
-                    String value = result.getString(columnName);
-                    columns.put(columnName, value);
-                }
-            }
-        } catch (HectorException e) {
-            throw new CassandraException("getNumberOfAuthenticationFailures failed!", e);
+        for (Iterator<Map<String, String>> pages = getPages(row, ColumnRange.first(columnPageSize)); pages.hasNext();) {
+            columns.putAll(pages.next());
         }
         return columns;
     }
 
+    @Override
+    public Map<String, String> getValues(final String row, final ColumnRange range) {
+        Assert.notNull(row, "Row can't be null!");
+        Assert.notNull(range, "Range can't be null!");
+        return new LazyColumnMap<HColumn<String, ByteBuffer>>(slice(row, range), HColumn::getName, this::decodeValue);
+    }
+
+    @Override
+    public Iterator<Map<String, String>> getPages(final String row, final ColumnRange range) {
+        Assert.notNull(row, "Row can't be null!");
+        Assert.notNull(range, "Range can't be null!");
+        return new ColumnPages<HColumn<String, ByteBuffer>>(range, page -> slice(row, page), HColumn::getName, this::decodeValue);
+    }
+
     @Override
     public void store(final String row, final Map<String, String> columns) {
         Assert.notNull(row, "Row can't be null!");
         Assert.notNull(columns, "Columns can't be null!");
+        binaryDao.store(Utf8.encode(row), Utf8.encode(columns));
+    }
+
+    @Override
+    public void remove(final String row) {
+        Assert.notNull(row, "Row cant be null!");
+        binaryDao.remove(Utf8.encode(row));
+    }
+
+    /**
+     * Reads the rows with one multiget per {@link #setBatchSize(int) batch size} rows.
+     */
+    @Override
+    public Map<String, Map<String, String>> getValues(final Collection<String> rows) {
+        Assert.notNull(rows, "Rows can't be null!");
+        return Utf8.decodeRows(binaryDao.getValues(Utf8.encodeKeys(rows)));
+    }
+
+    /**
+     * Stores the rows with one mutation per {@link #setMaxBatchBytes(long) max batch bytes}, wide rows split by columns.
+     */
+    @Override
+    public void storeAll(final Map<String, Map<String, String>> rows) {
+        Assert.notNull(rows, "Rows can't be null!");
+        binaryDao.storeAll(Utf8.encodeRows(rows));
+    }
 
+    @Override
+    public void removeAll(final Collection<String> rows) {
+        Assert.notNull(rows, "Rows can't be null!");
+        binaryDao.removeAll(Utf8.encodeKeys(rows));
+    }
+
+    /**
+     * Splits the scan along the token ranges of the ring and reads them on {@link #setScanThreads(int) scan threads}
+     * threads. Hector's RangeSlicesQuery can't be bounded by tokens, so the ranges are read with get_range_slices
+     * through the keyspace service. A row is collected as a whole, see {@link #forEachRowPage(BiConsumer)} for wide rows.
+     */
+    @Override
+    public void forEachRow(final BiConsumer<String, Map<String, String>> consumer) {
+        Assert.notNull(consumer, "Consumer can't be null!");
+        scan((row, firstPage) -> {
+            Map<String, String> values = new HashMap<String, String>();
+            readPages(row, firstPage, values::putAll);
+            consumer.accept(row, values);
+        });
+    }
+
+    /**
+     * Scans like {@link #forEachRow(BiConsumer)}, handing over the columns {@link #setColumnPageSize(int) column page
+     * size} at a time.
+     */
+    @Override
+    public void forEachRowPage(final BiConsumer<String, Map<String, String>> consumer) {
+        Assert.notNull(consumer, "Consumer can't be null!");
+        scan((row, firstPage) -> readPages(row, firstPage, page -> consumer.accept(row, page)));
+    }
+
+    private void scan(final BiConsumer<String, List<Column>> rowReader) {
+        List<TokenRange> ranges = describeRing();
+        if (ranges.isEmpty()) {
+            return;
+        }
+        List<Supplier<Void>> tasks = new ArrayList<Supplier<Void>>();
+        for (final List<TokenRange> group : Chunks.split(ranges, Math.max(1, (ranges.size() + scanThreads - 1) / scanThreads))) {
+            tasks.add(() -> {
+                for (TokenRange range : group) {
+                    scanRange(range, rowReader);
+                }
+                return null;
+            });
+        }
+        ExecutorService scanExecutor = AsyncSupport.newBoundedExecutor(scanThreads, tasks.size(), "hector-dao-scan");
         try {
-            Mutator<String> mutator = HFactory.createMutator(keyspace, keySerializer);
-            for (String columnName : columns.keySet()) {
-                String value = columns.get(columnName);
-                mutator.insert(row, columnFamilyName, HFactory.createColumn(columnName, value, 0L, columnNameSerializer, valueSerializer));
+            Chunks.invokeAll(tasks, scanExecutor);
+        } finally {
+            scanExecutor.shutdown();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getValuesAsync(final String row) {
+        return withTimeout(AsyncSupport.supplyAsync(() -> getValues(row), executor));
+    }
+
+    @Override
+    public CompletableFuture<Void> storeAsync(final String row, final Map<String, String> columns) {
+        return withTimeout(AsyncSupport.supplyAsync(() -> {
+            store(row, columns);
+            return null;
+        }, executor));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeAsync(final String row) {
+        return withTimeout(AsyncSupport.supplyAsync(() -> {
+            remove(row);
+            return null;
+        }, executor));
+    }
+
+    /**
+     * Sets the executor running the asynchronous calls, it should be bounded. It is left running by
+     * {@link #close()}.
+     * @param executor executor
+     */
+    public void setExecutor(ExecutorService executor) {
+        if (ownsExecutor) {
+            this.executor.shutdown();
+        }
+        this.executor = executor;
+        this.ownsExecutor = false;
+    }
+
+    /**
+     * Shuts down the default executor of the asynchronous calls.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Sets the default timeout of the asynchronous calls.
+     * @param asyncTimeoutMillis timeout in milliseconds, 0 means no timeout
+     */
+    public void setAsyncTimeoutMillis(long asyncTimeoutMillis) {
+        this.asyncTimeoutMillis = asyncTimeoutMillis;
+    }
+
+    /**
+     * Sets the number of rows read by one multiget.
+     * @param batchSize number of rows
+     */
+    public void setBatchSize(int batchSize) {
+        binaryDao.setBatchSize(batchSize);
+    }
+
+    /**
+     * Sets the estimated size limit of one mutation, it must stay under the Thrift frame size of the server.
+     * @param maxBatchBytes size in bytes
+     */
+    public void setMaxBatchBytes(long maxBatchBytes) {
+        binaryDao.setMaxBatchBytes(maxBatchBytes);
+    }
+
+    /**
+     * Sets the number of rows read by one page of {@link #forEachRow(BiConsumer)}.
+     * @param scanPageSize number of rows, at least 2
+     */
+    public void setScanPageSize(int scanPageSize) {
+        Assert.isTrue(scanPageSize > 1, "Scan page size must be at least 2!");
+        this.scanPageSize = scanPageSize;
+    }
+
+    /**
+     * Sets the number of columns read at once, wider rows are read in more requests.
+     * @param columnPageSize number of columns, at least 2
+     */
+    public void setColumnPageSize(int columnPageSize) {
+        Assert.isTrue(columnPageSize > 1, "Column page size must be at least 2!");
+        this.columnPageSize = columnPageSize;
+        binaryDao.setColumnPageSize(columnPageSize);
+    }
+
+    /**
+     * Sets the number of threads scanning the token ranges in parallel.
+     * @param scanThreads number of threads
+     */
+    public void setScanThreads(int scanThreads) {
+        Assert.isTrue(scanThreads > 0, "Scan threads must be positive!");
+        this.scanThreads = scanThreads;
+    }
+
+    private List<HColumn<String, ByteBuffer>> slice(final String row, final ColumnRange range) {
+        try {
+            SliceQuery<String, String, ByteBuffer> query = HFactory.createSliceQuery(keyspace, keySerializer, columnNameSerializer, ByteBufferSerializer.get());
+            query.setColumnFamily(columnFamilyName).setKey(row).setRange(range.getStart(), range.getEnd(), range.isReversed(), range.getLimit());
+            return query.execute().get().getColumns();
+        } catch (HectorException e) {
+            throw new CassandraException("getValues failed!", e);
+        }
+    }
+
+    private String decodeValue(final HColumn<String, ByteBuffer> column) {
+        return decode(column.getValueBytes());
+    }
+
+    private List<TokenRange> describeRing() {
+        Operation<List<TokenRange>> operation = new Operation<List<TokenRange>>(OperationType.META_READ) {
+            @Override
+            public List<TokenRange> execute(Cassandra.Client client) throws Exception {
+                return client.describe_ring(keyspace.getKeyspaceName());
             }
+        };
+        try {
+            return executingKeyspace().doExecuteOperation(operation).get();
         } catch (HectorException e) {
-            throw new CassandraException("setNumberOfAuthenticationFailures has failed!", e);
+            throw new CassandraException("describe_ring has failed!", e);
         }
     }
 
-    @Override
-    public void remove(final String row) {
-        Assert.notNull(row, "Row cant be null!");
-        template.deleteRow(row);
+    private void scanRange(final TokenRange range, final BiConsumer<String, List<Column>> rowReader) {
+        final ColumnParent columnParent = new ColumnParent(columnFamilyName);
+        final SlicePredicate predicate = new SlicePredicate().setSlice_range(new SliceRange(EMPTY, EMPTY, false, columnPageSize));
+        final KeyRange keyRange = new KeyRange(scanPageSize).setStart_token(range.getStart_token()).setEnd_token(range.getEnd_token());
+        ByteBuffer lastKey = null;
+        Map<ByteBuffer, List<Column>> page;
+        do {
+            try {
+                page = executingKeyspace().doExecute(new KeyspaceOperationCallback<Map<ByteBuffer, List<Column>>>() {
+                    @Override
+                    public Map<ByteBuffer, List<Column>> doInKeyspace(KeyspaceService keyspaceService) {
+                        return keyspaceService.getRangeSlices(columnParent, predicate, keyRange);
+                    }
+                }).get();
+            } catch (HectorException e) {
+                throw new CassandraException("forEachRow has failed!", e);
+            }
+            for (Map.Entry<ByteBuffer, List<Column>> entry : page.entrySet()) {
+                // the start key of the next pages is inclusive, it was consumed with the previous page
+                if (entry.getKey().equals(lastKey)) {
+                    continue;
+                }
+                lastKey = entry.getKey();
+                // deleted rows show up without columns until they are compacted away
+                if (!entry.getValue().isEmpty()) {
+                    rowReader.accept(decode(entry.getKey()), entry.getValue());
+                }
+            }
+            keyRange.unsetStart_token();
+            keyRange.setStart_key(lastKey);
+        } while (page.size() == scanPageSize);
+    }
+
+    /**
+     * Hands the columns of a row to the consumer a page at a time, the first page came with the range slice.
+     */
+    private void readPages(final String row, final List<Column> firstPage, final Consumer<Map<String, String>> pages) {
+        Map<String, String> values = new HashMap<String, String>();
+        String lastColumn = null;
+        for (Column column : firstPage) {
+            lastColumn = decode(column.bufferForName());
+            values.put(lastColumn, decode(column.bufferForValue()));
+        }
+        pages.accept(values);
+        int read = firstPage.size();
+        while (read == columnPageSize) {
+            SliceQuery<String, String, String> query = HFactory.createSliceQuery(keyspace, keySerializer, columnNameSerializer, valueSerializer);
+            query.setColumnFamily(columnFamilyName).setKey(row).setRange(lastColumn, null, false, columnPageSize);
+            List<HColumn<String, String>> columns = query.execute().get().getColumns();
+            read = columns.size();
+            values = new HashMap<String, String>();
+            for (HColumn<String, String> column : columns) {
+                // the start column is inclusive, it came with the previous page
+                if (!column.getName().equals(lastColumn)) {
+                    values.put(column.getName(), column.getValue());
+                }
+            }
+            if (read > 0) {
+                lastColumn = columns.get(read - 1).getName();
+            }
+            if (!values.isEmpty()) {
+                pages.accept(values);
+            }
+        }
+    }
+
+    private String decode(final ByteBuffer bytes) {
+        return StringSerializer.get().fromByteBuffer(bytes.duplicate());
+    }
+
+    private ExecutingKeyspace executingKeyspace() {
+        Assert.isInstanceOf(ExecutingKeyspace.class, keyspace, "Scanning needs a keyspace created by HFactory!");
+        return (ExecutingKeyspace) keyspace;
+    }
+
+
+    private <T> CompletableFuture<T> withTimeout(final CompletableFuture<T> future) {
+        return AsyncSupport.withTimeout(future, asyncTimeoutMillis, TimeUnit.MILLISECONDS);
     }
 
 }
@@ -0,0 +1,304 @@
+package cassandra;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.util.Assert;
+
+import cassandra.resilience.Deadline;
+import cassandra.resilience.DeadlineExceededException;
+import cassandra.resilience.RetryBudget;
+
+/**
+ * Speculative execution of reads: a read not answered within the delay is sent again and the first answer wins.
+ *
+ * The delay follows a percentile of the recent read latencies, kept between a minimum and a maximum. Hedges are paid
+ * from a budget filled by every read, so they add at most the budget ratio of extra load, with short bursts allowed.
+ * Only idempotent reads may be hedged. The loser is not cancelled, it completes in the background.
+ *
+ * The drivers block, so a read that may be hedged runs on the executor while the caller waits. While the budget has
+ * no hedge left the reads run on the caller's thread, without the executor hop. The counters are exported by {@link cassandra.metrics.DaoMetrics#registerBean}.
+ *
+ * The {@link Deadline} of the caller goes with the reads to the executor, and the caller waits for them no longer
+ * than it allows.
+ * @author Gyozo_Nyari
+ *
+ */
+public class Hedger implements HedgerMXBean, AutoCloseable {
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final long UPDATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int MIN_SAMPLES = 100;
+
+    private final ExecutorService executor;
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final Histogram window = new Histogram(SIGNIFICANT_DIGITS);
+    private final ReentrantLock updateLock = new ReentrantLock();
+    private Histogram interval;
+    private volatile long lastUpdate = System.nanoTime();
+
+    private volatile double percentile = 95.0;
+    private volatile long minDelayNanos = TimeUnit.MILLISECONDS.toNanos(2);
+    private volatile long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(500);
+    private volatile long delayNanos = maxDelayNanos;
+    private volatile RetryBudget budget = new RetryBudget(0.1, 10);
+    private volatile boolean deposit = true;
+
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder hedgeCount = new LongAdder();
+    private final LongAdder hedgeWinCount = new LongAdder();
+    private final LongAdder budgetExhaustedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder inlineCount = new LongAdder();
+
+    /**
+     * Constructor.
+     * @param threads threads running the reads, at least twice the number of concurrent callers
+     * @param queueSize number of reads waiting for a thread, reads are run by the caller when it is full
+     */
+    public Hedger(final int threads, final int queueSize) {
+        this(AsyncSupport.newBoundedExecutor(threads, queueSize, "hedged-reads"));
+    }
+
+    /**
+     * Constructor.
+     * @param executor executor running the reads, shut down by {@link #close()}
+     */
+    public Hedger(final ExecutorService executor) {
+        Assert.notNull(executor, "Executor can't be null!");
+        this.executor = executor;
+    }
+
+    /**
+     * Runs a read, hedged if it is slow.
+     * @param primary read
+     * @param hedge the same read, possibly sent another way
+     * @return the first answer
+     */
+    public <T> T execute(final Supplier<T> primary, final Supplier<T> hedge) {
+        requestCount.increment();
+        if (deposit) {
+            budget.deposit();
+        }
+        final Deadline deadline = Deadline.current();
+        final long start = System.nanoTime();
+        if (budget.getAvailable() < 1) {
+            inlineCount.increment();
+            return runInline(primary, start);
+        }
+        CompletableFuture<T> first;
+        try {
+            first = CompletableFuture.supplyAsync(Deadline.propagate(primary), executor);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            return runInline(primary, start);
+        }
+        first.whenComplete((result, error) -> {
+            if (error == null) {
+                recordLatency(System.nanoTime() - start);
+            }
+        });
+        long delay = delayNanos;
+        if (deadline != null && deadline.remaining(TimeUnit.NANOSECONDS) <= delay) {
+            return await(first, deadline);
+        }
+        try {
+            return first.get(delay, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return hedge(first, hedge, deadline);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CassandraException("Interrupted while reading!", e);
+        }
+    }
+
+    private <T> T runInline(final Supplier<T> primary, final long start) {
+        T result = primary.get();
+        recordLatency(System.nanoTime() - start);
+        return result;
+    }
+
+    private <T> T hedge(final CompletableFuture<T> first, final Supplier<T> hedge, final Deadline deadline) {
+        if (!budget.tryAcquire()) {
+            budgetExhaustedCount.increment();
+            return await(first, deadline);
+        }
+        CompletableFuture<T> second;
+        try {
+            second = CompletableFuture.supplyAsync(Deadline.propagate(hedge), executor);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            return await(first, deadline);
+        }
+        hedgeCount.increment();
+        final CompletableFuture<T> winner = new CompletableFuture<T>();
+        final AtomicInteger failures = new AtomicInteger();
+        first.whenComplete((result, error) -> {
+            if (error == null) {
+                winner.complete(result);
+            } else if (failures.incrementAndGet() == 2) {
+                winner.completeExceptionally(error);
+            }
+        });
+        second.whenComplete((result, error) -> {
+            if (error == null) {
+                if (winner.complete(result)) {
+                    hedgeWinCount.increment();
+                }
+            } else if (failures.incrementAndGet() == 2) {
+                winner.completeExceptionally(error);
+            }
+        });
+        return await(winner, deadline);
+    }
+
+    private static <T> T await(final CompletableFuture<T> future, final Deadline deadline) {
+        try {
+            if (deadline == null) {
+                return future.get();
+            }
+            return future.get(deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Read missed its deadline!");
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CassandraException("Interrupted while reading!", e);
+        }
+    }
+
+    private static RuntimeException rethrow(final Throwable error) {
+        Throwable cause = AsyncSupport.unwrap(error);
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new CassandraException("Read failed!", cause);
+    }
+
+    private void recordLatency(final long nanos) {
+        recorder.recordValue(Math.max(nanos, 1));
+        long now = System.nanoTime();
+        if (now - lastUpdate < UPDATE_INTERVAL_NANOS || !updateLock.tryLock()) {
+            return;
+        }
+        try {
+            lastUpdate = now;
+            interval = recorder.getIntervalHistogram(interval);
+            window.add(interval);
+            if (window.getTotalCount() >= MIN_SAMPLES) {
+                long delay = window.getValueAtPercentile(percentile);
+                delayNanos = Math.min(Math.max(delay, minDelayNanos), maxDelayNanos);
+                window.reset();
+            }
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the percentile of the read latencies used as delay, 95 by default.
+     * @param percentile percentile in (0, 100]
+     */
+    public void setPercentile(final double percentile) {
+        Assert.isTrue(percentile > 0 && percentile <= 100, "Percentile must be in (0, 100]!");
+        this.percentile = percentile;
+    }
+
+    /**
+     * Sets the bounds of the delay, 2 and 500 ms by default. The maximum is used until enough reads are measured.
+     * @param minDelay minimum
+     * @param maxDelay maximum
+     * @param unit unit of the delays
+     */
+    public void setDelayBounds(final long minDelay, final long maxDelay, final TimeUnit unit) {
+        Assert.isTrue(minDelay > 0 && minDelay <= maxDelay, "Delays must be positive, the minimum not above the maximum!");
+        this.minDelayNanos = unit.toNanos(minDelay);
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.delayNanos = Math.min(Math.max(delayNanos, minDelayNanos), maxDelayNanos);
+    }
+
+    /**
+     * Sets the budget of the hedges, 10% of the reads with bursts of 10 by default.
+     * @param ratio hedges per read
+     * @param burst hedges allowed at once
+     */
+    public void setBudget(final double ratio, final int burst) {
+        setBudget(new RetryBudget(ratio, burst), true);
+    }
+
+    /**
+     * Sets a budget shared with other executors, e.g. with the retries of a
+     * {@link cassandra.resilience.Resilience}, so hedges and retries together stay within its ratio.
+     * @param budget budget
+     * @param deposit whether the reads fill the budget, false when the layer above already deposits for them
+     */
+    public void setBudget(final RetryBudget budget, final boolean deposit) {
+        Assert.notNull(budget, "Budget can't be null!");
+        this.budget = budget;
+        this.deposit = deposit;
+    }
+
+    @Override
+    public double getDelayMillis() {
+        return delayNanos / 1e6;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    @Override
+    public long getHedgeCount() {
+        return hedgeCount.sum();
+    }
+
+    @Override
+    public long getHedgeWinCount() {
+        return hedgeWinCount.sum();
+    }
+
+    @Override
+    public long getBudgetExhaustedCount() {
+        return budgetExhaustedCount.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    @Override
+    public long getInlineCount() {
+        return inlineCount.sum();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Hedger [delay=%.3fms, requests=%d, hedges=%d, wins=%d, budgetExhausted=%d, rejected=%d, inline=%d]",
+                getDelayMillis(), getRequestCount(), getHedgeCount(), getHedgeWinCount(), getBudgetExhaustedCount(),
+                getRejectedCount(), getInlineCount());
+    }
+
+}
@@ -0,0 +1,44 @@
+package cassandra;
+
+/**
+ * JMX view of a {@link Hedger}, counters since it was created.
+ * @author Gyozo_Nyari
+ *
+ */
+public interface HedgerMXBean {
+
+    /**
+     * @return current delay before hedging, in milliseconds
+     */
+    double getDelayMillis();
+
+    /**
+     * @return number of reads
+     */
+    long getRequestCount();
+
+    /**
+     * @return number of hedges sent
+     */
+    long getHedgeCount();
+
+    /**
+     * @return number of hedges answering first
+     */
+    long getHedgeWinCount();
+
+    /**
+     * @return number of slow reads not hedged as the budget was spent
+     */
+    long getBudgetExhaustedCount();
+
+    /**
+     * @return number of reads or hedges rejected by the full executor
+     */
+    long getRejectedCount();
+
+    /**
+     * @return number of reads run by the caller as no hedge could be paid for
+     */
+    long getInlineCount();
+}
@@ -0,0 +1,65 @@
+package cassandra;
+
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link CountingDao} hedging the lookups of a user with a {@link Hedger}: a lookup not answered within the delay is
+ * sent again and the first answer is returned. See {@link HedgingDao} on where the hedges go.
+ *
+ * Batch lookups and the increments are forwarded as they are, increments must never be sent twice.
+ * @author Gyozo_Nyari
+ *
+ */
+public class HedgingCountingDao extends ForwardingCountingDao {
+
+    private final CountingDao hedgeDelegate;
+    private final Hedger hedger;
+
+    /**
+     * Constructor.
+     * @param delegate dao
+     * @param hedger hedger
+     */
+    public HedgingCountingDao(final CountingDao delegate, final Hedger hedger) {
+        this(delegate, delegate, hedger);
+    }
+
+    /**
+     * Constructor.
+     * @param delegate dao
+     * @param hedgeDelegate dao the hedges are sent to
+     * @param hedger hedger
+     */
+    public HedgingCountingDao(final CountingDao delegate, final CountingDao hedgeDelegate, final Hedger hedger) {
+        super(delegate);
+        Assert.notNull(hedgeDelegate, "Hedge delegate can't be null!");
+        Assert.notNull(hedger, "Hedger can't be null!");
+        this.hedgeDelegate = hedgeDelegate;
+        this.hedger = hedger;
+    }
+
+    @Override
+    public int getNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        return hedger.execute(() -> getDelegate().getNumberOfAuthenticationFailures(userId, credentials),
+                () -> hedgeDelegate.getNumberOfAuthenticationFailures(userId, credentials));
+    }
+
+    @Override
+    public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId) {
+        return hedger.execute(() -> getDelegate().getNumberOfAuthenticationFailures(userId),
+                () -> hedgeDelegate.getNumberOfAuthenticationFailures(userId));
+    }
+
+    @Override
+    public CredentialCounts getAuthenticationFailureCounts(final String userId) {
+        return hedger.execute(() -> getDelegate().getAuthenticationFailureCounts(userId),
+                () -> hedgeDelegate.getAuthenticationFailureCounts(userId));
+    }
+
+    public Hedger getHedger() {
+        return hedger;
+    }
+
+}
@@ -0,0 +1,59 @@
+package cassandra;
+
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link Dao} hedging the row reads with a {@link Hedger}: a read not answered within the delay is sent again and the
+ * first answer is returned. Left to the pool, the hedge goes to the same best scoring replica as the read, so give a
+ * separate dao for the hedges, e.g. an {@link AstyanaxDao} pinned to another replica by a {@link ReplicaSelector}.
+ *
+ * Batch reads, page iterators, scans and writes are forwarded as they are. Put it under the caches, right on the
+ * backend dao.
+ * @author Gyozo_Nyari
+ *
+ */
+public class HedgingDao extends ForwardingDao {
+
+    private final Dao hedgeDelegate;
+    private final Hedger hedger;
+
+    /**
+     * Constructor.
+     * @param delegate dao
+     * @param hedger hedger
+     */
+    public HedgingDao(final Dao delegate, final Hedger hedger) {
+        this(delegate, delegate, hedger);
+    }
+
+    /**
+     * Constructor.
+     * @param delegate dao
+     * @param hedgeDelegate dao the hedges are sent to
+     * @param hedger hedger
+     */
+    public HedgingDao(final Dao delegate, final Dao hedgeDelegate, final Hedger hedger) {
+        super(delegate);
+        Assert.notNull(hedgeDelegate, "Hedge delegate can't be null!");
+        Assert.notNull(hedger, "Hedger can't be null!");
+        this.hedgeDelegate = hedgeDelegate;
+        this.hedger = hedger;
+    }
+
+    @Override
+    public Map<String, String> getValues(final String row) {
+        return hedger.execute(() -> getDelegate().getValues(row), () -> hedgeDelegate.getValues(row));
+    }
+
+    @Override
+    public Map<String, String> getValues(final String row, final ColumnRange range) {
+        return hedger.execute(() -> getDelegate().getValues(row, range), () -> hedgeDelegate.getValues(row, range));
+    }
+
+    public Hedger getHedger() {
+        return hedger;
+    }
+
+}
@@ -0,0 +1,62 @@
+package cassandra;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.util.Assert;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Detects keys written more often than a threshold within an interval. A detected key stays hot for a while after
+ * its traffic calms down.
+ * @author Gyozo_Nyari
+ *
+ */
+public class HotKeyDetector {
+
+    private final Cache<String, AtomicInteger> writes;
+    private final Cache<String, Boolean> hotKeys;
+    private final int threshold;
+
+    /**
+     * Constructor.
+     * @param threshold number of writes within the interval making a key hot
+     * @param intervalSeconds length of the interval the writes are counted in
+     * @param hotSeconds time a key stays hot after it was last detected
+     * @param maximumSize maximum number of keys tracked
+     */
+    public HotKeyDetector(final int threshold, final int intervalSeconds, final int hotSeconds, final long maximumSize) {
+        Assert.isTrue(threshold > 0, "Threshold must be positive!");
+        this.threshold = threshold;
+        this.writes = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(intervalSeconds, TimeUnit.SECONDS).build();
+        this.hotKeys = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(hotSeconds, TimeUnit.SECONDS).build();
+    }
+
+    /**
+     * Records a write of the key.
+     * @param key key
+     * @return whether the key is hot
+     */
+    public boolean recordWrite(final String key) {
+        if (writes.get(key, k -> new AtomicInteger()).incrementAndGet() >= threshold) {
+            hotKeys.put(key, Boolean.TRUE);
+            writes.invalidate(key);
+            return true;
+        }
+        return isHot(key);
+    }
+
+    public boolean isHot(final String key) {
+        return hotKeys.getIfPresent(key) != null;
+    }
+
+    /**
+     * @return number of keys currently hot
+     */
+    public long getHotKeyCount() {
+        return hotKeys.estimatedSize();
+    }
+
+}
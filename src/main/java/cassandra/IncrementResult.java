@@ -0,0 +1,37 @@
+package cassandra;
+
+/**
+ * Result of {@link CountingDao#incrementAndCheck(String, String, int)}.
+ * @author Gyozo_Nyari
+ *
+ */
+public final class IncrementResult {
+
+    private final int count;
+    private final boolean thresholdReached;
+
+    public IncrementResult(final int count, final boolean thresholdReached) {
+        this.count = count;
+        this.thresholdReached = thresholdReached;
+    }
+
+    /**
+     * @return number of authentication failures after the increment
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return whether the number of authentication failures reached the threshold
+     */
+    public boolean isThresholdReached() {
+        return thresholdReached;
+    }
+
+    @Override
+    public String toString() {
+        return "IncrementResult [count=" + count + ", thresholdReached=" + thresholdReached + "]";
+    }
+
+}
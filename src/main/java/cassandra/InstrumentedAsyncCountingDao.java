@@ -0,0 +1,62 @@
+package cassandra;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import cassandra.metrics.DaoMetrics;
+import cassandra.metrics.OperationMetrics;
+
+/**
+ * {@link InstrumentedCountingDao} of an {@link AsyncCountingDao}, the non-blocking calls are timed until their futures
+ * complete and recorded as operations of their own, e.g. getNumberOfAuthenticationFailuresAsync.
+ * @author Gyozo_Nyari
+ *
+ */
+public class InstrumentedAsyncCountingDao extends InstrumentedCountingDao implements AsyncCountingDao {
+
+    private final AsyncCountingDao delegate;
+    private final OperationMetrics getAsync;
+    private final OperationMetrics getAllAsync;
+    private final OperationMetrics setAsync;
+    private final OperationMetrics incrementAsync;
+
+    /**
+     * Constructor.
+     * @param delegate dao
+     * @param metrics registry of the metrics
+     * @param columnFamily column family of the dao, the metrics are labelled with it
+     */
+    public InstrumentedAsyncCountingDao(final AsyncCountingDao delegate, final DaoMetrics metrics, final String columnFamily) {
+        super(delegate, metrics, columnFamily);
+        this.delegate = delegate;
+        this.getAsync = metrics.get(columnFamily, "getNumberOfAuthenticationFailuresAsync");
+        this.getAllAsync = metrics.get(columnFamily, "getAllAuthenticationFailuresAsync");
+        this.setAsync = metrics.get(columnFamily, "setNumberOfAuthenticationFailuresAsync");
+        this.incrementAsync = metrics.get(columnFamily, "incrementNumberOfAuthenticationFailuresAsync");
+    }
+
+    @Override
+    public CompletableFuture<Integer> getNumberOfAuthenticationFailuresAsync(final String userId, final String credentials) {
+        return DaoMetrics.timeAsync(getAsync, () -> delegate.getNumberOfAuthenticationFailuresAsync(userId, credentials),
+                value -> COUNT_BYTES, length(userId) + length(credentials));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Integer>> getNumberOfAuthenticationFailuresAsync(final String userId) {
+        return DaoMetrics.timeAsync(getAllAsync, () -> delegate.getNumberOfAuthenticationFailuresAsync(userId), values -> size(values),
+                length(userId));
+    }
+
+    @Override
+    public CompletableFuture<Void> setNumberOfAuthenticationFailuresAsync(final String userId, final String credentials, final int value) {
+        return DaoMetrics.timeAsync(setAsync, () -> delegate.setNumberOfAuthenticationFailuresAsync(userId, credentials, value),
+                none -> 0, length(userId) + length(credentials) + COUNT_BYTES);
+    }
+
+    @Override
+    public CompletableFuture<Void> incrementNumberOfAuthenticationFailuresAsync(final String userId, final String credentials) {
+        return DaoMetrics.timeAsync(incrementAsync, () -> delegate.incrementNumberOfAuthenticationFailuresAsync(userId, credentials),
+                none -> 0, length(userId) + length(credentials) + COUNT_BYTES);
+    }
+
+}
@@ -0,0 +1,51 @@
+package cassandra;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import cassandra.metrics.DaoMetrics;
+import cassandra.metrics.OperationMetrics;
+
+/**
+ * {@link InstrumentedDao} of an {@link AsyncDao}, the non-blocking calls are timed until their futures complete and
+ * recorded as operations of their own, e.g. getValuesAsync.
+ * @author Gyozo_Nyari
+ *
+ */
+public class InstrumentedAsyncDao extends InstrumentedDao implements AsyncDao {
+
+    private final AsyncDao delegate;
+    private final OperationMetrics getValuesAsync;
+    private final OperationMetrics storeAsync;
+    private final OperationMetrics removeAsync;
+
+    /**
+     * Constructor.
+     * @param delegate dao
+     * @param metrics registry of the metrics
+     * @param columnFamily column family of the dao, the metrics are labelled with it
+     */
+    public InstrumentedAsyncDao(final AsyncDao delegate, final DaoMetrics metrics, final String columnFamily) {
+        super(delegate, metrics, columnFamily);
+        this.delegate = delegate;
+        this.getValuesAsync = metrics.get(columnFamily, "getValuesAsync");
+        this.storeAsync = metrics.get(columnFamily, "storeAsync");
+        this.removeAsync = metrics.get(columnFamily, "removeAsync");
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getValuesAsync(final String row) {
+        return DaoMetrics.timeAsync(getValuesAsync, () -> delegate.getValuesAsync(row), columns -> size(columns), length(row));
+    }
+
+    @Override
+    public CompletableFuture<Void> storeAsync(final String row, final Map<String, String> columns) {
+        return DaoMetrics.timeAsync(storeAsync, () -> delegate.storeAsync(row, columns), none -> 0, length(row) + size(columns));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeAsync(final String row) {
+        return DaoMetrics.timeAsync(removeAsync, () -> delegate.removeAsync(row), none -> 0, length(row));
+    }
+
+}
@@ -0,0 +1,159 @@
+package cassandra;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+import cassandra.metrics.DaoMetrics;
+import cassandra.metrics.OperationMetrics;
+
+/**
+ * {@link CountingDao} recording latency, call and error counts of every call into {@link DaoMetrics}. Bytes are
+ * estimated from the UTF-8 length of the user ids and credentials, 4 bytes per count.
+ * @author Gyozo_Nyari
+ *
+ */
+public class InstrumentedCountingDao extends ForwardingCountingDao {
+
+    static final int COUNT_BYTES = 4;
+
+    private final OperationMetrics get;
+    private final OperationMetrics getAll;
+    private final OperationMetrics getBatch;
+    private final OperationMetrics set;
+    private final OperationMetrics increment;
+    private final OperationMetrics incrementAndCheck;
+    private final OperationMetrics incrementBatch;
+
+    /**
+     * Constructor.
+     * @param delegate dao
+     * @param metrics registry of the metrics
+     * @param columnFamily column family of the dao, the metrics are labelled with it
+     */
+    public InstrumentedCountingDao(final CountingDao delegate, final DaoMetrics metrics, final String columnFamily) {
+        super(delegate);
+        Assert.notNull(metrics, "Metrics can't be null!");
+        this.get = metrics.get(columnFamily, "getNumberOfAuthenticationFailures");
+        this.getAll = metrics.get(columnFamily, "getAllAuthenticationFailures");
+        this.getBatch = metrics.get(columnFamily, "getAuthenticationFailuresBatch");
+        this.set = metrics.get(columnFamily, "setNumberOfAuthenticationFailures");
+        this.increment = metrics.get(columnFamily, "incrementNumberOfAuthenticationFailures");
+        this.incrementAndCheck = metrics.get(columnFamily, "incrementAndCheck");
+        this.incrementBatch = metrics.get(columnFamily, "incrementBatch");
+    }
+
+    @Override
+    public int getNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        long start = System.nanoTime();
+        try {
+            int value = super.getNumberOfAuthenticationFailures(userId, credentials);
+            get.record(System.nanoTime() - start, COUNT_BYTES, length(userId) + length(credentials));
+            return value;
+        } catch (RuntimeException e) {
+            get.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId) {
+        long start = System.nanoTime();
+        try {
+            Map<String, Integer> values = super.getNumberOfAuthenticationFailures(userId);
+            getAll.record(System.nanoTime() - start, size(values), length(userId));
+            return values;
+        } catch (RuntimeException e) {
+            getAll.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> getNumberOfAuthenticationFailures(final Collection<String> userIds) {
+        long start = System.nanoTime();
+        try {
+            Map<String, Map<String, Integer>> values = super.getNumberOfAuthenticationFailures(userIds);
+            long in = 0;
+            for (Map<String, Integer> userValues : values.values()) {
+                in += size(userValues);
+            }
+            long out = 0;
+            for (String userId : userIds) {
+                out += length(userId);
+            }
+            getBatch.record(System.nanoTime() - start, in, out);
+            return values;
+        } catch (RuntimeException e) {
+            getBatch.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setNumberOfAuthenticationFailures(final String userId, final String credentials, final int value) {
+        long start = System.nanoTime();
+        try {
+            super.setNumberOfAuthenticationFailures(userId, credentials, value);
+            set.record(System.nanoTime() - start, 0, length(userId) + length(credentials) + COUNT_BYTES);
+        } catch (RuntimeException e) {
+            set.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        long start = System.nanoTime();
+        try {
+            super.incrementNumberOfAuthenticationFailures(userId, credentials);
+            increment.record(System.nanoTime() - start, 0, length(userId) + length(credentials) + COUNT_BYTES);
+        } catch (RuntimeException e) {
+            increment.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public IncrementResult incrementAndCheck(final String userId, final String credentials, final int threshold) {
+        long start = System.nanoTime();
+        try {
+            IncrementResult result = super.incrementAndCheck(userId, credentials, threshold);
+            incrementAndCheck.record(System.nanoTime() - start, COUNT_BYTES, length(userId) + length(credentials) + COUNT_BYTES);
+            return result;
+        } catch (RuntimeException e) {
+            incrementAndCheck.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final Map<CredentialKey, Integer> increments) {
+        long start = System.nanoTime();
+        try {
+            super.incrementNumberOfAuthenticationFailures(increments);
+            long out = 0;
+            for (CredentialKey key : increments.keySet()) {
+                out += length(key.getUserId()) + length(key.getCredential()) + COUNT_BYTES;
+            }
+            incrementBatch.record(System.nanoTime() - start, 0, out);
+        } catch (RuntimeException e) {
+            incrementBatch.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    static long size(final Map<String, Integer> values) {
+        long size = 0;
+        for (String credential : values.keySet()) {
+            size += length(credential) + COUNT_BYTES;
+        }
+        return size;
+    }
+
+    static long length(final String value) {
+        return DaoMetrics.utf8Length(value);
+    }
+
+}
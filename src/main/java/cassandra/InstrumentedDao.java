@@ -0,0 +1,209 @@
+package cassandra;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.springframework.util.Assert;
+
+import cassandra.metrics.DaoMetrics;
+import cassandra.metrics.OperationMetrics;
+
+/**
+ * {@link Dao} recording latency, call, error and byte counts of every call into {@link DaoMetrics}. Bytes are
+ * estimated from the UTF-8 length of the row keys, column names and values. Page iterators and scans are timed as a whole.
+ * @author Gyozo_Nyari
+ *
+ */
+public class InstrumentedDao extends ForwardingDao {
+
+    private final OperationMetrics getValues;
+    private final OperationMetrics getRange;
+    private final OperationMetrics getPages;
+    private final OperationMetrics store;
+    private final OperationMetrics remove;
+    private final OperationMetrics getValuesBatch;
+    private final OperationMetrics storeAll;
+    private final OperationMetrics removeAll;
+    private final OperationMetrics forEachRow;
+
+    /**
+     * Constructor.
+     * @param delegate dao
+     * @param metrics registry of the metrics
+     * @param columnFamily column family of the dao, the metrics are labelled with it
+     */
+    public InstrumentedDao(final Dao delegate, final DaoMetrics metrics, final String columnFamily) {
+        super(delegate);
+        Assert.notNull(metrics, "Metrics can't be null!");
+        this.getValues = metrics.get(columnFamily, "getValues");
+        this.getRange = metrics.get(columnFamily, "getRange");
+        this.getPages = metrics.get(columnFamily, "getPages");
+        this.store = metrics.get(columnFamily, "store");
+        this.remove = metrics.get(columnFamily, "remove");
+        this.getValuesBatch = metrics.get(columnFamily, "getValuesBatch");
+        this.storeAll = metrics.get(columnFamily, "storeAll");
+        this.removeAll = metrics.get(columnFamily, "removeAll");
+        this.forEachRow = metrics.get(columnFamily, "forEachRow");
+    }
+
+    @Override
+    public Map<String, String> getValues(final String row) {
+        long start = System.nanoTime();
+        try {
+            Map<String, String> columns = super.getValues(row);
+            getValues.record(System.nanoTime() - start, size(columns), length(row));
+            return columns;
+        } catch (RuntimeException e) {
+            getValues.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<String, String> getValues(final String row, final ColumnRange range) {
+        long start = System.nanoTime();
+        try {
+            Map<String, String> columns = super.getValues(row, range);
+            getRange.record(System.nanoTime() - start, size(columns), length(row));
+            return columns;
+        } catch (RuntimeException e) {
+            getRange.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * Times the creation of the iterator, which reads the first page.
+     */
+    @Override
+    public Iterator<Map<String, String>> getPages(final String row, final ColumnRange range) {
+        return DaoMetrics.time(getPages, () -> super.getPages(row, range));
+    }
+
+    @Override
+    public void store(final String row, final Map<String, String> columns) {
+        long start = System.nanoTime();
+        try {
+            super.store(row, columns);
+            store.record(System.nanoTime() - start, 0, length(row) + size(columns));
+        } catch (RuntimeException e) {
+            store.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public void remove(final String row) {
+        long start = System.nanoTime();
+        try {
+            super.remove(row);
+            remove.record(System.nanoTime() - start, 0, length(row));
+        } catch (RuntimeException e) {
+            remove.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getValues(final Collection<String> rows) {
+        long start = System.nanoTime();
+        try {
+            Map<String, Map<String, String>> values = super.getValues(rows);
+            long in = 0;
+            for (Map<String, String> columns : values.values()) {
+                in += size(columns);
+            }
+            getValuesBatch.record(System.nanoTime() - start, in, length(rows));
+            return values;
+        } catch (RuntimeException e) {
+            getValuesBatch.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public void storeAll(final Map<String, Map<String, String>> rows) {
+        long start = System.nanoTime();
+        try {
+            super.storeAll(rows);
+            long out = 0;
+            for (Map.Entry<String, Map<String, String>> row : rows.entrySet()) {
+                out += length(row.getKey()) + size(row.getValue());
+            }
+            storeAll.record(System.nanoTime() - start, 0, out);
+        } catch (RuntimeException e) {
+            storeAll.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public void removeAll(final Collection<String> rows) {
+        long start = System.nanoTime();
+        try {
+            super.removeAll(rows);
+            removeAll.record(System.nanoTime() - start, 0, length(rows));
+        } catch (RuntimeException e) {
+            removeAll.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public void forEachRow(final BiConsumer<String, Map<String, String>> consumer) {
+        scan(consumer, false);
+    }
+
+    @Override
+    public void forEachRowPage(final BiConsumer<String, Map<String, String>> consumer) {
+        scan(consumer, true);
+    }
+
+    private void scan(final BiConsumer<String, Map<String, String>> consumer, final boolean paged) {
+        final long[] in = new long[1];
+        final BiConsumer<String, Map<String, String>> counting = (row, columns) -> {
+            synchronized (in) {
+                in[0] += length(row) + size(columns);
+            }
+            consumer.accept(row, columns);
+        };
+        long start = System.nanoTime();
+        try {
+            if (paged) {
+                super.forEachRowPage(counting);
+            } else {
+                super.forEachRow(counting);
+            }
+            forEachRow.record(System.nanoTime() - start, in[0], 0);
+        } catch (RuntimeException e) {
+            forEachRow.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    static long size(final Map<String, String> columns) {
+        if (columns == null) {
+            return 0;
+        }
+        long size = 0;
+        for (Map.Entry<String, String> column : columns.entrySet()) {
+            size += length(column.getKey()) + length(column.getValue());
+        }
+        return size;
+    }
+
+    static long length(final Collection<String> rows) {
+        long length = 0;
+        for (String row : rows) {
+            length += length(row);
+        }
+        return length;
+    }
+
+    static long length(final String value) {
+        return DaoMetrics.utf8Length(value);
+    }
+
+}
@@ -0,0 +1,136 @@
+package cassandra;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Read-only map view over the columns returned by a query. Iteration follows the column order, values are decoded
+ * only when they are accessed and the name index is built on the first lookup.
+ * @author Gyozo_Nyari
+ *
+ * @param <C> type of the client library's column
+ */
+final class LazyColumnMap<C> extends AbstractMap<String, String> {
+
+    private final List<C> columns;
+    private final Function<C, String> name;
+    private final Function<C, String> value;
+    private Map<String, C> index;
+
+    /**
+     * Constructor.
+     * @param columns columns in column order
+     * @param name decodes the name of a column
+     * @param value decodes the value of a column
+     */
+    LazyColumnMap(final List<C> columns, final Function<C, String> name, final Function<C, String> value) {
+        this.columns = columns;
+        this.name = name;
+        this.value = value;
+    }
+
+    @Override
+    public int size() {
+        return columns.size();
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return index().containsKey(key);
+    }
+
+    @Override
+    public String get(final Object key) {
+        C column = index().get(key);
+        return column != null ? value.apply(column) : null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                final Iterator<C> i = columns.iterator();
+                return new Iterator<Map.Entry<String, String>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return i.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        return new ColumnEntry(i.next());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return columns.size();
+            }
+        };
+    }
+
+    private Map<String, C> index() {
+        if (index == null) {
+            Map<String, C> columnsByName = new HashMap<String, C>(columns.size() * 4 / 3 + 1);
+            for (C column : columns) {
+                columnsByName.put(name.apply(column), column);
+            }
+            index = columnsByName;
+        }
+        return index;
+    }
+
+    private final class ColumnEntry implements Map.Entry<String, String> {
+
+        private final C column;
+
+        private ColumnEntry(final C column) {
+            this.column = column;
+        }
+
+        @Override
+        public String getKey() {
+            return name.apply(column);
+        }
+
+        @Override
+        public String getValue() {
+            return value.apply(column);
+        }
+
+        @Override
+        public String setValue(final String newValue) {
+            throw new UnsupportedOperationException("Column views are read-only!");
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+            String entryValue = getValue();
+            return getKey().equals(other.getKey()) && (entryValue == null ? other.getValue() == null : entryValue.equals(other.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            String entryValue = getValue();
+            return getKey().hashCode() ^ (entryValue != null ? entryValue.hashCode() : 0);
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package cassandra;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Remembers the credentials which reached the threshold of {@link #incrementAndCheck(String, String, int)}.
+ * Further attempts on a locked credential are rejected from memory, without touching Cassandra, until the lockout
+ * expires.
+ *
+ * Setting the number of failures, for example resetting it to zero, lifts the lockout.
+ * @author Gyozo_Nyari
+ *
+ */
+public class LockoutCountingDao extends ForwardingCountingDao {
+
+    private final Cache<CredentialKey, Integer> lockedOut;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param delegate dao counting the failures
+     * @param maximumSize maximum number of locked credentials kept in memory
+     * @param lockoutSeconds time the credentials stay locked in memory, should not exceed the TTL of the failures
+     */
+    public LockoutCountingDao(final CountingDao delegate, final long maximumSize, final int lockoutSeconds) {
+        super(delegate);
+        Assert.isTrue(maximumSize > 0, "Maximum size must be positive!");
+        Assert.isTrue(lockoutSeconds > 0, "Lockout must be positive!");
+        this.lockedOut = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(lockoutSeconds, TimeUnit.SECONDS).build();
+    }
+
+    @Override
+    public IncrementResult incrementAndCheck(final String userId, final String credentials, final int threshold) {
+        CredentialKey key = new CredentialKey(userId, credentials);
+        Integer lockedCount = lockedOut.getIfPresent(key);
+        if (lockedCount != null) {
+            rejected.incrementAndGet();
+            return new IncrementResult(lockedCount, true);
+        }
+        IncrementResult result = super.incrementAndCheck(userId, credentials, threshold);
+        if (result.isThresholdReached()) {
+            lockedOut.put(key, result.getCount());
+        }
+        return result;
+    }
+
+    @Override
+    public void setNumberOfAuthenticationFailures(final String userId, final String credentials, final int value) {
+        super.setNumberOfAuthenticationFailures(userId, credentials, value);
+        lockedOut.invalidate(new CredentialKey(userId, credentials));
+    }
+
+    /**
+     * @param userId user id
+     * @param credentials credentials
+     * @return whether the credentials are locked according to memory
+     */
+    public boolean isLockedOut(final String userId, final String credentials) {
+        return lockedOut.getIfPresent(new CredentialKey(userId, credentials)) != null;
+    }
+
+    /**
+     * @return number of attempts rejected from memory
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return number of locked credentials in memory
+     */
+    public long getLockedOutCount() {
+        return lockedOut.estimatedSize();
+    }
+
+}
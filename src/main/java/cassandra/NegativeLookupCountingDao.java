@@ -0,0 +1,225 @@
+package cassandra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.util.Assert;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Remembers the users who have no authentication failures at all, so the common "no failures" check is answered
+ * without network I/O.
+ *
+ * A user is remembered when a read returns an empty row, and forgotten before and after a failure is set or
+ * incremented through this dao. Failures recorded by other nodes are not seen until the entry expires, so the
+ * expiration bounds how long a user's failures can be missed. An empty row is not remembered if a write of a user
+ * hashed to the same stripe started while it was read. A fraction of the answers from memory is verified against
+ * Cassandra to measure the false positive rate.
+ * @author Gyozo_Nyari
+ *
+ */
+public class NegativeLookupCountingDao extends ForwardingCountingDao {
+
+    /** Rough per entry overhead of the cache node, hash table entry and String header. */
+    private static final int ESTIMATED_ENTRY_OVERHEAD = 112;
+    private static final int WRITE_STRIPES = 1024;
+
+    private final Cache<String, Boolean> usersWithoutFailures;
+    /** Writes started per stripe of users, hashed like {@link cassandra.lock.StripedLock}. */
+    private final AtomicLongArray writes = new AtomicLongArray(WRITE_STRIPES);
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong verifications = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+    private double verificationRate = 0.01;
+
+    /**
+     * Constructor.
+     * @param delegate dao to be filtered
+     * @param maximumSize maximum number of remembered users
+     * @param expireAfterSeconds time after a user is looked up again
+     */
+    public NegativeLookupCountingDao(final CountingDao delegate, final long maximumSize, final int expireAfterSeconds) {
+        super(delegate);
+        Assert.isTrue(maximumSize > 0, "Maximum size must be positive!");
+        Assert.isTrue(expireAfterSeconds > 0, "Expiration must be positive!");
+        this.usersWithoutFailures = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(expireAfterSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * A user not known to be without failures is read as a whole row, which costs the same single round trip and
+     * tells whether the user has any failures at all.
+     */
+    @Override
+    public int getNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        Integer authFailures = getNumberOfAuthenticationFailures(userId).get(credentials);
+        return authFailures != null ? authFailures.intValue() : 0;
+    }
+
+    @Override
+    public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId) {
+        if (isKnownWithoutFailures(userId)) {
+            return Collections.emptyMap();
+        }
+        misses.incrementAndGet();
+        long writesBefore = writes.get(stripeOf(userId));
+        Map<String, Integer> authFailures = super.getNumberOfAuthenticationFailures(userId);
+        if (authFailures.isEmpty()) {
+            remember(userId, writesBefore);
+        }
+        return authFailures;
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> getNumberOfAuthenticationFailures(final Collection<String> userIds) {
+        List<String> unknown = new ArrayList<String>(userIds.size());
+        for (String userId : userIds) {
+            if (!isKnownWithoutFailures(userId)) {
+                unknown.add(userId);
+            }
+        }
+        if (unknown.isEmpty()) {
+            return new HashMap<String, Map<String, Integer>>();
+        }
+        misses.addAndGet(unknown.size());
+        long[] writesBefore = new long[unknown.size()];
+        for (int i = 0; i < writesBefore.length; i++) {
+            writesBefore[i] = writes.get(stripeOf(unknown.get(i)));
+        }
+        Map<String, Map<String, Integer>> authFailures = super.getNumberOfAuthenticationFailures(unknown);
+        for (int i = 0; i < writesBefore.length; i++) {
+            String userId = unknown.get(i);
+            if (!authFailures.containsKey(userId)) {
+                remember(userId, writesBefore[i]);
+            }
+        }
+        return authFailures;
+    }
+
+    @Override
+    public void setNumberOfAuthenticationFailures(final String userId, final String credentials, final int value) {
+        forget(userId);
+        super.setNumberOfAuthenticationFailures(userId, credentials, value);
+        forget(userId);
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        forget(userId);
+        super.incrementNumberOfAuthenticationFailures(userId, credentials);
+        forget(userId);
+    }
+
+    @Override
+    public IncrementResult incrementAndCheck(final String userId, final String credentials, final int threshold) {
+        forget(userId);
+        IncrementResult result = super.incrementAndCheck(userId, credentials, threshold);
+        forget(userId);
+        return result;
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final Map<CredentialKey, Integer> increments) {
+        for (CredentialKey key : increments.keySet()) {
+            forget(key.getUserId());
+        }
+        super.incrementNumberOfAuthenticationFailures(increments);
+        for (CredentialKey key : increments.keySet()) {
+            forget(key.getUserId());
+        }
+    }
+
+    /**
+     * Sets the fraction of answers from memory which are verified against Cassandra.
+     * @param verificationRate between 0 (never) and 1 (always)
+     */
+    public void setVerificationRate(double verificationRate) {
+        Assert.isTrue(verificationRate >= 0 && verificationRate <= 1, "Verification rate must be between 0 and 1!");
+        this.verificationRate = verificationRate;
+    }
+
+    /**
+     * @return number of lookups answered from memory
+     */
+    public long getNegativeHitCount() {
+        return negativeHits.get();
+    }
+
+    /**
+     * @return number of users looked up in Cassandra
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return ratio of verified answers from memory which turned out to be wrong
+     */
+    public double getFalsePositiveRate() {
+        long verified = verifications.get();
+        return verified == 0 ? 0 : (double) falsePositives.get() / verified;
+    }
+
+    public long getSize() {
+        return usersWithoutFailures.estimatedSize();
+    }
+
+    /**
+     * Estimates the heap used by the remembered users. Walks all entries, so call it for monitoring only.
+     * @return estimated bytes
+     */
+    public long getEstimatedMemoryBytes() {
+        long bytes = 0;
+        for (String userId : usersWithoutFailures.asMap().keySet()) {
+            bytes += ESTIMATED_ENTRY_OVERHEAD + 2L * userId.length();
+        }
+        return bytes;
+    }
+
+    private boolean isKnownWithoutFailures(final String userId) {
+        if (usersWithoutFailures.getIfPresent(userId) == null) {
+            return false;
+        }
+        if (verificationRate > 0 && ThreadLocalRandom.current().nextDouble() < verificationRate) {
+            verifications.incrementAndGet();
+            if (!super.getNumberOfAuthenticationFailures(userId).isEmpty()) {
+                falsePositives.incrementAndGet();
+                forget(userId);
+                return false;
+            }
+        }
+        negativeHits.incrementAndGet();
+        return true;
+    }
+
+    private void remember(final String userId, final long writesBefore) {
+        usersWithoutFailures.put(userId, Boolean.TRUE);
+        // a write of the user racing with the read may have landed after the empty row was read
+        if (writes.get(stripeOf(userId)) != writesBefore) {
+            usersWithoutFailures.invalidate(userId);
+        }
+    }
+
+    private void forget(final String userId) {
+        writes.incrementAndGet(stripeOf(userId));
+        usersWithoutFailures.invalidate(userId);
+    }
+
+    private static int stripeOf(final String userId) {
+        int h = userId.hashCode();
+        h ^= (h >>> 16);
+        return h & (WRITE_STRIPES - 1);
+    }
+
+}
@@ -0,0 +1,27 @@
+package cassandra;
+
+import java.util.Map;
+
+/**
+ * Thrown by a batch increment of a {@link CountingDao} when some of its chunks failed. The other chunks were written,
+ * so a caller retrying the batch would count them twice; it carries the increments of the failed chunks to retry.
+ * @author Gyozo_Nyari
+ *
+ */
+public class PartialIncrementException extends CassandraException {
+
+    private final Map<CredentialKey, Integer> failedIncrements;
+
+    public PartialIncrementException(String message, Map<CredentialKey, Integer> failedIncrements, Throwable cause) {
+        super(message, cause);
+        this.failedIncrements = failedIncrements;
+    }
+
+    /**
+     * @return deltas by user's credential of the failed chunks
+     */
+    public Map<CredentialKey, Integer> getFailedIncrements() {
+        return failedIncrements;
+    }
+
+}
@@ -0,0 +1,39 @@
+package cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Thrown by a batch read of a {@link BinaryDao} when some of its chunks failed. It carries the rows of the chunks read
+ * successfully, so a caller may go on with them.
+ * @author Gyozo_Nyari
+ *
+ */
+public class PartialResultException extends CassandraException {
+
+    private final Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> rows;
+    private final Collection<ByteBuffer> failedRows;
+
+    public PartialResultException(String message, Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> rows, Collection<ByteBuffer> failedRows,
+            Throwable cause) {
+        super(message, cause);
+        this.rows = rows;
+        this.failedRows = failedRows;
+    }
+
+    /**
+     * @return columns by row key of the rows read
+     */
+    public Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> getRows() {
+        return rows;
+    }
+
+    /**
+     * @return keys of the rows in the failed chunks
+     */
+    public Collection<ByteBuffer> getFailedRows() {
+        return failedRows;
+    }
+
+}
@@ -0,0 +1,362 @@
+package cassandra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * {@link Dao} queueing row deletions and sending them to the underlying dao as batches from a background thread.
+ *
+ * {@link #remove(String)} blocks while the queue is full, so a cleanup job can't run ahead of Cassandra. Failed
+ * batches are retried with exponential backoff; rows still failing after the last attempt are kept, see
+ * {@link #getFailedRows()}. Rows waiting for deletion read as deleted by every read, scans included; storing one of
+ * them waits for the queued deletions first so the deletion can't overwrite the new columns.
+ *
+ * {@link #flush()} returns when every deletion queued before the call has been written, {@link #close()} flushes
+ * and stops the background thread. A shutdown hook closes the dao if the JVM exits before {@link #close()} is
+ * called.
+ * @author Gyozo_Nyari
+ *
+ */
+public class PipelinedDeletionDao extends ForwardingDao implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PipelinedDeletionDao.class);
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final long DEFAULT_RETRY_DELAY_MILLIS = 100;
+    private static final long POLL_MILLIS = 100;
+
+    private final BlockingQueue<String> queue;
+    private final Map<String, Integer> pending = new ConcurrentHashMap<String, Integer>();
+    private final ConcurrentLinkedQueue<String> failedRows = new ConcurrentLinkedQueue<String>();
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+    private final Thread worker;
+    private final Thread shutdownHook;
+    private final Object progress = new Object();
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    private final AtomicLong queued = new AtomicLong();
+    private long processed;
+    private long failed;
+    private long reportedFailed;
+    private final AtomicLong deletedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+
+    /**
+     * Constructor with default queue size, batch size and retries.
+     * @param delegate dao the deletions are sent to, it must throw when a deletion fails
+     */
+    public PipelinedDeletionDao(final Dao delegate) {
+        this(delegate, DEFAULT_QUEUE_SIZE, DEFAULT_BATCH_SIZE, DEFAULT_MAX_ATTEMPTS, DEFAULT_RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * Constructor.
+     * @param delegate dao the deletions are sent to, it must throw when a deletion fails
+     * @param queueSize number of queued rows blocking further deletions
+     * @param batchSize maximum number of rows deleted by one batch
+     * @param maxAttempts number of attempts of a batch
+     * @param retryDelayMillis delay before the first retry, doubled by every further one
+     */
+    public PipelinedDeletionDao(final Dao delegate, final int queueSize, final int batchSize, final int maxAttempts, final long retryDelayMillis) {
+        super(delegate);
+        Assert.isTrue(queueSize > 0, "Queue size must be positive!");
+        Assert.isTrue(batchSize > 0, "Batch size must be positive!");
+        Assert.isTrue(maxAttempts > 0, "Max attempts must be positive!");
+        Assert.isTrue(retryDelayMillis >= 0, "Retry delay can't be negative!");
+        this.queue = new ArrayBlockingQueue<String>(queueSize);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMillis = retryDelayMillis;
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "deletion-pipeline");
+        this.worker.setDaemon(true);
+        this.worker.start();
+        this.shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    close();
+                } catch (RuntimeException e) {
+                    LOG.error("Closing the deletion pipeline at shutdown failed!", e);
+                }
+            }
+        }, "deletion-pipeline-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    @Override
+    public Map<String, String> getValues(final String row) {
+        return pending.containsKey(row) ? new HashMap<String, String>() : super.getValues(row);
+    }
+
+    @Override
+    public Map<String, String> getValues(final String row, final ColumnRange range) {
+        return pending.containsKey(row) ? new HashMap<String, String>() : super.getValues(row, range);
+    }
+
+    @Override
+    public Iterator<Map<String, String>> getPages(final String row, final ColumnRange range) {
+        return pending.containsKey(row) ? Collections.<Map<String, String>> emptyIterator() : super.getPages(row, range);
+    }
+
+    @Override
+    public void forEachRow(final BiConsumer<String, Map<String, String>> consumer) {
+        super.forEachRow((row, columns) -> {
+            if (!pending.containsKey(row)) {
+                consumer.accept(row, columns);
+            }
+        });
+    }
+
+    @Override
+    public void forEachRowPage(final BiConsumer<String, Map<String, String>> consumer) {
+        super.forEachRowPage((row, columns) -> {
+            if (!pending.containsKey(row)) {
+                consumer.accept(row, columns);
+            }
+        });
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getValues(final Collection<String> rows) {
+        Map<String, Map<String, String>> values = new HashMap<String, Map<String, String>>(super.getValues(rows));
+        values.keySet().removeAll(pending.keySet());
+        return values;
+    }
+
+    @Override
+    public void store(final String row, final Map<String, String> columns) {
+        if (pending.containsKey(row)) {
+            flush();
+        }
+        super.store(row, columns);
+    }
+
+    @Override
+    public void storeAll(final Map<String, Map<String, String>> rows) {
+        if (!Collections.disjoint(rows.keySet(), pending.keySet())) {
+            flush();
+        }
+        super.storeAll(rows);
+    }
+
+    /**
+     * Queues the deletion of the row, blocks while the queue is full.
+     */
+    @Override
+    public void remove(final String row) {
+        Assert.notNull(row, "Row cant be null!");
+        // close() can't slip in between the check and the queueing, the worker would stop with the row queued
+        Lock lock = closeLock.readLock();
+        lock.lock();
+        try {
+            Assert.state(!closed, "Deletion pipeline is closed!");
+            pending.merge(row, 1, Integer::sum);
+            try {
+                queue.put(row);
+            } catch (InterruptedException e) {
+                done(row);
+                Thread.currentThread().interrupt();
+                throw new CassandraException("Queueing deletion of row " + row + " interrupted!", e);
+            }
+            queued.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues the deletion of the rows, blocks while the queue is full.
+     */
+    @Override
+    public void removeAll(final Collection<String> rows) {
+        Assert.notNull(rows, "Rows cant be null!");
+        for (String row : rows) {
+            remove(row);
+        }
+    }
+
+    /**
+     * Waits until the deletions queued before the call are written.
+     * @throws CassandraException if deletions failed for good since the last flush, see {@link #getFailedRows()};
+     *             each failure is thrown once
+     */
+    public void flush() {
+        long target = queued.get();
+        synchronized (progress) {
+            while (processed < target) {
+                if (!worker.isAlive()) {
+                    throw new CassandraException("Deletion pipeline stopped with " + queue.size() + " rows queued!");
+                }
+                try {
+                    progress.wait(POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CassandraException("Flushing deletions interrupted!", e);
+                }
+            }
+            long unreported = failed - reportedFailed;
+            reportedFailed = failed;
+            if (unreported > 0) {
+                throw new CassandraException("Deleting " + unreported + " rows failed!");
+            }
+        }
+    }
+
+    /**
+     * Stops accepting deletions, writes the queued ones and stops the background thread.
+     * @throws CassandraException if deletions failed for good since the last flush, see {@link #getFailedRows()}
+     */
+    @Override
+    public void close() {
+        Lock lock = closeLock.writeLock();
+        lock.lock();
+        try {
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // the JVM is shutting down, this is the hook
+        }
+        try {
+            flush();
+        } finally {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * Queues the rows failed for good again.
+     */
+    public void retryFailed() {
+        List<String> rows = new ArrayList<String>();
+        for (String row; (row = failedRows.poll()) != null;) {
+            rows.add(row);
+        }
+        removeAll(rows);
+    }
+
+    /**
+     * @return rows whose deletion failed after all attempts
+     */
+    public List<String> getFailedRows() {
+        return new ArrayList<String>(failedRows);
+    }
+
+    /**
+     * @return number of rows waiting for deletion
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    public long getDeletedCount() {
+        return deletedCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    private void drain() {
+        List<String> batch = new ArrayList<String>(batchSize);
+        while (!(closed && queue.isEmpty())) {
+            boolean deleted = false;
+            try {
+                String first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                deleted = delete(batch);
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                for (String row : batch) {
+                    done(row);
+                }
+                completed(batch.size(), deleted ? 0 : batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * @return whether the batch was deleted, failed rows are added to the failed ones
+     */
+    private boolean delete(final List<String> batch) throws InterruptedException {
+        long delay = retryDelayMillis;
+        for (int attempt = 1;; attempt++) {
+            try {
+                getDelegate().removeAll(batch);
+                batchCount.incrementAndGet();
+                deletedCount.addAndGet(batch.size());
+                return true;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    LOG.error("Deleting {} rows failed after {} attempts!", new Object[] {batch.size(), attempt, e});
+                    failedRows.addAll(batch);
+                    return false;
+                }
+                LOG.warn("Deleting {} rows failed, retrying in {} ms", new Object[] {batch.size(), delay, e});
+                retryCount.incrementAndGet();
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    failedRows.addAll(batch);
+                    throw interrupted;
+                }
+                delay *= 2;
+            }
+        }
+    }
+
+    private void done(final String row) {
+        pending.computeIfPresent(row, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void completed(final int rows, final int failures) {
+        synchronized (progress) {
+            processed += rows;
+            failed += failures;
+            progress.notifyAll();
+        }
+    }
+
+}
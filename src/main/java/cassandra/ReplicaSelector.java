@@ -0,0 +1,215 @@
+package cassandra;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.netflix.astyanax.AstyanaxContext;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.connectionpool.ConnectionPool;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.HostConnectionPool;
+import com.netflix.astyanax.connectionpool.TokenRange;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.partitioner.Partitioner;
+import com.netflix.astyanax.serializers.StringSerializer;
+
+/**
+ * Picks the replica of a row a hedge is pinned to: the token aware, latency aware pool sends a read to the best
+ * scoring replica, so a hedge left to the pool usually lands on the same, slow, host. This one returns the second
+ * best scoring replica instead.
+ *
+ * The ring is described again every refresh interval, by one of the selecting threads while the others keep using
+ * the stale ring. Rows whose replicas are not known, e.g. of a partitioner with non numeric tokens, or with a single
+ * active replica, are not pinned; {@link #getUnpinnedCount()} tells how often.
+ * Without latency scoring the pool picks among the replicas in turn, so the hedge still reaches the primary's host
+ * now and then.
+ * @author Gyozo_Nyari
+ *
+ */
+public class ReplicaSelector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicaSelector.class);
+
+    private final Keyspace keyspace;
+    private final long refreshNanos;
+    private volatile Ring ring;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final LongAdder pinnedCount = new LongAdder();
+    private final LongAdder unpinnedCount = new LongAdder();
+
+    /**
+     * Constructor, the ring is described every 30 seconds.
+     * @param astyanaxContext context
+     */
+    public ReplicaSelector(final AstyanaxContext<Keyspace> astyanaxContext) {
+        this(astyanaxContext, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Constructor.
+     * @param astyanaxContext context
+     * @param refreshInterval time after the ring is described again
+     * @param unit unit of the interval
+     */
+    public ReplicaSelector(final AstyanaxContext<Keyspace> astyanaxContext, final long refreshInterval, final TimeUnit unit) {
+        Assert.notNull(astyanaxContext, "Context can't be null!");
+        Assert.isTrue(refreshInterval > 0, "Refresh interval must be positive!");
+        this.keyspace = astyanaxContext.getEntity();
+        this.refreshNanos = unit.toNanos(refreshInterval);
+    }
+
+    /**
+     * Returns the second best scoring active replica of a row.
+     * @param row row key
+     * @return host, null if the row is not to be pinned
+     */
+    public Host select(final String row) {
+        Host host = null;
+        try {
+            host = select(getRing(), row);
+        } catch (RuntimeException e) {
+            LOG.debug("Selecting a replica of {} failed", row, e);
+        }
+        if (host == null) {
+            unpinnedCount.increment();
+        } else {
+            pinnedCount.increment();
+        }
+        return host;
+    }
+
+    private Host select(final Ring current, final String row) {
+        if (current.partitioner == null) {
+            return null;
+        }
+        String token = current.partitioner.getTokenForKey(StringSerializer.get().toByteBuffer(row));
+        Set<String> endpoints = current.endpointsOf(new BigInteger(token));
+        if (endpoints.size() < 2) {
+            return null;
+        }
+        List<HostConnectionPool<?>> replicas = new ArrayList<HostConnectionPool<?>>(endpoints.size());
+        for (HostConnectionPool<?> pool : current.connectionPool.getActivePools()) {
+            if (endpoints.contains(pool.getHost().getIpAddress()) || endpoints.contains(pool.getHost().getHostName())) {
+                replicas.add(pool);
+            }
+        }
+        if (replicas.size() < 2) {
+            return null;
+        }
+        Collections.sort(replicas, new Comparator<HostConnectionPool<?>>() {
+            @Override
+            public int compare(HostConnectionPool<?> a, HostConnectionPool<?> b) {
+                return Double.compare(a.getScore(), b.getScore());
+            }
+        });
+        return replicas.get(1).getHost();
+    }
+
+    /**
+     * Only the first description of the ring is waited for. A stale ring is described again by a single caller, the
+     * others keep selecting on the stale one meanwhile.
+     */
+    private Ring getRing() {
+        Ring current = ring;
+        if (current == null) {
+            synchronized (this) {
+                if (ring == null) {
+                    ring = describeRing();
+                }
+                return ring;
+            }
+        }
+        if (System.nanoTime() - current.described >= refreshNanos && refreshing.compareAndSet(false, true)) {
+            try {
+                if (ring == current) {
+                    ring = describeRing();
+                }
+            } finally {
+                refreshing.set(false);
+            }
+        }
+        return ring;
+    }
+
+    private Ring describeRing() {
+        long now = System.nanoTime();
+        try {
+            return new Ring(keyspace.getPartitioner(), keyspace.getConnectionPool(), keyspace.describeRing(), now);
+        } catch (ConnectionException e) {
+            LOG.warn("Describing the ring failed, hedges are not pinned until the next refresh!", e);
+        } catch (NumberFormatException e) {
+            // tokens of an ordered partitioner, rows are left to the pool
+            LOG.debug("Ring of non numeric tokens, hedges are not pinned", e);
+        }
+        return new Ring(null, null, Collections.<TokenRange> emptyList(), now);
+    }
+
+    /**
+     * @return number of rows pinned to a replica
+     */
+    public long getPinnedCount() {
+        return pinnedCount.sum();
+    }
+
+    /**
+     * @return number of rows left to the pool
+     */
+    public long getUnpinnedCount() {
+        return unpinnedCount.sum();
+    }
+
+    /**
+     * Token ranges of the ring, with their replicas.
+     */
+    private static final class Ring {
+
+        private final Partitioner partitioner;
+        private final ConnectionPool<?> connectionPool;
+        private final List<BigInteger> starts = new ArrayList<BigInteger>();
+        private final List<BigInteger> ends = new ArrayList<BigInteger>();
+        private final List<Set<String>> endpoints = new ArrayList<Set<String>>();
+        private final long described;
+
+        Ring(final Partitioner partitioner, final ConnectionPool<?> connectionPool, final List<TokenRange> ranges, final long described) {
+            this.partitioner = partitioner;
+            this.connectionPool = connectionPool;
+            this.described = described;
+            for (TokenRange range : ranges) {
+                starts.add(new BigInteger(range.getStartToken()));
+                ends.add(new BigInteger(range.getEndToken()));
+                endpoints.add(new HashSet<String>(range.getEndpoints()));
+            }
+        }
+
+        /**
+         * Ranges hold the tokens in (start, end], the range with start not below its end wraps around the ring.
+         */
+        Set<String> endpointsOf(final BigInteger token) {
+            for (int i = 0; i < starts.size(); i++) {
+                BigInteger start = starts.get(i);
+                BigInteger end = ends.get(i);
+                boolean wraps = start.compareTo(end) >= 0;
+                boolean afterStart = token.compareTo(start) > 0;
+                boolean notAfterEnd = token.compareTo(end) <= 0;
+                if (wraps ? afterStart || notAfterEnd : afterStart && notAfterEnd) {
+                    return endpoints.get(i);
+                }
+            }
+            return Collections.emptySet();
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package cassandra;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+import cassandra.resilience.Resilience;
+
+/**
+ * {@link CountingDao} running every call through {@link Resilience}, see {@link ResilientDao}. Lookups and sets are
+ * retried, increments are not: a failed increment may have been applied.
+ * @author Gyozo_Nyari
+ *
+ */
+public class ResilientCountingDao extends ForwardingCountingDao {
+
+    private final Resilience resilience;
+    private final String columnFamily;
+
+    /**
+     * Constructor.
+     * @param delegate dao
+     * @param resilience executor of the calls
+     * @param columnFamily column family, names the circuit
+     */
+    public ResilientCountingDao(final CountingDao delegate, final Resilience resilience, final String columnFamily) {
+        super(delegate);
+        Assert.notNull(resilience, "Resilience can't be null!");
+        Assert.notNull(columnFamily, "Column family can't be null!");
+        this.resilience = resilience;
+        this.columnFamily = columnFamily;
+    }
+
+    @Override
+    public int getNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        return resilience.execute(columnFamily, true, () -> super.getNumberOfAuthenticationFailures(userId, credentials));
+    }
+
+    @Override
+    public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId) {
+        return resilience.execute(columnFamily, true, () -> super.getNumberOfAuthenticationFailures(userId));
+    }
+
+    @Override
+    public CredentialCounts getAuthenticationFailureCounts(final String userId) {
+        return resilience.execute(columnFamily, true, () -> getDelegate().getAuthenticationFailureCounts(userId));
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> getNumberOfAuthenticationFailures(final Collection<String> userIds) {
+        return resilience.execute(columnFamily, true, () -> super.getNumberOfAuthenticationFailures(userIds));
+    }
+
+    @Override
+    public void setNumberOfAuthenticationFailures(final String userId, final String credentials, final int value) {
+        resilience.execute(columnFamily, true, () -> {
+            super.setNumberOfAuthenticationFailures(userId, credentials, value);
+            return null;
+        });
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        resilience.execute(columnFamily, false, () -> {
+            super.incrementNumberOfAuthenticationFailures(userId, credentials);
+            return null;
+        });
+    }
+
+    @Override
+    public IncrementResult incrementAndCheck(final String userId, final String credentials, final int threshold) {
+        return resilience.execute(columnFamily, false, () -> super.incrementAndCheck(userId, credentials, threshold));
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final Map<CredentialKey, Integer> increments) {
+        resilience.execute(columnFamily, false, () -> {
+            super.incrementNumberOfAuthenticationFailures(increments);
+            return null;
+        });
+    }
+
+}
@@ -0,0 +1,110 @@
+package cassandra;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.springframework.util.Assert;
+
+import cassandra.resilience.Resilience;
+
+/**
+ * {@link Dao} running every call through {@link Resilience}: within the deadline of the caller, through the circuit
+ * breaker of the column family, retrying reads, writes and deletions on {@link CassandraException} within the retry
+ * budget. Scans are not retried, the consumer has seen the rows. Page iterators are retried when created only.
+ * Callers set the deadline with {@link cassandra.resilience.Deadline#call(cassandra.resilience.Deadline,
+ * java.util.function.Supplier)}.
+ *
+ * An {@link AstyanaxDao} below has to {@link AstyanaxDao#setFailSilently(boolean) throw its failures}.
+ * @author Gyozo_Nyari
+ *
+ */
+public class ResilientDao extends ForwardingDao {
+
+    private final Resilience resilience;
+    private final String columnFamily;
+
+    /**
+     * Constructor.
+     * @param delegate dao
+     * @param resilience executor of the calls
+     * @param columnFamily column family, names the circuit
+     */
+    public ResilientDao(final Dao delegate, final Resilience resilience, final String columnFamily) {
+        super(delegate);
+        Assert.notNull(resilience, "Resilience can't be null!");
+        Assert.notNull(columnFamily, "Column family can't be null!");
+        this.resilience = resilience;
+        this.columnFamily = columnFamily;
+    }
+
+    @Override
+    public Map<String, String> getValues(final String row) {
+        return resilience.execute(columnFamily, true, () -> super.getValues(row));
+    }
+
+    @Override
+    public Map<String, String> getValues(final String row, final ColumnRange range) {
+        return resilience.execute(columnFamily, true, () -> super.getValues(row, range));
+    }
+
+    @Override
+    public Iterator<Map<String, String>> getPages(final String row, final ColumnRange range) {
+        return resilience.execute(columnFamily, true, () -> super.getPages(row, range));
+    }
+
+    @Override
+    public void store(final String row, final Map<String, String> columns) {
+        resilience.execute(columnFamily, true, () -> {
+            super.store(row, columns);
+            return null;
+        });
+    }
+
+    @Override
+    public void remove(final String row) {
+        resilience.execute(columnFamily, true, () -> {
+            super.remove(row);
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getValues(final Collection<String> rows) {
+        return resilience.execute(columnFamily, true, () -> super.getValues(rows));
+    }
+
+    @Override
+    public void storeAll(final Map<String, Map<String, String>> rows) {
+        resilience.execute(columnFamily, true, () -> {
+            super.storeAll(rows);
+            return null;
+        });
+    }
+
+    @Override
+    public void removeAll(final Collection<String> rows) {
+        resilience.execute(columnFamily, true, () -> {
+            super.removeAll(rows);
+            return null;
+        });
+    }
+
+    @Override
+    public void forEachRow(final BiConsumer<String, Map<String, String>> consumer) {
+        resilience.execute(columnFamily, false, () -> {
+            super.forEachRow(consumer);
+            return null;
+        });
+    }
+
+    @Override
+    public void forEachRowPage(final BiConsumer<String, Map<String, String>> consumer) {
+        resilience.execute(columnFamily, false, () -> {
+            super.forEachRowPage(consumer);
+            return null;
+        });
+    }
+
+}
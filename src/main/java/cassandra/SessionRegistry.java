@@ -0,0 +1,350 @@
+package cassandra;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import me.prettyprint.cassandra.service.CassandraHostConfigurator;
+import me.prettyprint.cassandra.service.FailoverPolicy;
+import me.prettyprint.cassandra.service.ThriftCluster;
+import me.prettyprint.hector.api.Cluster;
+import me.prettyprint.hector.api.factory.HFactory;
+
+import com.netflix.astyanax.AstyanaxContext;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+
+/**
+ * Hands out one shared Astyanax context per cluster and keyspace, and one shared Hector cluster per cluster name, so
+ * the daos of a JVM share a single connection pool sized by the {@link Configuration}.
+ *
+ * Sessions are created and warmed up, connections opened and the keyspace described, by the first acquire. The warm-up
+ * holds only its own session, acquires of other sessions go on meanwhile. Every acquire must be paired with a
+ * release, the last release shuts the session down. {@link #shutdown()} closes whatever is left, Hector clusters
+ * first, then the Astyanax contexts.
+ *
+ * The Hector clusters are not registered with {@link HFactory}, whose clusters are global by name, so two registries,
+ * e.g. of different hosts, never share a cluster.
+ * @author Gyozo_Nyari
+ *
+ */
+public class SessionRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionRegistry.class);
+    private static SessionRegistry instance;
+
+    private final Configuration configuration;
+    private final Map<String, Session<AstyanaxContext<Keyspace>>> astyanaxSessions = new HashMap<String, Session<AstyanaxContext<Keyspace>>>();
+    private final Map<Keyspace, String> astyanaxKeys = new IdentityHashMap<Keyspace, String>();
+    private final Map<String, Session<Cluster>> hectorClusters = new HashMap<String, Session<Cluster>>();
+    private final Map<me.prettyprint.hector.api.Keyspace, String> hectorKeys = new IdentityHashMap<me.prettyprint.hector.api.Keyspace, String>();
+    private final Map<String, me.prettyprint.hector.api.Keyspace> hectorKeyspaces = new HashMap<String, me.prettyprint.hector.api.Keyspace>();
+
+    /**
+     * Constructor.
+     * @param configuration settings of the sessions
+     */
+    public SessionRegistry(final Configuration configuration) {
+        Assert.notNull(configuration, "Configuration can't be null!");
+        this.configuration = configuration;
+    }
+
+    /**
+     * Returns the registry of the {@link Configuration#getConfiguration() default configuration}, it is shut down
+     * when the JVM exits.
+     * @return registry
+     */
+    public static synchronized SessionRegistry getInstance() {
+        if (instance == null) {
+            final SessionRegistry registry = new SessionRegistry(Configuration.getConfiguration());
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    registry.shutdown();
+                }
+            }, "session-registry-shutdown"));
+            instance = registry;
+        }
+        return instance;
+    }
+
+    /**
+     * Acquires the Astyanax keyspace of the configured cluster and keyspace.
+     * @return keyspace
+     */
+    public AstyanaxContext<Keyspace> acquireAstyanax() {
+        return acquireAstyanax(configuration.getClusterName(), configuration.getKeyspace());
+    }
+
+    /**
+     * Acquires an Astyanax context, creating and warming it up on the first call.
+     * @param clusterName cluster name
+     * @param keyspaceName keyspace name
+     * @return started context, release it with {@link #release(AstyanaxContext)}
+     */
+    public AstyanaxContext<Keyspace> acquireAstyanax(final String clusterName, final String keyspaceName) {
+        final String key = key(clusterName, keyspaceName);
+        Session<AstyanaxContext<Keyspace>> session;
+        synchronized (this) {
+            session = astyanaxSessions.get(key);
+            if (session == null) {
+                session = new Session<AstyanaxContext<Keyspace>>();
+                astyanaxSessions.put(key, session);
+            }
+            session.references++;
+        }
+        AstyanaxContext<Keyspace> context = start(astyanaxSessions, key, session, () -> createAstyanax(clusterName, keyspaceName));
+        synchronized (this) {
+            if (astyanaxSessions.get(key) != session) {
+                throw new CassandraException("Session registry was shut down!");
+            }
+            astyanaxKeys.put(context.getEntity(), key);
+        }
+        return context;
+    }
+
+    /**
+     * Releases an Astyanax context, the last release shuts it down outside the lock of the registry.
+     * @param context context acquired from this registry
+     */
+    public void release(final AstyanaxContext<Keyspace> context) {
+        String key;
+        Session<AstyanaxContext<Keyspace>> session;
+        synchronized (this) {
+            key = astyanaxKeys.get(context.getEntity());
+            Assert.notNull(key, "Context was not acquired from this registry!");
+            session = astyanaxSessions.get(key);
+            if (--session.references > 0) {
+                return;
+            }
+            astyanaxSessions.remove(key);
+            astyanaxKeys.remove(context.getEntity());
+        }
+        session.close();
+        shutdown(key, context);
+    }
+
+    /**
+     * Acquires the Hector keyspace of the configured cluster and keyspace.
+     * @return keyspace
+     */
+    public me.prettyprint.hector.api.Keyspace acquireHector() {
+        return acquireHector(configuration.getClusterName(), configuration.getKeyspace());
+    }
+
+    /**
+     * Acquires a Hector keyspace, creating and warming up the cluster on the first call for the cluster name.
+     * @param clusterName cluster name
+     * @param keyspaceName keyspace name
+     * @return keyspace, release it with {@link #release(me.prettyprint.hector.api.Keyspace)}
+     */
+    public me.prettyprint.hector.api.Keyspace acquireHector(final String clusterName, final String keyspaceName) {
+        String key = key(clusterName, keyspaceName);
+        Session<Cluster> session;
+        synchronized (this) {
+            session = hectorClusters.get(clusterName);
+            if (session == null) {
+                session = new Session<Cluster>();
+                hectorClusters.put(clusterName, session);
+            }
+            session.references++;
+        }
+        Cluster cluster = start(hectorClusters, clusterName, session, () -> createHector(clusterName));
+        synchronized (this) {
+            if (hectorClusters.get(clusterName) != session) {
+                throw new CassandraException("Session registry was shut down!");
+            }
+            me.prettyprint.hector.api.Keyspace keyspace = hectorKeyspaces.get(key);
+            if (keyspace == null) {
+                // retries are left to the callers, see Configuration#setDriverRetries
+                keyspace = HFactory.createKeyspace(keyspaceName, cluster, HFactory.createDefaultConsistencyLevelPolicy(),
+                        new FailoverPolicy(configuration.getDriverRetries(), 0));
+                hectorKeyspaces.put(key, keyspace);
+                hectorKeys.put(keyspace, clusterName);
+            }
+            return keyspace;
+        }
+    }
+
+    /**
+     * Releases a Hector keyspace, the last release of its cluster shuts the cluster down outside the lock of the
+     * registry.
+     * @param keyspace keyspace acquired from this registry
+     */
+    public void release(final me.prettyprint.hector.api.Keyspace keyspace) {
+        String clusterName;
+        Session<Cluster> session;
+        synchronized (this) {
+            clusterName = hectorKeys.get(keyspace);
+            Assert.notNull(clusterName, "Keyspace was not acquired from this registry!");
+            session = hectorClusters.get(clusterName);
+            if (--session.references > 0) {
+                return;
+            }
+            hectorClusters.remove(clusterName);
+            for (Map.Entry<me.prettyprint.hector.api.Keyspace, String> entry : new HashMap<me.prettyprint.hector.api.Keyspace, String>(hectorKeys).entrySet()) {
+                if (entry.getValue().equals(clusterName)) {
+                    hectorKeys.remove(entry.getKey());
+                    hectorKeyspaces.remove(key(clusterName, entry.getKey().getKeyspaceName()));
+                }
+            }
+        }
+        Cluster cluster = session.close();
+        if (cluster != null) {
+            shutdown(clusterName, cluster);
+        }
+    }
+
+    /**
+     * Shuts down every session, regardless of the references still held. The sessions are taken out of the registry
+     * under its lock and closed after releasing it, so acquires and releases of other threads don't wait for a
+     * warm-up in progress. Sessions being warmed up are shut down when their warm-up is over, their acquires fail.
+     */
+    public void shutdown() {
+        Map<String, Session<Cluster>> clusters;
+        Map<String, Session<AstyanaxContext<Keyspace>>> contexts;
+        synchronized (this) {
+            clusters = new HashMap<String, Session<Cluster>>(hectorClusters);
+            contexts = new HashMap<String, Session<AstyanaxContext<Keyspace>>>(astyanaxSessions);
+            hectorClusters.clear();
+            hectorKeyspaces.clear();
+            hectorKeys.clear();
+            astyanaxSessions.clear();
+            astyanaxKeys.clear();
+        }
+        for (Map.Entry<String, Session<Cluster>> entry : clusters.entrySet()) {
+            Cluster cluster = entry.getValue().close();
+            if (cluster != null) {
+                shutdown(entry.getKey(), cluster);
+            }
+        }
+        for (Map.Entry<String, Session<AstyanaxContext<Keyspace>>> entry : contexts.entrySet()) {
+            AstyanaxContext<Keyspace> context = entry.getValue().close();
+            if (context != null) {
+                shutdown(entry.getKey(), context);
+            }
+        }
+    }
+
+    /**
+     * @return number of open Astyanax contexts and Hector clusters
+     */
+    public synchronized int getSessionCount() {
+        return astyanaxSessions.size() + hectorClusters.size();
+    }
+
+    /**
+     * Starts a session outside the lock of the registry, an acquire failing to start it gives up its reference.
+     */
+    private <T> T start(final Map<String, Session<T>> sessions, final String key, final Session<T> session, final Supplier<T> factory) {
+        try {
+            return session.start(factory);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                if (--session.references == 0 && sessions.get(key) == session) {
+                    sessions.remove(key);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private AstyanaxContext<Keyspace> createAstyanax(final String clusterName, final String keyspaceName) {
+        AstyanaxContextFactory factory = AstyanaxContextFactory.fromConfiguration(configuration);
+        factory.setClusterName(clusterName);
+        factory.setKeyspace(keyspaceName);
+        AstyanaxContext<Keyspace> context = factory.create();
+        try {
+            // opens the connections and fails early if the keyspace is missing
+            context.getEntity().describeKeyspace();
+        } catch (ConnectionException e) {
+            context.shutdown();
+            throw new CassandraException("Warming up keyspace " + keyspaceName + " failed!", e);
+        }
+        LOG.debug("Astyanax context of {}/{} started", clusterName, keyspaceName);
+        return context;
+    }
+
+    private Cluster createHector(final String clusterName) {
+        CassandraHostConfigurator configurator = new CassandraHostConfigurator(
+                AstyanaxContextFactory.getSeeds(configuration.getHostname(), configuration.getPort()));
+        configurator.setMaxActive(configuration.getMaxConnsPerHost());
+        configurator.setMaxWaitTimeWhenExhausted(configuration.getMaxTimeoutWhenExhausted());
+        configurator.setCassandraThriftSocketTimeout(configuration.getSocketTimeout());
+        configurator.setAutoDiscoverHosts(!"NONE".equals(configuration.getDiscoveryType()));
+        configurator.setAutoDiscoveryDelayInSeconds(configuration.getDiscoveryDelaySeconds());
+        ThriftCluster cluster = new ThriftCluster(clusterName, configurator);
+        try {
+            cluster.onStartup();
+            // opens the connections
+            cluster.describeClusterName();
+        } catch (RuntimeException e) {
+            cluster.getConnectionManager().shutdown();
+            throw new CassandraException("Warming up cluster " + clusterName + " failed!", e);
+        }
+        LOG.debug("Hector cluster {} started", clusterName);
+        return cluster;
+    }
+
+    private static void shutdown(final String name, final AstyanaxContext<Keyspace> context) {
+        try {
+            context.shutdown();
+            LOG.debug("Astyanax context of {} shut down", name);
+        } catch (RuntimeException e) {
+            LOG.warn("Shutting down Astyanax context of {} failed!", name, e);
+        }
+    }
+
+    private static void shutdown(final String name, final Cluster cluster) {
+        try {
+            cluster.getConnectionManager().shutdown();
+            LOG.debug("Hector cluster {} shut down", name);
+        } catch (RuntimeException e) {
+            LOG.warn("Shutting down Hector cluster {} failed!", name, e);
+        }
+    }
+
+    private static String key(final String clusterName, final String keyspaceName) {
+        Assert.notNull(clusterName, "Cluster name can't be null!");
+        Assert.notNull(keyspaceName, "Keyspace name can't be null!");
+        return clusterName + "/" + keyspaceName;
+    }
+
+    /**
+     * A shared resource and the number of its holders, guarded by the registry. The resource is created by the first
+     * holder, guarded by the session.
+     */
+    private static final class Session<T> {
+
+        private T resource;
+        private boolean closed;
+        private int references;
+
+        synchronized T start(final Supplier<T> factory) {
+            if (closed) {
+                throw new CassandraException("Session registry was shut down!");
+            }
+            if (resource == null) {
+                resource = factory.get();
+            }
+            return resource;
+        }
+
+        /**
+         * Waits for a warm-up in progress.
+         * @return resource to shut down, null if it was not created
+         */
+        synchronized T close() {
+            closed = true;
+            T closing = resource;
+            resource = null;
+            return closing;
+        }
+    }
+
+}
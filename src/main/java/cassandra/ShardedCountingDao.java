@@ -0,0 +1,186 @@
+package cassandra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.util.Assert;
+
+/**
+ * Spreads the counters of heavily attacked users over several rows, so a targeted attack doesn't turn a single
+ * partition hot.
+ *
+ * Writes of a sharded user go to a random one of the sub-rows userId, userId#1 ... userId#(n-1), reads fetch all of
+ * them in one multi-row request and sum them up. Shard 0 is the plain userId row, so the unsharded layout is read
+ * unchanged. By default every user is sharded, with a {@link HotKeyDetector} only the users detected hot are.
+ * Reads always fan out: another node may have sharded writes of a user this node considers cold.
+ *
+ * The separator and the escape character are percent-encoded in the user ids of the numbered sub-rows, so the
+ * numbered sub-rows of two users never share a key. Shard 0 keeps the user id as it is, so only a user id ending in
+ * the separator and a shard number can name a sub-row of another user.
+ * @author Gyozo_Nyari
+ *
+ */
+public class ShardedCountingDao extends ForwardingCountingDao {
+
+    private static final String SHARD_SEPARATOR = "#";
+    private static final String ESCAPE = "%";
+
+    private final int shards;
+    private HotKeyDetector hotKeyDetector;
+
+    /**
+     * Constructor.
+     * @param delegate dao storing the sub-rows
+     * @param shards number of sub-rows of a user
+     */
+    public ShardedCountingDao(final CountingDao delegate, final int shards) {
+        super(delegate);
+        Assert.isTrue(shards > 0, "Number of shards must be positive!");
+        this.shards = shards;
+    }
+
+    @Override
+    public int getNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        Integer authFailures = getNumberOfAuthenticationFailures(userId).get(credentials);
+        return authFailures != null ? authFailures.intValue() : 0;
+    }
+
+    @Override
+    public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId) {
+        Map<String, Integer> authFailures = getNumberOfAuthenticationFailures(Collections.singleton(userId)).get(userId);
+        return authFailures != null ? authFailures : new HashMap<String, Integer>();
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> getNumberOfAuthenticationFailures(final Collection<String> userIds) {
+        Map<String, String> userIdsByShard = new HashMap<String, String>();
+        for (String userId : userIds) {
+            for (int shard = 0; shard < shards; shard++) {
+                userIdsByShard.put(shardKey(userId, shard), userId);
+            }
+        }
+        Map<String, Map<String, Integer>> authFailures = new HashMap<String, Map<String, Integer>>();
+        for (Map.Entry<String, Map<String, Integer>> row : super.getNumberOfAuthenticationFailures(userIdsByShard.keySet()).entrySet()) {
+            String userId = userIdsByShard.get(row.getKey());
+            Map<String, Integer> userFailures = authFailures.get(userId);
+            if (userFailures == null) {
+                userFailures = new HashMap<String, Integer>();
+                authFailures.put(userId, userFailures);
+            }
+            for (Map.Entry<String, Integer> entry : row.getValue().entrySet()) {
+                userFailures.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        }
+        return authFailures;
+    }
+
+    /**
+     * Sets the value in shard 0 and clears the credential in the other shards.
+     */
+    @Override
+    public void setNumberOfAuthenticationFailures(final String userId, final String credentials, final int value) {
+        List<String> shardKeys = new ArrayList<String>(shards);
+        for (int shard = 1; shard < shards; shard++) {
+            shardKeys.add(shardKey(userId, shard));
+        }
+        Map<String, Map<String, Integer>> rows = shardKeys.isEmpty() ? Collections.<String, Map<String, Integer>> emptyMap()
+                : super.getNumberOfAuthenticationFailures(shardKeys);
+        for (Map.Entry<String, Map<String, Integer>> row : rows.entrySet()) {
+            Integer authFailures = row.getValue().get(credentials);
+            if (authFailures != null && authFailures.intValue() != 0) {
+                super.setNumberOfAuthenticationFailures(row.getKey(), credentials, 0);
+            }
+        }
+        super.setNumberOfAuthenticationFailures(shardKey(userId, 0), credentials, value);
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        super.incrementNumberOfAuthenticationFailures(writeKey(userId), credentials);
+    }
+
+    /**
+     * The written sub-row is incremented and checked by the delegate in one call, the other sub-rows only know their
+     * own part of the count, so they are read and added.
+     */
+    @Override
+    public IncrementResult incrementAndCheck(final String userId, final String credentials, final int threshold) {
+        String writeKey = writeKey(userId);
+        IncrementResult written = super.incrementAndCheck(writeKey, credentials, threshold);
+        if (shards == 1) {
+            return written;
+        }
+        List<String> otherKeys = new ArrayList<String>(shards - 1);
+        for (int shard = 0; shard < shards; shard++) {
+            String shardKey = shardKey(userId, shard);
+            if (!shardKey.equals(writeKey)) {
+                otherKeys.add(shardKey);
+            }
+        }
+        int value = written.getCount();
+        for (Map<String, Integer> row : super.getNumberOfAuthenticationFailures(otherKeys).values()) {
+            Integer authFailures = row.get(credentials);
+            value += authFailures != null ? authFailures.intValue() : 0;
+        }
+        return new IncrementResult(value, value >= threshold);
+    }
+
+    /**
+     * The failed increments of a partially written batch are reported with the user ids, not the sub-rows.
+     */
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final Map<CredentialKey, Integer> increments) {
+        Map<CredentialKey, Integer> shardedIncrements = new HashMap<CredentialKey, Integer>();
+        Map<CredentialKey, CredentialKey> keysByShard = new HashMap<CredentialKey, CredentialKey>();
+        for (Map.Entry<CredentialKey, Integer> entry : increments.entrySet()) {
+            CredentialKey key = new CredentialKey(writeKey(entry.getKey().getUserId()), entry.getKey().getCredential());
+            shardedIncrements.put(key, entry.getValue());
+            keysByShard.put(key, entry.getKey());
+        }
+        try {
+            super.incrementNumberOfAuthenticationFailures(shardedIncrements);
+        } catch (PartialIncrementException e) {
+            Map<CredentialKey, Integer> failedIncrements = new HashMap<CredentialKey, Integer>();
+            for (Map.Entry<CredentialKey, Integer> entry : e.getFailedIncrements().entrySet()) {
+                failedIncrements.put(keysByShard.get(entry.getKey()), entry.getValue());
+            }
+            throw new PartialIncrementException(e.getMessage(), failedIncrements, e.getCause());
+        }
+    }
+
+    /**
+     * Shards only the users the detector finds hot, the others are written to shard 0.
+     * @param hotKeyDetector detector
+     */
+    public void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    private String writeKey(final String userId) {
+        if (shards == 1 || (hotKeyDetector != null && !hotKeyDetector.recordWrite(userId))) {
+            return shardKey(userId, 0);
+        }
+        return shardKey(userId, ThreadLocalRandom.current().nextInt(shards));
+    }
+
+    private static String shardKey(final String userId, final int shard) {
+        if (shard == 0) {
+            return userId;
+        }
+        String escaped = userId;
+        if (userId.contains(SHARD_SEPARATOR) || userId.contains(ESCAPE)) {
+            escaped = userId.replace(ESCAPE, "%25").replace(SHARD_SEPARATOR, "%23");
+        }
+        return escaped + SHARD_SEPARATOR + shard;
+    }
+
+}
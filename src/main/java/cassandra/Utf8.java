@@ -0,0 +1,75 @@
+package cassandra;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts between the String and binary form of rows, for the String daos layered on {@link BinaryDao}.
+ * @author Gyozo_Nyari
+ *
+ */
+final class Utf8 {
+
+    private Utf8() {
+    }
+
+    static ByteBuffer encode(final String value) {
+        return value != null ? ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)) : null;
+    }
+
+    static String decode(final ByteBuffer bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.hasArray()) {
+            return new String(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(), StandardCharsets.UTF_8);
+        }
+        return StandardCharsets.UTF_8.decode(bytes.duplicate()).toString();
+    }
+
+    static List<ByteBuffer> encodeKeys(final Collection<String> rows) {
+        List<ByteBuffer> encoded = new ArrayList<ByteBuffer>(rows.size());
+        for (String row : rows) {
+            encoded.add(encode(row));
+        }
+        return encoded;
+    }
+
+    static Map<ByteBuffer, ByteBuffer> encode(final Map<String, String> columns) {
+        Map<ByteBuffer, ByteBuffer> encoded = new HashMap<ByteBuffer, ByteBuffer>(columns.size() * 4 / 3 + 1);
+        for (Map.Entry<String, String> column : columns.entrySet()) {
+            encoded.put(encode(column.getKey()), encode(column.getValue()));
+        }
+        return encoded;
+    }
+
+    static Map<String, String> decode(final Map<ByteBuffer, ByteBuffer> columns) {
+        Map<String, String> decoded = new HashMap<String, String>(columns.size() * 4 / 3 + 1);
+        for (Map.Entry<ByteBuffer, ByteBuffer> column : columns.entrySet()) {
+            decoded.put(decode(column.getKey()), decode(column.getValue()));
+        }
+        return decoded;
+    }
+
+    static Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> encodeRows(final Map<String, Map<String, String>> rows) {
+        Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> encoded = new HashMap<ByteBuffer, Map<ByteBuffer, ByteBuffer>>(rows.size() * 4 / 3 + 1);
+        for (Map.Entry<String, Map<String, String>> row : rows.entrySet()) {
+            encoded.put(encode(row.getKey()), encode(row.getValue()));
+        }
+        return encoded;
+    }
+
+    static Map<String, Map<String, String>> decodeRows(final Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> rows) {
+        Map<String, Map<String, String>> decoded = new HashMap<String, Map<String, String>>(rows.size() * 4 / 3 + 1);
+        for (Map.Entry<ByteBuffer, Map<ByteBuffer, ByteBuffer>> row : rows.entrySet()) {
+            decoded.put(decode(row.getKey()), decode(row.getValue()));
+        }
+        return decoded;
+    }
+
+}
@@ -0,0 +1,30 @@
+package cassandra;
+
+import java.util.Map;
+
+/**
+ * Counts authentication failures in a sliding time window. The methods inherited from {@link CountingDao} count
+ * the failures of the whole window the dao is configured with.
+ * @author Gyozo_Nyari
+ *
+ */
+public interface WindowedCountingDao extends CountingDao {
+
+    /**
+     * Returns the number of authentication failures for given user's credentials in the last minutes
+     * @param userId user id
+     * @param credentials credentials
+     * @param minutes size of the window, at most the window of the dao
+     * @return number of authentication failures
+     */
+    int getNumberOfAuthenticationFailures(final String userId, final String credentials, final int minutes);
+
+    /**
+     * Returns the number of authentication failures for given user's in the last minutes
+     * @param userId user id
+     * @param minutes size of the window, at most the window of the dao
+     * @return map of credentials and auth failures
+     */
+    Map<String, Integer> getNumberOfAuthenticationFailures(final String userId, final int minutes);
+
+}
@@ -0,0 +1,416 @@
+package cassandra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import cassandra.lock.StripedLock;
+
+/**
+ * Write-behind {@link CountingDao}: increments are summed up in memory per user's credential and flushed to the
+ * underlying dao as one batch, either periodically or when too many credentials are pending.
+ *
+ * Reads return the persisted value plus the pending and the in-flight deltas. A flush moves the deltas to the
+ * in-flight ones holding the exclusive locks of the users' stripes, then writes them without any lock. A read takes
+ * the deltas under the shared lock before it reads the store, so it never misses a delta; while the write of a flush
+ * lands it may count the in-flight deltas twice, erring on the safe side of failure counting.
+ *
+ * Call {@link #shutdown()} to flush what is left, later increments are written straight through.
+ * @author Gyozo_Nyari
+ *
+ */
+public class WriteBehindCountingDao extends ForwardingCountingDao {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindCountingDao.class);
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    private static final int DEFAULT_MAX_PENDING = 1000;
+
+    /** Pending deltas by user and credential, the maps of the users are replaced, never modified. */
+    private final ConcurrentMap<String, Map<String, Integer>> pending = new ConcurrentHashMap<String, Map<String, Integer>>();
+    /** Deltas taken off the pending ones by the running flush. */
+    private final ConcurrentMap<String, Map<String, Integer>> inFlight = new ConcurrentHashMap<String, Map<String, Integer>>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final StripedLock keyLock = new StripedLock();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    private final long flushIntervalMillis;
+    private final int maxPending;
+    private volatile boolean shutdown;
+
+    private final AtomicLong oldestPending = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedIncrements = new AtomicLong();
+    private final AtomicLong failedFlushCount = new AtomicLong();
+    private final AtomicLong lostIncrements = new AtomicLong();
+    private volatile int lastFlushSize;
+    private volatile long lastFlushLagMillis;
+    private volatile long maxFlushLagMillis;
+
+    /**
+     * Constructor with default flush interval and size limit.
+     * @param delegate dao the increments are flushed to
+     */
+    public WriteBehindCountingDao(final CountingDao delegate) {
+        this(delegate, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * Constructor.
+     * @param delegate dao the increments are flushed to
+     * @param flushIntervalMillis pending increments are flushed at least this often
+     * @param maxPending number of pending credentials triggering an early flush
+     */
+    public WriteBehindCountingDao(final CountingDao delegate, final long flushIntervalMillis, final int maxPending) {
+        super(delegate);
+        Assert.isTrue(flushIntervalMillis > 0, "Flush interval must be positive!");
+        Assert.isTrue(maxPending > 0, "Max pending must be positive!");
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxPending = maxPending;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "write-behind-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushQuietly();
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int getNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        int delta;
+        Lock lock = keyLock.readLock(userId);
+        try {
+            delta = deltaOf(inFlight, userId, credentials) + deltaOf(pending, userId, credentials);
+        } finally {
+            lock.unlock();
+        }
+        return super.getNumberOfAuthenticationFailures(userId, credentials) + delta;
+    }
+
+    @Override
+    public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId) {
+        Map<String, Integer> deltas = new HashMap<String, Integer>();
+        Lock lock = keyLock.readLock(userId);
+        try {
+            addDeltas(deltasOf(inFlight, userId), deltas);
+            addDeltas(deltasOf(pending, userId), deltas);
+        } finally {
+            lock.unlock();
+        }
+        Map<String, Integer> authFailures = new HashMap<String, Integer>(super.getNumberOfAuthenticationFailures(userId));
+        addDeltas(deltas, authFailures);
+        return authFailures;
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> getNumberOfAuthenticationFailures(final Collection<String> userIds) {
+        Map<String, Map<String, Integer>> deltasByUser = new HashMap<String, Map<String, Integer>>();
+        List<Lock> locks = keyLock.readLocks(userIds);
+        try {
+            for (String userId : userIds) {
+                Map<String, Integer> deltas = new HashMap<String, Integer>();
+                addDeltas(deltasOf(inFlight, userId), deltas);
+                addDeltas(deltasOf(pending, userId), deltas);
+                if (!deltas.isEmpty()) {
+                    deltasByUser.put(userId, deltas);
+                }
+            }
+        } finally {
+            StripedLock.unlockAll(locks);
+        }
+        Map<String, Map<String, Integer>> authFailures = new HashMap<String, Map<String, Integer>>(
+                super.getNumberOfAuthenticationFailures(userIds));
+        for (Map.Entry<String, Map<String, Integer>> deltas : deltasByUser.entrySet()) {
+            Map<String, Integer> persisted = authFailures.get(deltas.getKey());
+            Map<String, Integer> userFailures = persisted != null ? new HashMap<String, Integer>(persisted) : new HashMap<String, Integer>();
+            addDeltas(deltas.getValue(), userFailures);
+            authFailures.put(deltas.getKey(), userFailures);
+        }
+        return authFailures;
+    }
+
+    /**
+     * Waits for a running flush, so its deltas can't land on top of the value.
+     */
+    @Override
+    public void setNumberOfAuthenticationFailures(final String userId, final String credentials, final int value) {
+        synchronized (flushLock) {
+            Lock lock = keyLock.writeLock(userId);
+            try {
+                // an explicit value overrides whatever was accumulated before
+                pending.computeIfPresent(userId, (user, deltas) -> {
+                    if (!deltas.containsKey(credentials)) {
+                        return deltas;
+                    }
+                    Map<String, Integer> rest = new HashMap<String, Integer>(deltas);
+                    rest.remove(credentials);
+                    pendingCount.decrementAndGet();
+                    return rest.isEmpty() ? null : rest;
+                });
+                super.setNumberOfAuthenticationFailures(userId, credentials, value);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        add(new CredentialKey(userId, credentials), 1);
+    }
+
+    /**
+     * Adds the increment to the pending ones and reads the persisted value, one round trip instead of two.
+     */
+    @Override
+    public IncrementResult incrementAndCheck(final String userId, final String credentials, final int threshold) {
+        add(new CredentialKey(userId, credentials), 1);
+        int value = getNumberOfAuthenticationFailures(userId, credentials);
+        return new IncrementResult(value, value >= threshold);
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final Map<CredentialKey, Integer> increments) {
+        for (Map.Entry<CredentialKey, Integer> entry : increments.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Writes all pending increments to the underlying dao in one batch. The deltas are moved to the in-flight ones
+     * holding the exclusive locks of their users, the write itself holds no lock, so reads don't wait for it.
+     *
+     * The increments of the chunks the dao reports failed by a {@link PartialIncrementException} are put back and
+     * retried with the next flush. On any other failure it is unknown what was written, so the increments are dropped
+     * and counted as {@link #getLostIncrements() lost} rather than risk counting them twice.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            long since = oldestPending.getAndSet(0);
+            List<String> userIds = new ArrayList<String>(pending.keySet());
+            Map<CredentialKey, Integer> batch = new HashMap<CredentialKey, Integer>();
+            List<Lock> locks = keyLock.writeLocks(userIds);
+            try {
+                for (String userId : userIds) {
+                    Map<String, Integer> deltas = pending.remove(userId);
+                    if (deltas != null) {
+                        pendingCount.addAndGet(-deltas.size());
+                        inFlight.put(userId, deltas);
+                        for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+                            batch.put(new CredentialKey(userId, delta.getKey()), delta.getValue());
+                        }
+                    }
+                }
+            } finally {
+                StripedLock.unlockAll(locks);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            Map<CredentialKey, Integer> failedIncrements = Collections.emptyMap();
+            RuntimeException failure = null;
+            try {
+                getDelegate().incrementNumberOfAuthenticationFailures(batch);
+            } catch (PartialIncrementException e) {
+                failedIncrements = e.getFailedIncrements();
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            locks = keyLock.writeLocks(userIds);
+            try {
+                inFlight.clear();
+                // put back in the same critical section, so a read sees them either in flight or pending
+                for (Map.Entry<CredentialKey, Integer> entry : failedIncrements.entrySet()) {
+                    addPending(entry.getKey(), entry.getValue());
+                }
+            } finally {
+                StripedLock.unlockAll(locks);
+            }
+            if (failure != null) {
+                failedFlushCount.incrementAndGet();
+                if (!(failure instanceof PartialIncrementException)) {
+                    long lost = sum(batch);
+                    lostIncrements.addAndGet(lost);
+                    LOG.error("Flushing {} increments of {} credentials failed, they are lost!", new Object[] {lost, batch.size()});
+                } else if (!failedIncrements.isEmpty()) {
+                    oldestPending.compareAndSet(0, since);
+                }
+                throw failure;
+            }
+            recordFlush(batch, since);
+        }
+    }
+
+    /**
+     * Stops the background flushing and writes the remaining increments. Increments after the shutdown are written
+     * straight through to the underlying dao.
+     */
+    public void shutdown() {
+        shutdown = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * @return number of credentials with unflushed increments
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getFailedFlushCount() {
+        return failedFlushCount.get();
+    }
+
+    /**
+     * @return sum of the increments dropped by flushes failing without telling which chunks were written
+     */
+    public long getLostIncrements() {
+        return lostIncrements.get();
+    }
+
+    /**
+     * @return sum of all increments written so far
+     */
+    public long getFlushedIncrements() {
+        return flushedIncrements.get();
+    }
+
+    /**
+     * @return number of credentials written by the last flush
+     */
+    public int getLastFlushSize() {
+        return lastFlushSize;
+    }
+
+    /**
+     * @return age of the oldest increment written by the last flush
+     */
+    public long getLastFlushLagMillis() {
+        return lastFlushLagMillis;
+    }
+
+    public long getMaxFlushLagMillis() {
+        return maxFlushLagMillis;
+    }
+
+    private void add(final CredentialKey key, final int delta) {
+        addPending(key, delta);
+        if (shutdown) {
+            // written through, also if the shutdown's flush ran while this was added
+            flush();
+            return;
+        }
+        oldestPending.compareAndSet(0, System.currentTimeMillis());
+        if (pendingCount.get() >= maxPending && flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushScheduled.set(false);
+                        flushQuietly();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // shut down meanwhile, the increment was added before and is written by the shutdown's flush
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private void addPending(final CredentialKey key, final int delta) {
+        pending.compute(key.getUserId(), (userId, deltas) -> {
+            Map<String, Integer> updated = deltas != null ? new HashMap<String, Integer>(deltas) : new HashMap<String, Integer>();
+            if (!updated.containsKey(key.getCredential())) {
+                pendingCount.incrementAndGet();
+            }
+            updated.merge(key.getCredential(), delta, Integer::sum);
+            return updated;
+        });
+    }
+
+    private static Map<String, Integer> deltasOf(final Map<String, Map<String, Integer>> deltasByUser, final String userId) {
+        Map<String, Integer> deltas = deltasByUser.get(userId);
+        return deltas != null ? deltas : Collections.<String, Integer> emptyMap();
+    }
+
+    private static int deltaOf(final Map<String, Map<String, Integer>> deltasByUser, final String userId, final String credentials) {
+        Integer delta = deltasOf(deltasByUser, userId).get(credentials);
+        return delta != null ? delta.intValue() : 0;
+    }
+
+    private static void addDeltas(final Map<String, Integer> deltas, final Map<String, Integer> authFailures) {
+        for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+            authFailures.merge(delta.getKey(), delta.getValue(), Integer::sum);
+        }
+    }
+
+    private static long sum(final Map<CredentialKey, Integer> batch) {
+        long total = 0;
+        for (Integer delta : batch.values()) {
+            total += delta;
+        }
+        return total;
+    }
+
+    private void recordFlush(final Map<CredentialKey, Integer> batch, final long since) {
+        long total = sum(batch);
+        long lag = since > 0 ? System.currentTimeMillis() - since : 0;
+        flushCount.incrementAndGet();
+        flushedIncrements.addAndGet(total);
+        lastFlushSize = batch.size();
+        lastFlushLagMillis = lag;
+        if (lag > maxFlushLagMillis) {
+            maxFlushLagMillis = lag;
+        }
+        LOG.debug("Flushed {} increments of {} credentials, lag: {} ms", new Object[] {total, batch.size(), lag});
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOG.error("Flushing pending increments failed!", e);
+        }
+    }
+
+}
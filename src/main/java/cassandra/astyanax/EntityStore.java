@@ -7,8 +7,9 @@ import javax.persistence.Id;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import cassandra.AstyanaxContextFactory;
-import cassandra.Configuration;
+import cassandra.SessionRegistry;
+import cassandra.metrics.DaoMetrics;
+import cassandra.metrics.Slf4jMetricsReporter;
 
 import com.netflix.astyanax.AstyanaxContext;
 import com.netflix.astyanax.Keyspace;
@@ -29,49 +30,45 @@ public class EntityStore<K, C> {
 
 
 	public static void main(String[] args) {
-	    Configuration configuration = Configuration.getConfiguration();
-		Keyspace keyspace = createKeyspace(configuration.getHostname(), configuration.getClusterName(), configuration.getKeyspace(), configuration.getPort());
-
-        ColumnFamily<String, String> columnFamily = new ColumnFamily<String, String>("sample_entity", StringSerializer.get(),
-                StringSerializer.get());
-
-		EntityManager<SampleEntity, String> entityManager = new DefaultEntityManager.Builder<EntityStore.SampleEntity, String>()
-				.withEntityType(SampleEntity.class)
-				.withKeyspace(keyspace)
-				.withColumnFamily(columnFamily).build();
-
-		SampleEntity sample = new SampleEntity();
-		sample.setId("sample1");
-		sample.setName("sample");
-		SampleEntity.Bar bar = new SampleEntity.Bar();
-		bar.first = "first";
-		bar.last = "last";
-		sample.setBar(bar);
-
-
-		LOG.debug("Storing:" + sample);
-		entityManager.put(sample);
-
-		SampleEntity stored = entityManager.get("sample1");
-		LOG.debug("Retrieving:" + stored);
-
-		//LOG.debug("Deleting sample1...");
-		//entityManager.delete("sample1");
-	}
-
-	private static Keyspace createKeyspace(String hosts, String cluster, String keyspaceName, int port) {
-		AstyanaxContextFactory factory = new AstyanaxContextFactory();
-		factory.setHostNames(hosts);
-		factory.setClusterName(cluster);
-		factory.setKeyspace(keyspaceName);
-		factory.setPort(port);
-		factory.setMaxConnsPerHost(50);
-		factory.setSocketTimeout(15000);
-		factory.setConnectionPoolName("myConnections");
-
-		AstyanaxContext<Keyspace> context = factory.create();
-		Keyspace keyspace = context.getEntity();
-		return keyspace;
+	    SessionRegistry registry = SessionRegistry.getInstance();
+	    AstyanaxContext<Keyspace> context = registry.acquireAstyanax();
+		try {
+			Keyspace keyspace = context.getEntity();
+			DaoMetrics metrics = new DaoMetrics();
+			metrics.addReporter(new Slf4jMetricsReporter());
+
+			ColumnFamily<String, String> columnFamily = new ColumnFamily<String, String>("sample_entity", StringSerializer.get(),
+					StringSerializer.get());
+
+			EntityManager<SampleEntity, String> entityManager = new InstrumentedEntityManager<SampleEntity, String>(
+					new DefaultEntityManager.Builder<EntityStore.SampleEntity, String>()
+					.withEntityType(SampleEntity.class)
+					.withKeyspace(keyspace)
+					.withColumnFamily(columnFamily).build(), metrics, "sample_entity");
+
+			SampleEntity sample = new SampleEntity();
+			sample.setId("sample1");
+			sample.setName("sample");
+			SampleEntity.Bar bar = new SampleEntity.Bar();
+			bar.first = "first";
+			bar.last = "last";
+			sample.setBar(bar);
+
+
+			LOG.debug("Storing:" + sample);
+			entityManager.put(sample);
+
+			SampleEntity stored = entityManager.get("sample1");
+			LOG.debug("Retrieving:" + stored);
+
+			//LOG.debug("Deleting sample1...");
+			//entityManager.delete("sample1");
+
+			metrics.sample();
+			metrics.close();
+		} finally {
+			registry.release(context);
+		}
 	}
 
 	@Entity
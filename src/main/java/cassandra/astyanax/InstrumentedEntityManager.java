@@ -0,0 +1,159 @@
+package cassandra.astyanax;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+import cassandra.metrics.DaoMetrics;
+import cassandra.metrics.OperationMetrics;
+
+import com.google.common.base.Function;
+import com.netflix.astyanax.entitystore.EntityManager;
+import com.netflix.astyanax.entitystore.NativeQuery;
+
+/**
+ * {@link EntityManager} recording latency, call and error counts of the entity operations into {@link DaoMetrics}.
+ * The entities are serialized by the delegate, so no bytes are counted. Schema operations and native queries are not
+ * recorded.
+ * @author Gyozo_Nyari
+ *
+ */
+public class InstrumentedEntityManager<T, K> implements EntityManager<T, K> {
+
+    private final EntityManager<T, K> delegate;
+    private final OperationMetrics put;
+    private final OperationMetrics get;
+    private final OperationMetrics delete;
+    private final OperationMetrics putAll;
+    private final OperationMetrics getAll;
+    private final OperationMetrics deleteAll;
+    private final OperationMetrics scan;
+    private final OperationMetrics find;
+
+    /**
+     * Constructor.
+     * @param delegate entity manager
+     * @param metrics registry of the metrics
+     * @param columnFamily column family of the entities, the metrics are labelled with it
+     */
+    public InstrumentedEntityManager(final EntityManager<T, K> delegate, final DaoMetrics metrics, final String columnFamily) {
+        Assert.notNull(delegate, "Delegate can't be null!");
+        Assert.notNull(metrics, "Metrics can't be null!");
+        this.delegate = delegate;
+        this.put = metrics.get(columnFamily, "put");
+        this.get = metrics.get(columnFamily, "get");
+        this.delete = metrics.get(columnFamily, "delete");
+        this.putAll = metrics.get(columnFamily, "putAll");
+        this.getAll = metrics.get(columnFamily, "getAll");
+        this.deleteAll = metrics.get(columnFamily, "deleteAll");
+        this.scan = metrics.get(columnFamily, "scan");
+        this.find = metrics.get(columnFamily, "find");
+    }
+
+    @Override
+    public void put(final T entity) {
+        DaoMetrics.time(put, () -> {
+            delegate.put(entity);
+            return null;
+        });
+    }
+
+    @Override
+    public T get(final K id) {
+        return DaoMetrics.time(get, () -> delegate.get(id));
+    }
+
+    @Override
+    public void delete(final K id) {
+        DaoMetrics.time(delete, () -> {
+            delegate.delete(id);
+            return null;
+        });
+    }
+
+    @Override
+    public void remove(final T entity) {
+        DaoMetrics.time(delete, () -> {
+            delegate.remove(entity);
+            return null;
+        });
+    }
+
+    @Override
+    public List<T> getAll() {
+        return DaoMetrics.time(scan, () -> delegate.getAll());
+    }
+
+    @Override
+    public List<T> get(final Collection<K> ids) {
+        return DaoMetrics.time(getAll, () -> delegate.get(ids));
+    }
+
+    @Override
+    public void delete(final Collection<K> ids) {
+        DaoMetrics.time(deleteAll, () -> {
+            delegate.delete(ids);
+            return null;
+        });
+    }
+
+    @Override
+    public void remove(final Collection<T> entities) {
+        DaoMetrics.time(deleteAll, () -> {
+            delegate.remove(entities);
+            return null;
+        });
+    }
+
+    @Override
+    public void put(final Collection<T> entities) {
+        DaoMetrics.time(putAll, () -> {
+            delegate.put(entities);
+            return null;
+        });
+    }
+
+    /**
+     * Times the visit as a whole, callbacks included.
+     */
+    @Override
+    public void visitAll(final Function<T, Boolean> callback) {
+        DaoMetrics.time(scan, () -> {
+            delegate.visitAll(callback);
+            return null;
+        });
+    }
+
+    @Override
+    public List<T> find(final String cql) {
+        return DaoMetrics.time(find, () -> delegate.find(cql));
+    }
+
+    @Override
+    public NativeQuery<T, K> createNativeQuery() {
+        return delegate.createNativeQuery();
+    }
+
+    @Override
+    public void createStorage(final Map<String, Object> options) {
+        delegate.createStorage(options);
+    }
+
+    @Override
+    public void deleteStorage() {
+        delegate.deleteStorage();
+    }
+
+    @Override
+    public void truncate() {
+        delegate.truncate();
+    }
+
+    @Override
+    public void commit() {
+        delegate.commit();
+    }
+
+}
@@ -0,0 +1,97 @@
+package cassandra.codec;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compression ratio and time spent by one codec.
+ * @author Gyozo_Nyari
+ *
+ */
+public final class CodecStatistics {
+
+    private final String codecName;
+    private final AtomicLong encodeCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong encodedBytes = new AtomicLong();
+    private final AtomicLong encodeNanos = new AtomicLong();
+    private final AtomicLong decodeCount = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+
+    CodecStatistics(final String codecName) {
+        this.codecName = codecName;
+    }
+
+    void recordEncode(final int raw, final int encoded, final long nanos) {
+        encodeCount.incrementAndGet();
+        rawBytes.addAndGet(raw);
+        encodedBytes.addAndGet(encoded);
+        encodeNanos.addAndGet(nanos);
+    }
+
+    void recordRejected() {
+        rejectedCount.incrementAndGet();
+    }
+
+    void recordDecode(final long nanos) {
+        decodeCount.incrementAndGet();
+        decodeNanos.addAndGet(nanos);
+    }
+
+    public String getCodecName() {
+        return codecName;
+    }
+
+    /**
+     * Returns the number of values encoded.
+     * @return number of values
+     */
+    public long getEncodeCount() {
+        return encodeCount.get();
+    }
+
+    /**
+     * Returns the number of values stored raw after all, because encoding didn't make them smaller.
+     * @return number of values
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getRawBytes() {
+        return rawBytes.get();
+    }
+
+    public long getEncodedBytes() {
+        return encodedBytes.get();
+    }
+
+    /**
+     * Returns the encoded size relative to the raw size, 1 if nothing was encoded yet.
+     * @return compression ratio
+     */
+    public double getRatio() {
+        long raw = rawBytes.get();
+        return raw > 0 ? (double) encodedBytes.get() / raw : 1;
+    }
+
+    public long getEncodeNanos() {
+        return encodeNanos.get();
+    }
+
+    public long getDecodeCount() {
+        return decodeCount.get();
+    }
+
+    public long getDecodeNanos() {
+        return decodeNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CodecStatistics [codec=" + codecName + ", encoded=" + getEncodeCount() + ", rejected=" + getRejectedCount()
+                + ", ratio=" + getRatio() + ", encodeNanos=" + getEncodeNanos() + ", decoded=" + getDecodeCount()
+                + ", decodeNanos=" + getDecodeNanos() + "]";
+    }
+
+}
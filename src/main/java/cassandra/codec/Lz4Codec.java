@@ -0,0 +1,74 @@
+package cassandra.codec;
+
+import java.nio.ByteBuffer;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * LZ4 block compression. The block format doesn't record the original length, so it is written in front of the
+ * compressed bytes. The stored length is not trusted: it is checked against the most a block of the stored size can
+ * expand to before anything is allocated, and the block is decompressed within its own bounds.
+ * @author Gyozo_Nyari
+ *
+ */
+public final class Lz4Codec implements ValueCodec {
+
+    public static final byte ID = 1;
+    private static final int LENGTH_BYTES = 4;
+    /** An LZ4 sequence can't expand its bytes more than 255 times. */
+    private static final int MAX_EXPANSION = 255;
+
+    private final LZ4Compressor compressor;
+    private final LZ4SafeDecompressor decompressor;
+
+    /**
+     * Constructor, uses the fastest implementation available: native, unsafe or pure java.
+     */
+    public Lz4Codec() {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.safeDecompressor();
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "lz4";
+    }
+
+    @Override
+    public ByteBuffer encode(final ByteBuffer value) {
+        int length = value.remaining();
+        ByteBuffer encoded = ByteBuffer.allocate(LENGTH_BYTES + compressor.maxCompressedLength(length));
+        encoded.putInt(length);
+        int compressedLength = compressor.compress(value, value.position(), length, encoded, LENGTH_BYTES, encoded.remaining());
+        encoded.limit(LENGTH_BYTES + compressedLength);
+        encoded.position(0);
+        return encoded;
+    }
+
+    @Override
+    public ByteBuffer decode(final ByteBuffer value) {
+        int compressedLength = value.remaining() - LENGTH_BYTES;
+        if (compressedLength < 0) {
+            throw new IllegalStateException("LZ4 value of " + value.remaining() + " bytes has no length!");
+        }
+        int length = value.getInt(value.position());
+        if (length < 0 || length > (long) compressedLength * MAX_EXPANSION) {
+            throw new IllegalStateException("LZ4 value of " + compressedLength + " bytes can't hold " + length + " bytes!");
+        }
+        ByteBuffer decoded = ByteBuffer.allocate(length);
+        int decodedLength = decompressor.decompress(value, value.position() + LENGTH_BYTES, compressedLength, decoded, 0, length);
+        if (decodedLength != length) {
+            throw new IllegalStateException("LZ4 value decoded to " + decodedLength + " bytes instead of " + length + "!");
+        }
+        return decoded;
+    }
+
+}
@@ -0,0 +1,35 @@
+package cassandra.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Codec leaving the values as they are. {@link ValueCompressor} uses it to escape raw values which would be mistaken
+ * for a header.
+ * @author Gyozo_Nyari
+ *
+ */
+public final class PassThroughCodec implements ValueCodec {
+
+    public static final byte ID = 0;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "none";
+    }
+
+    @Override
+    public ByteBuffer encode(final ByteBuffer value) {
+        return value.duplicate();
+    }
+
+    @Override
+    public ByteBuffer decode(final ByteBuffer value) {
+        return value.duplicate();
+    }
+
+}
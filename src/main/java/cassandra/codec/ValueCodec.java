@@ -0,0 +1,38 @@
+package cassandra.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes column values before they are written and decodes them after they are read. The header telling which codec
+ * wrote a value is added by {@link ValueCompressor}, codecs only see the payload.
+ * @author Gyozo_Nyari
+ *
+ */
+public interface ValueCodec {
+
+    /**
+     * Returns the id written into the header of the encoded values, it must not change once values are stored.
+     * @return codec id
+     */
+    byte getId();
+
+    /**
+     * Returns the name the statistics are reported with.
+     * @return codec name
+     */
+    String getName();
+
+    /**
+     * Encodes a value.
+     * @param value value to be encoded, it is not modified
+     * @return encoded value
+     */
+    ByteBuffer encode(ByteBuffer value);
+
+    /**
+     * Decodes a value.
+     * @param value encoded value without the header, it is not modified
+     * @return decoded value
+     */
+    ByteBuffer decode(ByteBuffer value);
+}
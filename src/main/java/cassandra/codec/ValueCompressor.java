@@ -0,0 +1,165 @@
+package cassandra.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+/**
+ * Compresses column values with a {@link ValueCodec} and reads them back with whichever codec wrote them.
+ *
+ * Encoded values start with a two byte header: {@link #MAGIC} followed by the codec id. Values without the header are
+ * returned as they are, so rows written before compression was switched on stay readable. 0xFF never appears in UTF-8
+ * text, raw binary values starting with it are escaped with the {@link PassThroughCodec} header. Values shorter than
+ * the threshold, and values the codec can't make smaller, are stored raw.
+ * @author Gyozo_Nyari
+ *
+ */
+public class ValueCompressor {
+
+    public static final byte MAGIC = (byte) 0xFF;
+    public static final int DEFAULT_THRESHOLD = 1024;
+    private static final int HEADER_BYTES = 2;
+
+    private final ValueCodec codec;
+    private final int threshold;
+    private final ValueCodec[] codecs = new ValueCodec[256];
+    private final CodecStatistics[] statistics = new CodecStatistics[256];
+
+    /**
+     * Constructor, compresses values of at least {@value #DEFAULT_THRESHOLD} bytes with LZ4.
+     */
+    public ValueCompressor() {
+        this(new Lz4Codec(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructor.
+     * @param codec codec new values are written with
+     * @param threshold values shorter than this many bytes are stored raw
+     */
+    public ValueCompressor(final ValueCodec codec, final int threshold) {
+        Assert.notNull(codec, "Codec can't be null!");
+        Assert.isTrue(threshold >= 0, "Threshold can't be negative!");
+        this.codec = codec;
+        this.threshold = threshold;
+        register(new PassThroughCodec());
+        register(new Lz4Codec());
+        register(codec);
+    }
+
+    /**
+     * Registers a codec for reading values written by it, e.g. after switching to another one.
+     * @param other codec
+     */
+    public final void register(final ValueCodec other) {
+        Assert.notNull(other, "Codec can't be null!");
+        int id = other.getId() & 0xFF;
+        codecs[id] = other;
+        statistics[id] = new CodecStatistics(other.getName());
+    }
+
+    /**
+     * Encodes a value to be stored.
+     * @param value raw value, it is not modified
+     * @return stored form of the value
+     */
+    public ByteBuffer encode(final ByteBuffer value) {
+        if (value == null) {
+            return null;
+        }
+        int length = value.remaining();
+        if (length < threshold || codec.getId() == PassThroughCodec.ID) {
+            return escape(value);
+        }
+        CodecStatistics codecStatistics = statistics[codec.getId() & 0xFF];
+        long start = System.nanoTime();
+        ByteBuffer encoded = codec.encode(value.duplicate());
+        codecStatistics.recordEncode(length, encoded.remaining(), System.nanoTime() - start);
+        if (HEADER_BYTES + encoded.remaining() >= length) {
+            codecStatistics.recordRejected();
+            return escape(value);
+        }
+        return withHeader(codec.getId(), encoded);
+    }
+
+    /**
+     * Decodes a stored value.
+     * @param value stored value, it is not modified
+     * @return raw value
+     */
+    public ByteBuffer decode(final ByteBuffer value) {
+        if (value == null || value.remaining() < HEADER_BYTES || value.get(value.position()) != MAGIC) {
+            return value;
+        }
+        int id = value.get(value.position() + 1) & 0xFF;
+        ValueCodec decoder = codecs[id];
+        if (decoder == null) {
+            throw new IllegalStateException("Value written with unknown codec " + id + "!");
+        }
+        ByteBuffer payload = value.duplicate();
+        payload.position(value.position() + HEADER_BYTES);
+        long start = System.nanoTime();
+        ByteBuffer decoded = decoder.decode(payload);
+        statistics[id].recordDecode(System.nanoTime() - start);
+        return decoded;
+    }
+
+    /**
+     * Encodes the values of the columns.
+     * @param columns columns with raw values
+     * @return columns with stored values
+     */
+    public <K> Map<K, ByteBuffer> encode(final Map<K, ByteBuffer> columns) {
+        Map<K, ByteBuffer> encoded = new HashMap<K, ByteBuffer>(columns.size() * 4 / 3 + 1);
+        for (Map.Entry<K, ByteBuffer> column : columns.entrySet()) {
+            encoded.put(column.getKey(), encode(column.getValue()));
+        }
+        return encoded;
+    }
+
+    /**
+     * Decodes the values of the columns.
+     * @param columns columns with stored values
+     * @return columns with raw values
+     */
+    public <K> Map<K, ByteBuffer> decode(final Map<K, ByteBuffer> columns) {
+        Map<K, ByteBuffer> decoded = new HashMap<K, ByteBuffer>(columns.size() * 4 / 3 + 1);
+        for (Map.Entry<K, ByteBuffer> column : columns.entrySet()) {
+            decoded.put(column.getKey(), decode(column.getValue()));
+        }
+        return decoded;
+    }
+
+    /**
+     * Returns the statistics of the registered codecs.
+     * @return statistics by codec name
+     */
+    public Map<String, CodecStatistics> getStatistics() {
+        Map<String, CodecStatistics> result = new LinkedHashMap<String, CodecStatistics>();
+        for (CodecStatistics codecStatistics : statistics) {
+            if (codecStatistics != null) {
+                result.put(codecStatistics.getCodecName(), codecStatistics);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private ByteBuffer escape(final ByteBuffer value) {
+        if (value.remaining() > 0 && value.get(value.position()) == MAGIC) {
+            return withHeader(PassThroughCodec.ID, value.duplicate());
+        }
+        return value;
+    }
+
+    private static ByteBuffer withHeader(final byte id, final ByteBuffer payload) {
+        ByteBuffer stored = ByteBuffer.allocate(HEADER_BYTES + payload.remaining());
+        stored.put(MAGIC).put(id).put(payload);
+        stored.flip();
+        return stored;
+    }
+
+}
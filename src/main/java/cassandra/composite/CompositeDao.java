@@ -1,28 +1,35 @@
 package cassandra.composite;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cassandra.AstyanaxContextFactory;
+import cassandra.CassandraException;
 import cassandra.Configuration;
+import cassandra.SessionRegistry;
+import cassandra.codec.ValueCompressor;
+import cassandra.metrics.DaoMetrics;
+import cassandra.metrics.Slf4jMetricsReporter;
+import cassandra.resilience.Deadline;
+import cassandra.resilience.Resilience;
 
 import com.netflix.astyanax.AstyanaxContext;
 import com.netflix.astyanax.Keyspace;
 import com.netflix.astyanax.MutationBatch;
-import com.netflix.astyanax.connectionpool.NodeDiscoveryType;
 import com.netflix.astyanax.connectionpool.OperationResult;
+import com.netflix.astyanax.connectionpool.exceptions.BadRequestException;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
-import com.netflix.astyanax.connectionpool.impl.ConnectionPoolConfigurationImpl;
-import com.netflix.astyanax.connectionpool.impl.CountingConnectionPoolMonitor;
-import com.netflix.astyanax.impl.AstyanaxConfigurationImpl;
+import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
 import com.netflix.astyanax.model.Column;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.model.ColumnList;
 import com.netflix.astyanax.serializers.AnnotatedCompositeSerializer;
 import com.netflix.astyanax.serializers.StringSerializer;
-import com.netflix.astyanax.thrift.ThriftFamilyFactory;
 
 /**
  * Dao for demonstrating composite keys.
@@ -41,59 +48,205 @@ public class CompositeDao<CK> {
     private Keyspace keyspace;
     private AstyanaxContext<Keyspace> astyanaxContext;
     private Class<CK> compositeKeyClazz;
+    private ValueCompressor compressor;
+    private DaoMetrics metrics;
+    private Resilience resilience;
+    private boolean ownsContext;
 
+    /**
+     * Creates a dao with its own connection pool, set up from the default {@link Configuration} with the given seeds
+     * and keyspace. {@link #cleanup()} shuts it down.
+     */
     public CompositeDao(String host, String keyspace, Class<CK> compositeKeyClass) {
         try {
-            this.astyanaxContext = new AstyanaxContext.Builder().forCluster("ClusterName").forKeyspace(keyspace)
-                    .withAstyanaxConfiguration(new AstyanaxConfigurationImpl().setDiscoveryType(NodeDiscoveryType.NONE))
-                    .withConnectionPoolConfiguration(new ConnectionPoolConfigurationImpl("MyConnectionPool").setMaxConnsPerHost(1).setSeeds(host))
-                    .withConnectionPoolMonitor(new CountingConnectionPoolMonitor()).buildKeyspace(ThriftFamilyFactory.getInstance());
-
-            this.astyanaxContext.start();
+            AstyanaxContextFactory factory = AstyanaxContextFactory.fromConfiguration(Configuration.getConfiguration());
+            factory.setHostNames(host);
+            factory.setKeyspace(keyspace);
+            this.astyanaxContext = factory.create();
             this.keyspace = this.astyanaxContext.getEntity();
             // test the connection
             this.keyspace.describeKeyspace();
             this.compositeKeyClazz = compositeKeyClass;
+            this.ownsContext = true;
         } catch (Throwable e) {
             LOG.warn("Preparation failed.", e);
             throw new RuntimeException("Failed to prepare CompositeDao", e);
         }
     }
 
+    /**
+     * Creates a dao on a shared context, e.g. one acquired from the {@link SessionRegistry}. {@link #cleanup()}
+     * leaves it running.
+     */
+    public CompositeDao(AstyanaxContext<Keyspace> astyanaxContext, Class<CK> compositeKeyClass) {
+        this.astyanaxContext = astyanaxContext;
+        this.keyspace = astyanaxContext.getEntity();
+        this.compositeKeyClazz = compositeKeyClass;
+    }
+
     public void cleanup() {
-        this.astyanaxContext.shutdown();
+        if (ownsContext) {
+            this.astyanaxContext.shutdown();
+        }
     }
 
     /**
      * Writes columns.
      */
     public void write(String columnFamilyName, String rowKey, Map<String, String> columns) throws ConnectionException {
+        long start = System.nanoTime();
         MutationBatch mutation = keyspace.prepareMutationBatch();
         ColumnFamily<String, String> columnFamily = new ColumnFamily<String, String>(columnFamilyName, StringSerializer.get(), StringSerializer.get());
+        long out = DaoMetrics.utf8Length(rowKey);
         for (Map.Entry<String, String> entry : columns.entrySet()) {
             mutation.withRow(columnFamily, rowKey).putColumn(entry.getKey(), entry.getValue(), null);
+            out += DaoMetrics.utf8Length(entry.getKey()) + DaoMetrics.utf8Length(entry.getValue());
+        }
+        try {
+            execute(columnFamilyName, mutation::execute);
+            record(columnFamilyName, "write", start, 0, out);
+        } catch (ConnectionException e) {
+            recordError(columnFamilyName, "write", start);
+            throw e;
         }
-        mutation.execute();
     }
 
     /**
      * Writes compound/composite columns.
      */
     public void writeComposite(String columnFamilyName, String rowKey, CK compositeKey, byte[] value) throws ConnectionException {
+        long start = System.nanoTime();
         AnnotatedCompositeSerializer<CK> entitySerializer = new AnnotatedCompositeSerializer<CK>(compositeKeyClazz);
         MutationBatch mutation = keyspace.prepareMutationBatch();
         ColumnFamily<String, CK> columnFamily = new ColumnFamily<String, CK>(columnFamilyName, StringSerializer.get(), entitySerializer);
-        mutation.withRow(columnFamily, rowKey).putColumn(compositeKey, value, null);
-        mutation.execute();
+        if (compressor != null) {
+            mutation.withRow(columnFamily, rowKey).putColumn(compositeKey, compressor.encode(ByteBuffer.wrap(value)), null);
+        } else {
+            mutation.withRow(columnFamily, rowKey).putColumn(compositeKey, value, null);
+        }
+        try {
+            execute(columnFamilyName, mutation::execute);
+            record(columnFamilyName, "writeComposite", start, 0, DaoMetrics.utf8Length(rowKey) + value.length);
+        } catch (ConnectionException e) {
+            recordError(columnFamilyName, "writeComposite", start);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the value of a column read by {@link #readComposite(String, String)}, decompressed if it was written
+     * compressed.
+     */
+    public byte[] readValue(Column<?> column) {
+        ByteBuffer value = column.getByteBufferValue();
+        if (compressor != null) {
+            value = compressor.decode(value);
+        }
+        byte[] bytes = new byte[value.remaining()];
+        value.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Sets the compressor of the values written by {@link #writeComposite(String, String, Object, byte[])}, values
+     * written without compression stay readable. Compressed values are binary, the column family needs BytesType as
+     * default validation class.
+     */
+    public void setValueCompressor(ValueCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    /**
+     * Sets the registry recording the latency, call, error and byte counts of the reads and writes, labelled with
+     * the column family. Bytes are estimated from the keys and values, composite column names are not counted.
+     */
+    public void setMetrics(DaoMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the executor running the reads and writes within the deadline of the caller, through the circuit breaker
+     * of the column family, retrying them within the retry budget. Without it only the deadline is checked.
+     */
+    public void setResilience(Resilience resilience) {
+        this.resilience = resilience;
+    }
+
+    private <T> T execute(String columnFamilyName, AstyanaxCall<T> call) throws ConnectionException {
+        if (resilience == null) {
+            Deadline.checkCurrent(columnFamilyName);
+            return call.execute();
+        }
+        try {
+            return resilience.execute(columnFamilyName, true, () -> {
+                try {
+                    return call.execute();
+                } catch (NotFoundException | BadRequestException e) {
+                    throw new NotRetriedException(e);
+                } catch (ConnectionException e) {
+                    throw new CassandraException(columnFamilyName + " call failed!", e);
+                }
+            });
+        } catch (NotRetriedException e) {
+            throw (ConnectionException) e.getCause();
+        } catch (CassandraException e) {
+            if (e.getClass() == CassandraException.class && e.getCause() instanceof ConnectionException) {
+                throw (ConnectionException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private interface AstyanaxCall<T> {
+        T execute() throws ConnectionException;
+    }
+
+    /**
+     * Carries the failures telling nothing about the health of Cassandra through the circuit breaker and retries.
+     */
+    private static final class NotRetriedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        NotRetriedException(ConnectionException cause) {
+            super(cause);
+        }
+    }
+
+    private void record(String columnFamilyName, String operation, long start, long in, long out) {
+        if (metrics != null) {
+            metrics.get(columnFamilyName, operation).record(System.nanoTime() - start, in, out);
+        }
+    }
+
+    private void recordError(String columnFamilyName, String operation, long start) {
+        if (metrics != null) {
+            metrics.get(columnFamilyName, operation).recordError(System.nanoTime() - start);
+        }
+    }
+
+    private static long size(ColumnList<?> columns) {
+        long size = 0;
+        for (Column<?> column : columns) {
+            size += column.getRawName().remaining() + column.getByteBufferValue().remaining();
+        }
+        return size;
     }
 
     /**
      * Fetches an entire row.
      */
     public ColumnList<String> read(String columnFamilyName, String rowKey) throws ConnectionException {
+        long start = System.nanoTime();
         ColumnFamily<String, String> columnFamily = new ColumnFamily<String, String>(columnFamilyName, StringSerializer.get(), StringSerializer.get());
-        OperationResult<ColumnList<String>> result = this.keyspace.prepareQuery(columnFamily).getKey(rowKey).execute();
-        return result.getResult();
+        try {
+            OperationResult<ColumnList<String>> result = execute(columnFamilyName, () -> this.keyspace.prepareQuery(columnFamily).getKey(rowKey).execute());
+            record(columnFamilyName, "read", start, metrics != null ? size(result.getResult()) : 0, DaoMetrics.utf8Length(rowKey));
+            return result.getResult();
+        } catch (ConnectionException e) {
+            recordError(columnFamilyName, "read", start);
+            throw e;
+        }
     }
 
     /**
@@ -103,10 +256,17 @@ public class CompositeDao<CK> {
      * @throws InstantiationException
      */
     public ColumnList<CK> readComposite(String columnFamilyName, String rowKey) throws ConnectionException {
+        long start = System.nanoTime();
         AnnotatedCompositeSerializer<CK> entitySerializer = new AnnotatedCompositeSerializer<CK>(compositeKeyClazz);
         ColumnFamily<String, CK> columnFamily = new ColumnFamily<String, CK>(columnFamilyName, StringSerializer.get(), entitySerializer);
-        OperationResult<ColumnList<CK>> result = this.keyspace.prepareQuery(columnFamily).getKey(rowKey).execute();
-        return result.getResult();
+        try {
+            OperationResult<ColumnList<CK>> result = execute(columnFamilyName, () -> this.keyspace.prepareQuery(columnFamily).getKey(rowKey).execute());
+            record(columnFamilyName, "readComposite", start, metrics != null ? size(result.getResult()) : 0, DaoMetrics.utf8Length(rowKey));
+            return result.getResult();
+        } catch (ConnectionException e) {
+            recordError(columnFamilyName, "readComposite", start);
+            throw e;
+        }
     }
 
     /**
@@ -116,11 +276,19 @@ public class CompositeDao<CK> {
      * @throws InstantiationException
      */
     public Column<CompositeKey> readComposite(String columnFamilyName, String rowKey, CompositeKey ck) throws ConnectionException {
+        long start = System.nanoTime();
         AnnotatedCompositeSerializer<CompositeKey> entitySerializer = new AnnotatedCompositeSerializer<CompositeKey>(CompositeKey.class);
         ColumnFamily<String, CompositeKey> columnFamily = new ColumnFamily<String, CompositeKey>(columnFamilyName, StringSerializer.get(),
                 entitySerializer);
-        OperationResult<Column<CompositeKey>> result = this.keyspace.prepareQuery(columnFamily).getKey(rowKey).getColumn(ck).execute();
-        return result.getResult();
+        try {
+            OperationResult<Column<CompositeKey>> result = execute(columnFamilyName,
+                    () -> this.keyspace.prepareQuery(columnFamily).getKey(rowKey).getColumn(ck).execute());
+            record(columnFamilyName, "readColumn", start, result.getResult().getByteBufferValue().remaining(), DaoMetrics.utf8Length(rowKey));
+            return result.getResult();
+        } catch (ConnectionException e) {
+            recordError(columnFamilyName, "readColumn", start);
+            throw e;
+        }
     }
 
     public static void main(String[] args) throws Exception {
@@ -130,55 +298,66 @@ public class CompositeDao<CK> {
         LOG.debug("Using host(s): {}", configuration.getHostname());
         LOG.debug("Using keyspace:{}", configuration.getKeyspace());
         LOG.debug("Column family: {}", "Files");
-        CompositeDao<CompositeKey> dao = new CompositeDao<CompositeKey>(configuration.getHostname(), configuration.getKeyspace(), CompositeKey.class);
+        SessionRegistry registry = SessionRegistry.getInstance();
+        AstyanaxContext<Keyspace> context = registry.acquireAstyanax();
+        try {
+            CompositeDao<CompositeKey> dao = new CompositeDao<CompositeKey>(context, CompositeKey.class);
+            DaoMetrics metrics = new DaoMetrics();
+            metrics.addReporter(new Slf4jMetricsReporter());
+            dao.setMetrics(metrics);
 
-        LOG.debug("Writing value with composite key:");
-        CompositeKey ck1 = new CompositeKey();
-        ck1.fileId = 1L;
-        dao.writeComposite("Files", ROW_1, ck1, "This is file1".getBytes());
+            LOG.debug("Writing value with composite key:");
+            CompositeKey ck1 = new CompositeKey();
+            ck1.fileId = 1L;
+            dao.writeComposite("Files", ROW_1, ck1, "This is file1".getBytes(StandardCharsets.UTF_8));
 
-        CompositeKey ck1b = new CompositeKey();
-        ck1b.fileId = 1L;
-        ck1b.field = "Name";
+            CompositeKey ck1b = new CompositeKey();
+            ck1b.fileId = 1L;
+            ck1b.field = "Name";
 
-        dao.writeComposite("Files", ROW_1, ck1b, "201300122.txt".getBytes());
+            dao.writeComposite("Files", ROW_1, ck1b, "201300122.txt".getBytes(StandardCharsets.UTF_8));
 
-        CompositeKey ck2 = new CompositeKey();
-        ck2.fileId = 1L;
-        ck2.trackId = 1L;
+            CompositeKey ck2 = new CompositeKey();
+            ck2.fileId = 1L;
+            ck2.trackId = 1L;
 
-        dao.writeComposite("Files", ROW_1, ck2, "This is file1, track1".getBytes());
+            dao.writeComposite("Files", ROW_1, ck2, "This is file1, track1".getBytes(StandardCharsets.UTF_8));
 
-        CompositeKey ck3 = new CompositeKey();
-        ck3.fileId = 1L;
-        ck3.trackId = 1L;
-        ck3.field = "Name";
+            CompositeKey ck3 = new CompositeKey();
+            ck3.fileId = 1L;
+            ck3.trackId = 1L;
+            ck3.field = "Name";
 
-        dao.writeComposite("Files", ROW_1, ck3, "This is file1, track1, name".getBytes());
+            dao.writeComposite("Files", ROW_1, ck3, "This is file1, track1, name".getBytes(StandardCharsets.UTF_8));
 
-        CompositeKey ck4 = new CompositeKey();
-        ck4.fileId = 1L;
-        ck4.trackId = 1L;
-        ck4.field = "Phone";
+            CompositeKey ck4 = new CompositeKey();
+            ck4.fileId = 1L;
+            ck4.trackId = 1L;
+            ck4.field = "Phone";
 
-        dao.writeComposite("Files", ROW_1, ck4, "+362012345678".getBytes());
+            dao.writeComposite("Files", ROW_1, ck4, "+362012345678".getBytes(StandardCharsets.UTF_8));
 
-        LOG.debug("Reading {} row values:", ROW_1);
-        ColumnList<CompositeKey> cl = dao.readComposite("Files", ROW_1);
-        for (CompositeKey key : cl.getColumnNames()) {
-            String value = cl.getStringValue(key, null);
-            LOG.debug("{}:{}:{} = {}", new Object[] { key.trackId, key.fileId, key.field, value });
-        }
+            LOG.debug("Reading {} row values:", ROW_1);
+            ColumnList<CompositeKey> cl = dao.readComposite("Files", ROW_1);
+            for (CompositeKey key : cl.getColumnNames()) {
+                String value = new String(dao.readValue(cl.getColumnByName(key)), StandardCharsets.UTF_8);
+                LOG.debug("{}:{}:{} = {}", new Object[] { key.trackId, key.fileId, key.field, value });
+            }
 
 
-        LOG.debug("Read {} row {} composite:", ROW_1, ck2);
-        Column<CompositeKey> column = dao.readComposite("Files", ROW_1, ck2);
+            LOG.debug("Read {} row {} composite:", ROW_1, ck2);
+            Column<CompositeKey> column = dao.readComposite("Files", ROW_1, ck2);
 
-        LOG.debug("{}:{}:{} = {}",
-                new Object[] { column.getName().trackId, column.getName().fileId, column.getName().field, column.getStringValue() });
+            LOG.debug("{}:{}:{} = {}",
+                    new Object[] { column.getName().trackId, column.getName().fileId, column.getName().field, new String(dao.readValue(column), StandardCharsets.UTF_8) });
 
 
-        dao.cleanup();
+            metrics.sample();
+            metrics.close();
+            dao.cleanup();
+        } finally {
+            registry.release(context);
+        }
         LOG.debug("Finished.");
     }
 
@@ -0,0 +1,58 @@
+package cassandra.load;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.util.Assert;
+
+import cassandra.CountingDao;
+
+/**
+ * {@link Workload} of a {@link CountingDao}: the keys are user ids, every operation picks one of the user's
+ * credentials at random. Reads return all of the user's credentials, writes reset a credential.
+ * @author Gyozo_Nyari
+ *
+ */
+public class CountingDaoWorkload implements Workload {
+
+    private final CountingDao dao;
+    private final int credentials;
+
+    /**
+     * Constructor.
+     * @param dao dao
+     * @param credentials number of credentials per user
+     */
+    public CountingDaoWorkload(final CountingDao dao, final int credentials) {
+        Assert.notNull(dao, "Dao can't be null!");
+        Assert.isTrue(credentials > 0, "Credentials must be positive!");
+        this.dao = dao;
+        this.credentials = credentials;
+    }
+
+    @Override
+    public boolean supports(final OperationType type) {
+        return true;
+    }
+
+    @Override
+    public void execute(final OperationType type, final String key) {
+        switch (type) {
+        case READ:
+            dao.getNumberOfAuthenticationFailures(key);
+            break;
+        case WRITE:
+            dao.setNumberOfAuthenticationFailures(key, credential(), 0);
+            break;
+        case INCREMENT:
+            dao.incrementNumberOfAuthenticationFailures(key, credential());
+            break;
+        default:
+            throw new IllegalArgumentException("Unsupported operation: " + type);
+        }
+    }
+
+    private String credential() {
+        return "credential" + ThreadLocalRandom.current().nextInt(credentials);
+    }
+
+}
@@ -0,0 +1,60 @@
+package cassandra.load;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+import cassandra.Dao;
+
+/**
+ * {@link Workload} of a {@link Dao}: reads whole rows and writes rows of fixed width.
+ * @author Gyozo_Nyari
+ *
+ */
+public class DaoWorkload implements Workload {
+
+    private final Dao dao;
+    private final Map<String, String> columns;
+
+    /**
+     * Constructor.
+     * @param dao dao
+     * @param width number of columns written
+     * @param valueLength length of the values written
+     */
+    public DaoWorkload(final Dao dao, final int width, final int valueLength) {
+        Assert.notNull(dao, "Dao can't be null!");
+        Assert.isTrue(width > 0, "Width must be positive!");
+        Assert.isTrue(valueLength >= 0, "Value length can't be negative!");
+        this.dao = dao;
+        StringBuilder value = new StringBuilder(valueLength);
+        for (int i = 0; i < valueLength; i++) {
+            value.append((char) ('a' + i % 26));
+        }
+        this.columns = new HashMap<String, String>();
+        for (int i = 0; i < width; i++) {
+            columns.put("column" + i, value.toString());
+        }
+    }
+
+    @Override
+    public boolean supports(final OperationType type) {
+        return type != OperationType.INCREMENT;
+    }
+
+    @Override
+    public void execute(final OperationType type, final String key) {
+        switch (type) {
+        case READ:
+            dao.getValues(key);
+            break;
+        case WRITE:
+            dao.store(key, columns);
+            break;
+        default:
+            throw new IllegalArgumentException("Unsupported operation: " + type);
+        }
+    }
+
+}
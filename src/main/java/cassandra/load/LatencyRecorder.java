@@ -0,0 +1,170 @@
+package cassandra.load;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Records the latencies of the operations in HDR histograms and prints them interval by interval and in total.
+ * Latencies are in nanoseconds, printed in milliseconds.
+ *
+ * Failed operations are recorded in histograms of their own, so a fast failure doesn't improve the latencies of the
+ * successful ones. Dropped operations have no latency, they are counted per operation.
+ * @author Gyozo_Nyari
+ *
+ */
+public class LatencyRecorder {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final OperationType[] types;
+    private final Map<OperationType, Recorder> recorders = new EnumMap<OperationType, Recorder>(OperationType.class);
+    private final Map<OperationType, Histogram> totals = new EnumMap<OperationType, Histogram>(OperationType.class);
+    private final Map<OperationType, Histogram> intervals = new EnumMap<OperationType, Histogram>(OperationType.class);
+    private final Map<OperationType, Recorder> errorRecorders = new EnumMap<OperationType, Recorder>(OperationType.class);
+    private final Map<OperationType, Histogram> errorTotals = new EnumMap<OperationType, Histogram>(OperationType.class);
+    private final Map<OperationType, Histogram> errorIntervals = new EnumMap<OperationType, Histogram>(OperationType.class);
+    private final Map<OperationType, AtomicLong> dropped = new EnumMap<OperationType, AtomicLong>(OperationType.class);
+    private final long startNanos = System.nanoTime();
+    private long lastReportNanos = startNanos;
+
+    /**
+     * Constructor.
+     * @param types operations recorded
+     */
+    public LatencyRecorder(final OperationType... types) {
+        this.types = types.clone();
+        for (OperationType type : types) {
+            recorders.put(type, new Recorder(SIGNIFICANT_DIGITS));
+            totals.put(type, new Histogram(SIGNIFICANT_DIGITS));
+            errorRecorders.put(type, new Recorder(SIGNIFICANT_DIGITS));
+            errorTotals.put(type, new Histogram(SIGNIFICANT_DIGITS));
+            dropped.put(type, new AtomicLong());
+        }
+    }
+
+    /**
+     * Records the latency of a successful operation, measured from its intended start.
+     * @param type operation
+     * @param nanos latency
+     */
+    public void record(final OperationType type, final long nanos) {
+        recorders.get(type).recordValue(Math.max(0, nanos));
+    }
+
+    /**
+     * Records the latency of a failed operation, measured from its intended start.
+     * @param type operation
+     * @param nanos latency
+     */
+    public void recordError(final OperationType type, final long nanos) {
+        errorRecorders.get(type).recordValue(Math.max(0, nanos));
+    }
+
+    /**
+     * Counts an operation not even started because too many were outstanding, or because the run ended first.
+     * @param type operation
+     */
+    public void recordDropped(final OperationType type) {
+        dropped.get(type).incrementAndGet();
+    }
+
+    /**
+     * Prints the header of the interval lines.
+     * @param out stream
+     */
+    public void printHeader(final PrintStream out) {
+        out.printf("%8s %-16s %10s %10s %9s %9s %9s %9s %9s %10s%n", "time(s)", "operation", "count", "ops/s", "p50(ms)", "p90(ms)",
+                "p99(ms)", "p99.9(ms)", "max(ms)", "dropped");
+    }
+
+    /**
+     * Prints the latencies and throughput since the previous call and adds them to the totals. Errors are printed on
+     * a line of their own, if there were any.
+     * @param out stream
+     */
+    public synchronized void printInterval(final PrintStream out) {
+        long now = System.nanoTime();
+        double seconds = (now - lastReportNanos) / 1e9;
+        String elapsed = String.format("%8.1f", (now - startNanos) / 1e9);
+        lastReportNanos = now;
+        for (OperationType type : types) {
+            Histogram interval = recorders.get(type).getIntervalHistogram(intervals.get(type));
+            intervals.put(type, interval);
+            totals.get(type).add(interval);
+            print(out, elapsed, type.toString(), interval, seconds, dropped.get(type).get());
+            Histogram errorInterval = errorRecorders.get(type).getIntervalHistogram(errorIntervals.get(type));
+            errorIntervals.put(type, errorInterval);
+            errorTotals.get(type).add(errorInterval);
+            if (errorInterval.getTotalCount() > 0) {
+                print(out, elapsed, type + " errors", errorInterval, seconds, -1);
+            }
+        }
+    }
+
+    /**
+     * Prints the totals and the percentile distribution of every operation and of its errors.
+     * @param out stream
+     */
+    public synchronized void printSummary(final PrintStream out) {
+        double seconds = (lastReportNanos - startNanos) / 1e9;
+        String elapsed = String.format("%8.1f", seconds);
+        out.println();
+        out.println("Summary");
+        printHeader(out);
+        for (OperationType type : types) {
+            print(out, elapsed, type.toString(), totals.get(type), seconds, dropped.get(type).get());
+            if (errorTotals.get(type).getTotalCount() > 0) {
+                print(out, elapsed, type + " errors", errorTotals.get(type), seconds, -1);
+            }
+        }
+        for (OperationType type : types) {
+            out.println();
+            out.println(type + " latency distribution (ms)");
+            totals.get(type).outputPercentileDistribution(out, NANOS_PER_MILLI);
+            if (errorTotals.get(type).getTotalCount() > 0) {
+                out.println();
+                out.println(type + " error latency distribution (ms)");
+                errorTotals.get(type).outputPercentileDistribution(out, NANOS_PER_MILLI);
+            }
+        }
+    }
+
+    /**
+     * @return number of failed operations reported so far
+     */
+    public synchronized long getErrorCount() {
+        long errors = 0;
+        for (Histogram total : errorTotals.values()) {
+            errors += total.getTotalCount();
+        }
+        return errors;
+    }
+
+    public long getDroppedCount() {
+        long count = 0;
+        for (AtomicLong value : dropped.values()) {
+            count += value.get();
+        }
+        return count;
+    }
+
+    private static void print(final PrintStream out, final String time, final String operation, final Histogram histogram,
+            final double seconds, final long dropped) {
+        long count = histogram.getTotalCount();
+        out.printf("%8s %-16s %10d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f %10s%n", time, operation, count, seconds > 0 ? count / seconds : 0,
+                millis(histogram, 50), millis(histogram, 90), millis(histogram, 99), millis(histogram, 99.9),
+                histogram.getMaxValue() / NANOS_PER_MILLI, dropped >= 0 ? Long.toString(dropped) : "");
+    }
+
+    private static double millis(final Histogram histogram, final double percentile) {
+        return histogram.getValueAtPercentile(percentile) / NANOS_PER_MILLI;
+    }
+
+}
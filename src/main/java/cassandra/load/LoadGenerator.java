@@ -0,0 +1,205 @@
+package cassandra.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cassandra.AsyncSupport;
+import cassandra.AstyanaxCountingDao;
+import cassandra.AstyanaxDao;
+import cassandra.CachingCountingDao;
+import cassandra.CachingDao;
+import cassandra.Configuration;
+import cassandra.CountingDao;
+import cassandra.Dao;
+import cassandra.HectorCountingDao;
+import cassandra.HectorDao;
+import cassandra.Hedger;
+import cassandra.HedgingCountingDao;
+import cassandra.HedgingDao;
+import cassandra.ReplicaSelector;
+import cassandra.ResilientCountingDao;
+import cassandra.ResilientDao;
+import cassandra.SessionRegistry;
+import cassandra.resilience.Resilience;
+import cassandra.resilience.RetryBudget;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.netflix.astyanax.AstyanaxContext;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.serializers.StringSerializer;
+
+/**
+ * Load generator CLI: drives a {@link cassandra.Dao} or {@link cassandra.CountingDao} with many workers at a target
+ * rate and prints HDR latency percentiles and throughput per interval, then the totals. The dao may be put behind
+ * retries, hedging and a near cache, to try their settings. See {@link LoadOptions} for the options, e.g.
+ *
+ * java -cp target/cassandra-0.0.1-SNAPSHOT-jar-with-dependencies.jar cassandra.load.LoadGenerator --client=hector
+ * --rate=5000 --duration=120 --reads=90 --writes=10
+ * @author Gyozo_Nyari
+ *
+ */
+public final class LoadGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        SessionRegistry registry = new SessionRegistry(createConfiguration(options));
+        // hedges and retries share one budget, filled once per operation by Resilience if both are on
+        RetryBudget budget = new RetryBudget(0.1, 10);
+        Resilience resilience = null;
+        if (options.getDeadline() > 0) {
+            resilience = new Resilience(budget, AsyncSupport.newBoundedExecutor(options.getWorkers(), options.getWorkers(), "resilience"));
+            resilience.setTimeout(options.getDeadline(), TimeUnit.MILLISECONDS);
+        }
+        Hedger hedger = null;
+        if (options.getHedgePercentile() > 0) {
+            hedger = new Hedger(2 * options.getWorkers(), options.getWorkers());
+            hedger.setPercentile(options.getHedgePercentile());
+            hedger.setBudget(budget, resilience == null);
+        }
+        List<AutoCloseable> closeables = new ArrayList<AutoCloseable>();
+        // statistics of the near cache, if there is one
+        List<Supplier<CacheStats>> caches = new ArrayList<Supplier<CacheStats>>();
+        Workload workload;
+        ReplicaSelector replicaSelector = null;
+        if ("astyanax".equals(options.getClient())) {
+            AstyanaxContext<Keyspace> astyanaxContext = registry.acquireAstyanax();
+            ColumnFamily<String, String> columnFamily = new ColumnFamily<String, String>(options.getColumnFamily(),
+                    StringSerializer.get(), StringSerializer.get());
+            // hedges go to another replica than the one the pool picks for the read
+            replicaSelector = hedger != null ? new ReplicaSelector(astyanaxContext) : null;
+            if (options.isCounting()) {
+                AstyanaxCountingDao dao = new AstyanaxCountingDao(astyanaxContext, columnFamily);
+                AstyanaxCountingDao hedgeDao = new AstyanaxCountingDao(astyanaxContext, columnFamily, dao.getKeyLock());
+                hedgeDao.setReplicaSelector(replicaSelector);
+                closeables.add(dao);
+                closeables.add(hedgeDao);
+                workload = createWorkload(dao, hedgeDao, dao.getTtl(), hedger, resilience, options, caches);
+            } else {
+                AstyanaxDao dao = new AstyanaxDao(astyanaxContext, columnFamily);
+                dao.setFailSilently(resilience == null);
+                AstyanaxDao hedgeDao = new AstyanaxDao(astyanaxContext, columnFamily);
+                hedgeDao.setFailSilently(resilience == null);
+                hedgeDao.setReplicaSelector(replicaSelector);
+                workload = createWorkload(dao, hedgeDao, hedger, resilience, options, caches);
+            }
+        } else {
+            me.prettyprint.hector.api.Keyspace keyspace = registry.acquireHector();
+            if (options.isCounting()) {
+                HectorCountingDao dao = new HectorCountingDao();
+                dao.setKeyspace(keyspace);
+                dao.setColumnFamilyName(options.getColumnFamily());
+                dao.setAsyncThreads(options.getWorkers());
+                dao.initialize();
+                closeables.add(dao);
+                workload = createWorkload(dao, dao, dao.getTtl(), hedger, resilience, options, caches);
+            } else {
+                HectorDao dao = new HectorDao(keyspace, options.getColumnFamily());
+                closeables.add(dao);
+                workload = createWorkload(dao, dao, hedger, resilience, options, caches);
+            }
+        }
+
+        OperationMix mix = new OperationMix(options.getWeights());
+        final LatencyRecorder recorder = new LatencyRecorder(mix.getTypes());
+        OpenLoopDriver driver = new OpenLoopDriver(workload, mix, new ZipfianGenerator(options.getKeys(), options.getZipf()), "key",
+                recorder, options.getWorkers(), options.getMaxOutstanding());
+        driver.setDrainTimeout(options.getDrainTimeout());
+
+        LOG.debug("Running {} ops/s for {} s against {} {}...",
+                new Object[] {options.getRate(), options.getDuration(), options.getClient(), options.getColumnFamily()});
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        recorder.printHeader(System.out);
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                recorder.printInterval(System.out);
+            }
+        }, options.getReportInterval(), options.getReportInterval(), TimeUnit.SECONDS);
+        try {
+            driver.run(options.getRate(), options.getDuration());
+        } finally {
+            reporter.shutdownNow();
+            recorder.printInterval(System.out);
+            recorder.printSummary(System.out);
+            for (Supplier<CacheStats> cache : caches) {
+                System.out.println("Near cache: " + cache.get());
+            }
+            if (hedger != null) {
+                System.out.println(hedger);
+                if (replicaSelector != null) {
+                    System.out.println("Hedges pinned to another replica: " + replicaSelector.getPinnedCount() + ", left to the pool: "
+                            + replicaSelector.getUnpinnedCount());
+                }
+                hedger.close();
+            }
+            if (resilience != null) {
+                System.out.println(resilience);
+                resilience.close();
+            }
+            for (AutoCloseable closeable : closeables) {
+                closeable.close();
+            }
+            registry.shutdown();
+        }
+    }
+
+    /**
+     * Stacks the decorators, the near cache on top so its hits skip the retries and hedges.
+     */
+    private static Workload createWorkload(final Dao backend, final Dao hedgeBackend, final Hedger hedger, final Resilience resilience,
+            final LoadOptions options, final List<Supplier<CacheStats>> caches) {
+        Dao dao = hedger != null ? new HedgingDao(backend, hedgeBackend, hedger) : backend;
+        if (resilience != null) {
+            dao = new ResilientDao(dao, resilience, options.getColumnFamily());
+        }
+        if (options.getCacheSize() > 0) {
+            CachingDao cachingDao = new CachingDao(dao, options.getCacheSize(), options.getCacheExpire());
+            caches.add(cachingDao::getStatistics);
+            dao = cachingDao;
+        }
+        return new DaoWorkload(dao, options.getWidth(), options.getValueLength());
+    }
+
+    private static Workload createWorkload(final CountingDao backend, final CountingDao hedgeBackend, final int ttlSeconds,
+            final Hedger hedger, final Resilience resilience, final LoadOptions options, final List<Supplier<CacheStats>> caches) {
+        CountingDao dao = hedger != null ? new HedgingCountingDao(backend, hedgeBackend, hedger) : backend;
+        if (resilience != null) {
+            dao = new ResilientCountingDao(dao, resilience, options.getColumnFamily());
+        }
+        if (options.getCacheSize() > 0) {
+            CachingCountingDao cachingDao = new CachingCountingDao(dao, options.getCacheSize(), options.getCacheExpire(), ttlSeconds);
+            caches.add(cachingDao::getStatistics);
+            dao = cachingDao;
+        }
+        return new CountingDaoWorkload(dao, options.getWidth());
+    }
+
+    private static Configuration createConfiguration(final LoadOptions options) {
+        Configuration configuration = new Configuration();
+        configuration.setHostname(options.getHost());
+        configuration.setPort(options.getPort());
+        configuration.setKeyspace(options.getKeyspace());
+        configuration.setMaxConnsPerHost(options.getMaxConnsPerHost());
+        return configuration;
+    }
+
+}
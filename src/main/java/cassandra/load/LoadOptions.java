@@ -0,0 +1,172 @@
+package cassandra.load;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import cassandra.Configuration;
+
+/**
+ * Command line options of the {@link LoadGenerator}, given as --name=value.
+ * @author Gyozo_Nyari
+ *
+ */
+public class LoadOptions {
+
+    static final String USAGE = "Options (--name=value):\n"
+            + "  dao                dao, counting (default: dao)\n"
+            + "  client             astyanax, hector (default: astyanax)\n"
+            + "  host, port         Cassandra node (default: from Configuration)\n"
+            + "  keyspace           keyspace (default: from Configuration)\n"
+            + "  columnFamily       column family (default: cassandra_test, auth_failures for counting)\n"
+            + "  maxConnsPerHost    connections per host of the client (default: from Configuration)\n"
+            + "  rate               operations per second (default: 1000)\n"
+            + "  duration           seconds (default: 60)\n"
+            + "  workers            threads calling the dao (default: 64)\n"
+            + "  maxOutstanding     operations waiting for a worker before dropping (default: 100000)\n"
+            + "  reads, writes, increments  weights of the operations (default: 80, 20, 0)\n"
+            + "  keys               number of distinct row keys (default: 100000)\n"
+            + "  zipf               key skew in [0, 1), 0 is uniform (default: 0.99)\n"
+            + "  width              columns per write, credentials per user for counting (default: 10)\n"
+            + "  valueLength        length of the written values (default: 100)\n"
+            + "  reportInterval     seconds between reports (default: 10)\n"
+            + "  hedge              hedges reads slower than this latency percentile, 0 is off (default: 0)\n"
+            + "  deadline           ms per operation, retries and circuit breaking included, 0 is off (default: 0)\n"
+            + "  cache              near cache size, bytes for dao, credentials for counting, 0 is off (default: 0)\n"
+            + "  cacheExpire        seconds a cached value is kept, at most the TTL for counting (default: 10)\n"
+            + "  drain              seconds to wait for the outstanding operations at the end, 0 waits for all (default: 0)\n";
+
+    private final Map<String, String> values;
+
+    LoadOptions(final Map<String, String> values) {
+        this.values = values;
+    }
+
+    /**
+     * Parses the command line.
+     * @param args arguments
+     * @return options
+     */
+    public static LoadOptions parse(final String... args) {
+        Map<String, String> values = new HashMap<String, String>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Invalid option: " + arg + "\n" + USAGE);
+            }
+            values.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        return new LoadOptions(values);
+    }
+
+    public boolean isCounting() {
+        String dao = get("dao", "dao");
+        if (!"dao".equals(dao) && !"counting".equals(dao)) {
+            throw new IllegalArgumentException("Unknown dao: " + dao + "\n" + USAGE);
+        }
+        return "counting".equals(dao);
+    }
+
+    public String getClient() {
+        String client = get("client", "astyanax");
+        if (!"astyanax".equals(client) && !"hector".equals(client)) {
+            throw new IllegalArgumentException("Unknown client: " + client + "\n" + USAGE);
+        }
+        return client;
+    }
+
+    public String getHost() {
+        return get("host", Configuration.getConfiguration().getHostname());
+    }
+
+    public int getPort() {
+        return getInt("port", Configuration.getConfiguration().getPort());
+    }
+
+    public String getKeyspace() {
+        return get("keyspace", Configuration.getConfiguration().getKeyspace());
+    }
+
+    public String getColumnFamily() {
+        return get("columnFamily", isCounting() ? "auth_failures" : "cassandra_test");
+    }
+
+    public int getMaxConnsPerHost() {
+        return getInt("maxConnsPerHost", Configuration.getConfiguration().getMaxConnsPerHost());
+    }
+
+    public double getRate() {
+        return Double.parseDouble(get("rate", "1000"));
+    }
+
+    public long getDuration() {
+        return Long.parseLong(get("duration", "60"));
+    }
+
+    public int getWorkers() {
+        return getInt("workers", 64);
+    }
+
+    public int getMaxOutstanding() {
+        return getInt("maxOutstanding", 100000);
+    }
+
+    public Map<OperationType, Integer> getWeights() {
+        Map<OperationType, Integer> weights = new EnumMap<OperationType, Integer>(OperationType.class);
+        weights.put(OperationType.READ, getInt("reads", 80));
+        weights.put(OperationType.WRITE, getInt("writes", 20));
+        weights.put(OperationType.INCREMENT, getInt("increments", 0));
+        return weights;
+    }
+
+    public long getKeys() {
+        return Long.parseLong(get("keys", "100000"));
+    }
+
+    public double getZipf() {
+        return Double.parseDouble(get("zipf", "0.99"));
+    }
+
+    public int getWidth() {
+        return getInt("width", 10);
+    }
+
+    public int getValueLength() {
+        return getInt("valueLength", 100);
+    }
+
+    public long getReportInterval() {
+        return Long.parseLong(get("reportInterval", "10"));
+    }
+
+    public double getHedgePercentile() {
+        return Double.parseDouble(get("hedge", "0"));
+    }
+
+    public long getDeadline() {
+        return Long.parseLong(get("deadline", "0"));
+    }
+
+    public long getCacheSize() {
+        return Long.parseLong(get("cache", "0"));
+    }
+
+    public int getCacheExpire() {
+        return getInt("cacheExpire", 10);
+    }
+
+    public long getDrainTimeout() {
+        return Long.parseLong(get("drain", "0"));
+    }
+
+    private String get(final String name, final String defaultValue) {
+        String value = values.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    private int getInt(final String name, final int defaultValue) {
+        String value = values.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+}
@@ -0,0 +1,165 @@
+package cassandra.load;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import cassandra.AsyncSupport;
+
+/**
+ * Drives a {@link Workload} at a fixed rate regardless of how fast the calls return (open loop). Operations are
+ * scheduled at evenly spaced intended start times and run by a pool of workers; latency is measured from the intended
+ * start, so time spent waiting behind slow calls is counted instead of hidden (coordinated omission).
+ *
+ * After the last scheduled operation the driver waits for the outstanding ones, all of them unless a
+ * {@link #setDrainTimeout(long) drain timeout} is set; the ones not started by then are counted as dropped, the
+ * running ones are interrupted.
+ * @author Gyozo_Nyari
+ *
+ */
+public class OpenLoopDriver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OpenLoopDriver.class);
+
+    private final Workload workload;
+    private final OperationMix mix;
+    private final ZipfianGenerator keys;
+    private final String keyPrefix;
+    private final LatencyRecorder recorder;
+    private final int workers;
+    private final int maxOutstanding;
+    private long drainTimeoutSeconds;
+
+    /**
+     * Constructor.
+     * @param workload workload
+     * @param mix operation mix
+     * @param keys key index generator
+     * @param keyPrefix prefix of the row keys
+     * @param recorder recorder of the latencies
+     * @param workers number of threads calling the dao
+     * @param maxOutstanding number of scheduled operations waiting for a worker, further ones are dropped
+     */
+    public OpenLoopDriver(final Workload workload, final OperationMix mix, final ZipfianGenerator keys, final String keyPrefix,
+            final LatencyRecorder recorder, final int workers, final int maxOutstanding) {
+        Assert.notNull(workload, "Workload can't be null!");
+        Assert.notNull(mix, "Mix can't be null!");
+        Assert.notNull(keys, "Keys can't be null!");
+        Assert.notNull(recorder, "Recorder can't be null!");
+        Assert.isTrue(workers > 0, "Workers must be positive!");
+        Assert.isTrue(maxOutstanding > 0, "Max outstanding must be positive!");
+        for (OperationType type : mix.getTypes()) {
+            Assert.isTrue(workload.supports(type), "Operation " + type + " is not supported by the workload!");
+        }
+        this.workload = workload;
+        this.mix = mix;
+        this.keys = keys;
+        this.keyPrefix = keyPrefix != null ? keyPrefix : "";
+        this.recorder = recorder;
+        this.workers = workers;
+        this.maxOutstanding = maxOutstanding;
+    }
+
+    /**
+     * Runs the load, returns when the last operation finished.
+     * @param rate operations per second
+     * @param durationSeconds duration
+     */
+    public void run(final double rate, final long durationSeconds) {
+        Assert.isTrue(rate > 0, "Rate must be positive!");
+        Assert.isTrue(durationSeconds > 0, "Duration must be positive!");
+        ExecutorService executor = AsyncSupport.newBoundedExecutor(workers, maxOutstanding, "load-worker");
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double intervalNanos = 1e9 / rate;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        try {
+            for (long i = 0;; i++) {
+                final long intended = start + (long) (i * intervalNanos);
+                if (intended >= end) {
+                    break;
+                }
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                final OperationType type = mix.next(random);
+                final String key = keyPrefix + keys.next(random);
+                try {
+                    executor.execute(new Operation(type, key, intended));
+                } catch (RejectedExecutionException e) {
+                    recorder.recordDropped(type);
+                }
+            }
+        } finally {
+            executor.shutdown();
+            drain(executor);
+        }
+    }
+
+    private void drain(final ExecutorService executor) {
+        try {
+            if (drainTimeoutSeconds == 0) {
+                while (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    LOG.info("Waiting for the outstanding operations...");
+                }
+                return;
+            }
+            if (executor.awaitTermination(drainTimeoutSeconds, TimeUnit.SECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Runnable> notStarted = executor.shutdownNow();
+        for (Runnable operation : notStarted) {
+            recorder.recordDropped(((Operation) operation).type);
+        }
+        LOG.warn("Stopped waiting for the outstanding operations, {} were not started", notStarted.size());
+    }
+
+    /**
+     * Sets the time the driver waits for the outstanding operations after the run, 0 by default to wait for all.
+     * @param drainTimeoutSeconds time in seconds, 0 for no limit
+     */
+    public void setDrainTimeout(final long drainTimeoutSeconds) {
+        Assert.isTrue(drainTimeoutSeconds >= 0, "Drain timeout can't be negative!");
+        this.drainTimeoutSeconds = drainTimeoutSeconds;
+    }
+
+    /**
+     * An operation scheduled to start at its intended time.
+     */
+    private final class Operation implements Runnable {
+
+        private final OperationType type;
+        private final String key;
+        private final long intended;
+
+        Operation(final OperationType type, final String key, final long intended) {
+            this.type = type;
+            this.key = key;
+            this.intended = intended;
+        }
+
+        @Override
+        public void run() {
+            try {
+                workload.execute(type, key);
+            } catch (RuntimeException e) {
+                recorder.recordError(type, System.nanoTime() - intended);
+                LOG.debug("{} of {} failed!", new Object[] {type, key}, e);
+                return;
+            }
+            recorder.record(type, System.nanoTime() - intended);
+        }
+    }
+
+}
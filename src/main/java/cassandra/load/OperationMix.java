@@ -0,0 +1,65 @@
+package cassandra.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.springframework.util.Assert;
+
+/**
+ * Picks operations at random in proportion to their weights.
+ * @author Gyozo_Nyari
+ *
+ */
+public class OperationMix {
+
+    private final OperationType[] types;
+    private final double[] cumulative;
+
+    /**
+     * Constructor.
+     * @param weights weights of the operations, operations left out or weighted 0 are never picked
+     */
+    public OperationMix(final Map<OperationType, Integer> weights) {
+        Map<OperationType, Integer> positive = new EnumMap<OperationType, Integer>(OperationType.class);
+        int total = 0;
+        for (Map.Entry<OperationType, Integer> weight : weights.entrySet()) {
+            Assert.isTrue(weight.getValue() >= 0, "Weights can't be negative!");
+            if (weight.getValue() > 0) {
+                positive.put(weight.getKey(), weight.getValue());
+                total += weight.getValue();
+            }
+        }
+        Assert.isTrue(total > 0, "At least one operation needs a positive weight!");
+        this.types = positive.keySet().toArray(new OperationType[positive.size()]);
+        this.cumulative = new double[types.length];
+        double sum = 0;
+        for (int i = 0; i < types.length; i++) {
+            sum += positive.get(types[i]);
+            cumulative[i] = sum / total;
+        }
+    }
+
+    /**
+     * Returns the next operation.
+     * @param random source of randomness
+     * @return operation
+     */
+    public OperationType next(final Random random) {
+        double u = random.nextDouble();
+        for (int i = 0; i < cumulative.length - 1; i++) {
+            if (u < cumulative[i]) {
+                return types[i];
+            }
+        }
+        return types[types.length - 1];
+    }
+
+    /**
+     * @return operations with positive weight
+     */
+    public OperationType[] getTypes() {
+        return types.clone();
+    }
+
+}
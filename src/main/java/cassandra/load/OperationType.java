@@ -0,0 +1,10 @@
+package cassandra.load;
+
+/**
+ * Operations of the load generator.
+ * @author Gyozo_Nyari
+ *
+ */
+public enum OperationType {
+    READ, WRITE, INCREMENT
+}
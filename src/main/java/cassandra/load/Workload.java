@@ -0,0 +1,23 @@
+package cassandra.load;
+
+/**
+ * Translates the operations of the load generator into dao calls.
+ * @author Gyozo_Nyari
+ *
+ */
+public interface Workload {
+
+    /**
+     * Tells whether the operation can be run against the dao.
+     * @param type operation
+     * @return true if supported
+     */
+    boolean supports(OperationType type);
+
+    /**
+     * Runs one operation, failures are thrown.
+     * @param type operation
+     * @param key row key
+     */
+    void execute(OperationType type, String key);
+}
@@ -0,0 +1,71 @@
+package cassandra.load;
+
+import java.util.Random;
+
+import org.springframework.util.Assert;
+
+/**
+ * Picks key indexes from 0 to n - 1 with Zipfian skew: index 0 is the most popular, the popularity of the others
+ * falls with the power of their rank. Uses the algorithm of Gray et al., "Quickly generating billion-record synthetic
+ * databases", as YCSB does. A skew of 0 gives uniform keys.
+ * @author Gyozo_Nyari
+ *
+ */
+public class ZipfianGenerator {
+
+    private final long items;
+    private final double theta;
+    private final double zetan;
+    private final double alpha;
+    private final double eta;
+    private final double half;
+
+    /**
+     * Constructor, computing the normalisation constant takes time proportional to the number of items.
+     * @param items number of keys
+     * @param theta skew, from 0 inclusive to 1 exclusive, YCSB uses 0.99
+     */
+    public ZipfianGenerator(final long items, final double theta) {
+        Assert.isTrue(items > 0, "Items must be positive!");
+        Assert.isTrue(theta >= 0 && theta < 1, "Theta must be in [0, 1)!");
+        this.items = items;
+        this.theta = theta;
+        this.zetan = zeta(items, theta);
+        this.alpha = 1 / (1 - theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(Math.min(2, items), theta) / zetan);
+        this.half = 1 + Math.pow(0.5, theta);
+    }
+
+    /**
+     * Returns the next key index.
+     * @param random source of randomness, e.g. the ThreadLocalRandom of the caller
+     * @return index from 0 to items - 1
+     */
+    public long next(final Random random) {
+        if (theta == 0) {
+            return (long) (random.nextDouble() * items);
+        }
+        double u = random.nextDouble();
+        double uz = u * zetan;
+        if (uz < 1) {
+            return 0;
+        }
+        if (uz < half && items > 1) {
+            return 1;
+        }
+        return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    public long getItems() {
+        return items;
+    }
+
+    private static double zeta(final long n, final double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,187 @@
+package cassandra.lock;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.util.Assert;
+
+/**
+ * Key locks backed by a fixed array of read/write lock stripes. Keys are hashed to stripes, so nothing is allocated
+ * per key, at the price of unrelated keys occasionally sharing a stripe.
+ *
+ * Contention is counted per stripe: an acquisition which could not get its lock immediately is contended.
+ * @author Gyozo_Nyari
+ *
+ */
+public class StripedLock {
+
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final ReadWriteLock[] stripes;
+    private final AtomicLongArray contended;
+    private final int mask;
+
+    /**
+     * Constructor with 64 non-fair stripes.
+     */
+    public StripedLock() {
+        this(DEFAULT_STRIPES, false);
+    }
+
+    /**
+     * Constructor.
+     * @param stripes number of stripes, rounded up to a power of two
+     * @param fair whether the stripes use a fair ordering policy
+     */
+    public StripedLock(final int stripes, final boolean fair) {
+        Assert.isTrue(stripes > 0, "Number of stripes must be positive!");
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantReadWriteLock(fair);
+        }
+        this.contended = new AtomicLongArray(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Acquires the shared lock of the key's stripe.
+     * @param key key
+     * @return the acquired lock, to be released by the caller
+     */
+    public Lock readLock(final String key) {
+        int stripe = stripeOf(key);
+        return acquire(stripe, stripes[stripe].readLock());
+    }
+
+    /**
+     * Acquires the exclusive lock of the key's stripe.
+     * @param key key
+     * @return the acquired lock, to be released by the caller
+     */
+    public Lock writeLock(final String key) {
+        int stripe = stripeOf(key);
+        return acquire(stripe, stripes[stripe].writeLock());
+    }
+
+    /**
+     * Acquires the exclusive locks of all stripes the keys belong to, always in stripe order so concurrent callers
+     * can't deadlock.
+     * @param keys keys
+     * @return the acquired locks, to be released by the caller
+     */
+    public List<Lock> writeLocks(final Collection<String> keys) {
+        return acquireAll(keys, true);
+    }
+
+    /**
+     * Acquires the shared locks of all stripes the keys belong to, in stripe order.
+     * @param keys keys
+     * @return the acquired locks, to be released by the caller
+     */
+    public List<Lock> readLocks(final Collection<String> keys) {
+        return acquireAll(keys, false);
+    }
+
+    /**
+     * Releases locks returned by {@link #writeLocks(Collection)} or {@link #readLocks(Collection)}.
+     * @param locks locks
+     */
+    public static void unlockAll(final List<Lock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * @return number of contended acquisitions on all stripes
+     */
+    public long getContendedCount() {
+        long total = 0;
+        for (int i = 0; i < contended.length(); i++) {
+            total += contended.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @param stripe index of the stripe
+     * @return number of contended acquisitions on the stripe
+     */
+    public long getContendedCount(final int stripe) {
+        return contended.get(stripe);
+    }
+
+    /**
+     * @param threshold minimum number of contended acquisitions
+     * @return number of stripes which were contended at least threshold times
+     */
+    public int getHotStripeCount(final long threshold) {
+        int hot = 0;
+        for (int i = 0; i < contended.length(); i++) {
+            if (contended.get(i) >= threshold) {
+                hot++;
+            }
+        }
+        return hot;
+    }
+
+    /**
+     * Resets the contention counters.
+     */
+    public void resetContention() {
+        for (int i = 0; i < contended.length(); i++) {
+            contended.set(i, 0);
+        }
+    }
+
+    private List<Lock> acquireAll(final Collection<String> keys, final boolean exclusive) {
+        BitSet used = new BitSet(stripes.length);
+        for (String key : keys) {
+            used.set(stripeOf(key));
+        }
+        List<Lock> locks = new ArrayList<Lock>(used.cardinality());
+        for (int stripe = used.nextSetBit(0); stripe >= 0; stripe = used.nextSetBit(stripe + 1)) {
+            locks.add(acquire(stripe, exclusive ? stripes[stripe].writeLock() : stripes[stripe].readLock()));
+        }
+        return locks;
+    }
+
+    private Lock acquire(final int stripe, final Lock lock) {
+        boolean acquired;
+        try {
+            // unlike tryLock(), a zero timeout honours the fairness setting
+            acquired = lock.tryLock(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            contended.incrementAndGet(stripe);
+            lock.lock();
+        }
+        return lock;
+    }
+
+    private int stripeOf(final String key) {
+        int h = key.hashCode();
+        // spread the high bits, String hashes of similar ids differ mostly in the low ones
+        h ^= (h >>> 16);
+        return h & mask;
+    }
+
+}
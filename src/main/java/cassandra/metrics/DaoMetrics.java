@@ -0,0 +1,273 @@
+package cassandra.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Registry of the {@link OperationMetrics} of the daos, by column family and operation.
+ *
+ * The recorded values are sampled every interval: the snapshots are handed to the {@link MetricsReporter reporters}
+ * and served by the JMX beans, registered as cassandra.metrics:type=Dao,columnFamily=...,operation=... when JMX is
+ * enabled. Other beans, e.g. the counters of a {@link cassandra.Hedger}, can be registered with them.
+ * @author Gyozo_Nyari
+ *
+ */
+public class DaoMetrics implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DaoMetrics.class);
+    private static final String JMX_DOMAIN = "cassandra.metrics";
+    private static final long DEFAULT_INTERVAL_SECONDS = 10;
+
+    private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<String, OperationMetrics>();
+    private final ConcurrentMap<String, Object> beans = new ConcurrentHashMap<String, Object>();
+    private final List<MetricsReporter> reporters = new CopyOnWriteArrayList<MetricsReporter>();
+    private final List<ObjectName> registeredNames = new CopyOnWriteArrayList<ObjectName>();
+    private final ScheduledExecutorService sampler;
+    private volatile MBeanServer mbeanServer;
+
+    /**
+     * Constructor, samples every {@value #DEFAULT_INTERVAL_SECONDS} seconds.
+     */
+    public DaoMetrics() {
+        this(DEFAULT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Constructor.
+     * @param interval sampling interval
+     * @param unit unit of the interval
+     */
+    public DaoMetrics(final long interval, final TimeUnit unit) {
+        Assert.isTrue(interval > 0, "Interval must be positive!");
+        this.sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "dao-metrics-sampler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.sampler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Returns the metrics of an operation, created on the first call. Callers on the hot path should keep the
+     * result instead of looking it up on every call.
+     * @param columnFamily column family
+     * @param operation operation
+     * @return metrics
+     */
+    public OperationMetrics get(final String columnFamily, final String operation) {
+        Assert.notNull(columnFamily, "Column family can't be null!");
+        Assert.notNull(operation, "Operation can't be null!");
+        String key = columnFamily + "." + operation;
+        OperationMetrics metrics = operations.get(key);
+        if (metrics == null) {
+            OperationMetrics created = new OperationMetrics(columnFamily, operation);
+            metrics = operations.putIfAbsent(key, created);
+            if (metrics == null) {
+                metrics = created;
+                register(created);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Times a call and records it, failures are counted as errors and thrown.
+     * @param metrics metrics of the operation
+     * @param call call
+     * @return result of the call
+     */
+    public static <T> T time(final OperationMetrics metrics, final Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            metrics.record(System.nanoTime() - start, 0, 0);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * Times an asynchronous call from its start to the completion of its future and records it. Failures, thrown or
+     * completing the future, are counted as errors.
+     * @param metrics metrics of the operation
+     * @param call call
+     * @param in bytes read by the call, estimated from its result
+     * @param out bytes written by the call, estimated
+     * @return future of the call, completed after the recording
+     */
+    public static <T> CompletableFuture<T> timeAsync(final OperationMetrics metrics, final Supplier<CompletableFuture<T>> call,
+            final ToLongFunction<T> in, final long out) {
+        final long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            metrics.recordError(System.nanoTime() - start);
+            throw e;
+        }
+        return future.whenComplete((result, error) -> {
+            if (error == null) {
+                metrics.record(System.nanoTime() - start, in.applyAsLong(result), out);
+            } else {
+                metrics.recordError(System.nanoTime() - start);
+            }
+        });
+    }
+
+    /**
+     * Returns the number of bytes of a string in UTF-8, the encoding of the string serializers, without encoding it.
+     * @param value string, may be null
+     * @return number of bytes, 0 for null
+     */
+    public static long utf8Length(final String value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = value.length();
+        long bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                bytes++;
+                // a surrogate pair is 4 bytes, 2 per char
+                if (c >= 0x800 && !Character.isSurrogate(c)) {
+                    bytes++;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Registers a bean as cassandra.metrics:type=...,name=..., now or when JMX is enabled.
+     * @param type type, e.g. Hedger
+     * @param name name of the instance
+     * @param bean MXBean or MBean
+     */
+    public void registerBean(final String type, final String name, final Object bean) {
+        Assert.notNull(type, "Type can't be null!");
+        Assert.notNull(name, "Name can't be null!");
+        Assert.notNull(bean, "Bean can't be null!");
+        String properties = "type=" + type + ",name=" + ObjectName.quote(name);
+        if (beans.putIfAbsent(properties, bean) == null) {
+            register(properties, bean);
+        }
+    }
+
+    /**
+     * Adds a reporter receiving the snapshots of every interval.
+     * @param reporter reporter
+     */
+    public void addReporter(final MetricsReporter reporter) {
+        Assert.notNull(reporter, "Reporter can't be null!");
+        reporters.add(reporter);
+    }
+
+    /**
+     * Registers the metrics, existing and future, as beans of the platform MBean server.
+     */
+    public synchronized void enableJmx() {
+        if (mbeanServer != null) {
+            return;
+        }
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (OperationMetrics metrics : operations.values()) {
+            register(metrics);
+        }
+        for (Map.Entry<String, Object> bean : beans.entrySet()) {
+            register(bean.getKey(), bean.getValue());
+        }
+    }
+
+    /**
+     * Samples the metrics and sends the snapshots to the reporters, called periodically.
+     * @return snapshots of the operations
+     */
+    public List<OperationSnapshot> sample() {
+        List<OperationSnapshot> snapshots = new ArrayList<OperationSnapshot>(operations.size());
+        for (OperationMetrics metrics : operations.values()) {
+            snapshots.add(metrics.sample());
+        }
+        for (MetricsReporter reporter : reporters) {
+            try {
+                reporter.report(snapshots);
+            } catch (RuntimeException e) {
+                LOG.warn("Reporting metrics failed!", e);
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Stops the sampling and unregisters the beans.
+     */
+    @Override
+    public void close() {
+        sampler.shutdownNow();
+        MBeanServer server = mbeanServer;
+        if (server != null) {
+            for (ObjectName name : registeredNames) {
+                try {
+                    server.unregisterMBean(name);
+                } catch (JMException e) {
+                    LOG.debug("Unregistering {} failed", name, e);
+                }
+            }
+            registeredNames.clear();
+        }
+    }
+
+    private void register(final OperationMetrics metrics) {
+        register("type=Dao,columnFamily=" + ObjectName.quote(metrics.getColumnFamily()) + ",operation="
+                + ObjectName.quote(metrics.getOperation()), metrics);
+    }
+
+    private void register(final String properties, final Object bean) {
+        MBeanServer server = mbeanServer;
+        if (server == null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":" + properties);
+            synchronized (this) {
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(bean, name);
+                    registeredNames.add(name);
+                }
+            }
+        } catch (JMException e) {
+            LOG.warn("Registering {} failed!", properties, e);
+        }
+    }
+
+}
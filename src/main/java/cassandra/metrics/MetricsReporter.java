@@ -0,0 +1,17 @@
+package cassandra.metrics;
+
+import java.util.List;
+
+/**
+ * Receives the metrics of every sampling interval, e.g. to send them to a time series database.
+ * @author Gyozo_Nyari
+ *
+ */
+public interface MetricsReporter {
+
+    /**
+     * Reports the metrics of an interval, called from the sampling thread of {@link DaoMetrics}.
+     * @param snapshots metrics of the operations called at least once so far
+     */
+    void report(List<OperationSnapshot> snapshots);
+}
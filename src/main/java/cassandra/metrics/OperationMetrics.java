@@ -0,0 +1,167 @@
+package cassandra.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latency histograms, call, error and byte counts of one operation on one column family. Recording is wait-free, the
+ * {@link DaoMetrics} samples the recorded values interval by interval. Failed calls have a histogram of their own, so
+ * fast failures don't improve the latencies of the successful calls.
+ * @author Gyozo_Nyari
+ *
+ */
+public final class OperationMetrics implements OperationMetricsMXBean {
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final String columnFamily;
+    private final String operation;
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final Recorder errorRecorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private Histogram interval;
+    private Histogram errorInterval;
+    private long lastSampleNanos = System.nanoTime();
+    private long totalCount;
+    private long totalErrors;
+    private volatile OperationSnapshot lastSnapshot;
+
+    OperationMetrics(final String columnFamily, final String operation) {
+        this.columnFamily = columnFamily;
+        this.operation = operation;
+        this.lastSnapshot = new OperationSnapshot(columnFamily, operation, 0, new Histogram(SIGNIFICANT_DIGITS),
+                new Histogram(SIGNIFICANT_DIGITS), 0, 0, 0);
+    }
+
+    /**
+     * Records a successful call.
+     * @param nanos latency
+     * @param in bytes read, estimated
+     * @param out bytes written, estimated
+     */
+    public void record(final long nanos, final long in, final long out) {
+        recorder.recordValue(Math.max(0, nanos));
+        if (in > 0) {
+            bytesIn.add(in);
+        }
+        if (out > 0) {
+            bytesOut.add(out);
+        }
+    }
+
+    /**
+     * Records a failed call.
+     * @param nanos latency
+     */
+    public void recordError(final long nanos) {
+        errorRecorder.recordValue(Math.max(0, nanos));
+    }
+
+    public String getColumnFamily() {
+        return columnFamily;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return metrics of the last sampling interval
+     */
+    public OperationSnapshot getLastSnapshot() {
+        return lastSnapshot;
+    }
+
+    synchronized OperationSnapshot sample() {
+        long now = System.nanoTime();
+        interval = recorder.getIntervalHistogram(interval);
+        Histogram histogram = interval.copy();
+        errorInterval = errorRecorder.getIntervalHistogram(errorInterval);
+        Histogram errorHistogram = errorInterval.copy();
+        totalCount += histogram.getTotalCount() + errorHistogram.getTotalCount();
+        totalErrors += errorHistogram.getTotalCount();
+        lastSnapshot = new OperationSnapshot(columnFamily, operation, now - lastSampleNanos, histogram, errorHistogram,
+                bytesIn.sumThenReset(), bytesOut.sumThenReset(), totalCount);
+        lastSampleNanos = now;
+        return lastSnapshot;
+    }
+
+    @Override
+    public long getCount() {
+        return lastSnapshot.getCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return lastSnapshot.getErrorCount();
+    }
+
+    @Override
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    @Override
+    public synchronized long getTotalErrorCount() {
+        return totalErrors;
+    }
+
+    @Override
+    public double getRate() {
+        return lastSnapshot.getRate();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return lastSnapshot.getBytesIn();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return lastSnapshot.getBytesOut();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return lastSnapshot.getMeanMillis();
+    }
+
+    @Override
+    public double get50thPercentileMillis() {
+        return lastSnapshot.getPercentileMillis(50);
+    }
+
+    @Override
+    public double get95thPercentileMillis() {
+        return lastSnapshot.getPercentileMillis(95);
+    }
+
+    @Override
+    public double get99thPercentileMillis() {
+        return lastSnapshot.getPercentileMillis(99);
+    }
+
+    @Override
+    public double get999thPercentileMillis() {
+        return lastSnapshot.getPercentileMillis(99.9);
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return lastSnapshot.getMaxMillis();
+    }
+
+    @Override
+    public double getError99thPercentileMillis() {
+        return lastSnapshot.getErrorPercentileMillis(99);
+    }
+
+    @Override
+    public double getErrorMaxMillis() {
+        return lastSnapshot.getErrorMaxMillis();
+    }
+
+}
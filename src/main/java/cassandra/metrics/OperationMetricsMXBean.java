@@ -0,0 +1,40 @@
+package cassandra.metrics;
+
+/**
+ * JMX view of {@link OperationMetrics}: values of the last sampling interval unless named total, latencies in
+ * milliseconds.
+ * @author Gyozo_Nyari
+ *
+ */
+public interface OperationMetricsMXBean {
+
+    long getCount();
+
+    long getErrorCount();
+
+    long getTotalCount();
+
+    long getTotalErrorCount();
+
+    double getRate();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    double getMeanMillis();
+
+    double get50thPercentileMillis();
+
+    double get95thPercentileMillis();
+
+    double get99thPercentileMillis();
+
+    double get999thPercentileMillis();
+
+    double getMaxMillis();
+
+    double getError99thPercentileMillis();
+
+    double getErrorMaxMillis();
+}
@@ -0,0 +1,120 @@
+package cassandra.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Metrics of one operation on one column family over a sampling interval, latencies in milliseconds. Latencies are of
+ * the successful calls unless named error.
+ * @author Gyozo_Nyari
+ *
+ */
+public final class OperationSnapshot {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String columnFamily;
+    private final String operation;
+    private final long intervalNanos;
+    private final Histogram histogram;
+    private final Histogram errorHistogram;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long totalCount;
+
+    OperationSnapshot(final String columnFamily, final String operation, final long intervalNanos, final Histogram histogram,
+            final Histogram errorHistogram, final long bytesIn, final long bytesOut, final long totalCount) {
+        this.columnFamily = columnFamily;
+        this.operation = operation;
+        this.intervalNanos = intervalNanos;
+        this.histogram = histogram;
+        this.errorHistogram = errorHistogram;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.totalCount = totalCount;
+    }
+
+    public String getColumnFamily() {
+        return columnFamily;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return number of calls in the interval, failed ones included
+     */
+    public long getCount() {
+        return histogram.getTotalCount() + errorHistogram.getTotalCount();
+    }
+
+    public long getErrorCount() {
+        return errorHistogram.getTotalCount();
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * @return number of calls since the start
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return calls per second in the interval
+     */
+    public double getRate() {
+        return intervalNanos > 0 ? getCount() * 1e9 / intervalNanos : 0;
+    }
+
+    public double getMeanMillis() {
+        return histogram.getTotalCount() > 0 ? histogram.getMean() / NANOS_PER_MILLI : 0;
+    }
+
+    public double getPercentileMillis(final double percentile) {
+        return histogram.getValueAtPercentile(percentile) / NANOS_PER_MILLI;
+    }
+
+    public double getMaxMillis() {
+        return histogram.getMaxValue() / NANOS_PER_MILLI;
+    }
+
+    public double getErrorPercentileMillis(final double percentile) {
+        return errorHistogram.getValueAtPercentile(percentile) / NANOS_PER_MILLI;
+    }
+
+    public double getErrorMaxMillis() {
+        return errorHistogram.getMaxValue() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return copy of the latency histogram of the successful calls of the interval, in nanoseconds
+     */
+    public Histogram getHistogram() {
+        return histogram.copy();
+    }
+
+    /**
+     * @return copy of the latency histogram of the failed calls of the interval, in nanoseconds
+     */
+    public Histogram getErrorHistogram() {
+        return errorHistogram.copy();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s.%s count=%d errors=%d rate=%.1f/s p50=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms errorP99=%.3fms"
+                + " in=%dB out=%dB", columnFamily, operation, getCount(), getErrorCount(), getRate(), getPercentileMillis(50),
+                getPercentileMillis(99), getPercentileMillis(99.9), getMaxMillis(), getErrorPercentileMillis(99), bytesIn, bytesOut);
+    }
+
+}
@@ -0,0 +1,26 @@
+package cassandra.metrics;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the operations called in the interval, one line each.
+ * @author Gyozo_Nyari
+ *
+ */
+public class Slf4jMetricsReporter implements MetricsReporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Slf4jMetricsReporter.class);
+
+    @Override
+    public void report(final List<OperationSnapshot> snapshots) {
+        for (OperationSnapshot snapshot : snapshots) {
+            if (snapshot.getCount() > 0) {
+                LOG.info("{}", snapshot);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+package cassandra.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.util.Assert;
+
+/**
+ * Circuit breaker of a column family, or anything else the calls are grouped by. It opens when the failure rate of a
+ * window reaches the threshold, fails the calls fast while open, then lets one probe through: its success closes the
+ * circuit, its failure opens it again.
+ * @author Gyozo_Nyari
+ *
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long windowNanos;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private long windowStart = System.nanoTime();
+    private long openedAt;
+    private int calls;
+    private int failures;
+    private boolean probing;
+    private long openCount;
+    private long rejectedCount;
+
+    /**
+     * Constructor.
+     * @param name name, put in the messages
+     * @param failureRateThreshold failure rate opening the circuit, in (0, 1]
+     * @param minimumCalls calls in a window before the failure rate counts
+     * @param window length of the window the failure rate is measured in
+     * @param openDuration time the circuit stays open before a probe
+     * @param unit unit of the times
+     */
+    public CircuitBreaker(final String name, final double failureRateThreshold, final int minimumCalls, final long window,
+            final long openDuration, final TimeUnit unit) {
+        Assert.isTrue(failureRateThreshold > 0 && failureRateThreshold <= 1, "Failure rate threshold must be in (0, 1]!");
+        Assert.isTrue(minimumCalls > 0, "Minimum calls must be positive!");
+        Assert.isTrue(window > 0 && openDuration > 0, "Window and open duration must be positive!");
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.windowNanos = unit.toNanos(window);
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    /**
+     * Asks permission for a call, which has to report {@link #onSuccess()}, {@link #onFailure()} or
+     * {@link #release()} when permitted.
+     * @return false if the circuit is open
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            if (System.nanoTime() - openedAt < openNanos) {
+                rejectedCount++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probing = true;
+            return true;
+        default:
+            if (probing) {
+                rejectedCount++;
+                return false;
+            }
+            probing = true;
+            return true;
+        }
+    }
+
+    /**
+     * Asks permission for a call.
+     * @throws CircuitOpenException if the circuit is open
+     */
+    public void acquire() {
+        if (!tryAcquire()) {
+            throw new CircuitOpenException("Circuit of " + name + " is open!");
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            probing = false;
+            resetWindow(System.nanoTime());
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open(System.nanoTime());
+        } else if (state == State.CLOSED) {
+            record(true);
+        }
+    }
+
+    /**
+     * Reports a call ending without telling about the health of Cassandra, e.g. failing on its arguments.
+     */
+    public synchronized void release() {
+        probing = false;
+    }
+
+    private void record(final boolean failure) {
+        long now = System.nanoTime();
+        if (now - windowStart > windowNanos) {
+            resetWindow(now);
+        }
+        calls++;
+        if (failure) {
+            failures++;
+        }
+        if (calls >= minimumCalls && failures >= failureRateThreshold * calls) {
+            open(now);
+        }
+    }
+
+    private void open(final long now) {
+        state = State.OPEN;
+        openedAt = now;
+        probing = false;
+        openCount++;
+    }
+
+    private void resetWindow(final long now) {
+        windowStart = now;
+        calls = 0;
+        failures = 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return number of times the circuit opened
+     */
+    public synchronized long getOpenCount() {
+        return openCount;
+    }
+
+    /**
+     * @return number of calls failed fast
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker [name=" + name + ", state=" + state + ", opened=" + openCount + ", rejected=" + rejectedCount + "]";
+    }
+
+}
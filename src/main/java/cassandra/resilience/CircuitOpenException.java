@@ -0,0 +1,20 @@
+package cassandra.resilience;
+
+import cassandra.CassandraException;
+
+/**
+ * Thrown instead of calling Cassandra while the {@link CircuitBreaker} is open.
+ * @author Gyozo_Nyari
+ *
+ */
+public class CircuitOpenException extends CassandraException {
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+
+    public CircuitOpenException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,126 @@
+package cassandra.resilience;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.util.Assert;
+
+/**
+ * Point in time a call has to finish by. The deadline of the running call is bound to the thread by
+ * {@link #call(Deadline, Supplier)}, so the daos down the stack see it without passing it around; nested deadlines
+ * can only shorten it. {@link #propagate(Supplier)} carries it over to another thread.
+ * @author Gyozo_Nyari
+ *
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+    private final long deadlineNanos;
+
+    private Deadline(final long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Returns the deadline after the given time from now.
+     * @param timeout time
+     * @param unit unit of the time
+     * @return deadline
+     */
+    public static Deadline after(final long timeout, final TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * @return deadline of the call running on this thread, null if it has none
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs a call with the deadline, or the current one if that is earlier.
+     * @param deadline deadline
+     * @param call call
+     * @return result of the call
+     */
+    public static <T> T call(final Deadline deadline, final Supplier<T> call) {
+        Assert.notNull(deadline, "Deadline can't be null!");
+        Deadline previous = CURRENT.get();
+        CURRENT.set(previous != null ? previous.earliest(deadline) : deadline);
+        try {
+            return call.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Binds the current deadline, if any, to the call, so it keeps it on another thread.
+     * @param call call
+     * @return call running with the current deadline
+     */
+    public static <T> Supplier<T> propagate(final Supplier<T> call) {
+        final Deadline deadline = CURRENT.get();
+        if (deadline == null) {
+            return call;
+        }
+        return () -> call(deadline, call);
+    }
+
+    /**
+     * @param unit unit of the result
+     * @return time left, 0 if the deadline has passed
+     */
+    public long remaining(final TimeUnit unit) {
+        return unit.convert(remainingNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    long remainingNanos() {
+        return Math.max(deadlineNanos - System.nanoTime(), 0);
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Throws {@link DeadlineExceededException} if the deadline has passed.
+     * @param operation operation, put in the message
+     */
+    public void check(final String operation) {
+        if (isExpired()) {
+            throw new DeadlineExceededException(operation + " missed its deadline!");
+        }
+    }
+
+    /**
+     * Checks the deadline of the running call, if it has one.
+     * @param operation operation, put in the message
+     */
+    public static void checkCurrent(final String operation) {
+        Deadline deadline = CURRENT.get();
+        if (deadline != null) {
+            deadline.check(operation);
+        }
+    }
+
+    /**
+     * @param other deadline
+     * @return the earlier of the two deadlines
+     */
+    public Deadline earliest(final Deadline other) {
+        return other.deadlineNanos - deadlineNanos < 0 ? other : this;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline [remaining=" + remaining(TimeUnit.MILLISECONDS) + "ms]";
+    }
+
+}
@@ -0,0 +1,20 @@
+package cassandra.resilience;
+
+import cassandra.CassandraException;
+
+/**
+ * Thrown when a call runs out of its {@link Deadline}, the cause is the last failure if there was one.
+ * @author Gyozo_Nyari
+ *
+ */
+public class DeadlineExceededException extends CassandraException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,324 @@
+package cassandra.resilience;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.util.Assert;
+
+import cassandra.AsyncSupport;
+import cassandra.CassandraException;
+
+/**
+ * Runs dao calls within their {@link Deadline}, through the {@link CircuitBreaker} of their column family, retrying
+ * the idempotent ones on {@link CassandraException} with jittered exponential backoff as long as the
+ * {@link RetryBudget} and the deadline allow. A retry is never started, nor backed off for, past the deadline.
+ *
+ * Calls without a deadline get the default timeout, if one is set, bound to the thread for the daos below.
+ *
+ * The drivers block up to their socket timeout and know nothing of the deadline, so an attempt with a deadline runs
+ * on the executor and is waited for only until the deadline. A timed out attempt counts as a failure of the circuit
+ * and is left to complete in the background. The drivers should not retry themselves, see
+ * {@link cassandra.Configuration#setDriverRetries(int)}, or their retries multiply the attempts here.
+ * @author Gyozo_Nyari
+ *
+ */
+public class Resilience implements AutoCloseable {
+
+    private static final int DEFAULT_THREADS = 64;
+
+    private final RetryBudget budget;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+    private volatile int maxAttempts = 3;
+    private volatile long baseBackoffNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    private volatile long maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(200);
+    private volatile long timeoutNanos;
+    private volatile double failureRateThreshold = 0.5;
+    private volatile int minimumCalls = 20;
+    private volatile long windowNanos = TimeUnit.SECONDS.toNanos(10);
+    private volatile long openNanos = TimeUnit.SECONDS.toNanos(5);
+
+    private final LongAdder callCount = new LongAdder();
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder budgetExhaustedCount = new LongAdder();
+    private final LongAdder deadlineExceededCount = new LongAdder();
+    private final LongAdder circuitOpenCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * Constructor, retries are capped at 10% of the calls with bursts of 10.
+     */
+    public Resilience() {
+        this(new RetryBudget(0.1, 10));
+    }
+
+    /**
+     * Constructor, attempts with a deadline run on 64 threads.
+     * @param budget budget of the retries, may be shared with other executors
+     */
+    public Resilience(final RetryBudget budget) {
+        this(budget, AsyncSupport.newBoundedExecutor(DEFAULT_THREADS, DEFAULT_THREADS, "resilience"));
+    }
+
+    /**
+     * Constructor.
+     * @param budget budget of the retries, may be shared with other executors
+     * @param executor executor running the attempts with a deadline, at least as large as the number of concurrent
+     *            callers, shut down by {@link #close()}; attempts it rejects are run by the caller
+     */
+    public Resilience(final RetryBudget budget, final ExecutorService executor) {
+        Assert.notNull(budget, "Budget can't be null!");
+        Assert.notNull(executor, "Executor can't be null!");
+        this.budget = budget;
+        this.executor = executor;
+    }
+
+    /**
+     * Runs a call.
+     * @param name name of the circuit, e.g. the column family
+     * @param idempotent whether the call may be retried
+     * @param call call
+     * @return result of the call
+     * @throws DeadlineExceededException if the deadline passed before a successful attempt
+     * @throws CircuitOpenException if the circuit is open
+     */
+    public <T> T execute(final String name, final boolean idempotent, final Supplier<T> call) {
+        Deadline deadline = Deadline.current();
+        if (deadline == null && timeoutNanos > 0) {
+            final Deadline timeout = Deadline.after(timeoutNanos, TimeUnit.NANOSECONDS);
+            return Deadline.call(timeout, () -> execute(name, idempotent, call, timeout));
+        }
+        return execute(name, idempotent, call, deadline);
+    }
+
+    private <T> T execute(final String name, final boolean idempotent, final Supplier<T> call, final Deadline deadline) {
+        callCount.increment();
+        budget.deposit();
+        CircuitBreaker breaker = getCircuitBreaker(name);
+        CassandraException failure = null;
+        for (int attempt = 1;; attempt++) {
+            if (deadline != null && deadline.isExpired()) {
+                deadlineExceededCount.increment();
+                throw new DeadlineExceededException(name + " missed its deadline after " + (attempt - 1) + " attempt(s)!", failure);
+            }
+            if (!breaker.tryAcquire()) {
+                circuitOpenCount.increment();
+                throw new CircuitOpenException("Circuit of " + name + " is open!", failure);
+            }
+            try {
+                T result = attempt(call, deadline);
+                breaker.onSuccess();
+                return result;
+            } catch (AttemptTimeoutException e) {
+                breaker.onFailure();
+                deadlineExceededCount.increment();
+                throw new DeadlineExceededException(name + " missed its deadline in attempt " + attempt + "!", failure);
+            } catch (DeadlineExceededException e) {
+                // a layer below, e.g. a hedged read, waited for the host until the deadline
+                breaker.onFailure();
+                deadlineExceededCount.increment();
+                throw e;
+            } catch (CircuitOpenException e) {
+                breaker.release();
+                throw e;
+            } catch (CassandraException e) {
+                breaker.onFailure();
+                failure = e;
+            } catch (RuntimeException | Error e) {
+                breaker.release();
+                throw e;
+            }
+            if (!idempotent || attempt >= maxAttempts) {
+                throw failure;
+            }
+            long backoff = backoffNanos(attempt);
+            if (deadline != null && backoff >= deadline.remainingNanos()) {
+                deadlineExceededCount.increment();
+                throw new DeadlineExceededException(name + " has no time left to retry!", failure);
+            }
+            if (!budget.tryAcquire()) {
+                budgetExhaustedCount.increment();
+                throw failure;
+            }
+            retryCount.increment();
+            try {
+                TimeUnit.NANOSECONDS.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CassandraException("Interrupted while backing off!", failure);
+            }
+        }
+    }
+
+    private <T> T attempt(final Supplier<T> call, final Deadline deadline) {
+        if (deadline == null) {
+            return call.get();
+        }
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(Deadline.propagate(call), executor);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            return call.get();
+        }
+        try {
+            return future.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new AttemptTimeoutException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CassandraException("Attempt failed!", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CassandraException("Interrupted while waiting for the attempt!", e);
+        }
+    }
+
+    private long backoffNanos(final int attempt) {
+        long ceiling = Math.min(baseBackoffNanos << Math.min(attempt - 1, 20), maxBackoffNanos);
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    /**
+     * Returns the circuit breaker of a name, created with the current settings on the first call.
+     * @param name name of the circuit
+     * @return circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker(final String name) {
+        CircuitBreaker breaker = breakers.get(name);
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(name, failureRateThreshold, minimumCalls, windowNanos, openNanos, TimeUnit.NANOSECONDS);
+            breaker = breakers.putIfAbsent(name, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Sets the number of attempts of the idempotent calls, 3 by default.
+     * @param maxAttempts attempts, 1 for no retries
+     */
+    public void setMaxAttempts(final int maxAttempts) {
+        Assert.isTrue(maxAttempts > 0, "Max attempts must be positive!");
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Sets the backoff before the first retry, doubled by each further one up to the maximum, 10 and 200 ms by
+     * default. The backoff is jittered between its half and itself.
+     * @param base first backoff
+     * @param max maximum backoff
+     * @param unit unit of the backoffs
+     */
+    public void setBackoff(final long base, final long max, final TimeUnit unit) {
+        Assert.isTrue(base > 0 && base <= max, "Backoffs must be positive, the base not above the maximum!");
+        this.baseBackoffNanos = unit.toNanos(base);
+        this.maxBackoffNanos = unit.toNanos(max);
+    }
+
+    /**
+     * Sets the deadline of the calls started without one, none by default.
+     * @param timeout time, 0 for none
+     * @param unit unit of the time
+     */
+    public void setTimeout(final long timeout, final TimeUnit unit) {
+        Assert.isTrue(timeout >= 0, "Timeout can't be negative!");
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Sets the settings of the circuit breakers created afterwards, by default 50% failures of at least 20 calls in
+     * 10 seconds open the circuit for 5 seconds.
+     * @param failureRateThreshold failure rate opening the circuit, in (0, 1]
+     * @param minimumCalls calls in a window before the failure rate counts
+     * @param window length of the window
+     * @param openDuration time the circuit stays open before a probe
+     * @param unit unit of the times
+     */
+    public void setCircuitBreaker(final double failureRateThreshold, final int minimumCalls, final long window,
+            final long openDuration, final TimeUnit unit) {
+        Assert.isTrue(failureRateThreshold > 0 && failureRateThreshold <= 1, "Failure rate threshold must be in (0, 1]!");
+        Assert.isTrue(minimumCalls > 0, "Minimum calls must be positive!");
+        Assert.isTrue(window > 0 && openDuration > 0, "Window and open duration must be positive!");
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.windowNanos = unit.toNanos(window);
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    public long getCallCount() {
+        return callCount.sum();
+    }
+
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    /**
+     * @return number of failures not retried as the budget was spent
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhaustedCount.sum();
+    }
+
+    public long getDeadlineExceededCount() {
+        return deadlineExceededCount.sum();
+    }
+
+    /**
+     * @return number of calls failed fast by an open circuit
+     */
+    public long getCircuitOpenCount() {
+        return circuitOpenCount.sum();
+    }
+
+    /**
+     * @return number of attempts run by the caller as the executor was full, not bounded by their deadline
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "Resilience [calls=" + getCallCount() + ", retries=" + getRetryCount() + ", budgetExhausted=" + getBudgetExhaustedCount()
+                + ", deadlineExceeded=" + getDeadlineExceededCount() + ", circuitOpen=" + getCircuitOpenCount() + ", rejected="
+                + getRejectedCount() + ", breakers=" + breakers.values() + "]";
+    }
+
+    /**
+     * An attempt outlived the deadline, told apart from a {@link DeadlineExceededException} of the layers below.
+     */
+    private static final class AttemptTimeoutException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        AttemptTimeoutException() {
+            super(null, null, false, false);
+        }
+    }
+
+}
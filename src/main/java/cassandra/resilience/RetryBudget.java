@@ -0,0 +1,68 @@
+package cassandra.resilience;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+/**
+ * Token bucket capping the extra calls, retries or hedges, to a fraction of the calls: every call deposits the ratio
+ * of a token, every extra call takes a whole one. The bucket holds the burst, so a quiet period doesn't buy a storm.
+ * @author Gyozo_Nyari
+ *
+ */
+public class RetryBudget {
+
+    private static final long MILLI_TOKENS = 1000;
+
+    private final long depositMilliTokens;
+    private final long maxMilliTokens;
+    private final AtomicLong milliTokens;
+
+    /**
+     * Constructor, the bucket starts full.
+     * @param ratio extra calls per call, in (0, 1]
+     * @param burst extra calls allowed at once
+     */
+    public RetryBudget(final double ratio, final int burst) {
+        Assert.isTrue(ratio > 0 && ratio <= 1, "Ratio must be in (0, 1]!");
+        Assert.isTrue(burst > 0, "Burst must be positive!");
+        this.depositMilliTokens = Math.max(Math.round(ratio * MILLI_TOKENS), 1);
+        this.maxMilliTokens = burst * MILLI_TOKENS;
+        this.milliTokens = new AtomicLong(maxMilliTokens);
+    }
+
+    /**
+     * Deposits the share of a call.
+     */
+    public void deposit() {
+        long current;
+        long next;
+        do {
+            current = milliTokens.get();
+            next = Math.min(current + depositMilliTokens, maxMilliTokens);
+        } while (current != next && !milliTokens.compareAndSet(current, next));
+    }
+
+    /**
+     * Takes a token for an extra call.
+     * @return false if the budget is spent
+     */
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = milliTokens.get();
+            if (current < MILLI_TOKENS) {
+                return false;
+            }
+        } while (!milliTokens.compareAndSet(current, current - MILLI_TOKENS));
+        return true;
+    }
+
+    /**
+     * @return extra calls currently allowed, fractional
+     */
+    public double getAvailable() {
+        return (double) milliTokens.get() / MILLI_TOKENS;
+    }
+
+}
@@ -0,0 +1,214 @@
+package cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link Chunks}.
+ * @author Gyozo_Nyari
+ *
+ */
+public class ChunksTest {
+
+    @Test
+    public void splitsItemsByCount() {
+        List<List<Integer>> chunks = Chunks.split(Arrays.asList(1, 2, 3, 4, 5), 2);
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4), Arrays.asList(5)), chunks);
+        assertTrue(Chunks.split(Collections.<Integer> emptyList(), 2).isEmpty());
+    }
+
+    @Test
+    public void splitsMapByCount() {
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        for (int i = 0; i < 5; i++) {
+            map.put("key" + i, i);
+        }
+        List<Map<String, Integer>> chunks = Chunks.split(map, 2);
+        assertEquals(3, chunks.size());
+        Map<String, Integer> joined = new HashMap<String, Integer>();
+        for (Map<String, Integer> chunk : chunks) {
+            assertTrue(chunk.size() <= 2);
+            joined.putAll(chunk);
+        }
+        assertEquals(map, joined);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyChunks() {
+        Chunks.split(Arrays.asList(1, 2), 0);
+    }
+
+    @Test
+    public void splitsKeysBySize() {
+        List<List<String>> chunks = Chunks.splitBySize(Arrays.asList("aaaa", "bbbb", "cc", "dddddddddd"), 6, row -> row.length());
+        assertEquals(Arrays.asList(Arrays.asList("aaaa"), Arrays.asList("bbbb", "cc"), Arrays.asList("dddddddddd")), chunks);
+    }
+
+    @Test
+    public void keepsRowsUnderLimitTogether() {
+        Map<String, Map<String, String>> rows = new LinkedHashMap<String, Map<String, String>>();
+        rows.put("row1", columns(2, 10));
+        rows.put("row2", columns(2, 10));
+        rows.put("row3", columns(2, 10));
+        List<Map<String, Map<String, String>>> chunks = Chunks.splitBySize(rows, 60, row -> 10, (name, value) -> value.length());
+        assertEquals(2, chunks.size());
+        assertEquals(2, chunks.get(0).size());
+        assertEquals(rows.get("row3"), chunks.get(1).get("row3"));
+    }
+
+    @Test
+    public void splitsWideRowByColumn() {
+        Map<String, String> wide = columns(12, 90);
+        Map<String, Map<String, String>> rows = new LinkedHashMap<String, Map<String, String>>();
+        rows.put("narrow", columns(1, 90));
+        rows.put("wide", wide);
+        List<Map<String, Map<String, String>>> chunks = Chunks.splitBySize(rows, 400, row -> 10, (name, value) -> value.length());
+        Map<String, String> joined = new HashMap<String, String>();
+        for (Map<String, Map<String, String>> chunk : chunks) {
+            long bytes = 0;
+            for (Map.Entry<String, Map<String, String>> row : chunk.entrySet()) {
+                bytes += 10 + 90 * row.getValue().size();
+            }
+            assertTrue("Chunk of " + bytes + " bytes", bytes <= 400);
+            if (chunk.containsKey("wide")) {
+                joined.putAll(chunk.get("wide"));
+            }
+        }
+        assertEquals(wide, joined);
+        assertEquals(columns(1, 90), chunks.get(0).get("narrow"));
+    }
+
+    @Test
+    public void oversizedColumnMakesChunkByItself() {
+        Map<String, Map<String, String>> rows = new LinkedHashMap<String, Map<String, String>>();
+        rows.put("row1", columns(1, 10));
+        rows.put("row2", Collections.singletonMap("huge", repeat('x', 1000)));
+        List<Map<String, Map<String, String>>> chunks = Chunks.splitBySize(rows, 100, row -> 10, (name, value) -> value.length());
+        assertEquals(2, chunks.size());
+        assertEquals(Collections.singleton("row2"), chunks.get(1).keySet());
+    }
+
+    @Test
+    public void keepsEmptyRows() {
+        Map<String, Map<String, String>> rows = new LinkedHashMap<String, Map<String, String>>();
+        rows.put("empty", Collections.<String, String> emptyMap());
+        List<Map<String, Map<String, String>>> chunks = Chunks.splitBySize(rows, 100, row -> 10, (name, value) -> value.length());
+        assertEquals(1, chunks.size());
+        assertTrue(chunks.get(0).get("empty").isEmpty());
+    }
+
+    @Test
+    public void estimatesEncodedLength() {
+        Map<String, String> columns = Collections.singletonMap("name", "árvíz");
+        // 32 + 3 for the row, 32 + 4 + 7 for the column
+        assertEquals(78, Chunks.estimateSize("row", columns));
+    }
+
+    @Test
+    public void invokesAllInOrder() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Supplier<Integer>> tasks = new ArrayList<Supplier<Integer>>();
+            for (int i = 0; i < 5; i++) {
+                final int value = i;
+                tasks.add(() -> value);
+            }
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4), Chunks.invokeAll(tasks, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void invokeAllRethrowsFailure() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Supplier<Integer>> tasks = new ArrayList<Supplier<Integer>>();
+            tasks.add(() -> {
+                throw new IllegalStateException("failed");
+            });
+            tasks.add(() -> 1);
+            Chunks.invokeAll(tasks, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void joinIncrementsReportsFailedChunks() {
+        List<Map<CredentialKey, Integer>> chunks = Chunks.split(increments(5), 2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Supplier<Void>> tasks = new ArrayList<Supplier<Void>>();
+            for (final Map<CredentialKey, Integer> chunk : chunks) {
+                tasks.add(() -> {
+                    if (chunk.size() == 2) {
+                        throw new CassandraException("failed");
+                    }
+                    return null;
+                });
+            }
+            Chunks.joinIncrements(chunks, Chunks.submitAll(tasks, executor));
+            fail("Join should have failed!");
+        } catch (PartialIncrementException e) {
+            Map<CredentialKey, Integer> failed = new HashMap<CredentialKey, Integer>(chunks.get(0));
+            failed.putAll(chunks.get(1));
+            assertEquals(failed, e.getFailedIncrements());
+            assertEquals("failed", e.getCause().getMessage());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void joinIncrementsWaitsForAll() {
+        List<Map<CredentialKey, Integer>> chunks = Chunks.split(increments(3), 1);
+        List<Supplier<Void>> tasks = new ArrayList<Supplier<Void>>();
+        for (int i = 0; i < chunks.size(); i++) {
+            tasks.add(() -> null);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Chunks.joinIncrements(chunks, Chunks.submitAll(tasks, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Map<CredentialKey, Integer> increments(final int count) {
+        Map<CredentialKey, Integer> increments = new LinkedHashMap<CredentialKey, Integer>();
+        for (int i = 0; i < count; i++) {
+            increments.put(new CredentialKey("user" + i, "password"), i + 1);
+        }
+        return increments;
+    }
+
+    private static Map<String, String> columns(final int count, final int valueLength) {
+        Map<String, String> columns = new LinkedHashMap<String, String>();
+        for (int i = 0; i < count; i++) {
+            columns.put("column" + i, repeat('v', valueLength));
+        }
+        return columns;
+    }
+
+    private static String repeat(final char c, final int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+}
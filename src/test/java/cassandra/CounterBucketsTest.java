@@ -0,0 +1,126 @@
+package cassandra;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link CounterBuckets}, the counter rows are kept in a map.
+ * @author Gyozo_Nyari
+ *
+ */
+public class CounterBucketsTest {
+
+    private final CounterBuckets buckets = new CounterBuckets(60);
+    private final Map<String, Long> counters = new HashMap<String, Long>();
+
+    @Test
+    public void resetToZeroSurvivesBucketBoundary() {
+        long bucket = 1000;
+        increment(buckets.previousRowKey("user1", bucket), 3);
+        increment(buckets.currentRowKey("user1", bucket), 2);
+        assertEquals(5, count("user1", bucket));
+
+        set("user1", bucket, 0);
+        assertEquals(0, count("user1", bucket));
+        assertCountersNotNegative();
+
+        // the reset current bucket becomes the previous one
+        increment(buckets.currentRowKey("user1", bucket + 1), 1);
+        assertEquals(1, count("user1", bucket + 1));
+    }
+
+    @Test
+    public void setBelowPreviousBucketLowersPrevious() {
+        long bucket = 1000;
+        increment(buckets.previousRowKey("user1", bucket), 3);
+        increment(buckets.currentRowKey("user1", bucket), 2);
+
+        set("user1", bucket, 1);
+        assertEquals(1, count("user1", bucket));
+        assertEquals(0, counter(buckets.currentRowKey("user1", bucket)));
+        assertCountersNotNegative();
+        // the remaining failure drops off with the previous bucket
+        assertEquals(0, count("user1", bucket + 1));
+    }
+
+    @Test
+    public void setAbovePreviousBucketKeepsPrevious() {
+        long bucket = 1000;
+        increment(buckets.previousRowKey("user1", bucket), 3);
+        increment(buckets.currentRowKey("user1", bucket), 2);
+
+        set("user1", bucket, 10);
+        assertEquals(10, count("user1", bucket));
+        assertEquals(7, count("user1", bucket + 1));
+    }
+
+    @Test
+    public void concurrentIncrementIsKept() {
+        long bucket = 1000;
+        increment(buckets.currentRowKey("user1", bucket), 2);
+        long[] increments = CounterBuckets.setIncrements(counter(buckets.previousRowKey("user1", bucket)),
+                counter(buckets.currentRowKey("user1", bucket)), 0);
+        // lands between the read and the write of the set
+        increment(buckets.currentRowKey("user1", bucket), 1);
+        apply("user1", bucket, increments);
+        assertEquals(1, count("user1", bucket));
+        assertCountersNotNegative();
+    }
+
+    @Test
+    public void unchangedCountNeedsNoWrite() {
+        assertArrayEquals(new long[] {0, 0}, CounterBuckets.setIncrements(3, 2, 5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeValue() {
+        CounterBuckets.setIncrements(0, 0, -1);
+    }
+
+    @Test
+    public void expiresBucketsOlderThanPrevious() {
+        long bucket = 1000;
+        assertFalse(buckets.isExpired(buckets.currentRowKey("user1", bucket), bucket));
+        assertFalse(buckets.isExpired(buckets.previousRowKey("user1", bucket), bucket));
+        assertTrue(buckets.isExpired(buckets.previousRowKey("user1", bucket - 1), bucket));
+        assertFalse(buckets.isExpired("user1", bucket));
+        assertFalse(buckets.isExpired("user1:name", bucket));
+    }
+
+    private void set(final String userId, final long bucket, final int value) {
+        apply(userId, bucket, CounterBuckets.setIncrements(counter(buckets.previousRowKey(userId, bucket)),
+                counter(buckets.currentRowKey(userId, bucket)), value));
+    }
+
+    private void apply(final String userId, final long bucket, final long[] increments) {
+        increment(buckets.previousRowKey(userId, bucket), increments[0]);
+        increment(buckets.currentRowKey(userId, bucket), increments[1]);
+    }
+
+    private long count(final String userId, final long bucket) {
+        return counter(buckets.previousRowKey(userId, bucket)) + counter(buckets.currentRowKey(userId, bucket));
+    }
+
+    private void increment(final String rowKey, final long delta) {
+        counters.merge(rowKey, delta, Long::sum);
+    }
+
+    private long counter(final String rowKey) {
+        Long value = counters.get(rowKey);
+        return value != null ? value : 0;
+    }
+
+    private void assertCountersNotNegative() {
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            assertTrue(counter.getKey() + " is negative", counter.getValue() >= 0);
+        }
+    }
+
+}
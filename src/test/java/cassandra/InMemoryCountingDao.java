@@ -0,0 +1,119 @@
+package cassandra;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * {@link CountingDao} keeping the counts in memory, for the tests of the decorators. The batch increments can be
+ * held up, failed or partially failed.
+ * @author Gyozo_Nyari
+ *
+ */
+class InMemoryCountingDao implements CountingDao {
+
+    private final ConcurrentMap<CredentialKey, Integer> counts = new ConcurrentHashMap<CredentialKey, Integer>();
+    private final Set<String> failingUsers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger batchCount = new AtomicInteger();
+    private volatile Consumer<Map<CredentialKey, Integer>> beforeBatch = increments -> {
+    };
+
+    @Override
+    public int getNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        Integer count = counts.get(new CredentialKey(userId, credentials));
+        return count != null ? count.intValue() : 0;
+    }
+
+    @Override
+    public Map<String, Integer> getNumberOfAuthenticationFailures(final String userId) {
+        Map<String, Integer> authFailures = new HashMap<String, Integer>();
+        for (Map.Entry<CredentialKey, Integer> count : counts.entrySet()) {
+            if (count.getKey().getUserId().equals(userId)) {
+                authFailures.put(count.getKey().getCredential(), count.getValue());
+            }
+        }
+        return authFailures;
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> getNumberOfAuthenticationFailures(final Collection<String> userIds) {
+        Map<String, Map<String, Integer>> authFailures = new HashMap<String, Map<String, Integer>>();
+        for (String userId : userIds) {
+            Map<String, Integer> userFailures = getNumberOfAuthenticationFailures(userId);
+            if (!userFailures.isEmpty()) {
+                authFailures.put(userId, userFailures);
+            }
+        }
+        return authFailures;
+    }
+
+    @Override
+    public void setNumberOfAuthenticationFailures(final String userId, final String credentials, final int value) {
+        counts.put(new CredentialKey(userId, credentials), value);
+    }
+
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final String userId, final String credentials) {
+        counts.merge(new CredentialKey(userId, credentials), 1, Integer::sum);
+    }
+
+    @Override
+    public IncrementResult incrementAndCheck(final String userId, final String credentials, final int threshold) {
+        int value = counts.merge(new CredentialKey(userId, credentials), 1, Integer::sum);
+        return new IncrementResult(value, value >= threshold);
+    }
+
+    /**
+     * Writes the increments of the users not {@link #failUser(String) failing}, those are reported by a
+     * {@link PartialIncrementException}.
+     */
+    @Override
+    public void incrementNumberOfAuthenticationFailures(final Map<CredentialKey, Integer> increments) {
+        batchCount.incrementAndGet();
+        beforeBatch.accept(increments);
+        Map<CredentialKey, Integer> failedIncrements = new HashMap<CredentialKey, Integer>();
+        for (Map.Entry<CredentialKey, Integer> increment : increments.entrySet()) {
+            if (failingUsers.contains(increment.getKey().getUserId())) {
+                failedIncrements.put(increment.getKey(), increment.getValue());
+            } else {
+                counts.merge(increment.getKey(), increment.getValue(), Integer::sum);
+            }
+        }
+        if (!failedIncrements.isEmpty()) {
+            throw new PartialIncrementException("incrementNumberOfAuthenticationFailures failed for " + failedIncrements.size()
+                    + " credentials!", failedIncrements, new CassandraException("failed"));
+        }
+    }
+
+    /**
+     * @param beforeBatch called with the increments before a batch is written, it may block or throw
+     */
+    void setBeforeBatch(final Consumer<Map<CredentialKey, Integer>> beforeBatch) {
+        this.beforeBatch = beforeBatch;
+    }
+
+    void failUser(final String userId) {
+        failingUsers.add(userId);
+    }
+
+    void recoverUser(final String userId) {
+        failingUsers.remove(userId);
+    }
+
+    int getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * @return the stored counts by user's credential
+     */
+    Map<CredentialKey, Integer> getCounts() {
+        return counts;
+    }
+
+}
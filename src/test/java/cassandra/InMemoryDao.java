@@ -0,0 +1,100 @@
+package cassandra;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * {@link Dao} keeping the rows in memory, for the tests of the decorators. The batch deletions can be held up or
+ * failed. Slices and pages are not supported.
+ * @author Gyozo_Nyari
+ *
+ */
+class InMemoryDao implements Dao {
+
+    private final ConcurrentMap<String, Map<String, String>> rows = new ConcurrentHashMap<String, Map<String, String>>();
+    private volatile Consumer<Collection<String>> beforeRemoveAll = removed -> {
+    };
+
+    @Override
+    public Map<String, String> getValues(final String row) {
+        Map<String, String> columns = rows.get(row);
+        return columns != null ? new HashMap<String, String>(columns) : new HashMap<String, String>();
+    }
+
+    @Override
+    public Map<String, String> getValues(final String row, final ColumnRange range) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<Map<String, String>> getPages(final String row, final ColumnRange range) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void store(final String row, final Map<String, String> columns) {
+        rows.merge(row, new HashMap<String, String>(columns), (stored, added) -> {
+            Map<String, String> merged = new HashMap<String, String>(stored);
+            merged.putAll(added);
+            return merged;
+        });
+    }
+
+    @Override
+    public void remove(final String row) {
+        rows.remove(row);
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getValues(final Collection<String> keys) {
+        Map<String, Map<String, String>> values = new HashMap<String, Map<String, String>>();
+        for (String row : keys) {
+            Map<String, String> columns = rows.get(row);
+            if (columns != null) {
+                values.put(row, new HashMap<String, String>(columns));
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void storeAll(final Map<String, Map<String, String>> values) {
+        for (Map.Entry<String, Map<String, String>> row : values.entrySet()) {
+            store(row.getKey(), row.getValue());
+        }
+    }
+
+    @Override
+    public void removeAll(final Collection<String> keys) {
+        beforeRemoveAll.accept(keys);
+        rows.keySet().removeAll(keys);
+    }
+
+    @Override
+    public void forEachRow(final BiConsumer<String, Map<String, String>> consumer) {
+        for (Map.Entry<String, Map<String, String>> row : rows.entrySet()) {
+            consumer.accept(row.getKey(), new HashMap<String, String>(row.getValue()));
+        }
+    }
+
+    /**
+     * @param beforeRemoveAll called with the rows before a batch is deleted, it may block or throw
+     */
+    void setBeforeRemoveAll(final Consumer<Collection<String>> beforeRemoveAll) {
+        this.beforeRemoveAll = beforeRemoveAll;
+    }
+
+    /**
+     * @return the stored rows by row key
+     */
+    Map<String, Map<String, String>> getRows() {
+        return rows;
+    }
+
+}
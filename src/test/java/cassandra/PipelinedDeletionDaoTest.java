@@ -0,0 +1,143 @@
+package cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests of {@link PipelinedDeletionDao} flushing and closing.
+ * @author Gyozo_Nyari
+ *
+ */
+public class PipelinedDeletionDaoTest {
+
+    private final InMemoryDao store = new InMemoryDao();
+    private final PipelinedDeletionDao dao = new PipelinedDeletionDao(store, 100, 10, 2, 0);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        store.setBeforeRemoveAll(rows -> {
+        });
+        executor.shutdownNow();
+        try {
+            dao.close();
+        } catch (RuntimeException e) {
+            // failures of the test left unflushed
+        }
+    }
+
+    @Test
+    public void flushWritesQueuedDeletions() {
+        store("row1", "row2", "row3");
+        dao.removeAll(Arrays.asList("row1", "row2"));
+        dao.flush();
+        assertEquals(Collections.singleton("row3"), store.getRows().keySet());
+        assertEquals(2, dao.getDeletedCount());
+        assertEquals(0, dao.getQueuedCount());
+    }
+
+    @Test
+    public void queuedRowsReadAsDeleted() {
+        holdDeletions();
+        store("row1", "row2");
+        dao.remove("row1");
+        assertTrue(store.getRows().containsKey("row1"));
+        assertTrue(dao.getValues("row1").isEmpty());
+        assertEquals(Collections.singleton("row2"), dao.getValues(Arrays.asList("row1", "row2")).keySet());
+        Map<String, Map<String, String>> scanned = new HashMap<String, Map<String, String>>();
+        dao.forEachRow(scanned::put);
+        assertEquals(Collections.singleton("row2"), scanned.keySet());
+
+        release.countDown();
+        dao.flush();
+        assertFalse(store.getRows().containsKey("row1"));
+    }
+
+    @Test
+    public void storeWaitsForQueuedDeletion() throws Exception {
+        holdDeletions();
+        store("row1");
+        dao.remove("row1");
+        Future<?> stored = executor.submit(() -> dao.store("row1", Collections.singletonMap("column", "new")));
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertFalse(stored.isDone());
+
+        release.countDown();
+        stored.get(1, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonMap("column", "new"), dao.getValues("row1"));
+        assertEquals(Collections.singletonMap("column", "new"), store.getValues("row1"));
+    }
+
+    @Test
+    public void flushThrowsFailedDeletionsOnce() {
+        store.setBeforeRemoveAll(rows -> {
+            throw new CassandraException("failed");
+        });
+        store("row1");
+        dao.remove("row1");
+        try {
+            dao.flush();
+            fail("Flush should have failed!");
+        } catch (CassandraException e) {
+            assertEquals("Deleting 1 rows failed!", e.getMessage());
+        }
+        assertEquals(Collections.singletonList("row1"), dao.getFailedRows());
+        assertEquals(1, dao.getRetryCount());
+        dao.flush();
+
+        store.setBeforeRemoveAll(rows -> {
+        });
+        dao.retryFailed();
+        dao.flush();
+        assertTrue(store.getRows().isEmpty());
+        assertTrue(dao.getFailedRows().isEmpty());
+    }
+
+    @Test
+    public void closeWritesQueuedDeletions() {
+        store("row1", "row2");
+        dao.removeAll(Arrays.asList("row1", "row2"));
+        dao.close();
+        assertTrue(store.getRows().isEmpty());
+        try {
+            dao.remove("row3");
+            fail("Remove should have failed!");
+        } catch (IllegalStateException e) {
+            assertEquals("Deletion pipeline is closed!", e.getMessage());
+        }
+    }
+
+    private void store(final String... rows) {
+        for (String row : rows) {
+            store.store(row, Collections.singletonMap("column", "value"));
+        }
+    }
+
+    private void holdDeletions() {
+        store.setBeforeRemoveAll(rows -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+}
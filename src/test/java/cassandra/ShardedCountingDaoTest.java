@@ -0,0 +1,85 @@
+package cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests of the sub-row layout of {@link ShardedCountingDao}.
+ * @author Gyozo_Nyari
+ *
+ */
+public class ShardedCountingDaoTest {
+
+    private final InMemoryCountingDao store = new InMemoryCountingDao();
+    private final ShardedCountingDao dao = new ShardedCountingDao(store, 4);
+
+    @Test
+    public void shardZeroIsPlainUserId() {
+        for (String userId : Arrays.asList("user1", "user#1", "50%off", "a%23b")) {
+            store.setNumberOfAuthenticationFailures(userId, "password", 3);
+            assertEquals(userId, 3, dao.getNumberOfAuthenticationFailures(userId, "password"));
+        }
+    }
+
+    @Test
+    public void setWritesPlainUserId() {
+        dao.setNumberOfAuthenticationFailures("user#1", "password", 5);
+        assertEquals(Collections.singletonMap(new CredentialKey("user#1", "password"), 5), store.getCounts());
+    }
+
+    @Test
+    public void writesStayInSubRowsOfUser() {
+        String userId = "a%b#c";
+        for (int i = 0; i < 100; i++) {
+            dao.incrementNumberOfAuthenticationFailures(userId, "password");
+        }
+        Set<String> subRows = new HashSet<String>(Arrays.asList(userId, "a%25b%23c#1", "a%25b%23c#2", "a%25b%23c#3"));
+        for (CredentialKey key : store.getCounts().keySet()) {
+            assertTrue(key.getUserId(), subRows.contains(key.getUserId()));
+        }
+        assertTrue(store.getCounts().size() > 1);
+        assertEquals(100, dao.getNumberOfAuthenticationFailures(userId, "password"));
+    }
+
+    @Test
+    public void setClearsOtherSubRows() {
+        for (int i = 0; i < 20; i++) {
+            dao.incrementNumberOfAuthenticationFailures("user1", "password");
+        }
+        dao.setNumberOfAuthenticationFailures("user1", "password", 2);
+        assertEquals(2, dao.getNumberOfAuthenticationFailures("user1", "password"));
+        assertEquals(2, store.getNumberOfAuthenticationFailures("user1", "password"));
+    }
+
+    @Test
+    public void incrementAndCheckCountsAllSubRows() {
+        store.setNumberOfAuthenticationFailures("user1", "password", 2);
+        store.setNumberOfAuthenticationFailures("user1#3", "password", 2);
+        IncrementResult result = dao.incrementAndCheck("user1", "password", 5);
+        assertEquals(5, result.getCount());
+        assertTrue(result.isThresholdReached());
+    }
+
+    @Test
+    public void partialFailureReportsUserIds() {
+        store.failUser("user#2");
+        for (int shard = 1; shard < 4; shard++) {
+            store.failUser("user%232#" + shard);
+        }
+        try {
+            dao.incrementNumberOfAuthenticationFailures(Collections.singletonMap(new CredentialKey("user#2", "password"), 3));
+            fail("Increment should have failed!");
+        } catch (PartialIncrementException e) {
+            assertEquals(Collections.singletonMap(new CredentialKey("user#2", "password"), 3), e.getFailedIncrements());
+        }
+    }
+
+}
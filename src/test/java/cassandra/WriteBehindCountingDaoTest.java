@@ -0,0 +1,171 @@
+package cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests of {@link WriteBehindCountingDao}, flushed by hand.
+ * @author Gyozo_Nyari
+ *
+ */
+public class WriteBehindCountingDaoTest {
+
+    private final InMemoryCountingDao store = new InMemoryCountingDao();
+    private final WriteBehindCountingDao dao = new WriteBehindCountingDao(store, TimeUnit.MINUTES.toMillis(10), 1000);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        store.setBeforeBatch(increments -> {
+        });
+        executor.shutdownNow();
+        dao.shutdown();
+    }
+
+    @Test
+    public void readsAddPendingIncrements() {
+        increment("user1", 3);
+        assertEquals(0, store.getNumberOfAuthenticationFailures("user1", "password"));
+        assertEquals(3, dao.getNumberOfAuthenticationFailures("user1", "password"));
+        assertEquals(1, dao.getPendingCount());
+
+        dao.flush();
+        assertEquals(3, store.getNumberOfAuthenticationFailures("user1", "password"));
+        assertEquals(3, dao.getNumberOfAuthenticationFailures("user1", "password"));
+        assertEquals(Collections.singletonMap("password", 3), dao.getNumberOfAuthenticationFailures("user1"));
+        assertEquals(0, dao.getPendingCount());
+        assertEquals(3, dao.getFlushedIncrements());
+    }
+
+    @Test
+    public void readsCountInFlightIncrementsWithoutWaiting() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        store.setBeforeBatch(increments -> {
+            writing.countDown();
+            await(release);
+        });
+        increment("user1", 2);
+        Future<?> flush = executor.submit(() -> dao.flush());
+        assertTrue(writing.await(1, TimeUnit.SECONDS));
+
+        // the flush holds no lock while it writes
+        assertEquals(2, dao.getNumberOfAuthenticationFailures("user1", "password"));
+        assertEquals(Collections.singletonMap("password", 2), dao.getNumberOfAuthenticationFailures("user1"));
+        increment("user1", 1);
+        assertEquals(3, dao.getNumberOfAuthenticationFailures(Arrays.asList("user1", "user2")).get("user1").get("password").intValue());
+
+        release.countDown();
+        flush.get(1, TimeUnit.SECONDS);
+        assertEquals(2, store.getNumberOfAuthenticationFailures("user1", "password"));
+        assertEquals(3, dao.getNumberOfAuthenticationFailures("user1", "password"));
+        dao.flush();
+        assertEquals(3, store.getNumberOfAuthenticationFailures("user1", "password"));
+        assertEquals(3, dao.getNumberOfAuthenticationFailures("user1", "password"));
+    }
+
+    @Test
+    public void partialFailureRetriesOnlyFailedIncrements() {
+        store.failUser("user2");
+        increment("user1", 2);
+        increment("user2", 1);
+        try {
+            dao.flush();
+            fail("Flush should have failed!");
+        } catch (PartialIncrementException e) {
+            assertEquals(1, dao.getFailedFlushCount());
+        }
+        assertEquals(2, store.getNumberOfAuthenticationFailures("user1", "password"));
+        assertEquals(0, store.getNumberOfAuthenticationFailures("user2", "password"));
+        assertEquals(2, dao.getNumberOfAuthenticationFailures("user1", "password"));
+        assertEquals(1, dao.getNumberOfAuthenticationFailures("user2", "password"));
+        assertEquals(1, dao.getPendingCount());
+
+        store.recoverUser("user2");
+        dao.flush();
+        assertEquals(2, store.getNumberOfAuthenticationFailures("user1", "password"));
+        assertEquals(1, store.getNumberOfAuthenticationFailures("user2", "password"));
+        assertEquals(0, dao.getLostIncrements());
+    }
+
+    @Test
+    public void unknownFailureDropsIncrements() {
+        store.setBeforeBatch(increments -> {
+            throw new CassandraException("failed");
+        });
+        increment("user1", 2);
+        try {
+            dao.flush();
+            fail("Flush should have failed!");
+        } catch (CassandraException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals(2, dao.getLostIncrements());
+        assertEquals(0, dao.getPendingCount());
+        assertEquals(0, dao.getNumberOfAuthenticationFailures("user1", "password"));
+    }
+
+    @Test
+    public void setOverridesPendingIncrements() {
+        increment("user1", 2);
+        dao.setNumberOfAuthenticationFailures("user1", "password", 5);
+        assertEquals(5, dao.getNumberOfAuthenticationFailures("user1", "password"));
+        dao.flush();
+        assertEquals(5, store.getNumberOfAuthenticationFailures("user1", "password"));
+    }
+
+    @Test
+    public void incrementsAfterShutdownAreWrittenThrough() {
+        dao.shutdown();
+        dao.incrementNumberOfAuthenticationFailures("user1", "password");
+        dao.incrementNumberOfAuthenticationFailures(Collections.singletonMap(new CredentialKey("user2", "password"), 2));
+        assertEquals(1, store.getNumberOfAuthenticationFailures("user1", "password"));
+        assertEquals(2, store.getNumberOfAuthenticationFailures("user2", "password"));
+        assertEquals(0, dao.getPendingCount());
+        assertEquals(2, dao.incrementAndCheck("user1", "password", 2).getCount());
+    }
+
+    @Test
+    public void earlyFlushWhenTooManyPending() throws Exception {
+        WriteBehindCountingDao small = new WriteBehindCountingDao(store, TimeUnit.MINUTES.toMillis(10), 2);
+        try {
+            small.incrementNumberOfAuthenticationFailures("user1", "password");
+            small.incrementNumberOfAuthenticationFailures("user2", "password");
+            for (int i = 0; i < 100 && store.getBatchCount() == 0; i++) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            assertEquals(1, store.getBatchCount());
+        } finally {
+            small.shutdown();
+        }
+        assertEquals(1, store.getNumberOfAuthenticationFailures("user1", "password"));
+        assertEquals(1, store.getNumberOfAuthenticationFailures("user2", "password"));
+    }
+
+    private void increment(final String userId, final int times) {
+        for (int i = 0; i < times; i++) {
+            dao.incrementNumberOfAuthenticationFailures(userId, "password");
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
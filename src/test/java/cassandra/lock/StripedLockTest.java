@@ -0,0 +1,131 @@
+package cassandra.lock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests of {@link StripedLock}.
+ * @author Gyozo_Nyari
+ *
+ */
+public class StripedLockTest {
+
+    private final StripedLock keyLock = new StripedLock();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void roundsStripesUpToPowerOfTwo() {
+        assertEquals(64, new StripedLock().getStripeCount());
+        assertEquals(128, new StripedLock(100, false).getStripeCount());
+        assertEquals(1, new StripedLock(1, true).getStripeCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoStripes() {
+        new StripedLock(0, false);
+    }
+
+    @Test
+    public void writeLockExcludesOtherThreads() throws Exception {
+        Lock lock = keyLock.writeLock("user1");
+        Future<?> reader;
+        try {
+            reader = executor.submit(() -> keyLock.readLock("user1").unlock());
+            try {
+                reader.get(100, TimeUnit.MILLISECONDS);
+                fail("Read lock should wait for the write lock!");
+            } catch (TimeoutException e) {
+                // expected
+            }
+        } finally {
+            lock.unlock();
+        }
+        reader.get(1, TimeUnit.SECONDS);
+        assertEquals(1, keyLock.getContendedCount());
+    }
+
+    @Test
+    public void readLocksAreShared() throws Exception {
+        Lock lock = keyLock.readLock("user1");
+        try {
+            executor.submit(() -> keyLock.readLock("user1").unlock()).get(1, TimeUnit.SECONDS);
+        } finally {
+            lock.unlock();
+        }
+        assertEquals(0, keyLock.getContendedCount());
+    }
+
+    @Test
+    public void writerCanTakeReadLockOfItsStripe() {
+        Lock write = keyLock.writeLock("user1");
+        try {
+            keyLock.readLock("user1").unlock();
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Test
+    public void locksOfKeysTakeEachStripeOnce() throws Exception {
+        StripedLock single = new StripedLock(1, false);
+        List<Lock> locks = single.writeLocks(Arrays.asList("user1", "user2", "user1"));
+        try {
+            assertEquals(1, locks.size());
+        } finally {
+            StripedLock.unlockAll(locks);
+        }
+        executor.submit(() -> single.writeLock("user2").unlock()).get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void locksOfKeysExcludeOtherThreads() throws Exception {
+        List<Lock> locks = keyLock.writeLocks(Arrays.asList("user1", "user2"));
+        Future<?> writer;
+        try {
+            writer = executor.submit(() -> keyLock.writeLock("user2").unlock());
+            try {
+                writer.get(100, TimeUnit.MILLISECONDS);
+                fail("Write lock should wait for the locks of the keys!");
+            } catch (TimeoutException e) {
+                // expected
+            }
+        } finally {
+            StripedLock.unlockAll(locks);
+        }
+        writer.get(1, TimeUnit.SECONDS);
+        assertTrue(keyLock.getContendedCount() > 0);
+    }
+
+    @Test
+    public void resetClearsContention() throws Exception {
+        Lock lock = keyLock.writeLock("user1");
+        Future<?> writer = executor.submit(() -> keyLock.writeLock("user1").unlock());
+        // let the writer find the lock taken
+        TimeUnit.MILLISECONDS.sleep(100);
+        lock.unlock();
+        writer.get(1, TimeUnit.SECONDS);
+        assertEquals(1, keyLock.getHotStripeCount(1));
+        keyLock.resetContention();
+        assertEquals(0, keyLock.getContendedCount());
+        assertEquals(0, keyLock.getHotStripeCount(1));
+    }
+
+}
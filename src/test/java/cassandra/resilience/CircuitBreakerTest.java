@@ -0,0 +1,129 @@
+package cassandra.resilience;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link CircuitBreaker}.
+ * @author Gyozo_Nyari
+ *
+ */
+public class CircuitBreakerTest {
+
+    private static final long WINDOW_MILLIS = 10000;
+    private static final long OPEN_MILLIS = 50;
+
+    private final CircuitBreaker breaker = new CircuitBreaker("test", 0.5, 4, WINDOW_MILLIS, OPEN_MILLIS, TimeUnit.MILLISECONDS);
+
+    @Test
+    public void staysClosedBelowMinimumCalls() {
+        recordFailures(3);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void opensAtFailureRateThreshold() {
+        recordSuccesses(2);
+        recordFailures(2);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getOpenCount());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.getRejectedCount());
+    }
+
+    @Test
+    public void staysClosedBelowFailureRateThreshold() {
+        recordSuccesses(3);
+        recordFailures(2);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test(expected = CircuitOpenException.class)
+    public void acquireThrowsWhileOpen() {
+        open();
+        breaker.acquire();
+    }
+
+    @Test
+    public void letsOneProbeThroughAfterOpenDuration() throws InterruptedException {
+        open();
+        waitOpenDuration();
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void successfulProbeClosesCircuit() throws InterruptedException {
+        open();
+        waitOpenDuration();
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void failedProbeOpensCircuitAgain() throws InterruptedException {
+        open();
+        waitOpenDuration();
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getOpenCount());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void releasedProbeLetsAnotherProbeThrough() throws InterruptedException {
+        open();
+        waitOpenDuration();
+        assertTrue(breaker.tryAcquire());
+        breaker.release();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void closedCircuitCountsFailuresAfresh() throws InterruptedException {
+        open();
+        waitOpenDuration();
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess();
+        recordFailures(3);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        recordFailures(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private void open() {
+        recordFailures(4);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private void recordSuccesses(final int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onSuccess();
+        }
+    }
+
+    private void recordFailures(final int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+    }
+
+    private static void waitOpenDuration() throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(2 * OPEN_MILLIS);
+    }
+
+}
@@ -0,0 +1,132 @@
+package cassandra.resilience;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link Deadline}.
+ * @author Gyozo_Nyari
+ *
+ */
+public class DeadlineTest {
+
+    @Test
+    public void noDeadlineOutsideCall() {
+        assertNull(Deadline.current());
+    }
+
+    @Test
+    public void callBindsDeadlineToThread() {
+        final Deadline deadline = Deadline.after(1, TimeUnit.SECONDS);
+        Deadline seen = Deadline.call(deadline, () -> Deadline.current());
+        assertSame(deadline, seen);
+        assertNull(Deadline.current());
+    }
+
+    @Test
+    public void nestedDeadlineCanOnlyShorten() {
+        final Deadline outer = Deadline.after(1, TimeUnit.SECONDS);
+        final Deadline later = Deadline.after(10, TimeUnit.SECONDS);
+        final Deadline earlier = Deadline.after(100, TimeUnit.MILLISECONDS);
+        Deadline.call(outer, () -> {
+            assertSame(outer, Deadline.call(later, () -> Deadline.current()));
+            assertSame(earlier, Deadline.call(earlier, () -> Deadline.current()));
+            assertSame(outer, Deadline.current());
+            return null;
+        });
+        assertNull(Deadline.current());
+    }
+
+    @Test
+    public void failedCallRestoresDeadline() {
+        final Deadline outer = Deadline.after(1, TimeUnit.SECONDS);
+        Deadline.call(outer, () -> {
+            try {
+                Deadline.call(Deadline.after(100, TimeUnit.MILLISECONDS), () -> {
+                    throw new IllegalStateException("failed");
+                });
+                fail("Call should have failed!");
+            } catch (IllegalStateException e) {
+                assertSame(outer, Deadline.current());
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void propagateCarriesDeadlineToAnotherThread() throws Exception {
+        final Deadline deadline = Deadline.after(1, TimeUnit.SECONDS);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Supplier<Deadline> current = () -> Deadline.current();
+            CompletableFuture<Deadline> propagated = Deadline.call(deadline,
+                    () -> CompletableFuture.supplyAsync(Deadline.propagate(current), executor));
+            CompletableFuture<Deadline> plain = Deadline.call(deadline, () -> CompletableFuture.supplyAsync(current, executor));
+            assertSame(deadline, propagated.get(1, TimeUnit.SECONDS));
+            assertNull(plain.get(1, TimeUnit.SECONDS));
+            // the worker thread is left without a deadline
+            assertNull(CompletableFuture.supplyAsync(current, executor).get(1, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void propagateWithoutDeadlineKeepsCall() {
+        Supplier<Deadline> call = () -> Deadline.current();
+        assertSame(call, Deadline.propagate(call));
+    }
+
+    @Test
+    public void expiredDeadlineFailsCheck() {
+        Deadline deadline = Deadline.after(0, TimeUnit.NANOSECONDS);
+        assertTrue(deadline.isExpired());
+        assertEquals(0, deadline.remaining(TimeUnit.NANOSECONDS));
+        try {
+            deadline.check("read");
+            fail("Check should have failed!");
+        } catch (DeadlineExceededException e) {
+            assertEquals("read missed its deadline!", e.getMessage());
+        }
+    }
+
+    @Test
+    public void checkCurrentUsesBoundDeadline() {
+        Deadline.checkCurrent("read");
+        Deadline.call(Deadline.after(1, TimeUnit.SECONDS), () -> {
+            Deadline.checkCurrent("read");
+            return null;
+        });
+        try {
+            Deadline.call(Deadline.after(0, TimeUnit.NANOSECONDS), () -> {
+                Deadline.checkCurrent("read");
+                return null;
+            });
+            fail("Check should have failed!");
+        } catch (DeadlineExceededException e) {
+            assertNull(Deadline.current());
+        }
+    }
+
+    @Test
+    public void earliestPicksEarlierDeadline() {
+        Deadline earlier = Deadline.after(1, TimeUnit.SECONDS);
+        Deadline later = Deadline.after(2, TimeUnit.SECONDS);
+        assertSame(earlier, earlier.earliest(later));
+        assertSame(earlier, later.earliest(earlier));
+        assertFalse(later.isExpired());
+    }
+
+}
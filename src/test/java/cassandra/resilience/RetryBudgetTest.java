@@ -0,0 +1,102 @@
+package cassandra.resilience;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link RetryBudget}.
+ * @author Gyozo_Nyari
+ *
+ */
+public class RetryBudgetTest {
+
+    @Test
+    public void startsWithFullBurst() {
+        RetryBudget budget = new RetryBudget(0.1, 3);
+        assertEquals(3.0, budget.getAvailable(), 0.0);
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+    }
+
+    @Test
+    public void exhaustedBudgetRefillsAtRatio() {
+        RetryBudget budget = new RetryBudget(0.1, 1);
+        assertTrue(budget.tryAcquire());
+        for (int i = 0; i < 9; i++) {
+            budget.deposit();
+            assertFalse(budget.tryAcquire());
+        }
+        budget.deposit();
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+    }
+
+    @Test
+    public void depositsAreCappedAtBurst() {
+        RetryBudget budget = new RetryBudget(0.5, 2);
+        for (int i = 0; i < 100; i++) {
+            budget.deposit();
+        }
+        assertEquals(2.0, budget.getAvailable(), 0.0);
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+    }
+
+    @Test
+    public void failedAcquireTakesNothing() {
+        RetryBudget budget = new RetryBudget(0.5, 1);
+        assertTrue(budget.tryAcquire());
+        budget.deposit();
+        assertFalse(budget.tryAcquire());
+        assertEquals(0.5, budget.getAvailable(), 0.0);
+    }
+
+    @Test
+    public void concurrentAcquiresNeverExceedBudget() throws Exception {
+        final RetryBudget budget = new RetryBudget(0.1, 50);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        int acquired = 0;
+                        for (int j = 0; j < 100; j++) {
+                            if (budget.tryAcquire()) {
+                                acquired++;
+                            }
+                        }
+                        return acquired;
+                    }
+                }));
+            }
+            int acquired = 0;
+            for (Future<Integer> future : futures) {
+                acquired += future.get();
+            }
+            assertEquals(50, acquired);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRatioAboveOne() {
+        new RetryBudget(1.5, 1);
+    }
+
+}